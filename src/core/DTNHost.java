@@ -78,6 +78,7 @@ public class DTNHost implements Comparable<DTNHost>, Iterable<Connection> {
 		setRouter(mRouterProto.replicate());
 
 		this.location = movement.getInitialLocation();
+		notifyLocationChanged();
 
 		this.nextTimeToMove = movement.nextPathAvailable();
 		this.path = null;
@@ -196,6 +197,16 @@ public class DTNHost implements Comparable<DTNHost>, Iterable<Connection> {
 	 */
 	public void setLocation(Coord location) {
 		this.location = location.clone();
+		notifyLocationChanged();
+	}
+
+	/**
+	 * Tells the network interfaces that the location of the node has changed
+	 */
+	void notifyLocationChanged() {
+		for (int i=0, n=net.size(); i<n; i++) {
+			net.get(i).locationChanged();
+		}
 	}
 
 	/**
@@ -337,13 +348,37 @@ public class DTNHost implements Comparable<DTNHost>, Iterable<Connection> {
 	 * @param timeIncrement How long time the node moves
 	 */
 	public void move(double timeIncrement) {		
+		if (moveWithoutNotifying(timeIncrement)) {
+			notifyLocationChanged();
+		}
+	}
+
+	/**
+	 * Moves the node like {@link #move(double)} but leaves telling the
+	 * network interfaces about the new location to the caller.
+	 * @param timeIncrement How long time the node moves
+	 * @return true if the location of the node changed
+	 */
+	boolean moveWithoutNotifying(double timeIncrement) {
+		if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
+			return false;
+		}
+
+		double oldX = this.location.getX();
+		double oldY = this.location.getY();
+		moveOnPath(timeIncrement);
+		return this.location.getX() != oldX || this.location.getY() != oldY;
+	}
+
+	/**
+	 * Moves the node along its path (getting new waypoints when needed)
+	 * @param timeIncrement How long time the node moves
+	 */
+	private void moveOnPath(double timeIncrement) {
 		double possibleMovement;
 		double distance;
 		double dx, dy;
 
-		if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
-			return; 
-		}
 		if (this.destination == null) {
 			if (!setNextWaypoint()) {
 				return;
@@ -388,12 +423,17 @@ public class DTNHost implements Comparable<DTNHost>, Iterable<Connection> {
 			return false;
 		}
 
-		this.destination = path.getNextWaypoint();
+		if (this.destination == null) {
+			this.destination = new Coord(0, 0);
+		}
+		path.getNextWaypoint(this.destination); // reuse the same Coord
 		this.speed = path.getSpeed();
 
-		if (this.movListeners != null) {
+		if (this.movListeners != null && !this.movListeners.isEmpty()) {
+			/* listeners get their own copy of the reused destination */
+			Coord dst = this.destination.clone();
 			for (MovementListener l : this.movListeners) {
-				l.newDestination(this, this.destination, this.speed);
+				l.newDestination(this, dst, this.speed);
 			}
 		}
 
@@ -5,9 +5,16 @@
 package core;
 import gui.DTNSimGUI;
 
+import java.io.File;
 import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ui.DTNSimTextUI;
 
@@ -22,6 +29,9 @@ public class DTNSim {
 	public static final String RANGE_DELIMETER = ":";
 	
 	public static final String SETTING_DEF_FLAG = "-d";
+	/** If this option ({@value}) is given in batch mode, it must be followed
+	 * by the number of runs to perform concurrently */
+	public static final String PARALLEL_RUNS_FLAG = "-p";
 	public static final String CMD_SETTING_DELIMITER = "@@";
 	
 	/** Name of the static method that all resettable classes must have
@@ -40,6 +50,9 @@ public class DTNSim {
 	 * {@link Settings#setRunIndex(int)}). Following arguments are the settings 
 	 * files for the simulation run (if any). For GUI mode, the number before 
 	 * settings files (if given) is the run index to use for that run.
+	 * In batch mode, option {@link #PARALLEL_RUNS_FLAG} followed by a number
+	 * makes that many runs to be performed at the same time (see
+	 * {@link #runConcurrently(String[], int, String, int[], int)}).
 	 * @param args Command line arguments
 	 */
 	public static void main(String[] args) {
@@ -48,6 +61,7 @@ public class DTNSim {
 		String confFiles[];
 		int firstConfIndex = 0;
 		int guiIndex = 0;
+		int nrofParallelRuns = 1;
 		String cmdSettings = null;
 
 		/* set US locale to parse decimals in consistent way */
@@ -88,6 +102,11 @@ public class DTNSim {
 					cmdSettings = args[firstConfIndex+1];
 					firstConfIndex += 2;
 				}
+				else if(args[firstConfIndex].equals(PARALLEL_RUNS_FLAG)) {
+					nrofParallelRuns = parseNrofParallelRuns(
+							args[firstConfIndex+1]);
+					firstConfIndex += 2;
+				}
 				else if(!haveRunIndex)
 				{
 					try {
@@ -116,10 +135,16 @@ public class DTNSim {
 		if(cmdSettings != null)
 		{
 			parseCmdSettings(cmdSettings);
-			cmdSettings = null;
 		}
 		
-		if (batchMode) {
+		if (batchMode && nrofParallelRuns > 1) {
+			long startTime = System.currentTimeMillis();
+			runConcurrently(confFiles, firstConfIndex, cmdSettings, nrofRuns,
+					nrofParallelRuns);
+			double duration = (System.currentTimeMillis() - startTime)/1000.0;
+			print("---\nAll done in " + String.format("%.2f", duration) + "s");
+		}
+		else if (batchMode) {
 			long startTime = System.currentTimeMillis();
 			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
 				print("Run " + (i+1) + "/" + nrofRuns[1]);
@@ -136,6 +161,130 @@ public class DTNSim {
 		}
 	}
 	
+	/**
+	 * Performs batch runs concurrently. Every run is performed in its own
+	 * class loader that loads all the simulator classes (and libraries)
+	 * again from the class path. Hence, all static state (settings, the
+	 * simulation clock, random number generators, host addresses, etc.) is
+	 * separate for each run and the results are the same as with running
+	 * the runs one after another. Each run writes its own reports.
+	 * @param confFiles The command line arguments with the settings files
+	 * @param firstConfIndex Index of the first settings file
+	 * @param cmdSettings Settings given on the command line (or null)
+	 * @param nrofRuns The first and (last_run_index - 1) of the runs
+	 * @param nrofParallel Maximum number of runs performed at the same time
+	 */
+	private static void runConcurrently(final String[] confFiles,
+			final int firstConfIndex, final String cmdSettings,
+			final int[] nrofRuns, int nrofParallel) {
+		final URL[] classPath = getClassPath();
+		ExecutorService executor = Executors.newFixedThreadPool(nrofParallel);
+		List<Future<?>> runs = new ArrayList<Future<?>>();
+
+		for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+			final int runIndex = i;
+			runs.add(executor.submit(new Runnable() {
+				public void run() {
+					runInNewClassLoader(classPath, confFiles, firstConfIndex,
+							cmdSettings, runIndex, nrofRuns[1]);
+				}
+			}));
+		}
+		executor.shutdown();
+
+		boolean failed = false;
+		for (Future<?> run : runs) {
+			try {
+				run.get();
+			} catch (Exception e) {
+				System.err.println("Batch run failed: " + e.getCause());
+				e.printStackTrace();
+				failed = true;
+			}
+		}
+		if (failed) {
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Returns the class path of the simulator as URLs
+	 * @return The class path entries
+	 */
+	private static URL[] getClassPath() {
+		String[] entries = System.getProperty("java.class.path").split(
+				File.pathSeparator);
+		URL[] urls = new URL[entries.length];
+		try {
+			for (int i=0; i<entries.length; i++) {
+				urls[i] = new File(entries[i]).toURI().toURL();
+			}
+		} catch (MalformedURLException e) {
+			throw new SimError(e);
+		}
+		return urls;
+	}
+
+	/**
+	 * Loads this class in a new class loader and performs a batch run with
+	 * it using {@link #runIsolated(String[], int, String, int, int)}
+	 * @param classPath Where the classes are loaded from
+	 * @param confFiles The command line arguments with the settings files
+	 * @param firstConfIndex Index of the first settings file
+	 * @param cmdSettings Settings given on the command line (or null)
+	 * @param runIndex Index of the run
+	 * @param lastRun Number of the last run
+	 */
+	private static void runInNewClassLoader(URL[] classPath,
+			String[] confFiles, int firstConfIndex, String cmdSettings,
+			int runIndex, int lastRun) {
+		/* the parent loader is the one above the application class loader
+		 * so none of the simulator's classes are shared between the runs */
+		URLClassLoader loader = new URLClassLoader(classPath,
+				ClassLoader.getSystemClassLoader().getParent());
+		Thread current = Thread.currentThread();
+		ClassLoader oldLoader = current.getContextClassLoader();
+		current.setContextClassLoader(loader);
+
+		try {
+			Class<?> c = loader.loadClass(DTNSim.class.getName());
+			Method m = c.getMethod("runIsolated", String[].class, int.class,
+					String.class, int.class, int.class);
+			m.invoke(null, confFiles, firstConfIndex, cmdSettings, runIndex,
+					lastRun);
+		} catch (Exception e) {
+			throw new SimError("Batch run " + (runIndex+1) + " failed", e);
+		} finally {
+			current.setContextClassLoader(oldLoader);
+			try {
+				loader.close();
+			} catch (java.io.IOException e) {
+				/* nothing to do */
+			}
+		}
+	}
+
+	/**
+	 * Performs one batch run. Called (using reflection) in the class loader
+	 * created for the run by {@link #runConcurrently}.
+	 * @param confFiles The command line arguments with the settings files
+	 * @param firstConfIndex Index of the first settings file
+	 * @param cmdSettings Settings given on the command line (or null)
+	 * @param runIndex Index of the run
+	 * @param lastRun Number of the last run
+	 */
+	public static void runIsolated(String[] confFiles, int firstConfIndex,
+			String cmdSettings, int runIndex, int lastRun) {
+		java.util.Locale.setDefault(java.util.Locale.US);
+		initSettings(confFiles, firstConfIndex);
+		if (cmdSettings != null) {
+			parseCmdSettings(cmdSettings);
+		}
+		print("Run " + (runIndex+1) + "/" + lastRun);
+		Settings.setRunIndex(runIndex);
+		new DTNSimTextUI().start();
+	}
+
 	/**
 	 * Initializes Settings
 	 * @param confFiles File name paths where to read additional settings 
@@ -259,6 +408,26 @@ public class DTNSim {
 		return val;
 	}
 	
+	/**
+	 * Parses the number of concurrent runs from a command line argument
+	 * @param arg The argument to parse
+	 * @return The number of concurrent runs
+	 */
+	private static int parseNrofParallelRuns(String arg) {
+		int nrof = 0;
+		try {
+			nrof = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			/* handled below */
+		}
+		if (nrof < 1) {
+			System.err.println("Invalid argument '" + arg + "' for" +
+					" number of concurrent runs");
+			System.exit(-1);
+		}
+		return nrof;
+	}
+
 	private static void parseCmdSettings(String arg)
 	{
 		String[] set;
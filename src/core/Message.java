@@ -4,11 +4,11 @@
  */
 package core;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A message that is created at a node or passed between nodes.
@@ -16,38 +16,29 @@ import java.util.Set;
 public class Message implements Comparable<Message> {
 	/** Value for infinite TTL of message */
 	public static final int INFINITE_TTL = -1;
-	private DTNHost from;
-	private DTNHost to;
-	/** Identifier of the message */
-	private String id;
-	/** Size of the message (bytes) */
-	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path; 
+	/** Data that is the same for all replicates of the message. Headers
+	 * are shared by the replicates and must not be modified once they are
+	 * in use; setters replace the header with a modified copy. */
+	private Header header;
+	/** Last node on the path this message has passed. The path nodes
+	 * are shared with the replicates the message was replicated from. */
+	private Hop lastHop;
 	/** Next unique identifier to be given */
 	private static int nextUniqueId;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Dense integer indexes of the message IDs that have been used */
+	private static ConcurrentHashMap<String, Integer> idIndexes;
 	/** The time this message was received */
 	private double timeReceived;
-	/** The time when this message was created */
-	private double timeCreated;
-	/** Initial TTL of the message */
-	private int initTtl;
-	
-	/** if a response to this message is required, this is the size of the 
-	 * response message (or 0 if no response is requested) */
-	private int responseSize;
-	/** if this message is a response message, this is set to the request msg*/
-	private Message requestMsg;
 	
 	/** Container for generic message properties. Note that all values
 	 * stored in the properties should be immutable because only a shallow
-	 * copy of the properties is made when replicating messages */
+	 * copy of the properties is made when replicating messages. The map 
+	 * may be shared with replicates so it is copied when it's modified. */
 	private Map<String, Object> properties;
-	
-	/** Application ID of the application that created the message */
-	private String	appID;
+	/** Is the properties map (possibly) shared with other messages */
+	private boolean propertiesShared;
 	
 	static {
 		reset();
@@ -63,31 +54,85 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the message (in bytes)
 	 */
 	public Message(DTNHost from, DTNHost to, String id, int size) {
-		this.from = from;
-		this.to = to;
-		this.id = id;
-		this.size = size;
-		this.path = new ArrayList<DTNHost>();
-		this.uniqueId = nextUniqueId;
+		ParallelUpdateEngine.awaitTurn(); // IDs get indexes in creation order
+		this.header = new Header(from, to, id, size, getIdIndex(id, true),
+				SimClock.getTime());
+		this.lastHop = null;
+		this.uniqueId = getNextUniqueId();
 		
-		this.timeCreated = SimClock.getTime();
-		this.timeReceived = this.timeCreated;
-		this.initTtl = INFINITE_TTL;
-		this.responseSize = 0;
-		this.requestMsg = null;
+		this.timeReceived = this.header.timeCreated;
 		this.properties = null;
-		this.appID = null;
 		
-		Message.nextUniqueId++;
 		addNodeOnPath(from);
 	}
 	
+	/**
+	 * Creates a replicate of a message. The header, path, and properties 
+	 * of the message are shared with the replicate.
+	 * @param m The message to replicate
+	 */
+	private Message(Message m) {
+		this.header = m.header;
+		this.lastHop = m.lastHop;
+		this.uniqueId = getNextUniqueId();
+		this.timeReceived = SimClock.getTime();
+		this.properties = m.properties;
+		this.propertiesShared = true;
+		m.propertiesShared = true;
+	}
+	
+	/**
+	 * Returns a new unique ID for a message. Messages may be created
+	 * concurrently if hosts are updated in parallel.
+	 * @return the next unique ID
+	 */
+	private static synchronized int getNextUniqueId() {
+		return nextUniqueId++;
+	}
+
+	/**
+	 * Returns the dense integer index of a message ID. Indexes are given
+	 * in the order the IDs are first used, starting from zero. Messages may 
+	 * be created concurrently if hosts are updated in parallel.
+	 * @param id The message ID
+	 * @param register If true, a new index is given to an unknown ID
+	 * @return The index or -1 if the ID is unknown and was not registered
+	 */
+	private static int getIdIndex(String id, boolean register) {
+		Integer index = idIndexes.get(id);
+		if (index != null) {
+			return index;
+		}
+		if (!register) {
+			return -1;
+		}
+		
+		synchronized (Message.class) {
+			index = idIndexes.get(id);
+			if (index == null) {
+				index = idIndexes.size();
+				idIndexes.put(id, index);
+			}
+			return index;
+		}
+	}
+	
+	/**
+	 * Returns the index of a message ID, i.e., the value 
+	 * {@link #getIdIndex()} returns for messages with the ID.
+	 * @param id The message ID
+	 * @return The index or -1 if no message with the ID has been created
+	 */
+	public static int getIdIndex(String id) {
+		return getIdIndex(id, false);
+	}
+
 	/**
 	 * Returns the node this message is originally from
 	 * @return the node this message is originally from
 	 */
 	public DTNHost getFrom() {
-		return this.from;
+		return this.header.from;
 	}
 
 	/**
@@ -95,7 +140,7 @@ public class Message implements Comparable<Message> {
 	 * @return the node this message is originally to
 	 */
 	public DTNHost getTo() {
-		return this.to;
+		return this.header.to;
 	}
 
 	/**
@@ -103,7 +148,17 @@ public class Message implements Comparable<Message> {
 	 * @return The message id
 	 */
 	public String getId() {
-		return this.id;
+		return this.header.id;
+	}
+	
+	/**
+	 * Returns a dense integer index of the ID of the message. All the
+	 * replicates of a message have the same index and different message 
+	 * IDs have different indexes.
+	 * @return The message ID index
+	 */
+	public int getIdIndex() {
+		return this.header.idIndex;
 	}
 	
 	/**
@@ -120,7 +175,7 @@ public class Message implements Comparable<Message> {
 	 * @return the size of the message
 	 */
 	public int getSize() {
-		return this.size;
+		return this.header.size;
 	}
 
 	/**
@@ -128,15 +183,17 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.lastHop = new Hop(node, this.lastHop);
 	}
 	
 	/**
-	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * Returns a list of nodes this message has passed so far. The list
+	 * can't be modified and it doesn't change if the message passes more
+	 * nodes later.
+	 * @return The list of nodes
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		return new HopList(this.lastHop);
 	}
 	
 	/**
@@ -144,7 +201,7 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return this.lastHop.count - 1;
 	}
 	
 	/** 
@@ -154,12 +211,12 @@ public class Message implements Comparable<Message> {
 	 * @return The TTL (minutes)
 	 */
 	public int getTtl() {
-		if (this.initTtl == INFINITE_TTL) {
+		if (this.header.initTtl == INFINITE_TTL) {
 			return Integer.MAX_VALUE;
 		}
 		else {
-			return (int)( ((this.initTtl * 60) -
-					(SimClock.getTime()-this.timeCreated)) /60.0 );
+			return (int)( ((this.header.initTtl * 60) -
+					(SimClock.getTime()-this.header.timeCreated)) /60.0 );
 		}
 	}
 	
@@ -171,7 +228,9 @@ public class Message implements Comparable<Message> {
 	 * @param ttl The time-to-live to set
 	 */
 	public void setTtl(int ttl) {
-		this.initTtl = ttl;
+		Header h = this.header.copy();
+		h.initTtl = ttl;
+		this.header = h;
 	}
 	
 	/**
@@ -195,7 +254,19 @@ public class Message implements Comparable<Message> {
 	 * @return the time when this message was created
 	 */
 	public double getCreationTime() {
-		return this.timeCreated;
+		return this.header.timeCreated;
+	}
+	
+	/**
+	 * Returns the time when the TTL of this message expires
+	 * @return the expiry time or Double.MAX_VALUE if the TTL is infinite
+	 * @see #getTtl()
+	 */
+	public double getExpiryTime() {
+		if (this.header.initTtl == INFINITE_TTL) {
+			return Double.MAX_VALUE;
+		}
+		return this.header.timeCreated + this.header.initTtl * 60;
 	}
 	
 	/**
@@ -203,7 +274,9 @@ public class Message implements Comparable<Message> {
 	 * @param request The request message
 	 */
 	public void setRequest(Message request) {
-		this.requestMsg = request;
+		Header h = this.header.copy();
+		h.requestMsg = request;
+		this.header = h;
 	}
 	
 	/**
@@ -212,7 +285,7 @@ public class Message implements Comparable<Message> {
 	 * @return the message this message is response to
 	 */
 	public Message getRequest() {
-		return this.requestMsg;
+		return this.header.requestMsg;
 	}
 	
 	/**
@@ -220,7 +293,7 @@ public class Message implements Comparable<Message> {
 	 * @return true if this message is a response message
 	 */
 	public boolean isResponse() {
-		return this.requestMsg != null;
+		return this.header.requestMsg != null;
 	}
 	
 	/**
@@ -229,7 +302,9 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the response message
 	 */
 	public void setResponseSize(int size) {
-		this.responseSize = size;
+		Header h = this.header.copy();
+		h.responseSize = size;
+		this.header = h;
 	}
 	
 	/**
@@ -238,7 +313,7 @@ public class Message implements Comparable<Message> {
 	 * @return the size of the requested response message
 	 */
 	public int getResponseSize() {
-		return responseSize;
+		return this.header.responseSize;
 	}
 	
 	/**
@@ -246,29 +321,28 @@ public class Message implements Comparable<Message> {
 	 * @return a string representation of the message
 	 */
 	public String toString () {
-		return id;
+		return this.header.id;
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
-	 * introduced to this class, most likely they should be copied here too
-	 * (unless done in constructor).
+	 * Copies message data (all but the sender, recipient, ID, and size) 
+	 * from other message. The path and the properties are shared with the
+	 * other message. If new fields are introduced to this class, most likely 
+	 * they should be copied here too (unless done in constructor).
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
-		this.timeCreated = m.timeCreated;
-		this.responseSize = m.responseSize;
-		this.requestMsg  = m.requestMsg;
-		this.initTtl = m.initTtl;
-		this.appID = m.appID;
-		
-		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
-			}
-		}
+		Header h = this.header.copy();
+		h.timeCreated = m.header.timeCreated;
+		h.responseSize = m.header.responseSize;
+		h.requestMsg  = m.header.requestMsg;
+		h.initTtl = m.header.initTtl;
+		h.appID = m.header.appID;
+		this.header = h;
+		this.lastHop = m.lastHop;
+		this.properties = m.properties;
+		this.propertiesShared = true;
+		m.propertiesShared = true;
 	}
 	
 	/**
@@ -312,23 +386,27 @@ public class Message implements Comparable<Message> {
 	 * @param value The new value to store
 	 */
 	public void updateProperty(String key, Object value) throws SimError {
+		/* lazy creation to prevent performance overhead for classes
+		   that don't use the property feature. A map shared with
+		   replicates is replaced by a copy on the first write. */
 		if (this.properties == null) {
-			/* lazy creation to prevent performance overhead for classes
-			   that don't use the property feature  */
-			this.properties = new HashMap<String, Object>();
-		}		
-
+			this.properties = new HashMap<String, Object>(4);
+		}
+		else if (this.propertiesShared) {
+			this.properties = new HashMap<String, Object>(this.properties);
+		}
+		this.propertiesShared = false;
 		this.properties.put(key, value);
 	}
 	
 	/**
-	 * Returns a replicate of this message (identical except for the unique id)
+	 * Returns a replicate of this message (identical except for the unique id
+	 * and receive time). The replicate shares the unmodifiable data with 
+	 * this message so replicating doesn't copy the path or the properties. 
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
-		m.copyFrom(this);
-		return m;
+		return new Message(this);
 	}
 	
 	/**
@@ -342,22 +420,131 @@ public class Message implements Comparable<Message> {
 	/**
 	 * Resets all static fields to default values
 	 */
-	public static void reset() {
+	public static synchronized void reset() {
 		nextUniqueId = 0;
+		idIndexes = new ConcurrentHashMap<String, Integer>();
 	}
 
 	/**
 	 * @return the appID
 	 */
 	public String getAppID() {
-		return appID;
+		return this.header.appID;
 	}
 
 	/**
 	 * @param appID the appID to set
 	 */
 	public void setAppID(String appID) {
-		this.appID = appID;
+		Header h = this.header.copy();
+		h.appID = appID;
+		this.header = h;
+	}
+	
+	/**
+	 * The data that is the same for all the replicates of a message
+	 */
+	private static class Header {
+		private final DTNHost from;
+		private final DTNHost to;
+		/** Identifier of the message */
+		private final String id;
+		/** Size of the message (bytes) */
+		private final int size;
+		/** Index of the ID of the message (see {@link Message#getIdIndex()})*/
+		private final int idIndex;
+		/** The time when the message was created */
+		private double timeCreated;
+		/** Initial TTL of the message */
+		private int initTtl;
+		/** if a response to the message is required, this is the size of the 
+		 * response message (or 0 if no response is requested) */
+		private int responseSize;
+		/** if the message is a response message, this is the request msg */
+		private Message requestMsg;
+		/** Application ID of the application that created the message */
+		private String appID;
+		
+		private Header(DTNHost from, DTNHost to, String id, int size,
+				int idIndex, double timeCreated) {
+			this.from = from;
+			this.to = to;
+			this.id = id;
+			this.size = size;
+			this.idIndex = idIndex;
+			this.timeCreated = timeCreated;
+			this.initTtl = INFINITE_TTL;
+			this.responseSize = 0;
+			this.requestMsg = null;
+			this.appID = null;
+		}
+		
+		private Header copy() {
+			Header h = new Header(from, to, id, size, idIndex, timeCreated);
+			h.initTtl = this.initTtl;
+			h.responseSize = this.responseSize;
+			h.requestMsg = this.requestMsg;
+			h.appID = this.appID;
+			return h;
+		}
+	}
+	
+	/**
+	 * A node on the path of a message. Hops are immutable and link to the
+	 * previous hop, so the replicates of a message share the common 
+	 * beginning of their paths.
+	 */
+	private static class Hop {
+		private final DTNHost node;
+		private final Hop previous;
+		/** number of nodes on the path up to and including this hop */
+		private final int count;
+		
+		private Hop(DTNHost node, Hop previous) {
+			this.node = node;
+			this.previous = previous;
+			this.count = previous == null ? 1 : previous.count + 1;
+		}
+	}
+	
+	/**
+	 * Unmodifiable list view of the nodes of a path, from the first node to
+	 * the last hop. The nodes are put to an array when first accessed by
+	 * index.
+	 */
+	private static class HopList extends AbstractList<DTNHost> {
+		private final Hop last;
+		private DTNHost[] nodes;
+		
+		private HopList(Hop last) {
+			this.last = last;
+		}
+		
+		@Override
+		public DTNHost get(int index) {
+			if (nodes == null) {
+				nodes = new DTNHost[size()];
+				for (Hop h = last; h != null; h = h.previous) {
+					nodes[h.count - 1] = h.node;
+				}
+			}
+			return nodes[index];
+		}
+		
+		@Override
+		public int size() {
+			return last == null ? 0 : last.count;
+		}
+		
+		@Override
+		public boolean contains(Object o) {
+			for (Hop h = last; h != null; h = h.previous) {
+				if (h.node == o) {
+					return true;
+				}
+			}
+			return false;
+		}
 	}
 	
 }
@@ -48,6 +48,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
+	/** index of this interface in its connectivity optimizer */
+	private int optimizerIndex = -1;
 	
 	protected Activeness activeModel;
 
@@ -139,6 +141,41 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			this.activeModel = am;
 	}
 
+	/**
+	 * Returns true if this interface has an activeness model
+	 * @return true if this interface has an activeness model
+	 */
+	public boolean hasActivenessModel() {
+		return this.activeModel != null;
+	}
+
+	/**
+	 * Returns the index given to this interface by its connectivity optimizer
+	 * @return The index or -1 if the optimizer hasn't set any
+	 */
+	public int getOptimizerIndex() {
+		return this.optimizerIndex;
+	}
+
+	/**
+	 * Sets the index of this interface in its connectivity optimizer. Only
+	 * the optimizer should call this.
+	 * @param index The index
+	 */
+	public void setOptimizerIndex(int index) {
+		this.optimizerIndex = index;
+	}
+
+	/**
+	 * Tells the connectivity optimizer that this interface has moved. Should
+	 * be called every time the location of the host changes.
+	 */
+	public void locationChanged() {
+		if (optimizer != null) {
+			optimizer.interfaceMoved(this);
+		}
+	}
+
 	/**
 	 * For checking what interface type this interface is
 	 */
@@ -291,8 +328,12 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			smallerRange = myRange;
 		}
 
-		return this.host.getLocation().distance(
-				anotherInterface.getLocation()) <= smallerRange;
+		Coord myLoc = this.host.getLocation();
+		Coord otherLoc = anotherInterface.getLocation();
+		double dx = myLoc.getX() - otherLoc.getX();
+		double dy = myLoc.getY() - otherLoc.getY();
+
+		return dx*dx + dy*dy <= smallerRange * smallerRange;
 	}
 	
 	/**
@@ -367,6 +408,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 		else if (key.equals(RANGE_ID)) {
 			this.transmitRange = (Double)newValue;	
+			locationChanged(); // neighbors within range may have changed
 		}
 		else {
 			throw new SimError("Unexpected combus ID " + key);
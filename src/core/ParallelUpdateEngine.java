@@ -0,0 +1,877 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import interfaces.ConnectivityGrid;
+import interfaces.InterferenceLimitedInterface;
+import interfaces.SimpleBroadcastInterface;
+import movement.MovementModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import routing.DirectDeliveryRouter;
+import routing.EpidemicRouter;
+import routing.EpidemicWithCureRouter;
+import routing.FirstContactRouter;
+import routing.MaxPropRouter;
+import routing.MessageRouter;
+import routing.PassiveRouter;
+import routing.ProphetRouter;
+import routing.ProphetV2Router;
+import routing.SprayAndWaitRouter;
+import applications.PingApplication;
+
+/**
+ * <P>Updates hosts of the world concurrently using a fork-join pool.</P>
+ *
+ * <P>The results are the same as with updating the hosts one after another
+ * in the update order given by the World. The world is divided into square
+ * lock units whose edge is the largest connectivity grid cell size. Before
+ * the updates, every host gets the set of units that its update may touch:
+ * the units within two cell sizes (or the host's radio range if that is
+ * larger) from the host, the units of the host's connectivity grid cells
+ * and the units of the hosts it is connected to (and of their cells).
+ * An update waits for the earlier updates (in the update order) that share
+ * units with it, and updates that share no units run at the same time.</P>
+ *
+ * <P>Anything whose order matters, i.e., message, connection and application
+ * listener events and giving indexes to new message IDs, waits for the
+ * update's turn: until all earlier updates have finished. Listeners are
+ * hence called in the same order, and see the hosts of the event in the
+ * same state, as with sequential updates (hosts that have nothing to do
+ * with the event may have been updated further, though). Threads waiting
+ * for a turn run the update whose turn it is, so the updates can't
+ * deadlock. With one thread, the hosts are simply updated in order.</P>
+ *
+ * <P>Hosts can also be moved concurrently. Only hosts whose movement model
+ * {@link movement.MovementModel#canMoveConcurrently() can be moved
+ * concurrently} are moved in the worker threads, each of them using its own
+ * random number generator; the rest are moved sequentially after them.
+ * Movement listener events of the concurrently moved hosts and telling
+ * their network interfaces about the new locations are deferred until
+ * all of them have moved and then done in host address order on the
+ * simulation thread. Hence the results are the same as with moving the
+ * hosts one after another with their own generators (which is what the
+ * engine does if it has only one thread).</P>
+ *
+ * <P><strong>Note:</strong> concurrent updates are supported only with
+ * range limited interfaces without activeness models, and with the routers
+ * and applications in {@link #SAFE_ROUTERS} and {@link #SAFE_APPLICATIONS}.
+ * Those only touch the hosts they are connected to and don't depend on the
+ * iteration order of identity hashed collections. Other routers (e.g.,
+ * RAPID, whose delay estimates touch hosts met earlier, and the community
+ * detection of the decision engine router, which shares tables between
+ * hosts) are rejected when updates are enabled.</P>
+ */
+public class ParallelUpdateEngine {
+	/** routers whose hosts can be updated concurrently */
+	public static final List<Class<? extends MessageRouter>> SAFE_ROUTERS =
+		java.util.Collections.unmodifiableList(
+				Arrays.<Class<? extends MessageRouter>>asList(
+				PassiveRouter.class, DirectDeliveryRouter.class,
+				FirstContactRouter.class, EpidemicRouter.class,
+				EpidemicWithCureRouter.class, SprayAndWaitRouter.class,
+				ProphetRouter.class, ProphetV2Router.class,
+				MaxPropRouter.class));
+	/** applications whose hosts can be updated concurrently */
+	public static final List<Class<? extends Application>> SAFE_APPLICATIONS =
+		java.util.Collections.unmodifiableList(
+				Arrays.<Class<? extends Application>>asList(
+				PingApplication.class));
+
+	/** number of hosts that are moved at least in one movement task */
+	private static final int MIN_MOVES_PER_TASK = 64;
+	/** event buffer of the host that the current thread is moving */
+	private static final ThreadLocal<List<DeferredEvent>> currentEvents =
+		new ThreadLocal<List<DeferredEvent>>();
+	/** the host update the current thread is running (if any) */
+	private static final ThreadLocal<Turn> currentUpdate =
+		new ThreadLocal<Turn>();
+
+	/** the worker threads (null if there is only one thread) */
+	private ForkJoinPool pool;
+	/** hosts of the world (indexed by their address) */
+	private List<DTNHost> hosts;
+	/** are hosts updated concurrently */
+	private boolean parallelUpdates;
+	private double unitSize;
+	private int rows;
+	private int cols;
+
+	/** hosts of the current update in the update order */
+	private DTNHost[] order;
+	/** number of hosts in the current update */
+	private int nrofUpdates;
+	/** index of the latest update that locks each unit */
+	private int[] unitLocker;
+	/** index of the latest update that got each update as a predecessor */
+	private int[] predMark;
+	/** first edge to the updates that wait for each update */
+	private int[] firstSucc;
+	/** update where each edge goes to */
+	private int[] edgeTo;
+	/** next edge from the same update */
+	private int[] nextEdge;
+	/** number of edges */
+	private int nrofEdges;
+	/** number of unfinished updates each update waits for */
+	private AtomicIntegerArray pending;
+	/** the phase in which each update was started (by a worker or a waiting
+	 * thread) or minus the current phase if it hasn't been started yet */
+	private AtomicIntegerArray started;
+	/** number of the current update phase. Tasks of earlier phases whose
+	 * updates were run by waiting threads may still be queued in the pool. */
+	private int phase;
+	/** which updates have finished (guarded by this engine) */
+	private boolean[] finished;
+	/** index of the first unfinished update, i.e., whose turn it is */
+	private volatile int turn;
+	/** the first exception thrown by an update (guarded by this engine) */
+	private Throwable failure;
+	/** should connections be simulated during the current update */
+	private boolean simulateConnections;
+
+	/** are hosts moved concurrently */
+	private boolean parallelMovement;
+	/** addresses of the hosts that can be moved concurrently */
+	private int[] concurrentMovers;
+	/** addresses of the hosts that must be moved sequentially */
+	private int[] sequentialMovers;
+	/** random number generators of the concurrently moved hosts */
+	private Random[] moveRngs;
+	/** did the location of a concurrently moved host change during the
+	 * current movement (indexed by address) */
+	private boolean[] moved;
+	/** deferred movement listener events of every host */
+	private List<List<DeferredEvent>> moveEvents;
+	/** time increment of the current movement */
+	private double timeIncrement;
+
+	/**
+	 * Creates a new engine for the given hosts. Concurrent updates and
+	 * movement must be enabled separately.
+	 * @param hosts The hosts of the world
+	 * @param nrofThreads Number of worker threads to use
+	 * @see #enableUpdates(int, int)
+	 * @see #enableMovement()
+	 */
+	public ParallelUpdateEngine(List<DTNHost> hosts, int nrofThreads) {
+		this.hosts = hosts;
+		if (nrofThreads > 1) {
+			this.pool = new ForkJoinPool(nrofThreads);
+		}
+	}
+
+	/**
+	 * Enables concurrent host updates.
+	 * @param sizeX Width of the world
+	 * @param sizeY Height of the world
+	 * @throws SettingsError if some host has an interface, router or
+	 * application that doesn't support concurrent updates
+	 */
+	public void enableUpdates(int sizeX, int sizeY) {
+		int maxCellSize = 1;
+
+		for (DTNHost h : hosts) {
+			for (NetworkInterface ni : h.getInterfaces()) {
+				if (!(ni instanceof SimpleBroadcastInterface ||
+						ni instanceof InterferenceLimitedInterface)) {
+					throw new SettingsError("Parallel updates are not " +
+							"supported with interface " + ni.getInterfaceType()+
+							" of type " + ni.getClass().getSimpleName());
+				}
+				if (ni.hasActivenessModel()) {
+					throw new SettingsError("Parallel updates are not " +
+							"supported with activeness models (interface " +
+							ni.getInterfaceType() + ")");
+				}
+				maxCellSize = Math.max(maxCellSize, getGrid(ni).getCellSize());
+			}
+
+			MessageRouter r = h.getRouter();
+			if (!SAFE_ROUTERS.contains(r.getClass())) {
+				throw new SettingsError("Parallel updates are not " +
+						"supported with router " + r.getClass().getName());
+			}
+			for (Application app : r.getAllApplications()) {
+				if (!SAFE_APPLICATIONS.contains(app.getClass())) {
+					throw new SettingsError("Parallel updates are not " +
+							"supported with application " +
+							app.getClass().getName());
+				}
+			}
+		}
+
+		this.unitSize = maxCellSize;
+		this.rows = (int)(sizeY / unitSize) + 1;
+		this.cols = (int)(sizeX / unitSize) + 1;
+		this.unitLocker = new int[rows * cols];
+		this.parallelUpdates = true;
+	}
+
+	/**
+	 * Enables concurrent host movement.
+	 */
+	public void enableMovement() {
+		int n = hosts.size();
+		int nrofConcurrent = 0;
+
+		for (DTNHost h : hosts) {
+			if (h.getMovementModel().canMoveConcurrently()) {
+				nrofConcurrent++;
+			}
+		}
+
+		this.concurrentMovers = new int[nrofConcurrent];
+		this.sequentialMovers = new int[n - nrofConcurrent];
+		this.moveRngs = new Random[n];
+		this.moved = new boolean[n];
+		this.moveEvents = new ArrayList<List<DeferredEvent>>(n);
+
+		int c = 0;
+		int s = 0;
+		for (int i=0; i<n; i++) {
+			DTNHost h = hosts.get(i);
+			assert h.getAddress() == i : "Host " + h + " in index " + i;
+			if (h.getMovementModel().canMoveConcurrently()) {
+				concurrentMovers[c++] = i;
+				moveRngs[i] = MovementModel.createNodeRng(i);
+			}
+			else {
+				sequentialMovers[s++] = i;
+			}
+			moveEvents.add(new ArrayList<DeferredEvent>(2));
+		}
+
+		this.parallelMovement = true;
+	}
+
+	/**
+	 * Returns true if hosts are updated concurrently
+	 * @return true if concurrent updates are enabled
+	 */
+	public boolean updatesHosts() {
+		return this.parallelUpdates;
+	}
+
+	/**
+	 * Returns true if hosts are moved concurrently
+	 * @return true if concurrent movement is enabled
+	 */
+	public boolean movesHosts() {
+		return this.parallelMovement;
+	}
+
+	/**
+	 * Returns the connectivity grid of an interface
+	 * @param ni The interface (must use a connectivity grid)
+	 * @return The grid
+	 */
+	private static ConnectivityGrid getGrid(NetworkInterface ni) {
+		return (ConnectivityGrid)ni.optimizer;
+	}
+
+	/**
+	 * Updates the given hosts.
+	 * @param order The hosts in the order they should be updated
+	 * @param simulateConnections Should network layer be updated too
+	 */
+	public void updateHosts(List<DTNHost> order, boolean simulateConnections) {
+		int n = order.size();
+
+		if (pool == null) {
+			for (int i=0; i<n; i++) {
+				order.get(i).update(simulateConnections);
+			}
+			return;
+		}
+
+		this.simulateConnections = simulateConnections;
+		this.phase++;
+		prepareUpdates(order);
+
+		for (int i=0; i<n; i++) {
+			if (pending.get(i) == 0) {
+				pool.execute(new UpdateTask(i, phase));
+			}
+		}
+		waitForTurn(n); // help the workers until all hosts are updated
+
+		Arrays.fill(this.order, null); // don't keep references to old hosts
+		Throwable t = this.failure;
+		this.failure = null;
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException)t;
+		}
+		else if (t instanceof Error) {
+			throw (Error)t;
+		}
+		else if (t != null) {
+			throw new SimError(t.getMessage(), (Exception)t);
+		}
+	}
+
+	/**
+	 * Computes the updates that each update has to wait for and resets
+	 * the state of the updates.
+	 * @param hostOrder The hosts in the order they should be updated
+	 */
+	private void prepareUpdates(List<DTNHost> hostOrder) {
+		int n = hostOrder.size();
+		if (order == null || order.length < n) {
+			this.order = new DTNHost[n];
+			this.predMark = new int[n];
+			this.firstSucc = new int[n];
+			this.finished = new boolean[n];
+			this.pending = new AtomicIntegerArray(n);
+			this.started = new AtomicIntegerArray(n);
+			this.edgeTo = new int[n * 8];
+			this.nextEdge = new int[n * 8];
+		}
+		this.nrofUpdates = n;
+		this.nrofEdges = 0;
+		this.turn = 0;
+		Arrays.fill(unitLocker, -1);
+		Arrays.fill(predMark, -1);
+		Arrays.fill(firstSucc, -1);
+		Arrays.fill(finished, false);
+
+		for (int k=0; k<n; k++) {
+			DTNHost host = hostOrder.get(k);
+			order[k] = host;
+			pending.set(k, 0);
+			started.set(k, -phase);
+
+			Coord c = host.getLocation();
+			double reach = 2 * unitSize;
+			for (NetworkInterface ni : host.getInterfaces()) {
+				reach = Math.max(reach, ni.getTransmitRange());
+			}
+			lockArea(k, c.getX() - reach, c.getY() - reach,
+					c.getX() + reach, c.getY() + reach);
+			lockCells(k, host);
+
+			for (NetworkInterface ni : host.getInterfaces()) {
+				for (Connection con : ni.getConnections()) {
+					DTNHost other = con.getOtherNode(host);
+					Coord oc = other.getLocation();
+					lockArea(k, oc.getX(), oc.getY(), oc.getX(), oc.getY());
+					lockCells(k, other);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the units of the connectivity grid cells of a host to the lock
+	 * set of an update
+	 * @param k Index of the update
+	 * @param host The host whose cells are locked
+	 */
+	private void lockCells(int k, DTNHost host) {
+		for (NetworkInterface ni : host.getInterfaces()) {
+			ConnectivityGrid grid = getGrid(ni);
+			Coord corner = grid.getCellCorner(ni);
+			if (corner != null) {
+				int size = grid.getCellSize();
+				lockArea(k, corner.getX(), corner.getY(),
+						corner.getX() + size, corner.getY() + size);
+			}
+		}
+	}
+
+	/**
+	 * Adds all units that overlap with an area to the lock set of an update.
+	 * The update will wait for the latest earlier update that locked any
+	 * of the units.
+	 * @param k Index of the update
+	 * @param minX Smallest X coordinate of the area
+	 * @param minY Smallest Y coordinate of the area
+	 * @param maxX Largest X coordinate of the area
+	 * @param maxY Largest Y coordinate of the area
+	 */
+	private void lockArea(int k, double minX, double minY, double maxX,
+			double maxY) {
+		int minCol = unitIndex(minX, cols);
+		int maxCol = unitIndex(maxX, cols);
+		int minRow = unitIndex(minY, rows);
+		int maxRow = unitIndex(maxY, rows);
+
+		for (int row = minRow; row <= maxRow; row++) {
+			for (int unit = row * cols + minCol, last = row * cols + maxCol;
+					unit <= last; unit++) {
+				int pred = unitLocker[unit];
+				if (pred == k) {
+					continue; // already locked by this update
+				}
+				unitLocker[unit] = k;
+				if (pred >= 0 && predMark[pred] != k) {
+					predMark[pred] = k;
+					addEdge(pred, k);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the row or column of the units that a coordinate maps to.
+	 * Coordinates outside the world are mapped to the closest unit.
+	 * @param c The coordinate
+	 * @param count Number of rows or columns
+	 * @return The row or column
+	 */
+	private int unitIndex(double c, int count) {
+		int i = (int)(c / unitSize);
+		return c < 0 ? 0 : Math.min(i, count - 1);
+	}
+
+	/**
+	 * Makes an update wait for another
+	 * @param from Index of the update to wait for
+	 * @param to Index of the waiting update
+	 */
+	private void addEdge(int from, int to) {
+		if (nrofEdges == edgeTo.length) {
+			edgeTo = Arrays.copyOf(edgeTo, nrofEdges * 2);
+			nextEdge = Arrays.copyOf(nextEdge, nrofEdges * 2);
+		}
+		edgeTo[nrofEdges] = to;
+		nextEdge[nrofEdges] = firstSucc[from];
+		firstSucc[from] = nrofEdges;
+		nrofEdges++;
+		pending.incrementAndGet(to);
+	}
+
+	/**
+	 * Runs an update in the current thread and lets the updates waiting for
+	 * it go on when it's done. The update must have been marked started.
+	 * @param k Index of the update
+	 */
+	private void runUpdate(int k) {
+		Turn outer = currentUpdate.get();
+		currentUpdate.set(new Turn(this, k));
+		try {
+			order[k].update(simulateConnections);
+		}
+		catch (RuntimeException e) {
+			updateFailed(e);
+		}
+		catch (Error e) {
+			updateFailed(e);
+		}
+		finally {
+			if (outer == null) {
+				currentUpdate.remove();
+			}
+			else {
+				currentUpdate.set(outer);
+			}
+		}
+
+		for (int e = firstSucc[k]; e >= 0; e = nextEdge[e]) {
+			int next = edgeTo[e];
+			if (pending.decrementAndGet(next) == 0) {
+				pool.execute(new UpdateTask(next, phase));
+			}
+		}
+
+		synchronized (this) {
+			finished[k] = true;
+			if (k == turn) {
+				int t = k + 1;
+				while (t < nrofUpdates && finished[t]) {
+					t++;
+				}
+				turn = t;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Stores the exception of a failed update
+	 * @param t The exception
+	 */
+	private synchronized void updateFailed(Throwable t) {
+		if (this.failure == null) {
+			this.failure = t;
+		}
+	}
+
+	/**
+	 * Waits until all updates before the given one have finished. While
+	 * waiting, runs the update whose turn it is if no other thread has
+	 * started it yet.
+	 * @param k Index of the update whose turn to wait for
+	 */
+	private void waitForTurn(int k) {
+		while (turn < k) {
+			int next;
+			synchronized (this) {
+				while (turn < k && started.get(turn) == phase) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SimError("Interrupted while updating hosts");
+					}
+				}
+				if (turn >= k) {
+					return;
+				}
+				next = turn;
+			}
+			if (started.compareAndSet(next, -phase, phase)) {
+				runUpdate(next);
+			}
+		}
+	}
+
+	/**
+	 * Waits until all hosts before the host the current thread is updating
+	 * (in the update order) have been updated. Things whose order matters
+	 * for the results (e.g., giving indexes to new message IDs) must wait
+	 * for their turn. Returns immediately if the current thread isn't
+	 * updating a host concurrently.
+	 */
+	public static void awaitTurn() {
+		Turn t = currentUpdate.get();
+		if (t != null) {
+			t.engine.waitForTurn(t.index);
+		}
+	}
+
+	/**
+	 * Moves all hosts for the given amount of time.
+	 * @param timeIncrement The time how long all hosts should move
+	 */
+	public void moveHosts(double timeIncrement) {
+		this.timeIncrement = timeIncrement;
+
+		if (pool == null) {
+			for (int i=0; i<concurrentMovers.length; i++) {
+				moveHost(concurrentMovers[i], false);
+			}
+		}
+		else if (concurrentMovers.length > 0) {
+			pool.invoke(new MoveTask(0, concurrentMovers.length));
+
+			for (int i=0; i<concurrentMovers.length; i++) {
+				int address = concurrentMovers[i];
+				List<DeferredEvent> events = moveEvents.get(address);
+				for (int j=0, m=events.size(); j<m; j++) {
+					events.get(j).deliver();
+				}
+				events.clear();
+				if (moved[address]) {
+					hosts.get(address).notifyLocationChanged();
+				}
+			}
+		}
+
+		for (int i=0; i<sequentialMovers.length; i++) {
+			hosts.get(sequentialMovers[i]).move(timeIncrement);
+		}
+	}
+
+	/**
+	 * Moves a host that can be moved concurrently using its own random
+	 * number generator
+	 * @param address Address of the host
+	 * @param defer If true, movement listener events and the location
+	 * update of the network interfaces are deferred (the host is moved in
+	 * a worker thread)
+	 */
+	private void moveHost(int address, boolean defer) {
+		DTNHost host = hosts.get(address);
+		MovementModel.setThreadRng(moveRngs[address]);
+		try {
+			if (defer) {
+				currentEvents.set(moveEvents.get(address));
+				moved[address] = host.moveWithoutNotifying(timeIncrement);
+			}
+			else {
+				host.move(timeIncrement);
+			}
+		}
+		finally {
+			currentEvents.remove();
+			MovementModel.setThreadRng(null);
+		}
+	}
+
+	/**
+	 * Returns a listener that delivers the events through this engine.
+	 * Movement events of concurrently moved hosts are delivered after all
+	 * of them have moved, events of concurrent host updates are delivered
+	 * when it is the update's turn and other events immediately.
+	 * @param listener The listener to wrap
+	 * @return The wrapping listener
+	 */
+	public DeferringListener defer(Object listener) {
+		return new DeferringListener(listener);
+	}
+
+	/**
+	 * Shuts down the worker threads
+	 */
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Fork-join task that runs an update unless a thread waiting for its
+	 * turn already did
+	 */
+	private class UpdateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int index;
+		private int taskPhase;
+
+		/**
+		 * Creates a task for an update
+		 * @param index Index of the update
+		 * @param taskPhase The update phase the update belongs to
+		 */
+		private UpdateTask(int index, int taskPhase) {
+			this.index = index;
+			this.taskPhase = taskPhase;
+		}
+
+		@Override
+		protected void compute() {
+			if (started.compareAndSet(index, -taskPhase, taskPhase)) {
+				runUpdate(index);
+			}
+		}
+	}
+
+	/**
+	 * The host update a thread is running
+	 */
+	private static class Turn {
+		private final ParallelUpdateEngine engine;
+		private final int index;
+
+		private Turn(ParallelUpdateEngine engine, int index) {
+			this.engine = engine;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Fork-join task that moves a range of the concurrently moved hosts
+	 */
+	private class MoveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int from;
+		private int to;
+
+		/**
+		 * Creates a task for hosts of the concurrent movers array
+		 * @param from Index of the first host (inclusive)
+		 * @param to Index of the last host (exclusive)
+		 */
+		private MoveTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > MIN_MOVES_PER_TASK) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new MoveTask(from, mid), new MoveTask(mid, to));
+				return;
+			}
+
+			for (int i=from; i<to; i++) {
+				moveHost(concurrentMovers[i], true);
+			}
+		}
+	}
+
+	/**
+	 * Listener event whose delivery is deferred
+	 */
+	private static class DeferredEvent {
+		private static final int NEW_MSG = 1;
+		private static final int TRANSFER_STARTED = 2;
+		private static final int MSG_DELETED = 3;
+		private static final int TRANSFER_ABORTED = 4;
+		private static final int TRANSFERRED = 5;
+		private static final int CONNECTED = 6;
+		private static final int DISCONNECTED = 7;
+		private static final int APP_EVENT = 8;
+		private static final int NEW_DESTINATION = 9;
+		private static final int INITIAL_LOCATION = 10;
+
+		private Object listener;
+		private int type;
+		private Object obj;
+		private DTNHost host1;
+		private DTNHost host2;
+		private boolean flag;
+		private String name;
+		private Application app;
+		private Coord coord;
+		private double speed;
+
+		private DeferredEvent(Object listener, int type, Object obj,
+				DTNHost host1, DTNHost host2, boolean flag) {
+			this.listener = listener;
+			this.type = type;
+			this.obj = obj;
+			this.host1 = host1;
+			this.host2 = host2;
+			this.flag = flag;
+		}
+
+		/**
+		 * Delivers the event to the listener
+		 */
+		private void deliver() {
+			switch (type) {
+			case NEW_MSG:
+				((MessageListener)listener).newMessage((Message)obj);
+				break;
+			case TRANSFER_STARTED:
+				((MessageListener)listener).messageTransferStarted(
+						(Message)obj, host1, host2);
+				break;
+			case MSG_DELETED:
+				((MessageListener)listener).messageDeleted((Message)obj,
+						host1, flag);
+				break;
+			case TRANSFER_ABORTED:
+				((MessageListener)listener).messageTransferAborted(
+						(Message)obj, host1, host2);
+				break;
+			case TRANSFERRED:
+				((MessageListener)listener).messageTransferred((Message)obj,
+						host1, host2, flag);
+				break;
+			case CONNECTED:
+				((ConnectionListener)listener).hostsConnected(host1, host2);
+				break;
+			case DISCONNECTED:
+				((ConnectionListener)listener).hostsDisconnected(host1, host2);
+				break;
+			case APP_EVENT:
+				((ApplicationListener)listener).gotEvent(name, obj, app, host1);
+				break;
+			case NEW_DESTINATION:
+				((MovementListener)listener).newDestination(host1, coord,
+						speed);
+				break;
+			case INITIAL_LOCATION:
+				((MovementListener)listener).initialLocation(host1, coord);
+				break;
+			default:
+				assert false : type; // invalid type code
+			}
+		}
+	}
+
+	/**
+	 * Wrapper for message, connection, application and movement listeners
+	 * that defers the events that occur while hosts are being moved or
+	 * updated concurrently.
+	 */
+	public static class DeferringListener implements MessageListener,
+			ConnectionListener, ApplicationListener, MovementListener {
+		private Object listener;
+
+		private DeferringListener(Object listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * Queues an event if a host is being moved concurrently, otherwise
+		 * delivers it when it's the current update's turn
+		 */
+		private void handle(DeferredEvent e) {
+			List<DeferredEvent> events = currentEvents.get();
+			if (events != null) {
+				events.add(e);
+			}
+			else {
+				awaitTurn();
+				e.deliver();
+			}
+		}
+
+		public void newMessage(Message m) {
+			handle(new DeferredEvent(listener, DeferredEvent.NEW_MSG, m,
+					null, null, false));
+		}
+
+		public void messageTransferStarted(Message m, DTNHost from,
+				DTNHost to) {
+			handle(new DeferredEvent(listener, DeferredEvent.TRANSFER_STARTED,
+					m, from, to, false));
+		}
+
+		public void messageDeleted(Message m, DTNHost where, boolean dropped) {
+			handle(new DeferredEvent(listener, DeferredEvent.MSG_DELETED, m,
+					where, null, dropped));
+		}
+
+		public void messageTransferAborted(Message m, DTNHost from,
+				DTNHost to) {
+			handle(new DeferredEvent(listener, DeferredEvent.TRANSFER_ABORTED,
+					m, from, to, false));
+		}
+
+		public void messageTransferred(Message m, DTNHost from, DTNHost to,
+				boolean firstDelivery) {
+			handle(new DeferredEvent(listener, DeferredEvent.TRANSFERRED,
+					m, from, to, firstDelivery));
+		}
+
+		public void hostsConnected(DTNHost host1, DTNHost host2) {
+			handle(new DeferredEvent(listener, DeferredEvent.CONNECTED, null,
+					host1, host2, false));
+		}
+
+		public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+			handle(new DeferredEvent(listener, DeferredEvent.DISCONNECTED,
+					null, host1, host2, false));
+		}
+
+		public void gotEvent(String event, Object params, Application app,
+				DTNHost host) {
+			DeferredEvent e = new DeferredEvent(listener,
+					DeferredEvent.APP_EVENT, params, host, null, false);
+			e.name = event;
+			e.app = app;
+			handle(e);
+		}
+
+		public void newDestination(DTNHost host, Coord destination,
+				double speed) {
+			DeferredEvent e = new DeferredEvent(listener,
+					DeferredEvent.NEW_DESTINATION, null, host, null, false);
+			e.coord = destination;
+			e.speed = speed;
+			handle(e);
+		}
+
+		public void initialLocation(DTNHost host, Coord location) {
+			DeferredEvent e = new DeferredEvent(listener,
+					DeferredEvent.INITIAL_LOCATION, null, host, null, false);
+			e.coord = location;
+			handle(e);
+		}
+	}
+}
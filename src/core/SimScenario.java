@@ -5,6 +5,7 @@
 package core;
 
 import input.EventQueue;
+import input.ContactPredictionQueue;
 import input.EventQueueHandler;
 
 import java.io.Serializable;
@@ -42,6 +43,14 @@ public class SimScenario implements Serializable {
 	public static final String UP_INT_S = "updateInterval";
 	/** simulate connections -setting id ({@value})*/
 	public static final String SIM_CON_S = "simulateConnections";
+	/**
+	 * Should connection events be predicted from the movement of the hosts
+	 * instead of checking the connections on every update -setting id
+	 * ({@value}). Boolean (true/false) variable. Default is false. Used only
+	 * if connections are simulated.
+	 * @see ContactPredictionQueue
+	 */
+	public static final String PREDICT_CONTACTS_S = "predictContacts";
 
 	/** namespace for interface type settings ({@value}) */
 	public static final String INTTYPE_NS = "Interface";
@@ -147,6 +156,10 @@ public class SimScenario implements Serializable {
 		this.endTime = s.getDouble(END_TIME_S);
 		this.updateInterval = s.getDouble(UP_INT_S);
 		this.simulateConnections = s.getBoolean(SIM_CON_S);
+		boolean predictContacts = false;
+		if (simulateConnections && s.contains(PREDICT_CONTACTS_S)) {
+			predictContacts = s.getBoolean(PREDICT_CONTACTS_S);
+		}
 
 		ensurePositiveValue(nrofGroups, NROF_GROUPS_S);
 		ensurePositiveValue(endTime, END_TIME_S);
@@ -170,9 +183,16 @@ public class SimScenario implements Serializable {
 		
 		createHosts();
 		
+		/* predicted connections are not checked on host updates */
 		this.world = new World(hosts, worldSizeX, worldSizeY, updateInterval, 
-				updateListeners, simulateConnections, 
+				updateListeners, simulateConnections && !predictContacts, 
 				eqHandler.getEventQueues());
+
+		if (predictContacts) {
+			ContactPredictionQueue predictor = new ContactPredictionQueue(hosts);
+			addMovementListener(predictor);
+			world.setContactPredictor(predictor);
+		}
 	}
 	
 	/**
@@ -277,7 +297,8 @@ public class SimScenario implements Serializable {
 	 * @param cl The listener
 	 */
 	public void addConnectionListener(ConnectionListener cl){
-		this.connectionListeners.add(cl);
+		ParallelUpdateEngine engine = this.world.getParallelEngine();
+		this.connectionListeners.add(engine == null ? cl : engine.defer(cl));
 	}
 
 	/**
@@ -285,7 +306,8 @@ public class SimScenario implements Serializable {
 	 * @param ml The listener
 	 */
 	public void addMessageListener(MessageListener ml){
-		this.messageListeners.add(ml);
+		ParallelUpdateEngine engine = this.world.getParallelEngine();
+		this.messageListeners.add(engine == null ? ml : engine.defer(ml));
 	}
 
 	/**
@@ -293,7 +315,8 @@ public class SimScenario implements Serializable {
 	 * @param ml The listener
 	 */
 	public void addMovementListener(MovementListener ml){
-		this.movementListeners.add(ml);
+		ParallelUpdateEngine engine = this.world.getParallelEngine();
+		this.movementListeners.add(engine == null ? ml : engine.defer(ml));
 	}
 
 	/**
@@ -317,7 +340,8 @@ public class SimScenario implements Serializable {
 	 * @param al The listener
 	 */
 	public void addApplicationListener(ApplicationListener al) {
-		this.appListeners.add(al);
+		ParallelUpdateEngine engine = this.world.getParallelEngine();
+		this.appListeners.add(engine == null ? al : engine.defer(al));
 	}
 	
 	/**
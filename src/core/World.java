@@ -4,7 +4,9 @@
  */
 package core;
 
+import input.ContactPredictionQueue;
 import input.EventQueue;
+import input.EventQueueScheduler;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
 import interfaces.ConnectivityGrid;
@@ -37,19 +39,54 @@ public class World {
 	 * Default is @link {@link #DEF_RANDOMIZE_UPDATES}.
 	 */
 	public static final String RANDOMIZE_UPDATES_S = "randomizeUpdateOrder";
+	/**
+	 * Should hosts be updated concurrently -setting id ({@value}). Boolean
+	 * (true/false) variable. Default is {@link #DEF_PARALLEL_UPDATES}.
+	 * @see ParallelUpdateEngine
+	 */
+	public static final String PARALLEL_UPDATES_S = "parallelUpdates";
+	/**
+	 * Should hosts be moved concurrently -setting id ({@value}). Boolean
+	 * (true/false) variable. Default is {@link #DEF_PARALLEL_MOVEMENT}.
+	 * @see ParallelUpdateEngine
+	 */
+	public static final String PARALLEL_MOVEMENT_S = "parallelMovement";
+	/**
+	 * Number of threads used for concurrent host updates -setting id
+	 * ({@value}). Default is the number of available processors.
+	 */
+	public static final String NROF_THREADS_S = "nrofThreads";
+	/**
+	 * Should only the hosts touched by an external event (and the hosts
+	 * they are connected to) be updated after the event -setting id
+	 * ({@value}). Boolean (true/false) variable. All hosts are still updated
+	 * after every update interval and after events that don't tell which
+	 * hosts they touched. Default is {@link #DEF_UPDATE_TOUCHED_HOSTS}.
+	 * @see #hostTouched(DTNHost)
+	 */
+	public static final String UPDATE_TOUCHED_HOSTS_S = "updateTouchedHostsOnly";
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 	/** should the update order of nodes be randomized -setting's default value
 	 * ({@value}) */
 	public static final boolean DEF_RANDOMIZE_UPDATES = true;
+	/** should hosts be updated concurrently -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_PARALLEL_UPDATES = false;
+	/** should hosts be moved concurrently -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_PARALLEL_MOVEMENT = false;
+	/** should only touched hosts be updated after events -setting's
+	 * default value ({@value}) */
+	public static final boolean DEF_UPDATE_TOUCHED_HOSTS = false;
 
 	private int sizeX;
 	private int sizeY;
-	private List<EventQueue> eventQueues;
 	private double updateInterval;
 	private SimClock simClock;
 	private double nextQueueEventTime;
-	private EventQueue nextEventQueue;
+	/** all event queues merged by the time of their next event */
+	private EventQueueScheduler eventScheduler;
 	/** list of nodes; nodes are indexed by their network address */
 	private List<DTNHost> hosts;
 	private boolean simulateConnections;
@@ -61,9 +98,22 @@ public class World {
 	private List<UpdateListener> updateListeners;
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
+	/** index of the scheduled updates queue in the event scheduler */
+	private int scheduledUpdatesIndex;
 
 	/** single ConnectivityCell's size is biggest radio range times this */
 	private int conCellSizeMult;
+	/** engine for concurrent host updates and movement (null if both are
+	 * sequential) */
+	private ParallelUpdateEngine parallelEngine;
+	/** queue of connection events predicted from the movement of the hosts
+	 * (null if connections are not predicted) */
+	private ContactPredictionQueue contactPredictor;
+	/** hosts touched by the external event being processed (null if all
+	 * hosts are updated after every event) */
+	private List<DTNHost> touchedHosts;
+	/** is the host touched, indexed by address */
+	private boolean[] isTouched;
 
 	/**
 	 * Constructor.
@@ -77,12 +127,20 @@ public class World {
 		this.updateInterval = updateInterval;
 		this.updateListeners = updateListeners;
 		this.simulateConnections = simulateConnections;
-		this.eventQueues = eventQueues;
-		
-		this.simClock = SimClock.getInstance();
-		this.scheduledUpdates = new ScheduledUpdatesQueue();
+		
+		this.simClock = SimClock.getInstance();
+		this.scheduledUpdates = new ScheduledUpdatesQueue();
 		this.isCancelled = false;		
 
+		/* scheduled updates are added first to be run before other events
+		 * of the same time */
+		this.eventScheduler = new EventQueueScheduler();
+		this.scheduledUpdatesIndex = 
+			eventScheduler.addQueue(this.scheduledUpdates);
+		for (EventQueue eq : eventQueues) {
+			eventScheduler.addQueue(eq);
+		}
+
 		setNextEventQueue();
 		initSettings();
 	}
@@ -117,6 +175,41 @@ public class World {
 			throw new SettingsError("Too small value (" + conCellSizeMult +
 					") for " + SETTINGS_NS + "." + CELL_SIZE_MULT_S);
 		}
+
+		boolean updateTouched = DEF_UPDATE_TOUCHED_HOSTS;
+		if (s.contains(UPDATE_TOUCHED_HOSTS_S)) {
+			updateTouched = s.getBoolean(UPDATE_TOUCHED_HOSTS_S);
+		}
+		if (updateTouched) {
+			this.touchedHosts = new ArrayList<DTNHost>();
+			this.isTouched = new boolean[hosts.size()];
+		}
+
+		boolean parallelUpdates = DEF_PARALLEL_UPDATES;
+		if (s.contains(PARALLEL_UPDATES_S)) {
+			parallelUpdates = s.getBoolean(PARALLEL_UPDATES_S);
+		}
+		boolean parallelMovement = DEF_PARALLEL_MOVEMENT;
+		if (s.contains(PARALLEL_MOVEMENT_S)) {
+			parallelMovement = s.getBoolean(PARALLEL_MOVEMENT_S);
+		}
+		if (parallelUpdates || parallelMovement) {
+			int nrofThreads = Runtime.getRuntime().availableProcessors();
+			if (s.contains(NROF_THREADS_S)) {
+				nrofThreads = s.getInt(NROF_THREADS_S);
+			}
+			if (nrofThreads < 1) {
+				throw new SettingsError("Invalid value (" + nrofThreads +
+						") for " + SETTINGS_NS + "." + NROF_THREADS_S);
+			}
+			this.parallelEngine = new ParallelUpdateEngine(hosts, nrofThreads);
+			if (parallelUpdates) {
+				parallelEngine.enableUpdates(sizeX, sizeY);
+			}
+			if (parallelMovement) {
+				parallelEngine.enableMovement();
+			}
+		}
 	}
 
 	/**
@@ -143,22 +236,13 @@ public class World {
 
 	/**
 	 * Goes through all event Queues and sets the 
-	 * event queue that has the next event.
+	 * event queue that has the next event. Needed only if the next events'
+	 * times of the queues may have changed by other means than by taking
+	 * events from them.
 	 */
 	public void setNextEventQueue() {
-		EventQueue nextQueue = scheduledUpdates;
-		double earliest = nextQueue.nextEventsTime();
-
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;	
-				earliest = eq.nextEventsTime();
-			}
-		}
-
-		this.nextEventQueue = nextQueue;
-		this.nextQueueEventTime = earliest;
+		this.eventScheduler.updateQueues();
+		this.nextQueueEventTime = this.eventScheduler.nextEventsTime();
 	}
 
 	/** 
@@ -168,20 +252,35 @@ public class World {
 	 */
 	public void update () {
 		double runUntil = SimClock.getTime() + this.updateInterval;
-
-		setNextEventQueue();
+
+		if (this.contactPredictor != null) {
+			/* connection events of this interval depend on its movement */
+			moveHosts(this.updateInterval);
+		}
+
+		setNextEventQueue();
 
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
 			simClock.setTime(this.nextQueueEventTime);
-			ExternalEvent ee = this.nextEventQueue.nextEvent();
-			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
-			setNextEventQueue();
+			int queue = this.eventScheduler.getNextQueueIndex();
+			ExternalEvent ee = this.eventScheduler.nextEvent();
+			ee.processEvent(this);
+			/* processing may add new events to the same queue */
+			this.eventScheduler.queueChanged(queue);
+			if (this.touchedHosts != null) {
+				updateTouchedHosts();
+			}
+			else {
+				updateHosts(); // update all hosts after every event
+			}
+			this.nextQueueEventTime = this.eventScheduler.nextEventsTime();
 		}
 
-		moveHosts(this.updateInterval);
-		simClock.setTime(runUntil);
+		if (this.contactPredictor == null) {
+			moveHosts(this.updateInterval);
+		}
+		simClock.setTime(runUntil);
 
 		updateHosts();
 
@@ -197,7 +296,18 @@ public class World {
 	 * are made in random order.
 	 */
 	private void updateHosts() {
-		if (this.updateOrder == null) { // randomizing is off
+		if (parallelEngine != null && parallelEngine.updatesHosts()) {
+			List<DTNHost> order = this.hosts;
+			if (this.updateOrder != null) {
+				Collections.shuffle(this.updateOrder,
+						new Random(SimClock.getIntTime()));
+				order = this.updateOrder;
+			}
+			if (!this.isCancelled) {
+				this.parallelEngine.updateHosts(order, simulateConnections);
+			}
+		}
+		else if (this.updateOrder == null) { // randomizing is off
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
@@ -219,11 +329,75 @@ public class World {
 		}
 	}
 
+	/**
+	 * Updates the hosts touched by the last external event and the hosts
+	 * they are connected to. If the event didn't tell which hosts it touched,
+	 * all hosts are updated.
+	 */
+	private void updateTouchedHosts() {
+		List<DTNHost> touched = this.touchedHosts;
+		if (touched.isEmpty()) {
+			updateHosts();
+			return;
+		}
+
+		/* connection peers may react to the changes too */
+		for (int i=0, n = touched.size(); i < n; i++) {
+			DTNHost host = touched.get(i);
+			for (NetworkInterface ni : host.getInterfaces()) {
+				for (Connection con : ni.getConnections()) {
+					hostTouched(con.getOtherNode(host));
+				}
+			}
+		}
+
+		if (this.updateOrder != null) {
+			Collections.shuffle(touched, new Random(SimClock.getIntTime()));
+		}
+		if (parallelEngine != null && parallelEngine.updatesHosts()) {
+			if (!this.isCancelled) {
+				this.parallelEngine.updateHosts(touched, simulateConnections);
+			}
+		}
+		else {
+			for (int i=0, n = touched.size(); i < n; i++) {
+				if (this.isCancelled) {
+					break;
+				}
+				touched.get(i).update(simulateConnections);
+			}
+		}
+
+		for (DTNHost host : touched) {
+			this.isTouched[host.getAddress()] = false;
+		}
+		touched.clear();
+	}
+
+	/**
+	 * Tells the world that the external event being processed changed the
+	 * state of the host. If only touched hosts are updated after events (see
+	 * {@link #UPDATE_TOUCHED_HOSTS_S}), events should call this for every
+	 * host they touch; otherwise this does nothing.
+	 * @param host The touched host
+	 */
+	public void hostTouched(DTNHost host) {
+		if (this.touchedHosts != null && !this.isTouched[host.getAddress()]) {
+			this.isTouched[host.getAddress()] = true;
+			this.touchedHosts.add(host);
+		}
+	}
+
 	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (parallelEngine != null && parallelEngine.movesHosts()) {
+			parallelEngine.moveHosts(timeIncrement);
+			return;
+		}
+
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);			
@@ -237,6 +411,26 @@ public class World {
 		this.isCancelled = true;
 	}
 
+	/**
+	 * Sets the queue that predicts connection events from the movement of
+	 * the hosts. After this, hosts are moved before the events of each update
+	 * interval are processed, so that the queue knows the movement of the
+	 * whole interval when the events are requested.
+	 * @param predictor The contact prediction queue
+	 */
+	public void setContactPredictor(ContactPredictionQueue predictor) {
+		this.contactPredictor = predictor;
+		this.eventScheduler.addQueue(predictor);
+	}
+
+	/**
+	 * Returns the engine that updates and/or moves the hosts concurrently
+	 * @return the engine or null if hosts are updated and moved sequentially
+	 */
+	ParallelUpdateEngine getParallelEngine() {
+		return this.parallelEngine;
+	}
+
 	/**
 	 * Returns the hosts in a list
 	 * @return the hosts in a list
@@ -286,5 +480,6 @@ public class World {
 	 */
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
+		eventScheduler.queueChanged(scheduledUpdatesIndex);
 	}
 }
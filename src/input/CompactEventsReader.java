@@ -0,0 +1,252 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.SimError;
+
+/**
+ * <P>
+ * Reads external events from a compact binary file created with
+ * {@link CompactEventsWriter}. The file is memory-mapped and the events are
+ * decoded straight from the mapped buffer, so reading doesn't require
+ * parsing text or deserializing objects.</P>
+ * <P>
+ * File layout (all values in big-endian byte order):<BR>
+ * <TT>
+ * header: &lt;magic int&gt; &lt;version int&gt; &lt;nrofEvents long&gt;
+ * &lt;idTableOffset long&gt;<BR>
+ * events: nrofEvents fixed-width ({@value #RECORD_SIZE} bytes) records of
+ * &lt;time double&gt; &lt;opcode int&gt; &lt;host int&gt; &lt;host2 int&gt;
+ * &lt;idIndex int&gt; &lt;size int&gt; &lt;respSize int&gt;<BR>
+ * id table: &lt;nrofIds int&gt; and for each id &lt;length int&gt;
+ * &lt;UTF-8 bytes&gt;
+ * </TT></P>
+ * <P>
+ * The id index refers to the id table (message IDs and connection interface
+ * IDs) or is -1 if the event has no ID. Each ID is stored (and read) only
+ * once, so events of the same message share the same String object.</P>
+ */
+public class CompactEventsReader implements ExternalEventsReader {
+	/** Extension of compact external events files ({@value}) */
+	public static final String COMPACT_EXT = ".cee";
+	/** Magic number in the beginning of compact events files */
+	public static final int MAGIC = 0x4F4E4545; // "ONEE"
+	/** Version of the file format */
+	public static final int VERSION = 1;
+	/** Size of the file header in bytes */
+	public static final int HEADER_SIZE = 24;
+	/** Size of one event record in bytes */
+	public static final int RECORD_SIZE = 32;
+
+	/** Opcode of message creation event ({@value}) */
+	public static final int OP_CREATE = 0;
+	/** Opcode of message transfer start event ({@value}) */
+	public static final int OP_SEND = 1;
+	/** Opcode of message delivered event ({@value}) */
+	public static final int OP_DELIVERED = 2;
+	/** Opcode of message transfer aborted event ({@value}) */
+	public static final int OP_ABORT = 3;
+	/** Opcode of message dropped event ({@value}) */
+	public static final int OP_DROP = 4;
+	/** Opcode of message removed event ({@value}) */
+	public static final int OP_REMOVE = 5;
+	/** Opcode of connection up event ({@value}) */
+	public static final int OP_CONN_UP = 6;
+	/** Opcode of connection down event ({@value}) */
+	public static final int OP_CONN_DOWN = 7;
+
+	/** Maximum number of records mapped at once (mappings are limited to
+	 * 2GB) */
+	private static final int WINDOW_RECORDS = Integer.MAX_VALUE / RECORD_SIZE;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	/** mapped window of the event records */
+	private ByteBuffer records;
+	/** IDs by their index */
+	private String[] ids;
+	private long nrofEvents;
+	/** index of the first event after the current window */
+	private long windowEnd;
+	private long eventsRead;
+
+	/**
+	 * Constructor.
+	 * @param eventsFile The file where the events are read
+	 */
+	public CompactEventsReader(File eventsFile) {
+		try {
+			this.file = new RandomAccessFile(eventsFile, "r");
+			this.channel = file.getChannel();
+
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, HEADER_SIZE);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new SimError("Invalid compact external events file: " +
+						eventsFile.getAbsolutePath());
+			}
+			this.nrofEvents = header.getLong();
+			long idTableOffset = header.getLong();
+
+			this.ids = readIds(idTableOffset);
+		} catch (IOException e) {
+			throw new SimError(e.getMessage(), e);
+		}
+
+		this.eventsRead = 0;
+		this.windowEnd = 0;
+	}
+
+	/**
+	 * Reads the id table
+	 * @param offset Offset of the table in the file
+	 * @return The IDs by their index
+	 * @throws IOException if reading the file fails
+	 */
+	private String[] readIds(long offset) throws IOException {
+		ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY,
+				offset, channel.size() - offset);
+		String[] ids = new String[table.getInt()];
+		byte[] bytes = new byte[64];
+
+		for (int i=0; i < ids.length; i++) {
+			int length = table.getInt();
+			if (length > bytes.length) {
+				bytes = new byte[length];
+			}
+			table.get(bytes, 0, length);
+			ids[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Maps the next window of event records
+	 */
+	private void mapNextWindow() {
+		long nrof = Math.min(WINDOW_RECORDS, nrofEvents - windowEnd);
+		try {
+			this.records = channel.map(FileChannel.MapMode.READ_ONLY,
+					HEADER_SIZE + windowEnd * RECORD_SIZE, nrof * RECORD_SIZE);
+		} catch (IOException e) {
+			throw new SimError(e.getMessage(), e);
+		}
+		this.windowEnd += nrof;
+	}
+
+	/**
+	 * Read events from the file
+	 * @param nrof Maximum number of events to read
+	 * @return Events in an ArrayList (empty list if didn't read any)
+	 */
+	public List<ExternalEvent> readEvents(int nrof) {
+		int count = (int)Math.min(nrof, nrofEvents - eventsRead);
+		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(
+				Math.max(count, 0));
+
+		for (int i=0; i < count; i++) {
+			if (eventsRead == windowEnd) {
+				mapNextWindow();
+			}
+			events.add(readEvent(records));
+			eventsRead++;
+		}
+
+		return events;
+	}
+
+	/**
+	 * Decodes the next event record from the buffer
+	 * @param buf The buffer positioned at the beginning of the record
+	 * @return The event
+	 */
+	private ExternalEvent readEvent(ByteBuffer buf) {
+		double time = buf.getDouble();
+		int opcode = buf.getInt();
+		int host = buf.getInt();
+		int host2 = buf.getInt();
+		int idIndex = buf.getInt();
+		int size = buf.getInt();
+		int respSize = buf.getInt();
+		String id = idIndex < 0 ? null : ids[idIndex];
+
+		switch (opcode) {
+		case OP_CREATE:
+			return new MessageCreateEvent(host, host2, id, size, respSize,
+					time);
+		case OP_SEND:
+			return new MessageRelayEvent(host, host2, id, time,
+					MessageRelayEvent.SENDING);
+		case OP_DELIVERED:
+			return new MessageRelayEvent(host, host2, id, time,
+					MessageRelayEvent.TRANSFERRED);
+		case OP_ABORT:
+			return new MessageRelayEvent(host, host2, id, time,
+					MessageRelayEvent.ABORTED);
+		case OP_DROP:
+			return new MessageDeleteEvent(host, id, time, true);
+		case OP_REMOVE:
+			return new MessageDeleteEvent(host, id, time, false);
+		case OP_CONN_UP:
+			return new ConnectionEvent(host, host2, id, true, time);
+		case OP_CONN_DOWN:
+			return new ConnectionEvent(host, host2, id, false, time);
+		default:
+			throw new SimError("Unknown opcode " + opcode + " in event " +
+					(eventsRead + 1) + " of compact external events file");
+		}
+	}
+
+	/**
+	 * Returns the total number of events in the file
+	 * @return the number of events
+	 */
+	public long getNrofEvents() {
+		return this.nrofEvents;
+	}
+
+	/**
+	 * Checks if the given file is a compact external events file
+	 * @param file The file to check
+	 * @return True if the file name ends with {@link #COMPACT_EXT} and the
+	 * file starts with the right magic number, false if not
+	 */
+	public static boolean isCompactEeFile(File file) {
+		if (!file.getName().endsWith(COMPACT_EXT)) {
+			return false;
+		}
+
+		try {
+			RandomAccessFile f = new RandomAccessFile(file, "r");
+			try {
+				return f.length() >= HEADER_SIZE && f.readInt() == MAGIC;
+			} finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public void close() {
+		try {
+			this.file.close();
+		}
+		catch (IOException ioe) {
+			throw new SimError(ioe);
+		}
+		this.records = null;
+	}
+}
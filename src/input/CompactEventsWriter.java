@@ -0,0 +1,240 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.SimError;
+
+/**
+ * Writes external events to a compact binary file that can be read with
+ * {@link CompactEventsReader}. Can also be run from the command line to
+ * convert a {@link StandardEventsReader} format file to a compact file:
+ * <CODE>java input.CompactEventsWriter &lt;input file&gt;
+ * &lt;output file&gt;</CODE>
+ * @see CompactEventsReader
+ */
+public class CompactEventsWriter {
+	/** how many events are read at a time when converting files */
+	private static final int CONVERT_BATCH = 10000;
+
+	private String fileName;
+	private DataOutputStream out;
+	/** indexes of the IDs that have been written */
+	private Map<String, Integer> idIndexes;
+	private List<String> ids;
+	private long nrofEvents;
+
+	/**
+	 * Creates a writer that writes to the given file. If the file name
+	 * doesn't end with {@link CompactEventsReader#COMPACT_EXT}, the extension
+	 * is appended to it.
+	 * @param fileName Path to the file where the events are stored
+	 * @throws IOException if the file can't be opened for writing
+	 */
+	public CompactEventsWriter(String fileName) throws IOException {
+		if (!fileName.endsWith(CompactEventsReader.COMPACT_EXT)) {
+			fileName += CompactEventsReader.COMPACT_EXT;
+		}
+		this.fileName = fileName;
+		this.out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(fileName), 1 << 16));
+		this.idIndexes = new HashMap<String, Integer>();
+		this.ids = new ArrayList<String>();
+		this.nrofEvents = 0;
+
+		/* header is filled in when the file is closed */
+		out.write(new byte[CompactEventsReader.HEADER_SIZE]);
+	}
+
+	/**
+	 * Returns the name of the file the events are written to
+	 * @return the file name (with the compact file extension)
+	 */
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	/**
+	 * Writes an event to the file
+	 * @param ee The event to write
+	 * @throws IOException if writing fails
+	 * @throws SimError if the event is of type that can't be stored
+	 */
+	public void write(ExternalEvent ee) throws IOException {
+		int opcode;
+		int host;
+		int host2;
+		String id;
+		int size = 0;
+		int respSize = 0;
+
+		if (ee instanceof MessageCreateEvent) {
+			MessageCreateEvent mce = (MessageCreateEvent)ee;
+			opcode = CompactEventsReader.OP_CREATE;
+			host = mce.fromAddr;
+			host2 = mce.toAddr;
+			id = mce.id;
+			size = mce.size;
+			respSize = mce.responseSize;
+		}
+		else if (ee instanceof MessageRelayEvent) {
+			MessageRelayEvent mre = (MessageRelayEvent)ee;
+			switch (mre.stage) {
+			case MessageRelayEvent.SENDING:
+				opcode = CompactEventsReader.OP_SEND;
+				break;
+			case MessageRelayEvent.TRANSFERRED:
+				opcode = CompactEventsReader.OP_DELIVERED;
+				break;
+			default:
+				opcode = CompactEventsReader.OP_ABORT;
+			}
+			host = mre.fromAddr;
+			host2 = mre.toAddr;
+			id = mre.id;
+		}
+		else if (ee instanceof MessageDeleteEvent) {
+			MessageDeleteEvent mde = (MessageDeleteEvent)ee;
+			opcode = mde.drop ? CompactEventsReader.OP_DROP :
+				CompactEventsReader.OP_REMOVE;
+			host = mde.fromAddr;
+			host2 = mde.toAddr;
+			id = mde.id;
+		}
+		else if (ee instanceof ConnectionEvent) {
+			ConnectionEvent ce = (ConnectionEvent)ee;
+			opcode = ce.isUp ? CompactEventsReader.OP_CONN_UP :
+				CompactEventsReader.OP_CONN_DOWN;
+			host = ce.fromAddr;
+			host2 = ce.toAddr;
+			id = ce.interfaceId;
+		}
+		else {
+			throw new SimError("Can't store event " + ee + " to a compact " +
+					"external events file");
+		}
+
+		out.writeDouble(ee.getTime());
+		out.writeInt(opcode);
+		out.writeInt(host);
+		out.writeInt(host2);
+		out.writeInt(getIdIndex(id));
+		out.writeInt(size);
+		out.writeInt(respSize);
+		nrofEvents++;
+	}
+
+	/**
+	 * Returns the index of an ID in the id table. Adds new IDs to the table.
+	 * @param id The ID (or null)
+	 * @return The index of the ID or -1 for null ID
+	 */
+	private int getIdIndex(String id) {
+		if (id == null) {
+			return -1;
+		}
+		Integer index = idIndexes.get(id);
+		if (index == null) {
+			index = ids.size();
+			idIndexes.put(id, index);
+			ids.add(id);
+		}
+		return index;
+	}
+
+	/**
+	 * Writes the id table and the header and closes the file
+	 * @throws IOException if writing fails
+	 */
+	public void close() throws IOException {
+		long idTableOffset = CompactEventsReader.HEADER_SIZE +
+			nrofEvents * CompactEventsReader.RECORD_SIZE;
+
+		out.writeInt(ids.size());
+		for (String id : ids) {
+			byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		out.close();
+
+		RandomAccessFile raf = new RandomAccessFile(fileName, "rw");
+		try {
+			raf.writeInt(CompactEventsReader.MAGIC);
+			raf.writeInt(CompactEventsReader.VERSION);
+			raf.writeLong(nrofEvents);
+			raf.writeLong(idTableOffset);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Stores the events to a compact binary file
+	 * @param fileName Path to the file where the events are stored
+	 * @param events List of events to store
+	 * @throws IOException if something in storing went wrong
+	 */
+	public static void storeToCompactFile(String fileName,
+			List<ExternalEvent> events) throws IOException {
+		CompactEventsWriter writer = new CompactEventsWriter(fileName);
+		for (ExternalEvent ee : events) {
+			writer.write(ee);
+		}
+		writer.close();
+	}
+
+	/**
+	 * Converts all events of an external events reader to a compact file.
+	 * Events are read and written in batches so the whole input doesn't
+	 * have to fit in memory.
+	 * @param reader The reader to read the events from
+	 * @param fileName Path to the file where the events are stored
+	 * @return Number of converted events
+	 * @throws IOException if something in storing went wrong
+	 */
+	public static long convert(ExternalEventsReader reader, String fileName)
+			throws IOException {
+		CompactEventsWriter writer = new CompactEventsWriter(fileName);
+		List<ExternalEvent> events = reader.readEvents(CONVERT_BATCH);
+		while (events.size() > 0) {
+			for (ExternalEvent ee : events) {
+				writer.write(ee);
+			}
+			events = reader.readEvents(CONVERT_BATCH);
+		}
+		reader.close();
+		writer.close();
+		return writer.nrofEvents;
+	}
+
+	/**
+	 * Converts a standard external events file to a compact file
+	 * @param args input and output file names
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: java " +
+					CompactEventsWriter.class.getName() +
+					" <standard events file> <compact events file>");
+			System.exit(1);
+		}
+
+		long nrof = convert(new StandardEventsReader(new File(args[0])),
+				args[1]);
+		System.out.println("Converted " + nrof + " events");
+	}
+}
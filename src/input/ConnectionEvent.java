@@ -44,6 +44,8 @@ public class ConnectionEvent extends ExternalEvent {
 		DTNHost to = world.getNodeByAddress(this.toAddr);
 		
 		from.forceConnection(to, interfaceId, this.isUp);
+		world.hostTouched(from);
+		world.hostTouched(to);
 	}
 	
 	@Override
@@ -0,0 +1,550 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import interfaces.SimpleBroadcastInterface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import core.Connection;
+import core.Coord;
+import core.DTNHost;
+import core.MovementListener;
+import core.NetworkInterface;
+import core.SettingsError;
+import core.SimClock;
+import core.SimScenario;
+import core.World;
+
+/**
+ * Event queue that predicts when connections between hosts go up and down.
+ * Instead of checking on every update interval which interfaces are within
+ * range of each other, the queue follows the path segments the hosts get from
+ * their movement models and solves the exact times when the distance of two
+ * interfaces crosses the smaller of their transmit ranges. Connections are
+ * then created and torn down at those times regardless of the update
+ * interval.
+ * <P>
+ * The prediction of a host pair is recalculated whenever either of the hosts
+ * starts to move towards a new waypoint. Only one pending event is kept per
+ * interface pair; events of outdated predictions are dropped when they reach
+ * the head of the queue.
+ * </P><P>
+ * Only {@link SimpleBroadcastInterface}s without activeness models are
+ * supported. The interfaces are assumed to scan continuously and keep their
+ * transmit ranges, and the hosts must be moved only along the paths of their
+ * movement models (i.e., active times of hosts and
+ * {@link DTNHost#setLocation(Coord)} are not taken into account).
+ * </P>
+ * @see World#setContactPredictor(ContactPredictionQueue)
+ */
+public class ContactPredictionQueue implements EventQueue, MovementListener {
+	/** Range crossings closer than this (seconds) are considered past */
+	private static final double TIME_EPSILON = 1e-6;
+
+	/** all interfaces whose connections are predicted */
+	private NetworkInterface[] interfaces;
+	/** index of the host (network address) of each interface */
+	private int[] interfaceHosts;
+	/** indexes of interfaces of the same type as the interface */
+	private int[][] sameTypeInterfaces;
+	/** indexes of the interfaces of each host */
+	private int[][] hostInterfaces;
+	/** known movement of each host */
+	private Trajectory[] trajectories;
+	/** per host counter of trajectory changes */
+	private int[] versions;
+
+	private PriorityQueue<ContactEvent> events;
+	/** sequence number of the next event (to keep the order of same time
+	 * events deterministic) */
+	private long nextSeqNr;
+	private boolean initialized;
+	/** reusable arrays for state of hosts */
+	private double[] stateA = new double[4];
+	private double[] stateB = new double[4];
+
+	/**
+	 * Creates a contact prediction queue for the hosts. The hosts must be at
+	 * their initial locations.
+	 * @param hosts The hosts, indexed by their network address
+	 * @throws SettingsError if any of the hosts has an unsupported interface
+	 */
+	public ContactPredictionQueue(List<DTNHost> hosts) {
+		List<NetworkInterface> all = new ArrayList<NetworkInterface>();
+		Map<String, List<Integer>> types = new HashMap<String, List<Integer>>();
+
+		this.hostInterfaces = new int[hosts.size()][];
+		this.trajectories = new Trajectory[hosts.size()];
+		this.versions = new int[hosts.size()];
+
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			DTNHost host = hosts.get(i);
+			assert host.getAddress() == i : "Host " + host + " in index " + i;
+			List<NetworkInterface> net = host.getInterfaces();
+			this.hostInterfaces[i] = new int[net.size()];
+			this.trajectories[i] = new Trajectory(host.getLocation());
+
+			for (int j=0; j < net.size(); j++) {
+				NetworkInterface ni = net.get(j);
+				if (!(ni instanceof SimpleBroadcastInterface) ||
+						ni.hasActivenessModel()) {
+					throw new SettingsError("Contact prediction (" +
+							SimScenario.SCENARIO_NS + "." +
+							SimScenario.PREDICT_CONTACTS_S + ") supports " +
+							"only SimpleBroadcastInterfaces without " +
+							"activeness models, not " + ni);
+				}
+				List<Integer> sameType = types.get(ni.getInterfaceType());
+				if (sameType == null) {
+					sameType = new ArrayList<Integer>();
+					types.put(ni.getInterfaceType(), sameType);
+				}
+				sameType.add(all.size());
+				this.hostInterfaces[i][j] = all.size();
+				all.add(ni);
+			}
+		}
+
+		this.interfaces = all.toArray(new NetworkInterface[all.size()]);
+		this.interfaceHosts = new int[interfaces.length];
+		this.sameTypeInterfaces = new int[interfaces.length][];
+		for (int i=0; i < interfaces.length; i++) {
+			interfaceHosts[i] = interfaces[i].getHost().getAddress();
+			List<Integer> sameType = types.get(interfaces[i].getInterfaceType());
+			sameTypeInterfaces[i] = new int[sameType.size()];
+			for (int j=0; j < sameType.size(); j++) {
+				sameTypeInterfaces[i][j] = sameType.get(j);
+			}
+		}
+
+		this.events = new PriorityQueue<ContactEvent>();
+		this.initialized = false;
+	}
+
+	/**
+	 * Predicts the next connection events of all interface pairs. Called
+	 * when the first event is requested so that the movement done during
+	 * the warm up period is taken into account.
+	 */
+	private void init() {
+		double now = SimClock.getTime();
+		for (int a=0; a < interfaces.length; a++) {
+			for (int b : sameTypeInterfaces[a]) {
+				if (a < b && interfaceHosts[a] != interfaceHosts[b]) {
+					predict(a, b, now);
+				}
+			}
+		}
+		this.initialized = true;
+	}
+
+	/**
+	 * Returns the next predicted connection event or an event with time
+	 * Double.MAX_VALUE if there are no events.
+	 * @return the next event
+	 */
+	public ExternalEvent nextEvent() {
+		if (nextEventsTime() == Double.MAX_VALUE) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		return this.events.poll();
+	}
+
+	/**
+	 * Returns the time of the next predicted connection event or
+	 * Double.MAX_VALUE if there are no events.
+	 * @return the time of the next event
+	 */
+	public double nextEventsTime() {
+		if (!this.initialized) {
+			init();
+		}
+
+		/* drop events of outdated predictions */
+		while (!events.isEmpty() && !isValid(events.peek())) {
+			events.poll();
+		}
+
+		return events.isEmpty() ? Double.MAX_VALUE : events.peek().getTime();
+	}
+
+	/**
+	 * Adds a new path segment to the host's trajectory and updates the
+	 * predictions of the host's interfaces.
+	 */
+	public void newDestination(DTNHost host, Coord destination, double speed) {
+		int h = host.getAddress();
+		double now = SimClock.getTime();
+
+		if (!trajectories[h].moveTo(now, destination, speed)) {
+			return; // known movement didn't change
+		}
+		if (!this.initialized) {
+			return; // predictions are done when the first event is requested
+		}
+
+		versions[h]++;
+		for (int a : hostInterfaces[h]) {
+			for (int b : sameTypeInterfaces[a]) {
+				if (interfaceHosts[b] != h) {
+					predict(Math.min(a, b), Math.max(a, b), now);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Initial locations are read from the hosts when this queue is created.
+	 */
+	public void initialLocation(DTNHost host, Coord location) { }
+
+	/**
+	 * Returns true if the event's prediction is still up to date
+	 * @param e The event to check
+	 * @return true if neither of the hosts' trajectories has changed after
+	 * the event was predicted
+	 */
+	private boolean isValid(ContactEvent e) {
+		return versions[interfaceHosts[e.from]] == e.fromVersion &&
+			versions[interfaceHosts[e.to]] == e.toVersion;
+	}
+
+	/**
+	 * Predicts the next time the connection state of two interfaces changes
+	 * and schedules an event for it (if it changes)
+	 * @param a Index of the first interface
+	 * @param b Index of the second interface
+	 * @param from The time from which on the prediction is made
+	 */
+	private void predict(int a, int b, double from) {
+		boolean connected = getConnection(a, b) != null;
+		double time = nextCrossing(a, b, from, connected);
+
+		if (time < Double.POSITIVE_INFINITY) {
+			events.add(new ContactEvent(time, a, b, !connected));
+		}
+	}
+
+	/**
+	 * Returns the connection between two interfaces
+	 * @param a Index of the first interface
+	 * @param b Index of the second interface
+	 * @return The connection or null if the interfaces are not connected
+	 */
+	private Connection getConnection(int a, int b) {
+		NetworkInterface ni = interfaces[a];
+		NetworkInterface other = interfaces[b];
+		List<Connection> cons = ni.getConnections();
+
+		for (int i=0, n = cons.size(); i < n; i++) {
+			if (cons.get(i).getOtherInterface(ni) == other) {
+				return cons.get(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the time when the distance of two interfaces crosses their
+	 * range for the next time.
+	 * @param a Index of the first interface
+	 * @param b Index of the second interface
+	 * @param from The time from which on the crossings are looked for
+	 * @param connected Are the interfaces currently connected (i.e., is the
+	 * next crossing a leaving or entering one)
+	 * @return Time of the crossing or Double.POSITIVE_INFINITY if the
+	 * interfaces don't cross the range with their known movement
+	 */
+	private double nextCrossing(int a, int b, double from, boolean connected) {
+		Trajectory ta = trajectories[interfaceHosts[a]];
+		Trajectory tb = trajectories[interfaceHosts[b]];
+		double range = Math.min(interfaces[a].getTransmitRange(),
+				interfaces[b].getTransmitRange());
+		double start = from;
+
+		/* go through the pieces of time when both hosts move linearly */
+		while (true) {
+			double end = Math.min(ta.getState(start, stateA),
+					tb.getState(start, stateB));
+			double rx = stateA[0] - stateB[0];
+			double ry = stateA[1] - stateB[1];
+			double wx = stateA[2] - stateB[2];
+			double wy = stateA[3] - stateB[3];
+
+			/* squared distance at start + t is qa*t^2 + qb*t + qc + range^2 */
+			double qa = wx*wx + wy*wy;
+			double qb = 2 * (rx*wx + ry*wy);
+			double qc = rx*rx + ry*ry - range*range;
+			double t = connected ? leavingTime(qa, qb, qc) :
+				enteringTime(qa, qb, qc);
+
+			if (t < end - start) {
+				return start + t;
+			}
+			if (end == Double.POSITIVE_INFINITY) {
+				return Double.POSITIVE_INFINITY;
+			}
+			start = end;
+		}
+	}
+
+	/**
+	 * Returns the time when connected interfaces move out of range
+	 * @see #nextCrossing(int, int, double, boolean)
+	 */
+	private static double leavingTime(double qa, double qb, double qc) {
+		if (qa == 0) { // distance doesn't change
+			return qc > 0 ? 0 : Double.POSITIVE_INFINITY;
+		}
+
+		double d = qb*qb - 4*qa*qc;
+		if (d < 0) { // out of range all the time
+			return 0;
+		}
+		return Math.max((-qb + Math.sqrt(d)) / (2*qa), 0);
+	}
+
+	/**
+	 * Returns the time when disconnected interfaces move within range
+	 * @see #nextCrossing(int, int, double, boolean)
+	 */
+	private static double enteringTime(double qa, double qb, double qc) {
+		if (qa == 0) { // distance doesn't change
+			return qc <= 0 ? 0 : Double.POSITIVE_INFINITY;
+		}
+
+		double d = qb*qb - 4*qa*qc;
+		if (d <= 0) { // never closer than the range (or just touching it)
+			return Double.POSITIVE_INFINITY;
+		}
+		double sqrtD = Math.sqrt(d);
+		if ((-qb + sqrtD) / (2*qa) <= TIME_EPSILON) {
+			return Double.POSITIVE_INFINITY; // was in range only in the past
+		}
+		return Math.max((-qb - sqrtD) / (2*qa), 0);
+	}
+
+	/**
+	 * Connects or disconnects the interfaces of an event and predicts the
+	 * next change of their connection.
+	 * @param e The event
+	 */
+	private void processContact(ContactEvent e) {
+		if (!isValid(e)) {
+			return;
+		}
+
+		Connection con = getConnection(e.from, e.to);
+		if (e.isUp && con == null) {
+			interfaces[e.from].createConnection(interfaces[e.to]);
+		}
+		else if (!e.isUp && con != null) {
+			con.disconnect(interfaces[e.from]);
+		}
+
+		predict(e.from, e.to, e.getTime());
+	}
+
+	public String toString() {
+		return "ContactPredictionQueue with " + events.size() + " events";
+	}
+
+	/**
+	 * A predicted connection up or down event of two interfaces
+	 */
+	private class ContactEvent extends ExternalEvent {
+		private static final long serialVersionUID = 1L;
+		private int from;
+		private int to;
+		private boolean isUp;
+		private int fromVersion;
+		private int toVersion;
+		private long seqNr;
+
+		public ContactEvent(double time, int from, int to, boolean up) {
+			super(time);
+			this.from = from;
+			this.to = to;
+			this.isUp = up;
+			this.fromVersion = versions[interfaceHosts[from]];
+			this.toVersion = versions[interfaceHosts[to]];
+			this.seqNr = nextSeqNr++;
+		}
+
+		@Override
+		public void processEvent(World world) {
+			processContact(this);
+			world.hostTouched(interfaces[from].getHost());
+			world.hostTouched(interfaces[to].getHost());
+		}
+
+		@Override
+		public int compareTo(ExternalEvent other) {
+			int c = super.compareTo(other);
+			if (c == 0 && other instanceof ContactEvent) {
+				long otherNr = ((ContactEvent)other).seqNr;
+				return seqNr < otherNr ? -1 : (seqNr > otherNr ? 1 : 0);
+			}
+			return c;
+		}
+
+		@Override
+		public String toString() {
+			return "CONN " + (isUp ? "up" : "down") + " @" + this.time + " " +
+				interfaces[from].getHost() + "<->" + interfaces[to].getHost();
+		}
+	}
+
+	/**
+	 * Known piecewise linear movement of a host: path segments towards the
+	 * waypoints the host has received and stopping at the last one.
+	 */
+	private static class Trajectory {
+		private static final int INITIAL_CAPACITY = 4;
+		/** index of the first segment that may still be needed */
+		private int first;
+		/** number of segments (including the ones before first) */
+		private int count;
+		private double[] startTimes;
+		private double[] endTimes;
+		private double[] startX;
+		private double[] startY;
+		private double[] speedX;
+		private double[] speedY;
+		/** location where the host stops after the last segment */
+		private double endX;
+		private double endY;
+		/** time when the host reaches the end location */
+		private double endTime;
+
+		public Trajectory(Coord location) {
+			this.endX = location.getX();
+			this.endY = location.getY();
+			this.endTime = Double.NEGATIVE_INFINITY;
+			this.startTimes = new double[INITIAL_CAPACITY];
+			this.endTimes = new double[INITIAL_CAPACITY];
+			this.startX = new double[INITIAL_CAPACITY];
+			this.startY = new double[INITIAL_CAPACITY];
+			this.speedX = new double[INITIAL_CAPACITY];
+			this.speedY = new double[INITIAL_CAPACITY];
+		}
+
+		/**
+		 * Adds a segment from the current end location to a new destination.
+		 * The segment starts when the host has reached the end location, or
+		 * now if the host has been waiting there.
+		 * @param now Current simulation time
+		 * @param dest The destination
+		 * @param speed Speed towards the destination
+		 * @return true if the host will move, false if the movement didn't
+		 * change (the host is already at the destination or can't move)
+		 */
+		public boolean moveTo(double now, Coord dest, double speed) {
+			double start = Math.max(endTime, now);
+			double dx = dest.getX() - endX;
+			double dy = dest.getY() - endY;
+			double distance = Math.sqrt(dx*dx + dy*dy);
+
+			if (distance == 0) {
+				this.endTime = start;
+				return false;
+			}
+			if (speed <= 0) {
+				return false; // host never gets anywhere
+			}
+
+			removeOldSegments(now);
+			if (count == startTimes.length) {
+				grow();
+			}
+			startTimes[count] = start;
+			endTimes[count] = start + distance / speed;
+			startX[count] = endX;
+			startY[count] = endY;
+			speedX[count] = dx / distance * speed;
+			speedY[count] = dy / distance * speed;
+			count++;
+
+			this.endX = dest.getX();
+			this.endY = dest.getY();
+			this.endTime = endTimes[count - 1];
+			return true;
+		}
+
+		/**
+		 * Drops the segments that have ended before the given time
+		 * @param time The time
+		 */
+		private void removeOldSegments(double time) {
+			while (first < count && endTimes[first] < time) {
+				first++;
+			}
+			if (first > 0 && first == count) {
+				first = count = 0;
+			}
+			else if (first > startTimes.length / 2) { // compact
+				int n = count - first;
+				System.arraycopy(startTimes, first, startTimes, 0, n);
+				System.arraycopy(endTimes, first, endTimes, 0, n);
+				System.arraycopy(startX, first, startX, 0, n);
+				System.arraycopy(startY, first, startY, 0, n);
+				System.arraycopy(speedX, first, speedX, 0, n);
+				System.arraycopy(speedY, first, speedY, 0, n);
+				first = 0;
+				count = n;
+			}
+		}
+
+		/**
+		 * Doubles the capacity of the segment arrays
+		 */
+		private void grow() {
+			int size = startTimes.length * 2;
+			startTimes = Arrays.copyOf(startTimes, size);
+			endTimes = Arrays.copyOf(endTimes, size);
+			startX = Arrays.copyOf(startX, size);
+			startY = Arrays.copyOf(startY, size);
+			speedX = Arrays.copyOf(speedX, size);
+			speedY = Arrays.copyOf(speedY, size);
+		}
+
+		/**
+		 * Stores the location and velocity of the host at the given time
+		 * to the array (x, y, velocity x, velocity y)
+		 * @param time The time
+		 * @param state The array where the state is stored
+		 * @return Time until which the host keeps that velocity
+		 */
+		public double getState(double time, double[] state) {
+			for (int i=first; i < count; i++) {
+				if (time < startTimes[i]) { // waiting for the segment
+					state[0] = startX[i];
+					state[1] = startY[i];
+					state[2] = state[3] = 0;
+					return startTimes[i];
+				}
+				if (time < endTimes[i]) { // on the segment
+					double dt = time - startTimes[i];
+					state[0] = startX[i] + speedX[i] * dt;
+					state[1] = startY[i] + speedY[i] * dt;
+					state[2] = speedX[i];
+					state[3] = speedY[i];
+					return endTimes[i];
+				}
+			}
+
+			state[0] = endX;
+			state[1] = endY;
+			state[2] = state[3] = 0;
+			return Double.POSITIVE_INFINITY;
+		}
+	}
+}
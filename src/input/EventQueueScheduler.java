@@ -0,0 +1,198 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Event queue that merges other event queues. The queues are kept in an
+ * indexed binary min-heap keyed by their next event's time, so finding the
+ * queue with the next event doesn't require going through all the queues.
+ * Of queues with events at the same time, the one added first is selected.
+ * <P>
+ * The key of a queue is updated automatically after an event has been taken
+ * from it. If the next event's time of a queue changes by other means (e.g.,
+ * new events are added to it), {@link #queueChanged(int)} or
+ * {@link #updateQueues()} must be called.</P>
+ */
+public class EventQueueScheduler implements EventQueue {
+	/** initial capacity of the heap */
+	private static final int INITIAL_CAPACITY = 8;
+	/** the merged queues in the order they were added */
+	private List<EventQueue> queues;
+	/** next event times of the queues (by queue index) */
+	private double[] times;
+	/** indexes of the queues in heap order */
+	private int[] heap;
+	/** positions of the queues in the heap (by queue index) */
+	private int[] positions;
+
+	/**
+	 * Creates a scheduler without any queues
+	 */
+	public EventQueueScheduler() {
+		this.queues = new ArrayList<EventQueue>();
+		this.times = new double[INITIAL_CAPACITY];
+		this.heap = new int[INITIAL_CAPACITY];
+		this.positions = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Adds a new queue to the scheduler
+	 * @param queue The queue to add
+	 * @return Index of the queue in this scheduler
+	 */
+	public int addQueue(EventQueue queue) {
+		int index = queues.size();
+		if (index == heap.length) {
+			int capacity = index * 2;
+			times = Arrays.copyOf(times, capacity);
+			heap = Arrays.copyOf(heap, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+		}
+
+		queues.add(queue);
+		times[index] = queue.nextEventsTime();
+		heap[index] = index;
+		positions[index] = index;
+		siftUp(index);
+
+		return index;
+	}
+
+	/**
+	 * Returns the number of queues in this scheduler
+	 * @return the number of queues
+	 */
+	public int getNrofQueues() {
+		return queues.size();
+	}
+
+	/**
+	 * Returns the index of the queue that has the next event
+	 * @return the index of the queue that has the next event or -1 if there
+	 * are no queues
+	 */
+	public int getNextQueueIndex() {
+		return queues.isEmpty() ? -1 : heap[0];
+	}
+
+	/**
+	 * Returns the next event of the queue that has the earliest event
+	 * @return The next event or event with time Double.MAX_VALUE if there
+	 * are no events
+	 */
+	public ExternalEvent nextEvent() {
+		if (queues.isEmpty()) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+
+		int index = heap[0];
+		ExternalEvent ee = queues.get(index).nextEvent();
+		queueChanged(index);
+		return ee;
+	}
+
+	/**
+	 * Returns the time of the earliest event of all queues
+	 * @return the time of the next event or Double.MAX_VALUE if there are no
+	 * events left
+	 */
+	public double nextEventsTime() {
+		return queues.isEmpty() ? Double.MAX_VALUE : times[heap[0]];
+	}
+
+	/**
+	 * Updates the position of a queue whose next event's time may have
+	 * changed
+	 * @param index Index of the queue
+	 */
+	public void queueChanged(int index) {
+		double time = queues.get(index).nextEventsTime();
+		double oldTime = times[index];
+
+		if (time == oldTime) {
+			return;
+		}
+		times[index] = time;
+		if (time < oldTime) {
+			siftUp(positions[index]);
+		}
+		else {
+			siftDown(positions[index]);
+		}
+	}
+
+	/**
+	 * Updates the positions of all the queues
+	 */
+	public void updateQueues() {
+		for (int i=0, n = queues.size(); i < n; i++) {
+			queueChanged(i);
+		}
+	}
+
+	/**
+	 * Returns true if queue a's next event is before queue b's event
+	 * @param a Index of the first queue
+	 * @param b Index of the second queue
+	 * @return true if a's event is earlier, or the events are at the same
+	 * time and a was added before b
+	 */
+	private boolean isBefore(int a, int b) {
+		return times[a] < times[b] || (times[a] == times[b] && a < b);
+	}
+
+	/**
+	 * Moves the queue at the given heap position towards the root until the
+	 * heap order is restored
+	 * @param pos Heap position of the queue
+	 */
+	private void siftUp(int pos) {
+		int index = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (!isBefore(index, heap[parent])) {
+				break;
+			}
+			heap[pos] = heap[parent];
+			positions[heap[pos]] = pos;
+			pos = parent;
+		}
+		heap[pos] = index;
+		positions[index] = pos;
+	}
+
+	/**
+	 * Moves the queue at the given heap position towards the leaves until
+	 * the heap order is restored
+	 * @param pos Heap position of the queue
+	 */
+	private void siftDown(int pos) {
+		int index = heap[pos];
+		int size = queues.size();
+		while (2 * pos + 1 < size) {
+			int child = 2 * pos + 1;
+			if (child + 1 < size && isBefore(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!isBefore(heap[child], index)) {
+				break;
+			}
+			heap[pos] = heap[child];
+			positions[heap[pos]] = pos;
+			pos = child;
+		}
+		heap[pos] = index;
+		positions[index] = pos;
+	}
+
+	public String toString() {
+		return "EventQueueScheduler of " + queues.size() + " queues, next " +
+			"event @ " + nextEventsTime();
+	}
+}
@@ -22,7 +22,8 @@ public class ExternalEvent implements Comparable<ExternalEvent>, Serializable {
 	}
 	
 	/**
-	 * Processes the external event.
+	 * Processes the external event. Events should tell the world which
+	 * hosts they touched using {@link World#hostTouched(core.DTNHost)}.
 	 * @param world World where the actors of the event are
 	 */
 	public void processEvent(World world) {
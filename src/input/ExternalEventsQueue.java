@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import core.Settings;
+import core.SettingsError;
 
 /**
  * Queue of external events. This class also takes care of buffering
@@ -21,6 +22,15 @@ public class ExternalEventsQueue implements EventQueue {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/**
+	 * number of event batches that are read ahead in a background thread
+	 * -setting id ({@value}). The size of the batches is the number of
+	 * preloaded events (see {@link #PRELOAD_SETTING}). If 0 (the default),
+	 * events are read in the simulation thread when the preloaded events
+	 * run out.
+	 * @see PrefetchingEventsReader
+	 */
+	public static final String PREFETCH_SETTING = "prefetchDepth";
 	
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
@@ -29,6 +39,8 @@ public class ExternalEventsQueue implements EventQueue {
 	private ExternalEventsReader reader;
 	private int nextEventIndex;
 	private int nrofPreload;
+	/** number of batches read ahead (0 = no prefetching) */
+	private int prefetchDepth;
 	private List<ExternalEvent> queue;
 	private boolean allEventsRead = false;
 	
@@ -36,15 +48,33 @@ public class ExternalEventsQueue implements EventQueue {
 	 * Creates a new Queue from a file
 	 * @param filePath Path to the file where the events are read from. If
 	 * file ends with extension defined in {@link BinaryEventsReader#BINARY_EXT}
-	 * the file is assumed to be a binary file.
+	 * the file is assumed to be a binary file. Files with extension
+	 * {@link CompactEventsReader#COMPACT_EXT} are read as compact binary
+	 * files.
 	 * @param nrofPreload How many events to preload
 	 * @see BinaryEventsReader#BINARY_EXT
+	 * @see CompactEventsWriter
 	 * @see BinaryEventsReader#storeToBinaryFile(String, List)
 	 */
 	public ExternalEventsQueue(String filePath, int nrofPreload) {
+		this(filePath, nrofPreload, 0);
+	}
+
+	/**
+	 * Creates a new Queue from a file and reads the events in a background
+	 * thread
+	 * @param filePath Path to the file where the events are read from
+	 * @param nrofPreload How many events to preload (in one batch)
+	 * @param prefetchDepth How many batches are read ahead in the background
+	 * or 0 for reading the events in the simulation thread
+	 * @see #ExternalEventsQueue(String, int)
+	 */
+	public ExternalEventsQueue(String filePath, int nrofPreload,
+			int prefetchDepth) {
 		setNrofPreload(nrofPreload);
+		this.prefetchDepth = prefetchDepth;
 		init(filePath);
-	}
+	}
 	
 	/**
 	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING}
@@ -58,6 +88,13 @@ public class ExternalEventsQueue implements EventQueue {
 		else {
 			setNrofPreload(DEFAULT_NROF_PRELOAD);
 		}
+		if (s.contains(PREFETCH_SETTING)) {
+			this.prefetchDepth = s.getInt(PREFETCH_SETTING);
+			if (this.prefetchDepth < 0) {
+				throw new SettingsError("Invalid value (" + prefetchDepth +
+						") for " + s.getFullPropertyName(PREFETCH_SETTING));
+			}
+		}
         String eeFilePath = s.valueFillString(s.getSetting(PATH_SETTING));
         init(eeFilePath);
     }
@@ -77,12 +114,19 @@ public class ExternalEventsQueue implements EventQueue {
 	private void init(String eeFilePath) {
 		this.eventsFile = new File(eeFilePath);
 		
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+		if (CompactEventsReader.isCompactEeFile(eventsFile)) {
+			this.reader = new CompactEventsReader(eventsFile);
+		}
+		else if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
 			this.reader = new BinaryEventsReader(eventsFile);
 		}
 		else {
 			this.reader = new StandardEventsReader(eventsFile);
 		}
+		if (this.prefetchDepth > 0) {
+			this.reader = new PrefetchingEventsReader(this.reader,
+					this.nrofPreload, this.prefetchDepth);
+		}
 		
 		this.queue = readEvents(nrofPreload);
 		this.nextEventIndex = 0;
@@ -1,17 +1,30 @@
-/* 
+/*
  * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+ * Released under GPLv3. See LICENSE.txt for details.
  */
 package input;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
 
 import core.Coord;
 import core.SettingsError;
+import core.SimError;
 import core.Tuple;
 
 
@@ -22,7 +35,7 @@ import core.Tuple;
  * should be:<BR>
  * <CODE>minTime maxTime minX maxX minY maxY minZ maxZ</CODE>
  * <BR>
- * Last two values (Z-axis) are ignored at the moment but can be present 
+ * Last two values (Z-axis) are ignored at the moment but can be present
  * in the file.
  * <P>
  * Following lines' syntax should be:<BR>
@@ -34,13 +47,58 @@ import core.Tuple;
  * All lines must be sorted by time. Sampling interval (time difference between
  * two time instances) must be same for the whole file.
  * </P>
+ * <P>
+ * Files with extension {@value #COMPACT_EXT} are read as compact binary
+ * traces (see {@link #convertToCompact(String, String)}). They start with
+ * &lt;magic int&gt; &lt;version int&gt; and the six offset values as doubles,
+ * followed by a block for every time instance: &lt;time double&gt;
+ * &lt;nrofSamples int&gt; and for each sample &lt;id int&gt; &lt;x double&gt;
+ * &lt;y double&gt;. The coordinates are stored as doubles so that traces
+ * with large (e.g., UTM) coordinates keep their precision.
+ * </P>
+ * <P>
+ * Every node ID is given an index: IDs of a compact trace are the indexes
+ * themselves and IDs of a text file are indexed in the order they first
+ * appear in the file. {@link #readNextSamples()} reads the samples of the
+ * next time instance into arrays that are reused between the calls.
+ * </P>
  */
 public class ExternalMovementReader {
 	/* Prefix for comment lines (lines starting with this are ignored) */
 	public static final String COMMENT_PREFIX = "#";
-	private Scanner scanner;
+	/** Extension of compact binary trace files ({@value}) */
+	public static final String COMPACT_EXT = ".cmt";
+	/** Magic number in the beginning of compact trace files */
+	public static final int MAGIC = 0x4F4E4554; // "ONET"
+	/** Version of the compact trace format */
+	public static final int VERSION = 2;
+	/** size of the input buffer of compact traces */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** text input (null for compact traces) */
+	private BufferedReader in;
+	/** compact input (null for text traces) */
+	private FileChannel channel;
+	private ByteBuffer buffer;
+
+	/** indexes of the IDs of a text file */
+	private Map<String, Integer> idIndexes;
+	private List<String> ids;
+
+	/** the next (already read) sample of a text file */
+	private boolean hasNextSample;
+	private double nextTime;
+	private int nextId;
+	private double nextX;
+	private double nextY;
+
+	/** samples of the last read time instance */
+	private int nrofSamples;
+	private int[] sampleIds;
+	private double[] sampleXs;
+	private double[] sampleYs;
+
 	private double lastTimeStamp = -1;
-	private String lastLine;
 	private double minTime;
 	private double maxTime;
 	private double minX;
@@ -49,7 +107,7 @@ public class ExternalMovementReader {
 	private double maxY;
 	private boolean normalize;
 
-		
+
 	/**
 	 * Constructor. Creates a new reader that reads the data from a file.
 	 * @param inFilePath Path to the file where the data is read
@@ -57,33 +115,172 @@ public class ExternalMovementReader {
 	 */
 	public ExternalMovementReader(String inFilePath) {
 		this.normalize = true;
+		this.sampleIds = new int[16];
+		this.sampleXs = new double[16];
+		this.sampleYs = new double[16];
 		File inFile = new File(inFilePath);
+
 		try {
-			scanner = new Scanner(inFile);
+			if (inFilePath.endsWith(COMPACT_EXT)) {
+				openCompact(inFile);
+			}
+			else {
+				openText(inFile);
+			}
 		} catch (FileNotFoundException e) {
 			throw new SettingsError("Couldn't find external movement input " +
 					"file " + inFile);
+		} catch (IOException e) {
+			throw new SettingsError("Can't read external movement input " +
+					"file " + inFile + ": " + e.getMessage());
 		}
-		
-		String offsets = scanner.nextLine();
-	
+	}
+
+	/**
+	 * Opens a text file and reads its offset header and first sample
+	 * @param inFile The file
+	 * @throws IOException if reading fails
+	 */
+	private void openText(File inFile) throws IOException {
+		this.in = new BufferedReader(new FileReader(inFile), BUFFER_SIZE);
+		this.idIndexes = new HashMap<String, Integer>();
+		this.ids = new ArrayList<String>();
+
+		String offsets = in.readLine();
+		double[] values = new double[6];
 		try {
-			Scanner lineScan = new Scanner(offsets);
-			minTime = lineScan.nextDouble();
-			maxTime = lineScan.nextDouble();
-			minX = lineScan.nextDouble();
-			maxX = lineScan.nextDouble();
-			minY = lineScan.nextDouble();
-			maxY = lineScan.nextDouble();
+			int pos = 0;
+			for (int i=0; i < values.length; i++) {
+				int start = skipSpaces(offsets, pos);
+				pos = skipToken(offsets, start);
+				values[i] = Double.parseDouble(offsets.substring(start, pos));
+			}
 		} catch (Exception e) {
 			throw new SettingsError("Invalid offset line '" + offsets + "'");
 		}
-		
-		lastLine = scanner.nextLine();
+		setOffsets(values);
+
+		readTextSample();
 	}
-	
+
 	/**
-	 * Sets normalizing of read values on/off. If on, values returned by 
+	 * Opens a compact trace file and reads its header
+	 * @param inFile The file
+	 * @throws IOException if reading fails
+	 */
+	@SuppressWarnings("resource")
+	private void openCompact(File inFile) throws IOException {
+		this.channel = new FileInputStream(inFile).getChannel();
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		this.buffer.flip();
+
+		if (!fill(8 + 6 * 8) || buffer.getInt() != MAGIC ||
+				buffer.getInt() != VERSION) {
+			throw new SettingsError("Invalid compact movement trace " + inFile);
+		}
+		double[] values = new double[6];
+		for (int i=0; i < values.length; i++) {
+			values[i] = buffer.getDouble();
+		}
+		setOffsets(values);
+	}
+
+	private void setOffsets(double[] values) {
+		minTime = values[0];
+		maxTime = values[1];
+		minX = values[2];
+		maxX = values[3];
+		minY = values[4];
+		maxY = values[5];
+	}
+
+	/**
+	 * Makes sure that the compact input buffer has at least the given
+	 * number of bytes remaining
+	 * @param nrof Number of bytes needed
+	 * @return true if the bytes are available, false if the file ended
+	 * @throws IOException if reading fails
+	 */
+	private boolean fill(int nrof) throws IOException {
+		if (buffer.remaining() >= nrof) {
+			return true;
+		}
+		buffer.compact();
+		while (buffer.position() < nrof) {
+			if (channel.read(buffer) < 0) {
+				buffer.flip();
+				return false;
+			}
+		}
+		buffer.flip();
+		return true;
+	}
+
+	/**
+	 * Returns the position of the first non-whitespace character
+	 */
+	private static int skipSpaces(String s, int pos) {
+		while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * Returns the position of the first whitespace character
+	 */
+	private static int skipToken(String s, int pos) {
+		while (pos < s.length() && !Character.isWhitespace(s.charAt(pos))) {
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * Reads the next sample line from a text file
+	 * @throws IOException if reading fails
+	 * @throws SettingsError if an invalid line was read
+	 */
+	private void readTextSample() throws IOException {
+		String line;
+		int pos;
+		do { /* skip empty and comment lines */
+			line = in.readLine();
+			if (line == null) {
+				hasNextSample = false;
+				return;
+			}
+			pos = skipSpaces(line, 0);
+		} while (pos == line.length() || line.startsWith(COMMENT_PREFIX));
+
+		try {
+			int end = skipToken(line, pos);
+			nextTime = Double.parseDouble(line.substring(pos, end));
+			pos = skipSpaces(line, end);
+			end = skipToken(line, pos);
+			String id = line.substring(pos, end);
+			pos = skipSpaces(line, end);
+			end = skipToken(line, pos);
+			nextX = Double.parseDouble(line.substring(pos, end));
+			pos = skipSpaces(line, end);
+			end = skipToken(line, pos);
+			nextY = Double.parseDouble(line.substring(pos, end));
+
+			Integer index = idIndexes.get(id);
+			if (index == null) {
+				index = ids.size();
+				idIndexes.put(id, index);
+				ids.add(id);
+			}
+			nextId = index;
+		} catch (Exception e) {
+			throw new SettingsError("Invalid line '" + line + "'");
+		}
+		hasNextSample = true;
+	}
+
+	/**
+	 * Sets normalizing of read values on/off. If on, values returned by
 	 * {@link #readNextMovements()} are decremented by minimum values of the
 	 * offsets. Default is on (normalize).
 	 * @param normalize If true, normalizing is on (false -> off).
@@ -91,72 +288,143 @@ public class ExternalMovementReader {
 	public void setNormalize(boolean normalize) {
 		this.normalize = normalize;
 	}
-	
+
 	/**
-	 * Reads all new id-coordinate tuples that belong to the same time instance
-	 * @return A list of tuples or empty list if there were no more moves
-	 * @throws SettingError if an invalid line was read
+	 * Reads all samples that belong to the next time instance. The samples
+	 * can be accessed with {@link #getSampleIds()}, {@link #getSampleXs()}
+	 * and {@link #getSampleYs()} until the next call.
+	 * @return Number of samples read or 0 if there were no more samples
+	 * @throws SettingsError if an invalid line was read
 	 */
-	public List<Tuple<String, Coord>> readNextMovements() {
-		ArrayList<Tuple<String, Coord>> moves = 
-			new ArrayList<Tuple<String, Coord>>();
-		
-		if (!scanner.hasNextLine()) {
-			return moves;
-		}
-		
-		Scanner lineScan = new Scanner(lastLine);
-		double time = lineScan.nextDouble();
-		String id = lineScan.next();
-		double x = lineScan.nextDouble();
-		double y = lineScan.nextDouble();
-		
-		if (normalize) {
-			time -= minTime;
-			x -= minX;
-			y -= minY;
+	public int readNextSamples() {
+		nrofSamples = 0;
+		try {
+			if (in != null) {
+				readTextInstance();
+			}
+			else {
+				readCompactInstance();
+			}
+		} catch (IOException e) {
+			throw new SimError("Can't read external movement input: " +
+					e.getMessage(), e);
 		}
-		
-		lastTimeStamp = time;
-		
-		while (scanner.hasNextLine() && lastTimeStamp == time) {
-			lastLine = scanner.nextLine();
-			
-			if (lastLine.trim().length() == 0 || 
-					lastLine.startsWith(COMMENT_PREFIX)) {
-				continue; /* skip empty and comment lines */
-			}
-						
-			// add previous line's tuple
-			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));		
-
-			lineScan = new Scanner(lastLine);
-			
-			try {
-				time = lineScan.nextDouble();
-				id = lineScan.next();
-				x = lineScan.nextDouble();
-				y = lineScan.nextDouble();
-			} catch (Exception e) {
-				throw new SettingsError("Invalid line '" + lastLine + "'");
+
+		return nrofSamples;
+	}
+
+	private void readTextInstance() throws IOException {
+		if (!hasNextSample) {
+			return;
+		}
+
+		double time = nextTime;
+		do {
+			addSample(nextId, nextX, nextY);
+			readTextSample();
+		} while (hasNextSample && nextTime == time);
+
+		lastTimeStamp = normalize ? time - minTime : time;
+	}
+
+	private void readCompactInstance() throws IOException {
+		if (!fill(8 + 4)) {
+			return;
+		}
+
+		double time = buffer.getDouble();
+		int nrof = buffer.getInt();
+		for (int i=0; i < nrof; i++) {
+			if (!fill(4 + 8 + 8)) {
+				throw new EOFException("Truncated compact movement trace");
 			}
-			
-			if (normalize) {
-				time -= minTime;
-				x -= minX;
-				y -= minY;
+			int id = buffer.getInt();
+			if (id < 0) {
+				throw new SettingsError("Invalid node ID " + id + " in " +
+						"compact movement trace");
 			}
+			addSample(id, buffer.getDouble(), buffer.getDouble());
+		}
+
+		lastTimeStamp = normalize ? time - minTime : time;
+	}
+
+	private void addSample(int id, double x, double y) {
+		if (nrofSamples == sampleIds.length) {
+			int capacity = nrofSamples * 2;
+			sampleIds = Arrays.copyOf(sampleIds, capacity);
+			sampleXs = Arrays.copyOf(sampleXs, capacity);
+			sampleYs = Arrays.copyOf(sampleYs, capacity);
+		}
+		if (normalize) {
+			x -= minX;
+			y -= minY;
 		}
-		
-		if (!scanner.hasNextLine()) {	// add the last tuple of the file
-			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
+		sampleIds[nrofSamples] = id;
+		sampleXs[nrofSamples] = x;
+		sampleYs[nrofSamples] = y;
+		nrofSamples++;
+	}
+
+	/**
+	 * Returns the ID indexes of the samples read by the last call of
+	 * {@link #readNextSamples()}. Only the first N values are valid,
+	 * where N is the number of read samples.
+	 * @return the ID indexes
+	 */
+	public int[] getSampleIds() {
+		return this.sampleIds;
+	}
+
+	/**
+	 * Returns the x coordinates of the samples read by the last call of
+	 * {@link #readNextSamples()}
+	 * @return the x coordinates
+	 * @see #getSampleIds()
+	 */
+	public double[] getSampleXs() {
+		return this.sampleXs;
+	}
+
+	/**
+	 * Returns the y coordinates of the samples read by the last call of
+	 * {@link #readNextSamples()}
+	 * @return the y coordinates
+	 * @see #getSampleIds()
+	 */
+	public double[] getSampleYs() {
+		return this.sampleYs;
+	}
+
+	/**
+	 * Returns the node ID that has the given index
+	 * @param index The index of the ID
+	 * @return The ID as it is in the input file
+	 */
+	public String getId(int index) {
+		return ids != null ? ids.get(index) : String.valueOf(index);
+	}
+
+	/**
+	 * Reads all new id-coordinate tuples that belong to the same time instance
+	 * @return A list of tuples or empty list if there were no more moves
+	 * @throws SettingsError if an invalid line was read
+	 */
+	public List<Tuple<String, Coord>> readNextMovements() {
+		int nrof = readNextSamples();
+		ArrayList<Tuple<String, Coord>> moves =
+			new ArrayList<Tuple<String, Coord>>(nrof);
+
+		for (int i=0; i < nrof; i++) {
+			moves.add(new Tuple<String, Coord>(getId(sampleIds[i]),
+					new Coord(sampleXs[i], sampleYs[i])));
 		}
-		
+
 		return moves;
 	}
-	
+
 	/**
-	 * Returns the time stamp where the last moves read with 
+	 * Returns the time stamp where the last moves read with
 	 * {@link #readNextMovements()} belong to.
 	 * @return The time stamp
 	 */
@@ -211,5 +479,82 @@ public class ExternalMovementReader {
 	public double getMinY() {
 		return minY;
 	}
-	
+
+	/**
+	 * Closes the input file
+	 */
+	public void close() {
+		try {
+			if (in != null) {
+				in.close();
+			}
+			else {
+				channel.close();
+			}
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+	}
+
+	/**
+	 * Converts a text trace file to a compact trace file. Node IDs are
+	 * replaced with their indexes (in the order of first appearance).
+	 * @param inFilePath Path to the text file
+	 * @param outFilePath Path to the compact file (should end with
+	 * {@value #COMPACT_EXT})
+	 * @return Number of converted samples
+	 * @throws IOException if writing fails
+	 */
+	public static long convertToCompact(String inFilePath, String outFilePath)
+			throws IOException {
+		ExternalMovementReader r = new ExternalMovementReader(inFilePath);
+		r.setNormalize(false);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(outFilePath), BUFFER_SIZE));
+		long nrofConverted = 0;
+
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			double[] offsets = {r.minTime, r.maxTime, r.minX, r.maxX,
+					r.minY, r.maxY};
+			for (double d : offsets) {
+				out.writeDouble(d);
+			}
+
+			int nrof;
+			while ((nrof = r.readNextSamples()) > 0) {
+				out.writeDouble(r.getLastTimeStamp());
+				out.writeInt(nrof);
+				for (int i=0; i < nrof; i++) {
+					out.writeInt(r.sampleIds[i]);
+					out.writeDouble(r.sampleXs[i]);
+					out.writeDouble(r.sampleYs[i]);
+				}
+				nrofConverted += nrof;
+			}
+		} finally {
+			out.close();
+			r.close();
+		}
+
+		return nrofConverted;
+	}
+
+	/**
+	 * Converts a text trace file to a compact trace file
+	 * @param args input and output file names
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: java " +
+					ExternalMovementReader.class.getName() +
+					" <text trace file> <compact trace file" + COMPACT_EXT +
+					">");
+			System.exit(1);
+		}
+
+		long nrof = convertToCompact(args[0], args[1]);
+		System.out.println("Converted " + nrof + " samples");
+	}
 }
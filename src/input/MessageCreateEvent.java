@@ -12,8 +12,10 @@ import core.World;
  * External event for creating a message.
  */
 public class MessageCreateEvent extends MessageEvent {
-	private int size;
-	private int responseSize;
+	/** size of the message */
+	protected int size;
+	/** size of the requested response message (0 if none) */
+	protected int responseSize;
 	
 	/**
 	 * Creates a message creation event with a optional response request
@@ -44,6 +46,7 @@ public class MessageCreateEvent extends MessageEvent {
 		Message m = new Message(from, to, this.id, this.size);
 		m.setResponseSize(this.responseSize);
 		from.createNewMessage(m);
+		world.hostTouched(from);
 	}
 	
 	@Override
@@ -17,7 +17,7 @@ import core.World;
 
 public class MessageDeleteEvent extends MessageEvent {
 	/** is the delete caused by a drop (not "normal" removing) */
-	private boolean drop; 
+	protected boolean drop; 
 	
 	/**
 	 * Creates a message delete event
@@ -37,6 +37,7 @@ public class MessageDeleteEvent extends MessageEvent {
 	@Override
 	public void processEvent(World world) {
 		DTNHost host = world.getNodeByAddress(this.fromAddr);
+		world.hostTouched(host);
 		
 		if (id.equals(StandardEventsReader.ALL_MESSAGES_ID)) {
 			List<String> ids = new ArrayList<String>();
@@ -12,7 +12,8 @@ import core.World;
  * hosts (start and possible abort or delivery).
  */
 public class MessageRelayEvent extends MessageEvent {
-	private int stage;
+	/** stage of the relaying (SENDING, TRANSFERRED, or ABORTED) */
+	protected int stage;
 	
 	/** Message relay stage constant for start of sending */
 	public static final int SENDING = 1;
@@ -45,6 +46,8 @@ public class MessageRelayEvent extends MessageEvent {
 		// get DTNHosts and pass messages between them
 		DTNHost from = world.getNodeByAddress(this.fromAddr);
 		DTNHost to = world.getNodeByAddress(this.toAddr);			
+		world.hostTouched(from);
+		world.hostTouched(to);
 
 		switch(stage) {
 		case SENDING:
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import core.SimError;
+
+/**
+ * External events reader that reads events from another reader in a
+ * background thread. The thread reads batches of events ahead of time and
+ * hands them over through a bounded queue, so the simulation thread only
+ * has to wait if the next batch isn't ready yet; all parsing and disk I/O
+ * happens in the background thread. Errors of the background reader are
+ * thrown (SimErrors as such, exceptions wrapped in SimErrors) when the
+ * batch they prevented is requested.
+ */
+public class PrefetchingEventsReader implements ExternalEventsReader {
+	/** empty batch that marks the end of the events */
+	private static final List<ExternalEvent> END =
+		new ArrayList<ExternalEvent>(0);
+
+	private ExternalEventsReader reader;
+	private int batchSize;
+	/** batches read ahead */
+	private BlockingQueue<List<ExternalEvent>> batches;
+	private Thread prefetcher;
+	/** error that stopped the background reading (or null) */
+	private volatile Throwable error;
+
+	/** the batch being consumed and index of its next event */
+	private List<ExternalEvent> current;
+	private int currentIndex;
+	private boolean endReached;
+
+	/**
+	 * Creates a prefetching reader and starts reading events in the
+	 * background
+	 * @param reader The reader to read the events from
+	 * @param batchSize Number of events to read in one batch
+	 * @param depth Maximum number of batches that are read ahead
+	 */
+	public PrefetchingEventsReader(ExternalEventsReader reader,
+			int batchSize, int depth) {
+		this.reader = reader;
+		this.batchSize = batchSize;
+		this.batches = new ArrayBlockingQueue<List<ExternalEvent>>(depth);
+		this.current = END;
+		this.currentIndex = 0;
+		this.endReached = false;
+
+		this.prefetcher = new Thread(new Runnable() {
+			public void run() {
+				prefetch();
+			}
+		}, "ExternalEventsPrefetcher");
+		this.prefetcher.setDaemon(true);
+		this.prefetcher.start();
+	}
+
+	/**
+	 * Reads batches from the reader until all events are read, reading
+	 * fails or the thread is interrupted. Closes the reader in the end.
+	 */
+	private void prefetch() {
+		try {
+			List<ExternalEvent> batch;
+			do {
+				batch = reader.readEvents(batchSize);
+				batches.put(batch.isEmpty() ? END : batch);
+			} while (!batch.isEmpty());
+		} catch (InterruptedException e) {
+			/* closed before all events were read */
+		} catch (Throwable t) {
+			/* e.g., a SimError about a malformed line; the reading side
+			 * must get the end marker or it would wait forever */
+			this.error = t;
+			try {
+				batches.put(END);
+			} catch (InterruptedException e) {
+				/* closed before the error was consumed */
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns the events of the next prefetched batch. Waits for the
+	 * batch if it isn't read yet.
+	 * @param nrof Maximum number of events to return
+	 * @return Events in a List (empty list if there are no more events)
+	 */
+	public List<ExternalEvent> readEvents(int nrof) {
+		if (currentIndex == current.size() && !endReached) {
+			try {
+				current = batches.take();
+			} catch (InterruptedException e) {
+				throw new SimError("Interrupted while waiting for external " +
+						"events", e);
+			}
+			currentIndex = 0;
+			if (current == END) {
+				endReached = true;
+				if (error instanceof Error) {
+					throw (Error)error;
+				}
+				else if (error != null) {
+					throw new SimError("Can't read external events: " +
+							error.getMessage(), (Exception)error);
+				}
+			}
+		}
+
+		int end = Math.min(current.size(), currentIndex + nrof);
+		List<ExternalEvent> events;
+		if (currentIndex == 0 && end == current.size()) {
+			events = current; // the whole batch
+		}
+		else {
+			events = new ArrayList<ExternalEvent>(
+					current.subList(currentIndex, end));
+		}
+		currentIndex = end;
+
+		return events;
+	}
+
+	/**
+	 * Stops the background reading. The underlying reader is closed by the
+	 * background thread when it stops.
+	 */
+	public void close() {
+		prefetcher.interrupt();
+		try {
+			prefetcher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -8,10 +8,16 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import movement.map.MapNode;
 import movement.map.SimMap;
@@ -91,7 +97,67 @@ public class WKTMapReader extends WKTReader {
 	 * @throws IOException if something went wrong with reading from the input
 	 */
 	public void addPaths(Reader input, int nodeType) throws IOException {
-		this.nodeType = nodeType;
+		addPaths(readPaths(input), nodeType);
+	}
+	
+	/**
+	 * Adds paths from several files. The files are parsed in parallel but
+	 * the paths are added in the same order as if the files were added one
+	 * by one with {@link #addPaths(File, int)}.
+	 * @param files The files where the WKT data is read from
+	 * @param types The types to use for the paths of each file
+	 * @throws IOException If something went wrong while reading the files
+	 */
+	public void addPaths(List<File> files, int[] types) throws IOException {
+		assert files.size() == types.length : "Number of types doesn't match";
+		if (files.size() == 1) {
+			addPaths(files.get(0), types[0]);
+			return;
+		}
+		
+		int nrofThreads = Math.min(files.size(), 
+				Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(nrofThreads);
+		try {
+			List<Future<List<List<Coord>>>> parsed = 
+				new ArrayList<Future<List<List<Coord>>>>();
+			for (final File file : files) {
+				parsed.add(executor.submit(new Callable<List<List<Coord>>>() {
+					public List<List<Coord>> call() throws IOException {
+						Reader input = new FileReader(file);
+						try {
+							return new WKTMapReader(bidirectionalPaths).
+								readPaths(input);
+						} finally {
+							input.close();
+						}
+					}
+				}));
+			}
+			
+			for (int i = 0; i < files.size(); i++) {
+				addPaths(parsed.get(i).get(), types[i]);
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while reading map files");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Reads the paths from WKT data without adding them to the map
+	 * @param input Reader where the WKT data is read from
+	 * @return The coordinates of the paths in the order they were read
+	 * @throws IOException if something went wrong with reading from the input
+	 */
+	private List<List<Coord>> readPaths(Reader input) throws IOException {
+		List<List<Coord>> paths = new ArrayList<List<Coord>>();
 		String type;
 		String contents;
 		
@@ -100,18 +166,30 @@ public class WKTMapReader extends WKTReader {
 		while((type = nextType()) != null) {
 			if (type.equals(LINESTRING)) {
 				contents = readNestedContents();
-				updateMap(parseLineString(contents));
+				paths.add(parseLineString(contents));
 			}
 			else if (type.equals(MULTILINESTRING)) {
-				for (List<Coord> list : parseMultilinestring()) {
-					updateMap(list);
-				}
+				paths.addAll(parseMultilinestring());
 			}
 			else {
 				// known type but not interesting -> skip
 				readNestedContents();
 			}
 		}
+		
+		return paths;
+	}
+	
+	/**
+	 * Adds already read paths to the map
+	 * @param paths The coordinates of the paths
+	 * @param nodeType The type to use for the paths' nodes
+	 */
+	private void addPaths(List<List<Coord>> paths, int nodeType) {
+		this.nodeType = nodeType;
+		for (List<Coord> coords : paths) {
+			updateMap(coords);
+		}
 	}
 	
 	/**
@@ -1,11 +1,13 @@
-/* 
- * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
  */
 package interfaces;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 
 import movement.MovementModel;
@@ -14,35 +16,68 @@ import core.Coord;
 import core.DTNSim;
 import core.NetworkInterface;
 import core.Settings;
+import core.SimClock;
+import core.SimError;
 
 /**
  * <P>
  * Overlay grid of the world where each interface is put on a cell depending
  * of its location. This is used in cell-based optimization of connecting
  * the interfaces.</P>
- * 
+ *
  * <P>The idea in short:<BR>
  * Instead of checking for every interface if some of the other interfaces are close
  * enough (this approach obviously doesn't scale) we check only interfaces that
  * are "close enough" to be possibly connected. Being close enough is
- * determined by keeping track of the approximate location of the interfaces 
+ * determined by keeping track of the approximate location of the interfaces
  * by storing them in overlay grid's cells and updating the cell information
- * every time the interfaces move. If two interfaces are in the same cell or in 
+ * every time the interfaces move. If two interfaces are in the same cell or in
  * neighboring cells, they have a chance of being close enough for
  * connection. Then only that subset of interfaces is checked for possible
- * connectivity. 
+ * connectivity.
+ * </P>
+ * <P>
+ * Cells are stored in flat arrays and interfaces are found from the grid
+ * using their optimizer index (see
+ * {@link NetworkInterface#getOptimizerIndex()}), so updating the locations
+ * and visiting the neighbors doesn't create any new objects. The grid also
+ * remembers when something last moved in each cell. If nothing has moved
+ * in the neighborhood of an interface since its last visit, only the
+ * interfaces that were within range during that visit are visited.
  * </P>
  * <P>
  * <strong>Note:</strong> this class does NOT support negative
  * coordinates. Also, it makes sense to normalize the coordinates to start
- * from zero to conserve memory. 
+ * from zero to conserve memory.
  */
 public class ConnectivityGrid extends ConnectivityOptimizer {
-	private GridCell[][] cells;
-	private HashMap<NetworkInterface,GridCell> ginterfaces;
+	/** how large array is initially chosen for cells and neighbor caches */
+	private static final int EXPECTED_INTERFACE_COUNT = 5;
+
+	/** interfaces in each cell (cells are indexed row by row) */
+	private NetworkInterface[][] cellInterfaces;
+	/** number of interfaces in each cell */
+	private int[] cellCounts;
+	/** the latest sim time when an interface moved in, to, or from a cell */
+	private double[] cellChanged;
+	/** all interfaces in the grid in the order of their optimizer indexes */
+	private ArrayList<NetworkInterface> interfaces;
+	/** index of the cell of each interface (by optimizer index) */
+	private int[] interfaceCells;
+	/** interfaces within range during the latest full neighbor visit */
+	private NetworkInterface[][] nearCache;
+	/** number of interfaces in each neighbor cache */
+	private int[] nearCacheSizes;
+	/** sim time of the latest full neighbor visit of each interface */
+	private double[] nearCacheTimes;
+	/** can neighbor caches be used (no interface has activeness model) */
+	private boolean useNearCache;
+
 	private int cellSize;
 	private int rows;
 	private int cols;
+	/** length of a row in the cell arrays (including the empty cells) */
+	private int rowLength;
 	private static int worldSizeX;
 	private static int worldSizeY;
 
@@ -52,7 +87,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		DTNSim.registerForReset(ConnectivityGrid.class.getCanonicalName());
 		reset();
 	}
-	
+
 	public static void reset() {
 		gridobjects = new HashMap<Integer,ConnectivityGrid>();
 
@@ -71,16 +106,25 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	private ConnectivityGrid(int cellSize) {
 		this.rows = worldSizeY/cellSize + 1;
 		this.cols = worldSizeX/cellSize + 1;
-		// leave empty cells on both sides to make neighbor search easier 
-		this.cells = new GridCell[rows+2][cols+2];
+		// leave empty cells on both sides to make neighbor search easier
+		this.rowLength = cols + 2;
 		this.cellSize = cellSize;
 
-		for (int i=0; i<rows+2; i++) {
-			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
-			}
+		int nrofCells = (rows + 2) * rowLength;
+		this.cellInterfaces = new NetworkInterface[nrofCells][];
+		this.cellCounts = new int[nrofCells];
+		this.cellChanged = new double[nrofCells];
+		for (int i=0; i<nrofCells; i++) {
+			this.cellInterfaces[i] =
+				new NetworkInterface[EXPECTED_INTERFACE_COUNT];
 		}
-		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+
+		this.interfaces = new ArrayList<NetworkInterface>();
+		this.interfaceCells = new int[EXPECTED_INTERFACE_COUNT];
+		this.nearCache = new NetworkInterface[EXPECTED_INTERFACE_COUNT][];
+		this.nearCacheSizes = new int[EXPECTED_INTERFACE_COUNT];
+		this.nearCacheTimes = new double[EXPECTED_INTERFACE_COUNT];
+		this.useNearCache = true;
 	}
 
 	/**
@@ -90,12 +134,12 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * 	radio coverage's diameter)
 	 * @return The connectivity grid object for a specific interface
 	 */
-	public static ConnectivityGrid ConnectivityGridFactory(int key, 
+	public static ConnectivityGrid ConnectivityGridFactory(int key,
 			double cellSize) {
 		if (gridobjects.containsKey((Integer)key)) {
 			return (ConnectivityGrid)gridobjects.get((Integer)key);
 		} else {
-			ConnectivityGrid newgrid = 
+			ConnectivityGrid newgrid =
 				new ConnectivityGrid((int)Math.ceil(cellSize));
 			gridobjects.put((Integer)key,newgrid);
 			return newgrid;
@@ -107,21 +151,60 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The new network interface
 	 */
 	public void addInterface(NetworkInterface ni) {
-		GridCell c = cellFromCoord(ni.getLocation());
-		c.addInterface(ni);
-		ginterfaces.put(ni,c);
+		if (contains(ni)) {
+			return;
+		}
+
+		int index = interfaces.size();
+		if (index == interfaceCells.length) {
+			int newSize = index * 2;
+			interfaceCells = Arrays.copyOf(interfaceCells, newSize);
+			nearCache = Arrays.copyOf(nearCache, newSize);
+			nearCacheSizes = Arrays.copyOf(nearCacheSizes, newSize);
+			nearCacheTimes = Arrays.copyOf(nearCacheTimes, newSize);
+		}
+
+		interfaces.add(ni);
+		ni.setOptimizerIndex(index);
+		nearCache[index] = new NetworkInterface[EXPECTED_INTERFACE_COUNT];
+		nearCacheSizes[index] = 0;
+		nearCacheTimes[index] = Double.NEGATIVE_INFINITY;
+		if (ni.hasActivenessModel()) {
+			/* activeness models may change their state when asked, so all
+			 * near interfaces must always be visited */
+			useNearCache = false;
+		}
+
+		int cell = cellIndex(ni.getLocation());
+		addToCell(ni, cell);
+		interfaceCells[index] = cell;
+		cellChanged[cell] = SimClock.getTime();
 	}
 
-	/** 
-	 * Removes a network interface from the overlay grid 
+	/**
+	 * Removes a network interface from the overlay grid
 	 * @param ni The interface to be removed
 	 */
 	public void removeInterface(NetworkInterface ni) {
-		GridCell c = ginterfaces.get(ni);
-		if (c != null) {
-			c.removeInterface(ni);
+		if (!contains(ni)) {
+			return;
+		}
+
+		int index = ni.getOptimizerIndex();
+		removeFromCell(ni, interfaceCells[index]);
+		cellChanged[interfaceCells[index]] = SimClock.getTime();
+
+		/* move the following interfaces one index down */
+		interfaces.remove(index);
+		for (int i=index, n=interfaces.size(); i<n; i++) {
+			interfaces.get(i).setOptimizerIndex(i);
+			interfaceCells[i] = interfaceCells[i+1];
+			nearCache[i] = nearCache[i+1];
+			nearCacheSizes[i] = nearCacheSizes[i+1];
+			nearCacheTimes[i] = nearCacheTimes[i+1];
 		}
-		ginterfaces.remove(ni);
+		nearCache[interfaces.size()] = null;
+		ni.setOptimizerIndex(-1);
 	}
 
 	/**
@@ -139,63 +222,148 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to update
 	 */
 	public void updateLocation(NetworkInterface ni) {
-		GridCell oldCell = (GridCell)ginterfaces.get(ni);
-		GridCell newCell = cellFromCoord(ni.getLocation());
+		int index = ni.getOptimizerIndex();
+		int oldCell = interfaceCells[index];
+		int newCell = cellIndex(ni.getLocation());
 
 		if (newCell != oldCell) {
-			oldCell.moveInterface(ni, newCell);
-			ginterfaces.put(ni,newCell);
+			removeFromCell(ni, oldCell);
+			addToCell(ni, newCell);
+			interfaceCells[index] = newCell;
+
+			double now = SimClock.getTime();
+			cellChanged[oldCell] = now;
+			cellChanged[newCell] = now;
 		}
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells 
+	 * Marks the cell of the interface and the cell of its current location
+	 * changed.
+	 * @param ni The interface that has moved or whose range has changed
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
+	@Override
+	public void interfaceMoved(NetworkInterface ni) {
+		if (!contains(ni)) {
+			return;
+		}
+
+		double now = SimClock.getTime();
+		cellChanged[interfaceCells[ni.getOptimizerIndex()]] = now;
+		Coord c = ni.getLocation();
+		if (isInGrid(c)) { /* locations outside are caught on location update */
+			cellChanged[cellIndex(c)] = now;
+		}
+	}
+
+	/**
+	 * Returns the edge length of the grid's cells
+	 * @return The cell size
+	 */
+	public int getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * Returns the corner (with the smallest coordinates) of the cell where
+	 * the interface was put in its latest location update
+	 * @param ni The interface
+	 * @return The corner of the cell or null if the interface is not in
+	 * this grid
+	 */
+	public Coord getCellCorner(NetworkInterface ni) {
+		if (!contains(ni)) {
+			return null;
+		}
+		int cell = interfaceCells[ni.getOptimizerIndex()];
+		int row = cell / rowLength - 1;
+		int col = cell % rowLength - 1;
+		return new Coord(col * cellSize, row * cellSize);
+	}
+
+	/**
+	 * Returns true if the interface is in this grid
+	 * @param ni The interface
+	 * @return true if the interface is in this grid
+	 */
+	private boolean contains(NetworkInterface ni) {
+		int index = ni.getOptimizerIndex();
+		return index >= 0 && index < interfaces.size() &&
+			interfaces.get(index) == ni;
 	}
 
 	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
+	 * Adds an interface to the end of a cell
+	 * @param ni The interface to add
+	 * @param cell Index of the cell
 	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
+	private void addToCell(NetworkInterface ni, int cell) {
+		NetworkInterface[] members = cellInterfaces[cell];
+		int count = cellCounts[cell];
+		if (count == members.length) {
+			members = Arrays.copyOf(members, count * 2);
+			cellInterfaces[cell] = members;
+		}
+		members[count] = ni;
+		cellCounts[cell] = count + 1;
 	}
 
 	/**
-	 * Get the cell having the specific coordinates
+	 * Removes an interface from a cell keeping the order of the rest of
+	 * the interfaces
+	 * @param ni The interface to remove
+	 * @param cell Index of the cell
+	 */
+	private void removeFromCell(NetworkInterface ni, int cell) {
+		NetworkInterface[] members = cellInterfaces[cell];
+		int count = cellCounts[cell];
+		int i = 0;
+		while (i < count && members[i] != ni) {
+			i++;
+		}
+		assert i < count : "interface " + ni + " not found from cell " + cell;
+
+		System.arraycopy(members, i + 1, members, i, count - i - 1);
+		members[count - 1] = null;
+		cellCounts[cell] = count - 1;
+	}
+
+	/**
+	 * Returns true if the coordinates are within the bordered grid
+	 * @param c Coordinates
+	 * @return true if the coordinates map to a cell of the grid
+	 */
+	private boolean isInGrid(Coord c) {
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		return c.getX() >= 0 && c.getY() >= 0 && row <= rows + 1 &&
+			col <= cols + 1;
+	}
+
+	/**
+	 * Returns the index of the cell having the specific coordinates
 	 * @param c Coordinates
-	 * @return The cell
+	 * @return Index of the cell
 	 */
-	private GridCell cellFromCoord(Coord c) {
+	private int cellIndex(Coord c) {
 		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1; 
+		int row = (int)(c.getY()/cellSize) + 1;
 		int col = (int)(c.getX()/cellSize) + 1;
 
-		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " + 
+		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " +
 		c + " is out of world's bounds";
-		
-		return this.cells[row][col];
+		if (row < 0 || row > rows + 1 || col < 0 || col > cols + 1) {
+			throw new SimError("Location " + c + " is out of world's bounds");
+		}
+
+		return row * rowLength + col;
 	}
 
 	/**
 	 * Returns all interfaces that use the same technology and channel
 	 */
 	public Collection<NetworkInterface> getAllInterfaces() {
-		return (Collection<NetworkInterface>)ginterfaces.keySet();
+		return Collections.unmodifiableList(interfaces);
 	}
 
 	/**
@@ -205,87 +373,97 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface netinterf) {
 		ArrayList<NetworkInterface> ni = new ArrayList<NetworkInterface>();
-		ni.clear();
-
-		GridCell loc = (GridCell)ginterfaces.get(netinterf);
-		if (loc != null) {	
-			GridCell[] neighbors = 
-				getNeighborCellsByCoord(netinterf.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				ni.addAll(neighbors[i].getInterfaces());
+
+		if (contains(netinterf)) {
+			int center = cellIndex(netinterf.getLocation());
+			for (int r = center - rowLength; r <= center + rowLength;
+					r += rowLength) {
+				for (int cell = r - 1; cell <= r + 1; cell++) {
+					NetworkInterface[] members = cellInterfaces[cell];
+					for (int i=0, n=cellCounts[cell]; i<n; i++) {
+						ni.add(members[i]);
+					}
+				}
 			}
 		}
 		return ni;
 	}
 
-
 	/**
-	 * Returns a string representation of the ConnectivityCells object
-	 * @return a string representation of the ConnectivityCells object
+	 * Visits all interfaces using the same technology and channel that are in
+	 * neighboring cells. If nothing has moved in the neighboring cells since
+	 * the previous visit at an earlier time, only the interfaces that were
+	 * within range of the interface are visited.
 	 */
-	public String toString() {
-		return getClass().getSimpleName() + " of size " + 
-			this.cols + "x" + this.rows + ", cell size=" + this.cellSize;
-	}
-
-	/**
-	 * A single cell in the cell grid. Contains the interfaces that are 
-	 * currently in that part of the grid.
-	 */
-	public class GridCell {
-		// how large array is initially chosen
-		private static final int EXPECTED_INTERFACE_COUNT = 5;
-		private ArrayList<NetworkInterface> interfaces;
-
-		private GridCell() {
-			this.interfaces = new ArrayList<NetworkInterface>(
-					EXPECTED_INTERFACE_COUNT);
+	@Override
+	public void visitNearInterfaces(NetworkInterface netinterf,
+			NearInterfaceVisitor visitor) {
+		if (!contains(netinterf)) {
+			return;
 		}
 
-		/**
-		 * Returns a list of of interfaces in this cell
-		 * @return a list of of interfaces in this cell
-		 */
-		public ArrayList<NetworkInterface> getInterfaces() {
-			return this.interfaces;
-		}
+		int index = netinterf.getOptimizerIndex();
+		int center = cellIndex(netinterf.getLocation());
 
-		/**
-		 * Adds an interface to this cell
-		 * @param ni The interface to add
-		 */
-		public void addInterface(NetworkInterface ni) {
-			this.interfaces.add(ni);
-		}
+		if (useNearCache) {
+			double cacheTime = nearCacheTimes[index];
+			boolean cacheValid = true;
+			for (int r = center - rowLength; r <= center + rowLength &&
+					cacheValid; r += rowLength) {
+				cacheValid = cellChanged[r - 1] < cacheTime &&
+					cellChanged[r] < cacheTime && cellChanged[r + 1] < cacheTime;
+			}
 
-		/**
-		 * Removes an interface from this cell
-		 * @param ni The interface to remove
-		 */
-		public void removeInterface(NetworkInterface ni) {
-			this.interfaces.remove(ni);
+			if (cacheValid) {
+				NetworkInterface[] cached = nearCache[index];
+				for (int i=0, n=nearCacheSizes[index]; i<n; i++) {
+					visitor.visit(cached[i]);
+				}
+				return;
+			}
 		}
 
-		/**
-		 * Moves a interface in a Cell to another Cell
-		 * @param ni The interface to move
-		 * @param to The cell where the interface should be moved to
-		 */
-		public void moveInterface(NetworkInterface ni, GridCell to) {
-			to.addInterface(ni);
-			boolean removeOk = this.interfaces.remove(ni); 
-			assert removeOk : "interface " + ni + 
-				" not found from cell with " + interfaces.toString();
-		}
+		Coord loc = netinterf.getLocation();
+		double x = loc.getX();
+		double y = loc.getY();
+		double range = netinterf.getTransmitRange();
+		NetworkInterface[] cache = nearCache[index];
+		int cacheSize = 0;
 
-		/**
-		 * Returns a string representation of the cell
-		 * @return a string representation of the cell
-		 */
-		public String toString() {
-			return getClass().getSimpleName() + " with " + 
-				this.interfaces.size() + " interfaces :" + this.interfaces;
+		for (int r = center - rowLength; r <= center + rowLength;
+				r += rowLength) {
+			for (int cell = r - 1; cell <= r + 1; cell++) {
+				NetworkInterface[] members = cellInterfaces[cell];
+				for (int i=0, n=cellCounts[cell]; i<n; i++) {
+					NetworkInterface other = members[i];
+					Coord oloc = other.getLocation();
+					double dx = oloc.getX() - x;
+					double dy = oloc.getY() - y;
+					double smallerRange = Math.min(range,
+							other.getTransmitRange());
+					if (dx*dx + dy*dy <= smallerRange * smallerRange) {
+						if (cacheSize == cache.length) {
+							cache = Arrays.copyOf(cache,
+									cacheSize * 2);
+						}
+						cache[cacheSize++] = other;
+					}
+					visitor.visit(other);
+				}
+			}
 		}
+
+		nearCache[index] = cache;
+		nearCacheSizes[index] = cacheSize;
+		nearCacheTimes[index] = SimClock.getTime();
+	}
+
+	/**
+	 * Returns a string representation of the ConnectivityCells object
+	 * @return a string representation of the ConnectivityCells object
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of size " +
+			this.cols + "x" + this.rows + ", cell size=" + this.cellSize;
 	}
-	
-}
\ No newline at end of file
+}
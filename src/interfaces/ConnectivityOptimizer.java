@@ -45,4 +45,40 @@ abstract public class ConnectivityOptimizer {
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Visits all network interfaces that might be located so that they can be
+	 * connected with the network interface. Interfaces that are not within
+	 * radio range of the interface may be left out. This implementation visits
+	 * all interfaces returned by {@link #getNearInterfaces(NetworkInterface)}.
+	 *
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor that is called for every interface
+	 */
+	public void visitNearInterfaces(NetworkInterface ni,
+			NearInterfaceVisitor visitor) {
+		for (NetworkInterface near : getNearInterfaces(ni)) {
+			visitor.visit(near);
+		}
+	}
+
+	/**
+	 * Tells the optimizer that an interface has moved or its radio range has
+	 * changed. This implementation does nothing.
+	 *
+	 * @param ni The interface
+	 */
+	public void interfaceMoved(NetworkInterface ni) { }
+
+	/**
+	 * Callback for visiting the interfaces near another interface
+	 */
+	public interface NearInterfaceVisitor {
+		/**
+		 * Called for an interface near the interface whose neighbors are
+		 * being visited
+		 * @param ni The near interface
+		 */
+		public void visit(NetworkInterface ni);
+	}
 }
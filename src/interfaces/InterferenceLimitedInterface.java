@@ -4,8 +4,7 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
+import interfaces.ConnectivityOptimizer.NearInterfaceVisitor;
 import core.Connection;
 import core.NetworkInterface;
 import core.Settings;
@@ -20,6 +19,12 @@ import core.VBRConnection;
 public class InterferenceLimitedInterface extends NetworkInterface {
 	private int currentTransmitSpeed;
 	private int numberOfTransmissions;
+	/** tries to connect to every visited interface */
+	private final NearInterfaceVisitor connector = new NearInterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+	};
 
 	public InterferenceLimitedInterface(Settings s) {
 		super(s);
@@ -97,10 +102,7 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 		if(isActive())
 		{
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces = 
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) 
-			connect(i);
+		optimizer.visitNearInterfaces(this, connector);
 		}
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
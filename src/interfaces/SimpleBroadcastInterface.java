@@ -6,8 +6,7 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
+import interfaces.ConnectivityOptimizer.NearInterfaceVisitor;
 import core.CBRConnection;
 import core.Connection;
 import core.NetworkInterface;
@@ -18,6 +17,13 @@ import core.Settings;
  * one transmission can be on at a time.
  */
 public class SimpleBroadcastInterface extends NetworkInterface {
+	/** tries to connect to every visited interface */
+	private final NearInterfaceVisitor connector = new NearInterfaceVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+	};
+
 	/**
 	 * Reads the interface settings from the Settings file
 	 *  
@@ -97,11 +103,7 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 		}
 		
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
-		}
+		optimizer.visitNearInterfaces(this, connector);
 	}
 
 	/** 
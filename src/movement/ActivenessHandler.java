@@ -77,7 +77,16 @@ public class ActivenessHandler {
 		if (this.activeTimes == null) {
 			return true; // no inactive times 
 		}
-		
+		return isInActiveTime();
+	}
+
+	/**
+	 * Returns true if the current time is within the active times. The
+	 * handler is shared by the nodes of a group, which may be moved and
+	 * updated concurrently (see {@link core.ParallelUpdateEngine}).
+	 * @return true if the current time is within the active times
+	 */
+	private synchronized boolean isInActiveTime() {
 		if (curRange == null) {
 			return false; // out of active times
 		}
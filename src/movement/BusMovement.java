@@ -74,6 +74,11 @@ public class BusMovement extends MapRouteMovement {
 		return path;
 	}
 
+	@Override
+	public boolean canMoveConcurrently() {
+		return false;
+	}
+
 	@Override
 	public BusMovement replicate() {
 		return new BusMovement(this);
@@ -6,7 +6,7 @@ package movement;
 
 import java.util.*;
 
-import movement.map.DijkstraPathFinder;
+import movement.map.LandmarkPathFinder;
 import movement.map.MapNode;
 import movement.map.MapRoute;
 import movement.map.SimMap;
@@ -47,7 +47,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	private ContinueBusTripDecider cbtd;
 	private double[] probabilities;
 	private double probTakeOtherBus;
-	private DijkstraPathFinder pathFinder;
+	private LandmarkPathFinder pathFinder;
 	
 	private Coord startBusStop;
 	private Coord endBusStop;
@@ -77,7 +77,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			probTakeOtherBus = settings.getDouble(PROBABILITY_TAKE_OTHER_BUS);
 		}
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = new LandmarkPathFinder(null);
 		takeBus = true;
 		currentBusID = -1;
 	}
@@ -172,6 +172,11 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		return 0;
 	}
 	
+	@Override
+	public boolean canMoveConcurrently() {
+		return false;
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new BusTravellerMovement(this);
@@ -6,7 +6,7 @@ package movement;
 
 import java.util.List;
 
-import movement.map.DijkstraPathFinder;
+import movement.map.LandmarkPathFinder;
 import movement.map.MapNode;
 import core.Coord;
 import core.Settings;
@@ -22,7 +22,7 @@ public class CarMovement extends MapBasedMovement implements
 	private Coord from;
 	private Coord to;
 	
-	private DijkstraPathFinder pathFinder;
+	private LandmarkPathFinder pathFinder;
 	
 	/**
 	 * Car movement constructor
@@ -30,7 +30,7 @@ public class CarMovement extends MapBasedMovement implements
 	 */
 	public CarMovement(Settings settings) {
 		super(settings);
-		pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		pathFinder = new LandmarkPathFinder(getOkMapNodeTypes());
 	}
 	
 	/**
@@ -52,6 +52,11 @@ public class CarMovement extends MapBasedMovement implements
 		to = nodeDestination.clone();
 	}
 
+	@Override
+	public boolean canMoveConcurrently() {
+		return false;
+	}
+
 	@Override
 	public Path getPath() {
 		Path path = new Path(generateSpeed());
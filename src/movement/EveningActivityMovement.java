@@ -10,7 +10,7 @@ import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
 
-import movement.map.DijkstraPathFinder;
+import movement.map.LandmarkPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
@@ -48,7 +48,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	
 	private int mode;
 	private boolean ready;
-	private DijkstraPathFinder pathFinder;
+	private LandmarkPathFinder pathFinder;
 	
 	private Coord lastWaypoint;
 	private Coord startAtLocation;
@@ -72,7 +72,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	public EveningActivityMovement(Settings settings) {
 		super(settings);
 		super.backAllowed = false;
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = new LandmarkPathFinder(null);
 		mode = WALKING_TO_MEETING_SPOT_MODE;
 		
 		
@@ -223,6 +223,11 @@ public class EveningActivityMovement extends MapBasedMovement
 		}
 	}
 	
+	@Override
+	public boolean canMoveConcurrently() {
+		return false;
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new EveningActivityMovement(this);
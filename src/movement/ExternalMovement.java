@@ -6,10 +6,8 @@ package movement;
 
 import input.ExternalMovementReader;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 import java.util.Queue;
 
 import core.Coord;
@@ -34,10 +32,15 @@ public class ExternalMovement extends MovementModel {
 	private static ExternalMovementReader reader;
 	private static String inputFileName;
 	
-	/** mapping of external id to movement model */
-	private static Map<String, ExternalMovement> idMapping;
-	/** initial locations for nodes */
-	private static List<Tuple<String, Coord>> initLocations;
+	/** movement models indexed by the reader's index of their external id */
+	private static ExternalMovement[] idMapping;
+	/** external id indexes and initial locations for nodes */
+	private static int[] initIds;
+	private static double[] initXs;
+	private static double[] initYs;
+	/** number of initial locations and the index of the next unused one */
+	private static int nrofInitLocations;
+	private static int nextInitLocation;
 	/** time of the very first location data */
 	private static double initTime;
 	/** sampling interval (seconds) of the location data */
@@ -79,11 +82,15 @@ public class ExternalMovement extends MovementModel {
 		if (idMapping == null) {
 			// run these the first time object is created or after reset call
 			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
-			idMapping = new HashMap<String, ExternalMovement>();
+			idMapping = new ExternalMovement[0];
 			inputFileName = s.getSetting(MOVEMENT_FILE_S);
 			reader = new ExternalMovementReader(inputFileName);
 			
-			initLocations = reader.readNextMovements();
+			nrofInitLocations = reader.readNextSamples();
+			nextInitLocation = 0;
+			initIds = Arrays.copyOf(reader.getSampleIds(), nrofInitLocations);
+			initXs = Arrays.copyOf(reader.getSampleXs(), nrofInitLocations);
+			initYs = Arrays.copyOf(reader.getSampleYs(), nrofInitLocations);
 			initTime = reader.getLastTimeStamp();
 			samplingInterval = -1;
 			lastPreloadTime = -1;
@@ -109,14 +116,20 @@ public class ExternalMovement extends MovementModel {
 		pathQueue = new LinkedList<Tuple<Double, Path>>();
 		latestPath = null;
 		
-		if (initLocations.size() > 0) { // we have location data left
+		if (nextInitLocation < nrofInitLocations) { // location data left
 			// gets a new location from the list
-			Tuple<String, Coord> initLoc = initLocations.remove(0); 
-			this.intialLocation = this.latestLocation = initLoc.getValue();
+			int i = nextInitLocation++;
+			this.intialLocation = this.latestLocation =
+				new Coord(initXs[i], initYs[i]);
 			this.latestPathStartTime = initTime;
 			
 			// puts the new model to model map for later updates
-			idMapping.put(initLoc.getKey(), this);
+			int id = initIds[i];
+			if (id >= idMapping.length) {
+				idMapping = Arrays.copyOf(idMapping,
+						Math.max(id + 1, idMapping.length * 2));
+			}
+			idMapping[id] = this;
 			isActive = true;
 		}
 		else {
@@ -158,13 +171,15 @@ public class ExternalMovement extends MovementModel {
 	 * Adds a new location with a time to this model's move pattern. If the
 	 * node stayed stationary during the update, the current path is put to the
 	 * queue and a new path is started once the node starts moving.
-	 * @param loc The location
+	 * @param x The x coordinate of the location
+	 * @param y The y coordinate of the location
 	 * @param time When should the node be there
 	 */
-	private void addLocation(Coord loc, double time) {
-		assert samplingInterval > 0 : "Non-positive sampling interval!";
+	private void addLocation(double x, double y, double time) {
+		assert samplingInterval > 0 : "Non-positive sampling interval!";
 		
-		if (loc.equals(latestLocation)) { // node didn't move
+		if (x == latestLocation.getX() && y == latestLocation.getY()) {
+			// node didn't move
 			if (latestPath != null) {
 				// constructing path -> end constructing and put it in the queue
 				pathQueue.add(new Tuple<Double, Path>
@@ -180,6 +195,7 @@ public class ExternalMovement extends MovementModel {
 			latestPath = new Path();			
 		}
 			
+		Coord loc = new Coord(x, y);
 		double speed = loc.distance(this.latestLocation) / samplingInterval;		
 		latestPath.addWaypoint(loc, speed);
 
@@ -243,22 +259,26 @@ public class ExternalMovement extends MovementModel {
 	 * were read.
 	 */
 	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
+		int nrof = reader.readNextSamples();
 		double time = reader.getLastTimeStamp();
+		int[] ids = reader.getSampleIds();
+		double[] xs = reader.getSampleXs();
+		double[] ys = reader.getSampleYs();
 		
 		if (samplingInterval == -1) {
 			samplingInterval = time - initTime;
 		}
 		
-		for (Tuple<String, Coord> t : list) {
-			ExternalMovement em = idMapping.get(t.getKey());
+		for (int i=0; i < nrof; i++) {
+			ExternalMovement em = ids[i] < idMapping.length ?
+					idMapping[ids[i]] : null;
 			if (em != null) { // skip unknown IDs, i.e. IDs not mentioned in...
 				// ...init phase or if there are more IDs than nodes
-				em.addLocation(t.getValue(), time);
+				em.addLocation(xs[i], ys[i], time);
 			}
 		}
 		
-		if (list.size() > 0) {
+		if (nrof > 0) {
 			return time;
 		}
 		else {
@@ -153,6 +153,11 @@ public class FixedMovement extends MapBasedMovement
 		return Double.MAX_VALUE;	// no new paths available
 	}
 	
+	@Override
+	public boolean canMoveConcurrently() {
+		return false;
+	}
+
 	@Override
 	public MapBasedMovement replicate()
 	{
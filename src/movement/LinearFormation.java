@@ -108,6 +108,11 @@ public class LinearFormation extends MovementModel {
 		return Double.MAX_VALUE;	// no new paths available
 	}
 	
+	@Override
+	public boolean canMoveConcurrently() {
+		return true;
+	}
+
 	@Override
 	public LinearFormation replicate() {
 		return new LinearFormation(this);
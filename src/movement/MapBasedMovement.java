@@ -8,17 +8,18 @@ import input.WKTMapReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
-import java.util.Vector;
 
+import movement.map.MapGraph;
 import movement.map.MapNode;
 import movement.map.SimMap;
+import movement.map.SimMapFile;
 import core.Coord;
 import core.Settings;
 import core.SettingsError;
@@ -45,6 +46,14 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	public static final String NROF_FILES_S = "nrofMapFiles";
 	/** map file -setting id ({@value})*/
 	public static final String FILE_S = "mapFile";
+	/** 
+	 * Compiled map file -setting id ({@value}). Optional path of a binary
+	 * map file (see {@link SimMapFile}). If the file exists and has been
+	 * compiled from the current map files, the map is loaded from it instead
+	 * of the map files. Otherwise the map is read from the map files and 
+	 * compiled to the file for the next runs.
+	 */
+	public static final String COMPILED_MAP_S = "compiledMapFile";
 	
 	/** 
 	 * Per node group setting for selecting map node types that are OK for
@@ -57,6 +66,10 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	
 	/** the indexes of the OK map files or null if all maps are OK */
 	private int [] okMapNodeTypes;
+	/** compiled graph of the map for the random walks */
+	private MapGraph graph;
+	/** ids of the OK neighbors of the graph's nodes by node id */
+	private int[][] allowedNeighbors;
 	
 	/** how many map files are read */
 	private int nrofMapFilesRead = 0;
@@ -72,7 +85,8 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	public MapBasedMovement(Settings settings) {
 		super(settings);
 		map = readMap();
-		readOkMapNodeTypes(settings);
+		readOkMapNodeTypes(settings);
+		initNeighbors();
 		maxPathLength = 100;
 		minPathLength = 10;
 		backAllowed = false;
@@ -89,7 +103,8 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		super(settings);
 		map = newMap;
 		this.nrofMapFilesRead = nrofMaps;
-		readOkMapNodeTypes(settings);
+		readOkMapNodeTypes(settings);
+		initNeighbors();
 		maxPathLength = 100;
 		minPathLength = 10;
 		backAllowed = false;
@@ -121,6 +136,30 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 			this.okMapNodeTypes = null;
 		}		
 	}
+
+	/**
+	 * Compiles the map's graph and the OK neighbors of its nodes for the
+	 * random walks (unless the map is empty)
+	 */
+	private void initNeighbors() {
+		if (map != null && map.getNodes().size() > 0) {
+			initNeighbors(map.getNodes().get(0));
+		}
+	}
+
+	/**
+	 * Gets the compiled graph containing the given node and the OK
+	 * neighbors of the graph's nodes. The neighbors are computed only once
+	 * per graph and OK map node types, so all the models sharing a map and
+	 * the types share the same arrays.
+	 * @param node The node the graph must contain
+	 */
+	private void initNeighbors(MapNode node) {
+		this.graph = MapGraph.getGraph(node);
+		this.allowedNeighbors = graph.getAllowedNeighbors(
+				okMapNodeTypes != null ?
+						MapGraph.getTypeMask(okMapNodeTypes) : -1);
+	}
 	
 	/**
 	 * Copyconstructor.
@@ -133,6 +172,8 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		this.minPathLength = mbm.minPathLength;
 		this.maxPathLength = mbm.maxPathLength;
 		this.backAllowed = mbm.backAllowed;
+		this.graph = mbm.graph;
+		this.allowedNeighbors = mbm.allowedNeighbors;
 	}
 	
 	/**
@@ -180,54 +221,53 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	@Override
 	public Path getPath() {
 		Path p = new Path(generateSpeed());
-		MapNode curNode = lastMapNode;
-		MapNode prevNode = lastMapNode;
-		MapNode nextNode = null;	
-		List<MapNode> neighbors;
-		Coord nextCoord;
 		
 		assert lastMapNode != null: "Tried to get a path before placement";
 		
+		int curNode = graph != null && graph.isValid() ? 
+				graph.getId(lastMapNode) : -1;
+		if (curNode < 0) { // map has changed (or a node from another part)
+			initNeighbors(lastMapNode);
+			curNode = graph.getId(lastMapNode);
+		}
+		int prevNode = curNode;
+		int nextNode;
+		
 		// start paths from current node 
-		p.addWaypoint(curNode.getLocation());
+		p.addWaypoint(lastMapNode.getLocation());
 		
 		int pathLength = rng.nextInt(maxPathLength-minPathLength) + 
 			minPathLength;
 
 		for (int i=0; i<pathLength; i++) {
-			neighbors = curNode.getNeighbors();
-			Vector<MapNode> n2 = new Vector<MapNode>(neighbors);
-			if (!this.backAllowed) {
-				n2.remove(prevNode); // to prevent going back
-			}	
-				
-			if (okMapNodeTypes != null) { //remove neighbor nodes that aren't ok
-				for (int j=0; j < n2.size(); ){
-					if (!n2.get(j).isType(okMapNodeTypes)) {
-						n2.remove(j);
-					}
-					else {
-						j++;
+			int[] n2 = allowedNeighbors[curNode]; // only the OK neighbors
+			int nrofOptions = n2.length;
+			int backIndex = n2.length;
+			if (!this.backAllowed) { // to prevent going back
+				for (int j=0; j < n2.length; j++) {
+					if (n2[j] == prevNode) {
+						backIndex = j;
+						nrofOptions--;
+						break;
 					}
 				}
 			}
 			
-			if (n2.size() == 0) { // only option is to go back
+			if (nrofOptions == 0) { // only option is to go back
 				nextNode = prevNode;
 			}
 			else { // choose a random node from remaining neighbors
-				nextNode = n2.get(rng.nextInt(n2.size()));
+				int j = rng.nextInt(nrofOptions);
+				nextNode = n2[j < backIndex ? j : j + 1];
 			}
 			
 			prevNode = curNode;
-		
-			nextCoord = nextNode.getLocation();
 			curNode = nextNode;
 			
-			p.addWaypoint(nextCoord);
+			p.addWaypoint(graph.getNode(curNode).getLocation());
 		}
 		
-		lastMapNode = curNode;
+		lastMapNode = graph.getNode(curNode);
 
 		return p;
 	}
@@ -283,16 +323,32 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 			}
 		}
 
+		File compiledMap = null;
 		try {
 			int nrofMapFiles = settings.getInt(NROF_FILES_S);
+			List<File> files = new ArrayList<File>();
+			int[] types = new int[nrofMapFiles];
 
 			for (int i = 1; i <= nrofMapFiles; i++ ) {
 				String pathFile = settings.getSetting(FILE_S + i);
 				cachedMapFiles.add(pathFile);
-				r.addPaths(new File(pathFile), i);
+				files.add(new File(pathFile));
+				types[i - 1] = i;
 			}
 			
 			nrofMapFilesRead = nrofMapFiles;
+			
+			if (settings.contains(COMPILED_MAP_S)) {
+				compiledMap = new File(settings.getSetting(COMPILED_MAP_S));
+				simMap = SimMapFile.read(compiledMap, cachedMapFiles);
+				if (simMap != null) { // already validated & translated
+					checkCoordValidity(simMap.getNodes());
+					cachedMap = simMap;
+					return simMap;
+				}
+			}
+			
+			r.addPaths(files, types); // the files are read in parallel
 		} catch (IOException e) {
 			throw new SimError(e.toString(),e);
 		}
@@ -305,6 +361,15 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		simMap.translate(-offset.getX(), -offset.getY());
 		checkCoordValidity(simMap.getNodes());
 		
+		if (compiledMap != null) {
+			try {
+				SimMapFile.write(simMap, cachedMapFiles, compiledMap);
+			} catch (IOException e) {
+				throw new SimError("Can't write compiled map file " + 
+						compiledMap + ": " + e, e);
+			}
+		}
+		
 		cachedMap = simMap;
 		return simMap;
 	}
@@ -316,23 +381,23 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	 */
 	private void checkMapConnectedness(List<MapNode> nodes) {
 		Set<MapNode> visited = new HashSet<MapNode>();
-		Queue<MapNode> unvisited = new LinkedList<MapNode>();
+		Queue<MapNode> unvisited = new ArrayDeque<MapNode>();
 		MapNode firstNode;
 		MapNode next = null;
-		
-		if (nodes.size() == 0) {
-			throw new SimError("No map nodes in the given map");
-		}
-		
-		firstNode = nodes.get(0);
+		
+		if (nodes.size() == 0) {
+			throw new SimError("No map nodes in the given map");
+		}
+		
+		firstNode = nodes.get(0);
 		
 		visited.add(firstNode);
-		unvisited.addAll(firstNode.getNeighbors());
+		unvisited.add(firstNode);
 		
+		// nodes are marked visited when queued, so none is queued twice
 		while ((next = unvisited.poll()) != null) {
-			visited.add(next);
 			for (MapNode n: next.getNeighbors()) {
-				if (!visited.contains(n) && ! unvisited.contains(n)) {
+				if (visited.add(n)) {
 					unvisited.add(n);
 				}
 			}
@@ -396,6 +461,11 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		return cachedMap;
 	}
 	
+	@Override
+	public boolean canMoveConcurrently() {
+		return true;
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new MapBasedMovement(this);
@@ -12,6 +12,7 @@ import core.ModuleCommunicationBus;
 import core.Settings;
 import core.SimClock;
 import core.SimError;
+import core.World;
 
 /**
  * <P>Superclass for all movement models. All subclasses must contain at least a 
@@ -44,6 +45,11 @@ public abstract class MovementModel {
 	
 	/** common rng for all movement models in the simulation */
 	protected static Random rng; 
+	/** seed of the common rng */
+	private static int rngSeed;
+	/** rng that is used instead of the common rng in the current thread */
+	private static final ThreadLocal<Random> threadRng =
+		new ThreadLocal<Random>();
 	
 	private ActivenessHandler ah;
 		
@@ -236,6 +242,17 @@ public abstract class MovementModel {
 		return this.comBus;		
 	}
 	
+	/**
+	 * Returns true if nodes using this movement model can be moved
+	 * concurrently with other nodes, i.e., the model does not modify any
+	 * state shared with other nodes' models (other than the common rng).
+	 * This implementation returns false.
+	 * @return true if the model can be moved concurrently
+	 */
+	public boolean canMoveConcurrently() {
+		return false;
+	}
+
 	/**
 	 * Returns simply the name of the movement model class
 	 * @return the name of the movement model class
@@ -256,16 +273,85 @@ public abstract class MovementModel {
 	public static void reset() {
 		Settings s = new Settings(MOVEMENT_MODEL_NS);
 		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
+			rngSeed = s.getInt(RNG_SEED);
 		}
 		else {
-			rng = new Random(0);
+			rngSeed = 0;
 		}
-	}
+
+		s = new Settings(World.SETTINGS_NS);
+		if (s.contains(World.PARALLEL_MOVEMENT_S) &&
+				s.getBoolean(World.PARALLEL_MOVEMENT_S)) {
+			rng = new ThreadBoundRandom(rngSeed);
+		}
+		else {
+			rng = new Random(rngSeed);
+		}
+	}
+
+	/**
+	 * Creates a new random number generator for a node. The generator's
+	 * seed is based on the movement models' rng seed and the node's address.
+	 * @param address Address of the node
+	 * @return A new random number generator
+	 * @see #setThreadRng(Random)
+	 */
+	public static Random createNodeRng(int address) {
+		return new Random(rngSeed * 0x9E3779B97F4A7C15L + address);
+	}
+
+	/**
+	 * Sets the random number generator that all movement models use instead
+	 * of the common rng in the current thread. This way nodes can be moved
+	 * concurrently without the results depending on the order of execution.
+	 * Thread specific generators are supported only if concurrent movement
+	 * is enabled (see {@link World#PARALLEL_MOVEMENT_S}).
+	 * @param r The generator to use or null to use the common rng again
+	 */
+	public static void setThreadRng(Random r) {
+		assert rng instanceof ThreadBoundRandom : "Concurrent movement is " +
+			"not enabled";
+		if (r == null) {
+			threadRng.remove();
+		}
+		else {
+			threadRng.set(r);
+		}
+	}
 	
-	public double getAvgSpeed() {
-		return (this.maxSpeed - this.minSpeed)/2.0 + this.minSpeed;
+	public double getAvgSpeed() {
+		return (this.maxSpeed - this.minSpeed)/2.0 + this.minSpeed;
+	}
+
+	/**
+	 * Random number generator that passes the requests to the generator
+	 * set for the current thread (if any).
+	 * @see MovementModel#setThreadRng(Random)
+	 */
+	private static class ThreadBoundRandom extends Random {
+		private static final long serialVersionUID = 1L;
+
+		private ThreadBoundRandom(long seed) {
+			super(seed);
+		}
+
+		@Override
+		protected int next(int bits) {
+			Random r = threadRng.get();
+			if (r == null) {
+				return super.next(bits);
+			}
+			return r.nextInt() >>> (32 - bits);
+		}
+
+		@Override
+		public double nextGaussian() {
+			Random r = threadRng.get();
+			if (r == null) {
+				return super.nextGaussian();
+			}
+			return r.nextGaussian();
+		}
 	}
 	
 }
@@ -10,7 +10,7 @@ import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
 
-import movement.map.DijkstraPathFinder;
+import movement.map.LandmarkPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
@@ -52,7 +52,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 	private int workDayLength;
 	private int startedWorkingTime;
 	private boolean ready;;
-	private DijkstraPathFinder pathFinder;
+	private LandmarkPathFinder pathFinder;
 	
 	private ParetoRNG paretoRNG;
 	
@@ -86,7 +86,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		officeMaxWaitTime = settings.getDouble(OFFICE_MAX_WAIT_TIME_SETTING);
 		
 		startedWorkingTime = -1;
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = new LandmarkPathFinder(null);
 		mode = WALKING_TO_OFFICE_MODE;
 		
 		String officeLocationsFile = null;
@@ -246,6 +246,11 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		return waitTime;
 	}
 	
+	@Override
+	public boolean canMoveConcurrently() {
+		return false;
+	}
+
 	@Override
 	public MapBasedMovement replicate() {
 		return new OfficeActivityMovement(this);
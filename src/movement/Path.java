@@ -1,44 +1,57 @@
-/* 
- * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
- */
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
 package movement;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import core.Coord;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import core.Coord;
 
 /**
- * A Path between multiple Coordinates.
+ * A Path between multiple Coordinates. The waypoints and speeds are stored
+ * in primitive arrays, so adding waypoints and moving along the path don't
+ * create objects for each waypoint.
  */
 public class Path  {
-	/** coordinates of the path */
-	private List<Coord> coords;
+	/** initial capacity of the waypoint arrays */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** x and y coordinates of the path's waypoints, interleaved */
+	private double[] xy;
+	/** number of waypoints in the path */
+	private int nrofWaypoints;
 	/** speeds in the path legs */
-	private List<Double> speeds;
+	private double[] speeds;
+	/** number of speeds set (1 for paths with constant speed) */
+	private int nrofSpeeds;
 	private int nextWpIndex;
-	
+
 	/**
 	 * Creates a path with zero speed.
 	 */
 	public Path() {
 		this.nextWpIndex = 0;
-		this.coords = new ArrayList<Coord>();
-		this.speeds = new ArrayList<Double>(1);
+		this.xy = new double[2 * INITIAL_CAPACITY];
+		this.speeds = new double[1];
+		this.nrofSpeeds = 0;
+	}
+
+	/**
+	 * Copy constructor. Creates a copy of this path with a copy of
+	 * the coordinates and speeds.
+	 * @param path The path to create the copy from
+	 */
+	public Path(Path path) {
+		this.nextWpIndex = path.nextWpIndex;
+		this.nrofWaypoints = path.nrofWaypoints;
+		this.xy = Arrays.copyOf(path.xy, Math.max(2 * path.nrofWaypoints, 2));
+		this.nrofSpeeds = path.nrofSpeeds;
+		this.speeds = Arrays.copyOf(path.speeds, Math.max(path.nrofSpeeds, 1));
 	}
-
-	/**
-	 * Copy constructor. Creates a copy of this path with a shallow copy of
-	 * the coordinates and speeds.
-	 * @param path The path to create the copy from
-	 */
-	public Path(Path path) {
-		this.nextWpIndex = path.nextWpIndex;
-		this.coords = new ArrayList<Coord>((ArrayList<Coord>)path.coords);
-		this.speeds = new ArrayList<Double>((ArrayList<Double>)path.speeds);
-	}
-	
+
 	/**
 	 * Creates a path with constant speed
 	 * @param speed The speed on the path
@@ -47,95 +60,146 @@ public class Path  {
 		this();
 		setSpeed(speed);
 	}
-	
+
 	/**
 	 * Sets a constant speed for the whole path. Any previously set speed(s)
 	 * is discarded.
 	 */
 	public void setSpeed(double speed) {
-		this.speeds = new ArrayList<Double>(1);
-		speeds.add(speed);
+		this.speeds[0] = speed;
+		this.nrofSpeeds = 1;
 	}
-	
+
 	/**
-	 * Returns a reference to the coordinates of this path 
+	 * Returns the coordinates of this path. The list is created on each
+	 * call and changing it doesn't change the path.
 	 * @return coordinates of the path
 	 */
 	public List<Coord> getCoords() {
-		return this.coords;
+		List<Coord> coords = new ArrayList<Coord>(nrofWaypoints);
+		for (int i=0; i<nrofWaypoints; i++) {
+			coords.add(new Coord(xy[2*i], xy[2*i+1]));
+		}
+		return coords;
 	}
-	
+
 	/**
 	 * Adds a new waypoint to the end of the path.
 	 * @param wp The waypoint to add
 	 */
 	public void addWaypoint(Coord wp) {
-		assert this.speeds.size() <= 1 : "This method should be used only for" +
+		addWaypoint(wp.getX(), wp.getY());
+	}
+
+	/**
+	 * Adds a new waypoint to the end of the path.
+	 * @param x The x coordinate of the waypoint
+	 * @param y The y coordinate of the waypoint
+	 */
+	public void addWaypoint(double x, double y) {
+		assert this.nrofSpeeds <= 1 : "This method should be used only for" +
 			" paths with constant speed";
-		this.coords.add(wp);
+		if (2 * nrofWaypoints == xy.length) {
+			xy = Arrays.copyOf(xy, 2 * xy.length);
+		}
+		xy[2*nrofWaypoints] = x;
+		xy[2*nrofWaypoints+1] = y;
+		nrofWaypoints++;
 	}
-	
+
 	/**
 	 * Adds a new waypoint with a speed towards that waypoint
 	 * @param wp The waypoint
 	 * @param speed The speed towards that waypoint
 	 */
 	public void addWaypoint(Coord wp, double speed) {
-		this.coords.add(wp);
-		this.speeds.add(speed);
+		if (2 * nrofWaypoints == xy.length) {
+			xy = Arrays.copyOf(xy, 2 * xy.length);
+		}
+		xy[2*nrofWaypoints] = wp.getX();
+		xy[2*nrofWaypoints+1] = wp.getY();
+		nrofWaypoints++;
+
+		if (nrofSpeeds == speeds.length) {
+			speeds = Arrays.copyOf(speeds, Math.max(xy.length / 2,
+					2 * speeds.length));
+		}
+		speeds[nrofSpeeds++] = speed;
 	}
-	
+
 	/**
 	 * Returns the next waypoint on this path
 	 * @return the next waypoint
 	 */
 	public Coord getNextWaypoint() {
 		assert hasNext() : "Path didn't have " + (nextWpIndex+1) + ". waypoint";
-		return coords.get(nextWpIndex++);
+		Coord wp = new Coord(xy[2*nextWpIndex], xy[2*nextWpIndex+1]);
+		nextWpIndex++;
+		return wp;
 	}
-	
+
+	/**
+	 * Sets the given coordinate to the next waypoint on this path. Works
+	 * like {@link #getNextWaypoint()} but without creating a new Coord.
+	 * @param wp The coordinate to set
+	 */
+	public void getNextWaypoint(Coord wp) {
+		assert hasNext() : "Path didn't have " + (nextWpIndex+1) + ". waypoint";
+		wp.setLocation(xy[2*nextWpIndex], xy[2*nextWpIndex+1]);
+		nextWpIndex++;
+	}
+
 	/**
 	 * Returns true if the path has more waypoints, false if not
 	 * @return true if the path has more waypoints, false if not
 	 */
 	public boolean hasNext() {
-		return nextWpIndex < this.coords.size();
+		return nextWpIndex < this.nrofWaypoints;
 	}
-	
+
 	/**
 	 * Returns the speed towards the next waypoint (asked with
-	 * {@link #getNextWaypoint()}. 
+	 * {@link #getNextWaypoint()}.
 	 * @return the speed towards the next waypoint
 	 */
 	public double getSpeed() {
-		assert speeds.size() != 0 : "No speed set"; 
+		assert nrofSpeeds != 0 : "No speed set";
 		assert nextWpIndex != 0 : "No waypoint asked";
-		
-		if (speeds.size() == 1) {
-			return speeds.get(0);
+
+		if (nrofSpeeds == 1) {
+			return speeds[0];
 		}
 		else {
-			return speeds.get(nextWpIndex-1);
+			return speeds[nextWpIndex-1];
 		}
 	}
-	
+
 	/**
 	 * Returns a string presentation of the path's coordinates
 	 * @return Path as a string
 	 */
 	public String toString() {
 		String s ="";
-		for (int i=0, n=coords.size(); i<n; i++) {
-			Coord c = coords.get(i);
+		for (int i=0; i<nrofWaypoints; i++) {
+			Coord c = new Coord(xy[2*i], xy[2*i+1]);
 			s+= "->" + c;
-			if (speeds.size() > 1) {
-				s += String.format("@%.2f ",speeds.get(i));
+			if (nrofSpeeds > 1) {
+				s += String.format("@%.2f ",speeds[i]);
 			}
 		}
 		return s;
-	}
-	
-	public List<Double> getSpeeds() {
-		return this.speeds;
+	}
+
+	/**
+	 * Returns the speeds of this path. The list is created on each call.
+	 * @return the speeds of the path legs or a single speed for paths with
+	 * constant speed
+	 */
+	public List<Double> getSpeeds() {
+		List<Double> list = new ArrayList<Double>(nrofSpeeds);
+		for (int i=0; i<nrofSpeeds; i++) {
+			list.add(speeds[i]);
+		}
+		return list;
 	}
 }
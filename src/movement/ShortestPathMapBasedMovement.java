@@ -6,7 +6,7 @@ package movement;
 
 import java.util.List;
 
-import movement.map.DijkstraPathFinder;
+import movement.map.LandmarkPathFinder;
 import movement.map.MapNode;
 import movement.map.PointsOfInterest;
 import core.Settings;
@@ -17,8 +17,8 @@ import core.Settings;
  */
 public class ShortestPathMapBasedMovement extends MapBasedMovement implements 
 	SwitchableMovement {
-	/** the Dijkstra shortest path finder */
-	private DijkstraPathFinder pathFinder;
+	/** the shortest path finder */
+	private LandmarkPathFinder pathFinder;
 
 	/** Points Of Interest handler */
 	private PointsOfInterest pois;
@@ -29,7 +29,7 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 	 */
 	public ShortestPathMapBasedMovement(Settings settings) {
 		super(settings);
-		this.pathFinder = new DijkstraPathFinder(getOkMapNodeTypes());
+		this.pathFinder = new LandmarkPathFinder(getOkMapNodeTypes());
 		this.pois = new PointsOfInterest(getMap(), getOkMapNodeTypes(),
 				settings, rng);
 	}
@@ -65,6 +65,11 @@ public class ShortestPathMapBasedMovement extends MapBasedMovement implements
 		return p;
 	}	
 	
+	@Override
+	public boolean canMoveConcurrently() {
+		return true;
+	}
+
 	@Override
 	public ShortestPathMapBasedMovement replicate() {
 		return new ShortestPathMapBasedMovement(this);
@@ -4,36 +4,30 @@
  */
 package movement.map;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
 
 /**
- * Implementation of the Dijkstra's shortest path algorithm.
+ * Implementation of the Dijkstra's shortest path algorithm. The search runs
+ * on the compiled {@link MapGraph} of the nodes and uses an indexed d-ary
+ * heap whose arrays are reused between the searches of the same thread.
+ * Nodes with equal distances are taken from the heap in the order of their
+ * coordinates, so the returned paths do not depend on the search data
+ * structures.
  */
 public class DijkstraPathFinder {
-	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distances;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<MapNode> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<MapNode> unvisited;
-	/** Map of previous nodes on the shortest path(s) */
-	private Map<MapNode, MapNode> prevNodes;
+	/** Search arrays of each thread */
+	private static final ThreadLocal<SearchState> searchStates =
+		new ThreadLocal<SearchState>() {
+			protected SearchState initialValue() {
+				return new SearchState();
+			}
+		};
 
+	/** Bit mask of the OK map node types or -1 if all nodes are OK */
+	private int okMask;
 	private int [] okMapNodes;
-	
+
 	/**
 	 * Constructor.
 	 * @param okMapNodes The map node types that are OK for paths or null if
@@ -42,27 +36,9 @@ public class DijkstraPathFinder {
 	public DijkstraPathFinder(int [] okMapNodes) {
 		super();
 		this.okMapNodes = okMapNodes;
+		this.okMask = okMapNodes != null ? MapGraph.getTypeMask(okMapNodes) : -1;
 	}
 
-	/**
-	 * Initializes a new search with a source node
-	 * @param node The path's source node
-	 */
-	private void initWith(MapNode node) {
-		assert (okMapNodes != null ? node.isType(okMapNodes) : true);
-		
-		// create needed data structures
-		this.unvisited = new PriorityQueue<MapNode>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<MapNode>();
-		this.prevNodes = new HashMap<MapNode, MapNode>();
-		this.distances = new DistanceMap();
-		
-		// set distance to source 0 and initialize unvisited queue
-		this.distances.put(node, 0);
-		this.unvisited.add(node);
-	}
-	
 	/**
 	 * Finds and returns a shortest path between two map nodes
 	 * @param from The source of the path
@@ -71,158 +47,71 @@ public class DijkstraPathFinder {
 	 * a list of MapNodes or an empty list if such path is not available
 	 */
 	public List<MapNode> getShortestPath(MapNode from, MapNode to) {
-		List<MapNode> path = new LinkedList<MapNode>();
-		
+		LinkedList<MapNode> path = new LinkedList<MapNode>();
+
 		if (from.compareTo(to) == 0) { // source and destination are the same
 			path.add(from); // return a list containing only source node
 			return path;
 		}
-		
-		initWith(from);
-		MapNode node = null;
-		
+
+		assert (okMapNodes != null ? from.isType(okMapNodes) : true);
+
+		MapGraph graph = MapGraph.getGraph(from);
+		int source = graph.getId(from);
+		int target = graph.getId(to);
+		if (target < 0) {
+			return path; // destination not reachable from the source
+		}
+
+		SearchState s = searchStates.get();
+		s.init(graph.size(), source, 0);
+
+		int node;
 		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (node == to) {
+		while ((node = s.poll()) >= 0) {
+			if (node == target) {
 				break; // we found the destination -> no need to search further
 			}
-			
-			visited.add(node); // mark the node as visited
-			relax(node); // add/update neighbor nodes' distances
+			relax(graph, s, node); // add/update neighbor nodes' distances
 		}
-		
+
 		// now we either have the path or such path wasn't available
-		if (node == to) { // found a path
-			path.add(0,to); 
-			MapNode prev = prevNodes.get(to); 
-			while (prev != from) { 
-				path.add(0, prev);	// always put previous node to beginning
-				prev = prevNodes.get(prev);
+		if (node == target) { // found a path
+			for (int n = target; n != source; n = s.prev[n]) {
+				path.addFirst(graph.getNode(n));
 			}
-			
-			path.add(0, from); // finally put the source node to first node
+			path.addFirst(from); // finally put the source node to first node
 		}
-		
+
 		return path;
 	}
-	
+
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
+	 * @param graph The graph of the search
+	 * @param s The search state
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(MapNode node) {
-		double nodeDist = distances.get(node);
-		for (MapNode n : node.getNeighbors()) {
-			if (visited.contains(n)) {
+	private void relax(MapGraph graph, SearchState s, int node) {
+		double nodeDist = s.dist[node];
+		for (int e = graph.getEdgeStart(node), end = graph.getEdgeEnd(node);
+				e < end; e++) {
+			int n = graph.getEdgeTarget(e);
+			if (s.isVisited(n)) {
 				continue; // skip visited nodes
 			}
-			
-			if (okMapNodes != null && !n.isType(okMapNodes)) {
+
+			if (okMask != -1 && (graph.getType(n) & okMask) == 0) {
 				continue; // skip nodes that are not OK
 			}
-			
+
 			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distances.get(n) > nDist) { // stored distance > found dist?
-				prevNodes.put(n, node);
-				setDistance(n, nDist);
-			}
-		}
-	}
-	
-	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
-	 */
-	private void setDistance(MapNode n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distances.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
-	
-	/**
-	 * Returns the (euclidean) distance between the two map nodes
-	 * @param from The first node
-	 * @param to The second node
-	 * @return Euclidean distance between the two map nodes
-	 */
-	private double getDistance(MapNode from, MapNode to) {
-		return from.getLocation().distance(to.getLocation());
-	}
-	
-	/**
-	 * Comparator that compares two map nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements Comparator<MapNode> {
-		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(MapNode node1, MapNode node2) {
-			double dist1 = distances.get(node1);
-			double dist2 = distances.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
-			}
-		}
-	}
-	
-	/**
-	 * Simple Map implementation for storing distances. 
-	 */
-	private class DistanceMap {
-		private HashMap<MapNode, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<MapNode, Double>(); 
-		}
-		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link DijkstraPathFinder#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(MapNode node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
+			double nDist = nodeDist + graph.getEdgeLength(e);
+
+			if (s.getDistance(n) > nDist) { // stored distance > found dist?
+				s.prev[n] = node;
+				s.update(n, nDist, nDist);
 			}
 		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(MapNode node, double distance) {
-			map.put(node, distance);
-		}
-		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
-		}
 	}
-}
\ No newline at end of file
+}
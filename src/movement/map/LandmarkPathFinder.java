@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import core.Coord;
+
+/**
+ * <p>Shortest path finder that returns the same paths as
+ * {@link DijkstraPathFinder} but looks them up from the shared
+ * {@link PathCache} first and finds the paths missing from the cache with
+ * the ALT algorithm: A* search guided by the lower bounds of the map's
+ * {@link Landmarks} and the straight line distance.</p>
+ *
+ * <p>When there are several shortest paths, Dijkstra's algorithm returns
+ * the one determined by the order it visits the nodes in. After the A*
+ * search, the same path is traced back from the destination by choosing
+ * at each node the predecessor that Dijkstra's algorithm would have visited
+ * first. To have the distances of all those predecessors, the search goes
+ * on until all the nodes that could be on a shortest path are visited.</p>
+ */
+public class LandmarkPathFinder {
+	/** Search arrays of each thread */
+	private static final ThreadLocal<SearchState> searchStates =
+		new ThreadLocal<SearchState>() {
+			protected SearchState initialValue() {
+				return new SearchState();
+			}
+		};
+	/** Path with no nodes */
+	private static final MapNode[] NO_PATH = new MapNode[0];
+
+	/** Bit mask of the OK map node types or -1 if all nodes are OK */
+	private int okMask;
+	private int [] okMapNodes;
+
+	/**
+	 * Constructor.
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
+	 */
+	public LandmarkPathFinder(int [] okMapNodes) {
+		this.okMapNodes = okMapNodes;
+		this.okMask = okMapNodes != null ? MapGraph.getTypeMask(okMapNodes) : -1;
+	}
+
+	/**
+	 * Finds and returns a shortest path between two map nodes
+	 * @param from The source of the path
+	 * @param to The destination of the path
+	 * @return a shortest path between the source and destination nodes in
+	 * an unmodifiable list of MapNodes or an empty list if such path is not
+	 * available
+	 */
+	public List<MapNode> getShortestPath(MapNode from, MapNode to) {
+		if (from.compareTo(to) == 0) { // source and destination are the same
+			return Collections.singletonList(from);
+		}
+
+		assert (okMapNodes != null ? from.isType(okMapNodes) : true);
+
+		MapGraph graph = MapGraph.getGraph(from);
+		MapNode[] path = PathCache.get(graph, from, to, okMask);
+		if (path == null) {
+			path = search(graph, from, to);
+			PathCache.put(graph, from, to, okMask, path);
+		}
+
+		return Collections.unmodifiableList(Arrays.asList(path));
+	}
+
+	/**
+	 * Returns true if the node is of an OK type
+	 */
+	private boolean isOk(MapGraph graph, int n) {
+		return okMapNodes == null || (graph.getType(n) & okMask) != 0;
+	}
+
+	/**
+	 * Finds a shortest path
+	 * @param graph The graph of the nodes
+	 * @param from The source of the path
+	 * @param to The destination of the path
+	 * @return The path's nodes or an empty array if there's no path
+	 */
+	private MapNode[] search(MapGraph graph, MapNode from, MapNode to) {
+		int source = graph.getId(from);
+		int target = graph.getId(to);
+		if (target < 0 || !isOk(graph, target)) {
+			return NO_PATH;
+		}
+
+		Landmarks landmarks = graph.getLandmarks();
+		double slack = landmarks.getSlack();
+		Coord targetLocation = to.getLocation();
+		SearchState s = searchStates.get();
+		s.init(graph.size(), source, 0);
+
+		/* visit nodes in the order of their (lowered) distance estimates
+		 * until the estimates exceed the length of the shortest path */
+		double bound = SearchState.INFINITY;
+		while (!s.isEmpty() && s.peekKey() <= bound) {
+			int node = s.poll();
+			if (node == target) {
+				bound = s.dist[target] + slack;
+				continue; // no shortest path goes through the destination
+			}
+
+			double nodeDist = s.dist[node];
+			for (int e = graph.getEdgeStart(node), end = graph.getEdgeEnd(node);
+					e < end; e++) {
+				int n = graph.getEdgeTarget(e);
+				if (!isOk(graph, n)) {
+					continue;
+				}
+
+				double nDist = nodeDist + graph.getEdgeLength(e);
+				if (nDist < s.getDistance(n)) {
+					double estimate = Math.max(landmarks.getBound(n, target),
+							graph.getNode(n).getLocation().distance(
+									targetLocation));
+					if (estimate == Double.POSITIVE_INFINITY) {
+						continue; // destination can't be reached from n
+					}
+					s.update(n, nDist, nDist + Math.max(0, estimate - slack));
+				}
+			}
+		}
+
+		if (bound == SearchState.INFINITY) {
+			return NO_PATH;
+		}
+		return tracePath(graph, s, source, target);
+	}
+
+	/**
+	 * Traces the shortest path back from the destination. The predecessor
+	 * of each node is the node Dijkstra's algorithm would have visited first
+	 * of the nodes with which the node gets its distance: the one with the
+	 * smallest distance and then the smallest id.
+	 * @param graph The graph of the nodes
+	 * @param s The state of the finished search
+	 * @param source Id of the path's source
+	 * @param target Id of the path's destination
+	 * @return The path's nodes
+	 */
+	private MapNode[] tracePath(MapGraph graph, SearchState s, int source,
+			int target) {
+		int length = 1;
+		int node = target;
+		while (node != source) {
+			double nodeDist = s.dist[node];
+			int best = -1;
+			for (int e = graph.getInEdgeStart(node),
+					end = graph.getInEdgeEnd(node); e < end; e++) {
+				int n = graph.getInEdgeSource(e);
+				if (!s.isReached(n)) {
+					continue;
+				}
+				double nDist = s.dist[n];
+				if (nDist + graph.getInEdgeLength(e) != nodeDist ||
+						nDist > nodeDist || (nDist == nodeDist && n > node)) {
+					continue; // not a predecessor or visited after the node
+				}
+				if (best < 0 || nDist < s.dist[best] ||
+						(nDist == s.dist[best] && n < best)) {
+					best = n;
+				}
+			}
+
+			assert best >= 0 : "No predecessor for " + graph.getNode(node);
+			s.prev[node] = best;
+			node = best;
+			length++;
+		}
+
+		MapNode[] path = new MapNode[length];
+		node = target;
+		for (int i = length - 1; i >= 0; i--) {
+			path[i] = graph.getNode(node);
+			node = s.prev[node];
+		}
+		return path;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.Arrays;
+
+/**
+ * Landmark distances of a {@link MapGraph} for the ALT (A*, landmarks,
+ * triangle inequality) lower bounds of path lengths. The distances from and
+ * to a few landmark nodes are computed for all nodes, and by the triangle
+ * inequality the distance from node <code>v</code> to <code>t</code> is at
+ * least <code>d(L,t) - d(L,v)</code> and <code>d(v,L) - d(t,L)</code> for
+ * each landmark <code>L</code>. The landmarks are chosen by farthest point
+ * selection. The distances are for the whole graph, so the bounds are also
+ * valid for searches that only use some of the node types.
+ */
+class Landmarks {
+	/** Maximum number of landmarks */
+	static final int MAX_LANDMARKS = 8;
+	/** Distance of unreachable nodes */
+	private static final double UNREACHABLE = Double.POSITIVE_INFINITY;
+	/** Relative tolerance for the rounding errors of the bounds */
+	private static final double TOLERANCE = 1e-9;
+
+	/** distances from each landmark to each node */
+	private final double[][] from;
+	/** distances from each node to each landmark */
+	private final double[][] to;
+	/** the amount the bounds are lowered to cover rounding errors */
+	private final double slack;
+
+	/**
+	 * Computes landmarks for a graph
+	 * @param graph The graph
+	 */
+	Landmarks(MapGraph graph) {
+		int n = graph.size();
+		int k = Math.min(MAX_LANDMARKS, n);
+		SearchState s = new SearchState();
+		this.from = new double[k][];
+		this.to = new double[k][];
+
+		/* the first landmark is the (reachable) node farthest from the first
+		 * node and the next ones are the farthest from the chosen ones */
+		double[] minDist = distances(graph, s, 0, false);
+		for (int v = 0; v < n; v++) {
+			if (minDist[v] == UNREACHABLE) {
+				minDist[v] = 0;
+			}
+		}
+		double maxDist = 0;
+		for (int i = 0; i < k; i++) {
+			int landmark = 0;
+			for (int v = 1; v < n; v++) {
+				if (minDist[v] > minDist[landmark]) {
+					landmark = v;
+				}
+			}
+
+			this.from[i] = distances(graph, s, landmark, false);
+			this.to[i] = distances(graph, s, landmark, true);
+			if (i == 0) {
+				Arrays.fill(minDist, UNREACHABLE);
+			}
+			for (int v = 0; v < n; v++) {
+				minDist[v] = Math.min(minDist[v], this.from[i][v]);
+				maxDist = max(maxDist, this.from[i][v]);
+				maxDist = max(maxDist, this.to[i][v]);
+			}
+		}
+		this.slack = TOLERANCE * (1 + maxDist);
+	}
+
+	/**
+	 * Returns the larger of a distance and a finite value
+	 */
+	private static double max(double max, double value) {
+		return value != UNREACHABLE && value > max ? value : max;
+	}
+
+	/**
+	 * Computes the distances from (or to) a node to all nodes
+	 * @param graph The graph
+	 * @param s Search state to use
+	 * @param node The node
+	 * @param reverse If true, distances to the node are computed instead
+	 * @return The distances by node id ({@link #UNREACHABLE} for nodes
+	 * that can't be reached)
+	 */
+	private static double[] distances(MapGraph graph, SearchState s,
+			int node, boolean reverse) {
+		double[] dist = new double[graph.size()];
+		s.init(graph.size(), node, 0);
+		int u;
+		while ((u = s.poll()) >= 0) {
+			double uDist = s.dist[u];
+			int start = reverse ? graph.getInEdgeStart(u) :
+				graph.getEdgeStart(u);
+			int end = reverse ? graph.getInEdgeEnd(u) : graph.getEdgeEnd(u);
+			for (int e = start; e < end; e++) {
+				int v = reverse ? graph.getInEdgeSource(e) :
+					graph.getEdgeTarget(e);
+				double vDist = uDist + (reverse ? graph.getInEdgeLength(e) :
+					graph.getEdgeLength(e));
+				if (!s.isVisited(v) && vDist < s.getDistance(v)) {
+					s.update(v, vDist, vDist);
+				}
+			}
+		}
+
+		for (int v = 0; v < dist.length; v++) {
+			dist[v] = s.isReached(v) ? s.dist[v] : UNREACHABLE;
+		}
+		return dist;
+	}
+
+	/**
+	 * Returns the amount the bounds should be lowered to cover their
+	 * rounding errors. The bounds returned by {@link #getBound(int, int)}
+	 * are not lowered.
+	 * @return The slack
+	 */
+	double getSlack() {
+		return this.slack;
+	}
+
+	/**
+	 * Returns a lower bound for the length of the paths from a node to
+	 * another
+	 * @param v The id of the first node
+	 * @param t The id of the other node
+	 * @return The lower bound or {@link Double#POSITIVE_INFINITY} if
+	 * there are no paths from v to t
+	 */
+	double getBound(int v, int t) {
+		double bound = 0;
+		for (int i = 0; i < this.from.length; i++) {
+			double[] fromL = this.from[i];
+			double[] toL = this.to[i];
+			if (fromL[t] != UNREACHABLE) {
+				if (fromL[v] != UNREACHABLE && fromL[t] - fromL[v] > bound) {
+					bound = fromL[t] - fromL[v];
+				}
+			}
+			else if (fromL[v] != UNREACHABLE) {
+				return UNREACHABLE; // L reaches v but not t
+			}
+
+			if (toL[v] != UNREACHABLE) {
+				if (toL[t] != UNREACHABLE && toL[v] - toL[t] > bound) {
+					bound = toL[v] - toL[t];
+				}
+			}
+			else if (toL[t] != UNREACHABLE) {
+				return UNREACHABLE; // t reaches L but v doesn't
+			}
+		}
+		return bound;
+	}
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Compiled, read-only representation of a graph of map nodes in the
+ * compressed sparse row (CSR) form. The nodes have integer ids from 0 to
+ * {@link #size()}-1 in the order of their coordinates (see
+ * {@link MapNode#compareTo(MapNode)}), so comparing the ids of two nodes
+ * gives the same result as comparing the nodes. The neighbors of the node
+ * with id <code>i</code> are the ids at indexes
+ * <code>[getEdgeStart(i), getEdgeEnd(i))</code> of the edge arrays, in the
+ * same order as in the node's neighbor list, and the length of each edge is
+ * precomputed. The edges are also available by their target nodes
+ * (in-edges) in the same form.</p>
+ *
+ * <p>A graph stays valid until any of its nodes gets a new neighbor or type,
+ * or the coordinates of the map are changed through {@link SimMap}. Path
+ * finders should get the graph with {@link #getGraph(MapNode)}, which
+ * compiles a new graph if needed.</p>
+ */
+public class MapGraph {
+	/** Comparator for sorting the nodes to the id order */
+	private static final Comparator<MapNode> NODE_ORDER =
+		new Comparator<MapNode>() {
+			public int compare(MapNode n1, MapNode n2) {
+				return n1.compareTo(n2);
+			}
+		};
+
+	/** the nodes by their id */
+	private final MapNode[] nodes;
+	/** type bit masks of the nodes by their id */
+	private final int[] types;
+	/** start indexes of the nodes' edges (and the end index as the last) */
+	private final int[] edgeStarts;
+	/** target node ids of the edges */
+	private final int[] edgeTargets;
+	/** lengths of the edges */
+	private final double[] edgeLengths;
+	/** start indexes of the nodes' in-edges (and the end index as the last) */
+	private final int[] inEdgeStarts;
+	/** source node ids of the in-edges */
+	private final int[] inEdgeSources;
+	/** lengths of the in-edges */
+	private final double[] inEdgeLengths;
+	/** landmark distances for A* searches (computed when first needed) */
+	private Landmarks landmarks;
+	/** allowed neighbors of the nodes by the OK type masks */
+	private final Map<Integer, int[][]> allowedNeighbors =
+		new HashMap<Integer, int[][]>();
+	/** is the graph still up to date with its nodes */
+	private volatile boolean valid;
+
+	/**
+	 * Compiles a graph of the given nodes and all the nodes reachable from
+	 * them. The nodes are bound to the new graph.
+	 * @param nodes The nodes to compile
+	 */
+	private MapGraph(Collection<MapNode> nodes) {
+		List<MapNode> all = collect(nodes);
+		Collections.sort(all, NODE_ORDER);
+		int n = all.size();
+
+		this.nodes = all.toArray(new MapNode[n]);
+		this.types = new int[n];
+		this.edgeStarts = new int[n + 1];
+
+		Map<MapNode, Integer> ids = new IdentityHashMap<MapNode, Integer>(n);
+		int nrofEdges = 0;
+		for (int i = 0; i < n; i++) {
+			ids.put(this.nodes[i], i);
+			this.types[i] = this.nodes[i].getTypeMask();
+			nrofEdges += this.nodes[i].getNeighbors().size();
+		}
+
+		this.edgeTargets = new int[nrofEdges];
+		this.edgeLengths = new double[nrofEdges];
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			MapNode node = this.nodes[i];
+			this.edgeStarts[i] = e;
+			for (MapNode neighbor : node.getNeighbors()) {
+				this.edgeTargets[e] = ids.get(neighbor);
+				this.edgeLengths[e] = node.getLocation().distance(
+						neighbor.getLocation());
+				e++;
+			}
+		}
+		this.edgeStarts[n] = e;
+
+		/* the same edges ordered by their targets */
+		this.inEdgeStarts = new int[n + 1];
+		this.inEdgeSources = new int[nrofEdges];
+		this.inEdgeLengths = new double[nrofEdges];
+		for (e = 0; e < nrofEdges; e++) {
+			this.inEdgeStarts[this.edgeTargets[e] + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			this.inEdgeStarts[i + 1] += this.inEdgeStarts[i];
+		}
+		int[] next = Arrays.copyOf(this.inEdgeStarts, n);
+		for (int i = 0; i < n; i++) {
+			for (e = this.edgeStarts[i]; e < this.edgeStarts[i + 1]; e++) {
+				int in = next[this.edgeTargets[e]]++;
+				this.inEdgeSources[in] = i;
+				this.inEdgeLengths[in] = this.edgeLengths[e];
+			}
+		}
+
+		this.valid = true;
+		for (int i = 0; i < n; i++) {
+			this.nodes[i].setGraph(this, i);
+		}
+	}
+
+	/**
+	 * Returns the given nodes and the nodes reachable from them
+	 * @param nodes The nodes to start from
+	 * @return A list of the nodes without duplicates
+	 */
+	private static List<MapNode> collect(Collection<MapNode> nodes) {
+		Map<MapNode, Boolean> seen = new IdentityHashMap<MapNode, Boolean>();
+		List<MapNode> all = new ArrayList<MapNode>(nodes.size());
+		for (MapNode n : nodes) {
+			if (seen.put(n, Boolean.TRUE) == null) {
+				all.add(n);
+			}
+		}
+
+		for (int i = 0; i < all.size(); i++) {
+			for (MapNode n : all.get(i).getNeighbors()) {
+				if (seen.put(n, Boolean.TRUE) == null) {
+					all.add(n);
+				}
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Compiles a graph of the given nodes and all the nodes reachable from
+	 * them
+	 * @param nodes The nodes to compile
+	 * @return The new graph
+	 */
+	public static synchronized MapGraph compile(Collection<MapNode> nodes) {
+		return new MapGraph(nodes);
+	}
+
+	/**
+	 * Returns a valid graph containing the given node. If the node is not
+	 * part of a valid graph, a graph of the nodes reachable from it is
+	 * compiled.
+	 * @param node The node
+	 * @return A graph containing the node
+	 */
+	public static MapGraph getGraph(MapNode node) {
+		MapGraph g = node.getGraph();
+		if (g != null && g.valid) {
+			return g;
+		}
+
+		synchronized (MapGraph.class) {
+			g = node.getGraph();
+			if (g == null || !g.valid) {
+				g = new MapGraph(Collections.singletonList(node));
+			}
+			return g;
+		}
+	}
+
+	/**
+	 * Marks the graph outdated. Called when any of the graph's nodes
+	 * changes.
+	 */
+	void invalidate() {
+		this.valid = false;
+	}
+
+	/**
+	 * Returns true if the graph is still up to date with its nodes
+	 * @return true if the graph is valid
+	 */
+	public boolean isValid() {
+		return this.valid;
+	}
+
+	/**
+	 * Returns the number of nodes in the graph
+	 * @return the number of nodes
+	 */
+	public int size() {
+		return this.nodes.length;
+	}
+
+	/**
+	 * Returns the id of a node in this graph
+	 * @param node The node
+	 * @return The id of the node or -1 if the node is not in this graph
+	 */
+	public int getId(MapNode node) {
+		int id = node.getGraphId();
+		if (node.getGraph() == this) {
+			return id;
+		}
+
+		/* the node was bound to another graph later; search by location */
+		id = Arrays.binarySearch(this.nodes, node, NODE_ORDER);
+		if (id < 0) {
+			return -1;
+		}
+		while (id > 0 && this.nodes[id - 1].compareTo(node) == 0) {
+			id--;
+		}
+		for (; id < this.nodes.length && this.nodes[id].compareTo(node) == 0;
+				id++) {
+			if (this.nodes[id] == node) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the node with the given id
+	 * @param id The id of the node
+	 * @return The node
+	 */
+	public MapNode getNode(int id) {
+		return this.nodes[id];
+	}
+
+	/**
+	 * Returns the type bit mask of a node (see {@link #getTypeMask(int[])})
+	 * @param id The id of the node
+	 * @return The type bit mask or 0 if the node has no types
+	 */
+	public int getType(int id) {
+		return this.types[id];
+	}
+
+	/**
+	 * Returns the index of the first edge of a node
+	 * @param id The id of the node
+	 * @return The index of the node's first edge
+	 */
+	public int getEdgeStart(int id) {
+		return this.edgeStarts[id];
+	}
+
+	/**
+	 * Returns the index after the last edge of a node
+	 * @param id The id of the node
+	 * @return The index after the node's last edge
+	 */
+	public int getEdgeEnd(int id) {
+		return this.edgeStarts[id + 1];
+	}
+
+	/**
+	 * Returns the id of the node an edge leads to
+	 * @param edge The index of the edge
+	 * @return The id of the edge's target node
+	 */
+	public int getEdgeTarget(int edge) {
+		return this.edgeTargets[edge];
+	}
+
+	/**
+	 * Returns the (euclidean) length of an edge
+	 * @param edge The index of the edge
+	 * @return The length of the edge
+	 */
+	public double getEdgeLength(int edge) {
+		return this.edgeLengths[edge];
+	}
+
+	/**
+	 * Returns the index of the first in-edge of a node
+	 * @param id The id of the node
+	 * @return The index of the node's first in-edge
+	 */
+	public int getInEdgeStart(int id) {
+		return this.inEdgeStarts[id];
+	}
+
+	/**
+	 * Returns the index after the last in-edge of a node
+	 * @param id The id of the node
+	 * @return The index after the node's last in-edge
+	 */
+	public int getInEdgeEnd(int id) {
+		return this.inEdgeStarts[id + 1];
+	}
+
+	/**
+	 * Returns the id of the node an in-edge comes from
+	 * @param edge The index of the in-edge
+	 * @return The id of the in-edge's source node
+	 */
+	public int getInEdgeSource(int edge) {
+		return this.inEdgeSources[edge];
+	}
+
+	/**
+	 * Returns the length of an in-edge (the same as the length of the
+	 * corresponding edge)
+	 * @param edge The index of the in-edge
+	 * @return The length of the in-edge
+	 */
+	public double getInEdgeLength(int edge) {
+		return this.inEdgeLengths[edge];
+	}
+
+	/**
+	 * Returns the landmark distances of this graph, computing them on the
+	 * first call
+	 * @return The landmarks
+	 */
+	synchronized Landmarks getLandmarks() {
+		if (this.landmarks == null) {
+			this.landmarks = new Landmarks(this);
+		}
+		return this.landmarks;
+	}
+
+	/**
+	 * Returns the neighbors of each node that are of the OK types, computing
+	 * them on the first call for the mask. The arrays are shared and must
+	 * not be modified.
+	 * @param okMask Bit mask of the OK map node types (see
+	 * {@link #getTypeMask(int[])}) or -1 if all nodes are OK
+	 * @return The ids of the OK neighbors of the node with id
+	 * <code>i</code> at index <code>i</code>, in the same order as in the
+	 * node's neighbor list
+	 */
+	public synchronized int[][] getAllowedNeighbors(int okMask) {
+		int[][] allowed = this.allowedNeighbors.get(okMask);
+		if (allowed != null) {
+			return allowed;
+		}
+
+		allowed = new int[this.nodes.length][];
+		int[] buffer = new int[this.nodes.length];
+		for (int i = 0; i < this.nodes.length; i++) {
+			int count = 0;
+			for (int e = this.edgeStarts[i]; e < this.edgeStarts[i + 1]; e++) {
+				int n = this.edgeTargets[e];
+				if (okMask == -1 || (this.types[n] & okMask) != 0) {
+					buffer[count++] = n;
+				}
+			}
+			allowed[i] = Arrays.copyOf(buffer, count);
+		}
+		this.allowedNeighbors.put(okMask, allowed);
+		return allowed;
+	}
+
+	/**
+	 * Returns a bit mask of map node types to match against the node types
+	 * returned by {@link #getType(int)}. A node is of any of the given types
+	 * iff <code>(getType(id) &amp; mask) != 0</code>.
+	 * @param types The types (values in range [{@value MapNode#MIN_TYPE},
+	 * {@value MapNode#MAX_TYPE}])
+	 * @return The bit mask
+	 * @see MapNode#isType(int[])
+	 */
+	public static int getTypeMask(int[] types) {
+		int mask = 0;
+		for (int type : types) {
+			mask |= 1 << type;
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns a string representation of the graph
+	 * @return a string representation of the graph
+	 */
+	public String toString() {
+		return "MapGraph with " + this.nodes.length + " nodes and " +
+			this.edgeTargets.length + " edges";
+	}
+}
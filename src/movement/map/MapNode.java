@@ -25,6 +25,10 @@ public class MapNode implements Comparable<MapNode> {
 	private Vector<MapNode> neighbors;
 	// bit mask of map node's types or 0 if no type's are defined
 	private int type;
+	/** the compiled graph this node belongs to (or null) */
+	private MapGraph graph;
+	/** the id of this node in the compiled graph */
+	private int graphId;
 	
 	/**
 	 * Constructor. Creates a map node to a location.
@@ -42,6 +46,7 @@ public class MapNode implements Comparable<MapNode> {
 	 */
 	public void addType(int type) {
 		this.type |= typeToBitMask(type);
+		invalidateGraph();
 	}
 	
 	/**
@@ -108,9 +113,55 @@ public class MapNode implements Comparable<MapNode> {
 	private void addToList(MapNode node) {
 		if (!this.neighbors.contains(node) && node != this) {
 			this.neighbors.add(node);
+			invalidateGraph();
 		}		
 	}
 	
+	/**
+	 * Returns the type bit mask of this node
+	 * @return the type bit mask or 0 if the node has no types
+	 */
+	int getTypeMask() {
+		return this.type;
+	}
+	
+	/**
+	 * Binds this node to a compiled graph
+	 * @param graph The graph
+	 * @param id The id of this node in the graph
+	 */
+	void setGraph(MapGraph graph, int id) {
+		this.graph = graph;
+		this.graphId = id;
+	}
+	
+	/**
+	 * Returns the compiled graph this node was last bound to
+	 * @return the graph or null if the node is not bound to any graph
+	 */
+	MapGraph getGraph() {
+		return this.graph;
+	}
+	
+	/**
+	 * Returns the id of this node in the graph returned by 
+	 * {@link #getGraph()}
+	 * @return the id of this node
+	 */
+	int getGraphId() {
+		return this.graphId;
+	}
+	
+	/**
+	 * Marks the compiled graph of this node (if any) outdated. Must be called
+	 * when the node's neighbors, types or location change.
+	 */
+	void invalidateGraph() {
+		if (this.graph != null) {
+			this.graph.invalidate();
+		}
+	}
+	
 	/**
 	 * Returns the location of the node
 	 * @return the location of the node
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import core.DTNSim;
+import core.Settings;
+import core.SettingsError;
+
+/**
+ * Size-bounded cache of shortest paths shared by all the path finders of a
+ * simulation. Paths are cached by their source and destination nodes and
+ * the OK map node types of the search. The cache is split into
+ * {@value #NROF_STRIPES} stripes that are selected by the key's hash and
+ * locked separately, so that nodes moved concurrently seldom wait for each
+ * other. Every stripe holds an equal share of the maximum size and evicts
+ * its least recently used path when full. Paths are only valid as long as
+ * the {@link MapGraph} they were found in.
+ */
+public class PathCache {
+	/** Path cache size -setting id ({@value}). Integer value in the
+	 * {@value #PATH_CACHE_NS} name space. Defines the maximum number of
+	 * cached paths; 0 disables the cache. Default is
+	 * {@value #DEF_CACHE_SIZE}. */
+	public static final String CACHE_SIZE_S = "pathCacheSize";
+	/** Name space of the path cache settings ({@value}) */
+	public static final String PATH_CACHE_NS = "MapBasedMovement";
+	/** Default maximum number of cached paths ({@value}) */
+	public static final int DEF_CACHE_SIZE = 10000;
+	/** Number of separately locked parts of the cache ({@value}) */
+	public static final int NROF_STRIPES = 16;
+
+	private static Stripe[] stripes;
+
+	static {
+		DTNSim.registerForReset(PathCache.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Clears the cache and its statistics and re-reads the settings
+	 */
+	public static void reset() {
+		Settings s = new Settings(PATH_CACHE_NS);
+		int maxSize = DEF_CACHE_SIZE;
+		if (s.contains(CACHE_SIZE_S)) {
+			maxSize = s.getInt(CACHE_SIZE_S);
+			if (maxSize < 0) {
+				throw new SettingsError("Negative value for setting " +
+						s.getFullPropertyName(CACHE_SIZE_S));
+			}
+		}
+
+		Stripe[] newStripes = new Stripe[NROF_STRIPES];
+		for (int i=0; i<NROF_STRIPES; i++) {
+			/* the first stripes get the remainder of the size */
+			newStripes[i] = new Stripe(maxSize / NROF_STRIPES +
+					(i < maxSize % NROF_STRIPES ? 1 : 0));
+		}
+		stripes = newStripes;
+	}
+
+	/**
+	 * Returns a cached path
+	 * @param graph The graph of the search
+	 * @param from The source of the path
+	 * @param to The destination of the path
+	 * @param okTypes Bit mask of the OK map node types or -1 if all nodes
+	 * are OK
+	 * @return The path's nodes or null if the path is not in the cache
+	 */
+	static MapNode[] get(MapGraph graph, MapNode from, MapNode to,
+			int okTypes) {
+		Key key = new Key(from, to, okTypes);
+		Stripe stripe = getStripe(key);
+		synchronized (stripe) {
+			Entry e = stripe.maxSize > 0 ? stripe.paths.get(key) : null;
+			if (e == null || e.graph != graph) {
+				stripe.nrofMisses++;
+				return null;
+			}
+			stripe.nrofHits++;
+			return e.path;
+		}
+	}
+
+	/**
+	 * Adds a path to the cache
+	 * @param graph The graph of the search
+	 * @param from The source of the path
+	 * @param to The destination of the path
+	 * @param okTypes Bit mask of the OK map node types or -1 if all nodes
+	 * are OK
+	 * @param path The path's nodes
+	 */
+	static void put(MapGraph graph, MapNode from, MapNode to,
+			int okTypes, MapNode[] path) {
+		Key key = new Key(from, to, okTypes);
+		Stripe stripe = getStripe(key);
+		synchronized (stripe) {
+			if (stripe.maxSize > 0) {
+				stripe.paths.put(key, new Entry(graph, path));
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of path requests found from the cache
+	 * @return the number of cache hits
+	 */
+	public static long getNrofHits() {
+		long hits = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				hits += stripe.nrofHits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Returns the number of path requests not found from the cache
+	 * @return the number of cache misses
+	 */
+	public static long getNrofMisses() {
+		long misses = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				misses += stripe.nrofMisses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * Returns the number of paths in the cache
+	 * @return the number of cached paths
+	 */
+	public static int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.paths.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the stripe a key belongs to
+	 * @param key The key
+	 * @return The stripe of the key
+	 */
+	private static Stripe getStripe(Key key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return stripes[(h & 0x7fffffff) % NROF_STRIPES];
+	}
+
+	/**
+	 * Separately locked part of the cache with its own statistics
+	 */
+	private static class Stripe {
+		private final int maxSize;
+		private final Map<Key, Entry> paths;
+		private long nrofHits;
+		private long nrofMisses;
+
+		private Stripe(final int maxSize) {
+			this.maxSize = maxSize;
+			this.paths = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+				protected boolean removeEldestEntry(Map.Entry<Key, Entry> e) {
+					return size() > maxSize;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Key of a cached path
+	 */
+	private static class Key {
+		private final MapNode from;
+		private final MapNode to;
+		private final int okTypes;
+
+		private Key(MapNode from, MapNode to, int okTypes) {
+			this.from = from;
+			this.to = to;
+			this.okTypes = okTypes;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key)o;
+			return this.from == k.from && this.to == k.to &&
+				this.okTypes == k.okTypes;
+		}
+
+		public int hashCode() {
+			return (System.identityHashCode(this.from) * 31 +
+					System.identityHashCode(this.to)) * 31 + this.okTypes;
+		}
+	}
+
+	/**
+	 * A cached path and the graph it was found in
+	 */
+	private static class Entry {
+		private final MapGraph graph;
+		private final MapNode[] path;
+
+		private Entry(MapGraph graph, MapNode[] path) {
+			this.graph = graph;
+			this.path = path;
+		}
+	}
+}
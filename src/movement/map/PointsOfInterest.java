@@ -9,7 +9,6 @@ import input.WKTReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
@@ -45,6 +44,14 @@ public class PointsOfInterest {
 	private ArrayList<List<MapNode>> poiLists;
 	/** list of probabilites of choosing a POI group */
 	private List<Tuple<Double, Integer>> poiProbs;
+	/** POI groups of the alias table's categories (null for random nodes) */
+	private List<List<MapNode>> categories;
+	/** probabilities of choosing each column's own category */
+	private double[] aliasProbs;
+	/** the other category of each column of the alias table */
+	private int[] aliases;
+	/** the map nodes that are OK to visit */
+	private MapNode[] okNodes;
 	/** (pseudo) random number generator */
 	private Random rng;
 
@@ -59,44 +66,121 @@ public class PointsOfInterest {
 	public PointsOfInterest(SimMap parentMap, int [] okMapNodeTypes, 
 			Settings settings, Random rng) {
 		this.poiLists = new ArrayList<List<MapNode>>();
-		this.poiProbs = new LinkedList<Tuple<Double, Integer>>();
+		this.poiProbs = new ArrayList<Tuple<Double, Integer>>();
 		this.map = parentMap;
 		this.okMapNodeTypes = okMapNodeTypes;
 		this.rng = rng;
 		readPois(settings);
+		createAliasTable();
 	}
 	
 	/**
 	 * Selects a random destination from POIs or all MapNodes. Selecting among
 	 * POI groups is done by their probabilities. If sum of their probabilities
-	 * is less than 1.0 and the drawn random probability is bigger than the sum,
-	 * a random MapNode is selected from the SimMap. 
+	 * is less than 1.0, a random OK MapNode is selected from the SimMap with
+	 * probability <CODE>1-sum</CODE>. 
 	 * @return A destination among POIs or all MapNodes
 	 */
 	public MapNode selectDestination() {
-		double random = rng.nextDouble();
-		double acc = 0;
+		// choose a column of the alias table and one of its two categories
+		double random = rng.nextDouble() * aliasProbs.length;
+		int column = Math.min((int)random, aliasProbs.length - 1);
+		int category = random - column < aliasProbs[column] ? 
+				column : aliases[column];
 		
+		List<MapNode> pois = categories.get(category);
+		if (pois != null) {
+			// return a random POI from the lucky POI group
+			return pois.get(rng.nextInt(pois.size()));
+		}
+		
+		// return a random map node that is OK
+		return okNodes[rng.nextInt(okNodes.length)];
+	}
+	
+	/**
+	 * Creates the alias table (Walker's alias method) for choosing a POI
+	 * group or a random map node by their probabilities with one random
+	 * number. Each column of the table has the same probability and holds
+	 * at most two categories. Also collects the map nodes that are OK to
+	 * visit, in the order of the map's nodes.
+	 * @throws SettingsError if random map nodes could be selected but none
+	 * of the map nodes is OK
+	 */
+	private void createAliasTable() {
+		List<MapNode> nodes = new ArrayList<MapNode>();
+		for (MapNode n : map.getNodes()) {
+			if (okMapNodeTypes == null || n.isType(okMapNodeTypes)) {
+				nodes.add(n);
+			}
+		}
+		this.okNodes = nodes.toArray(new MapNode[nodes.size()]);
+		
+		// categories that can be chosen and their probabilities
+		this.categories = new ArrayList<List<MapNode>>();
+		List<Double> probs = new ArrayList<Double>();
+		double probSum = 0;
 		for (Tuple<Double, Integer> t : poiProbs) {
-			acc += t.getKey();
-			
-			if (acc > random) {
-				// get the lucky POI group
-				List<MapNode> pois = poiLists.get(t.getValue());
-				// return a random POI from that group
-				return pois.get(rng.nextInt(pois.size()));
+			probSum += t.getKey();
+			if (t.getKey() > 0) {
+				categories.add(poiLists.get(t.getValue()));
+				probs.add(t.getKey());
 			}
 		}
+		if (probSum < 1.0 || categories.size() == 0) {
+			if (okNodes.length == 0) {
+				throw new SettingsError("None of the map nodes is of the OK " +
+						"types for selecting random destinations");
+			}
+			categories.add(null); // random map node
+			probs.add(Math.max(1.0 - probSum, 0));
+		}
 		
-		// random was bigger than sum of probs -> return a random map node
-		// that is still OK (if OK node types are defined)
-		List<MapNode> allNodes = map.getNodes();
-		MapNode node;
-		do {
-			node = allNodes.get(rng.nextInt(allNodes.size())); 
-		} while (okMapNodeTypes != null && !node.isType(okMapNodeTypes));
+		int k = categories.size();
+		this.aliasProbs = new double[k];
+		this.aliases = new int[k];
+		double[] scaled = new double[k];
+		int[] small = new int[k];
+		int[] large = new int[k];
+		int nrofSmall = 0;
+		int nrofLarge = 0;
 		
-		return node;
+		for (int i=0; i<k; i++) {
+			scaled[i] = probs.get(i) * k / (probSum < 1.0 ? 1.0 : probSum);
+			if (scaled[i] < 1.0) {
+				small[nrofSmall++] = i;
+			}
+			else {
+				large[nrofLarge++] = i;
+			}
+		}
+		
+		// fill the small columns up with the large categories
+		while (nrofSmall > 0 && nrofLarge > 0) {
+			int s = small[--nrofSmall];
+			int l = large[--nrofLarge];
+			aliasProbs[s] = scaled[s];
+			aliases[s] = l;
+			scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+			if (scaled[l] < 1.0) {
+				small[nrofSmall++] = l;
+			}
+			else {
+				large[nrofLarge++] = l;
+			}
+		}
+		
+		// the rest are full (up to rounding errors)
+		while (nrofLarge > 0) {
+			int l = large[--nrofLarge];
+			aliasProbs[l] = 1.0;
+			aliases[l] = l;
+		}
+		while (nrofSmall > 0) {
+			int s = small[--nrofSmall];
+			aliasProbs[s] = 1.0;
+			aliases[s] = s;
+		}
 	}
  
 	/**
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.util.Arrays;
+
+/**
+ * Distances, previous nodes and the priority queue of a shortest path
+ * search, indexed by the node ids of a {@link MapGraph}. The queue is an
+ * indexed d-ary heap ordered by the nodes' keys, and nodes with equal keys
+ * by their ids. The arrays are not cleared between searches; instead, the
+ * values of a node are valid only if its stamp equals the stamp of the
+ * current search, so a state can be reused (by the same thread) for any
+ * number of searches.
+ */
+class SearchState {
+	/** Value for infinite distance */
+	static final double INFINITY = Double.MAX_VALUE;
+	/** Number of children of a heap node */
+	private static final int HEAP_ARITY = 4;
+	/** Heap position of the nodes that are not in the heap */
+	private static final int NOT_QUEUED = -1;
+
+	/** Distances from the source node */
+	double[] dist = new double[0];
+	/** Previous nodes on the shortest paths */
+	int[] prev = new int[0];
+	/** Heap keys of the nodes */
+	private double[] keys = new double[0];
+	/** Position in the heap or {@link #NOT_QUEUED} */
+	private int[] heapPos = new int[0];
+	/** Search stamps of the values of the nodes */
+	private int[] stamps = new int[0];
+	/** The heap of nodes discovered but not visited */
+	private int[] heap = new int[0];
+	private int heapSize;
+	private int stamp;
+
+	/**
+	 * Initializes a new search with a source node
+	 * @param size Number of nodes in the graph
+	 * @param source The path's source node
+	 * @param key Heap key of the source node
+	 */
+	void init(int size, int source, double key) {
+		if (this.dist.length < size) {
+			this.dist = new double[size];
+			this.prev = new int[size];
+			this.keys = new double[size];
+			this.heapPos = new int[size];
+			this.stamps = new int[size];
+			this.heap = new int[size];
+			this.stamp = 0;
+		}
+		if (++this.stamp == 0) { // stamps wrapped around
+			Arrays.fill(this.stamps, 0);
+			this.stamp = 1;
+		}
+		this.heapSize = 0;
+		update(source, 0, key);
+	}
+
+	/**
+	 * Returns true if the node has been reached in the current search
+	 * @param n The node
+	 * @return true if the node has a distance
+	 */
+	boolean isReached(int n) {
+		return this.stamps[n] == this.stamp;
+	}
+
+	/**
+	 * Returns true if the node has been polled from the heap (and not
+	 * updated after that) in the current search
+	 * @param n The node
+	 * @return true if the node has been visited
+	 */
+	boolean isVisited(int n) {
+		return this.stamps[n] == this.stamp && this.heapPos[n] == NOT_QUEUED;
+	}
+
+	/**
+	 * Returns the distance of a node
+	 * @param n The node
+	 * @return The distance or {@link #INFINITY} if the node is not reached
+	 */
+	double getDistance(int n) {
+		return this.stamps[n] == this.stamp ? this.dist[n] : INFINITY;
+	}
+
+	/**
+	 * Sets a smaller distance and key to a node and adds the node to the
+	 * heap if it is not there
+	 * @param n The node
+	 * @param distance The distance of the node
+	 * @param key The heap key of the node
+	 */
+	void update(int n, double distance, double key) {
+		int pos;
+		if (this.stamps[n] != this.stamp) {
+			this.stamps[n] = this.stamp;
+			pos = this.heapSize++;
+		}
+		else if (this.heapPos[n] == NOT_QUEUED) {
+			pos = this.heapSize++;
+		}
+		else {
+			pos = this.heapPos[n];
+		}
+		this.dist[n] = distance;
+		this.keys[n] = key;
+		siftUp(n, pos);
+	}
+
+	/**
+	 * Returns true if the heap is empty
+	 * @return true if there are no nodes in the heap
+	 */
+	boolean isEmpty() {
+		return this.heapSize == 0;
+	}
+
+	/**
+	 * Returns the smallest key in the heap
+	 * @return The smallest key (the heap must not be empty)
+	 */
+	double peekKey() {
+		return this.keys[this.heap[0]];
+	}
+
+	/**
+	 * Removes the node with the smallest key from the heap and marks it
+	 * visited
+	 * @return The node or -1 if the heap is empty
+	 */
+	int poll() {
+		if (this.heapSize == 0) {
+			return -1;
+		}
+		int first = this.heap[0];
+		this.heapPos[first] = NOT_QUEUED;
+		int last = this.heap[--this.heapSize];
+		if (this.heapSize > 0) {
+			siftDown(last, 0);
+		}
+		return first;
+	}
+
+	/**
+	 * Returns true if node n1 should be polled before n2: nodes with equal
+	 * keys are ordered by their ids
+	 */
+	private boolean isBefore(int n1, int n2) {
+		double k1 = this.keys[n1];
+		double k2 = this.keys[n2];
+		return k1 < k2 || (k1 == k2 && n1 < n2);
+	}
+
+	private void siftUp(int n, int pos) {
+		while (pos > 0) {
+			int parentPos = (pos - 1) / HEAP_ARITY;
+			int parent = this.heap[parentPos];
+			if (!isBefore(n, parent)) {
+				break;
+			}
+			this.heap[pos] = parent;
+			this.heapPos[parent] = pos;
+			pos = parentPos;
+		}
+		this.heap[pos] = n;
+		this.heapPos[n] = pos;
+	}
+
+	private void siftDown(int n, int pos) {
+		while (true) {
+			int child = pos * HEAP_ARITY + 1;
+			if (child >= this.heapSize) {
+				break;
+			}
+			int best = child;
+			int end = Math.min(child + HEAP_ARITY, this.heapSize);
+			for (int c = child + 1; c < end; c++) {
+				if (isBefore(this.heap[c], this.heap[best])) {
+					best = c;
+				}
+			}
+			int bestNode = this.heap[best];
+			if (!isBefore(bestNode, n)) {
+				break;
+			}
+			this.heap[pos] = bestNode;
+			this.heapPos[bestNode] = pos;
+			pos = best;
+		}
+		this.heap[pos] = n;
+		this.heapPos[n] = pos;
+	}
+}
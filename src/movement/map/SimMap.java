@@ -6,6 +6,7 @@ package movement.map;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -37,6 +38,25 @@ public class SimMap implements Serializable {
 		setBounds();
 	}
 	
+	/**
+	 * Creates a map of nodes that have already been translated and possibly
+	 * mirrored (e.g., read from a compiled map file)
+	 * @param nodes The nodes of the map in the order they are returned by
+	 * {@link #getNodes()}
+	 * @param offset The offset of the map translations
+	 * @param isMirrored Has the map been mirrored
+	 */
+	SimMap(List<MapNode> nodes, Coord offset, boolean isMirrored) {
+		this.offset = offset;
+		this.nodes = new ArrayList<MapNode>(nodes);
+		this.nodesMap = new HashMap<Coord, MapNode>();
+		for (MapNode node : nodes) {
+			this.nodesMap.put(node.getLocation(), node);
+		}
+		this.isMirrored = isMirrored;
+		setBounds();
+	}
+	
 	/**
 	 * Returns all the map nodes in a list
 	 * @return all the map nodes in a list
@@ -104,6 +124,7 @@ public class SimMap implements Serializable {
 	public void translate(double dx, double dy) {
 		for (MapNode n : nodes) {
 			n.getLocation().translate(dx, dy);
+			n.invalidateGraph();
 		}
 		
 		minBound.translate(dx, dy);
@@ -123,6 +144,7 @@ public class SimMap implements Serializable {
 		for (MapNode n : nodes) {
 			c=n.getLocation();
 			c.setLocation(c.getX(), -c.getY());
+			n.invalidateGraph();
 		}
 		setBounds();
 		this.isMirrored = true;
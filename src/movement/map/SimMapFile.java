@@ -0,0 +1,223 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package movement.map;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Coord;
+
+/**
+ * <p>Compiled binary format of a {@link SimMap}. A compiled map is stored
+ * after it has been read from its source files, validated, mirrored and
+ * translated, so loading it only needs creating the map nodes. The file
+ * also records the names, sizes and modification times of the source
+ * files, and a compiled map is only used while they are unchanged.</p>
+ *
+ * <p>The file contains (all values big-endian):
+ * <ul>
+ * <li>magic number, format version and the number of source files</li>
+ * <li>for each source file: name length and name (UTF-8), size and
+ * modification time</li>
+ * <li>map offset (x, y) and mirroring flag</li>
+ * <li>number of nodes <code>n</code> and edges <code>m</code></li>
+ * <li>x coordinates, y coordinates and type bit masks of the nodes</li>
+ * <li>the adjacency in compressed sparse row form: <code>n+1</code> start
+ * indexes of the nodes' neighbors and <code>m</code> neighbor indexes</li>
+ * </ul>
+ * The nodes are in the order of {@link SimMap#getNodes()} and the neighbors
+ * of each node in the order of {@link MapNode#getNeighbors()}, so a loaded
+ * map is equal to the compiled one. Compiled maps are read through a
+ * memory mapping.</p>
+ */
+public class SimMapFile {
+	/** Magic number of the compiled map files */
+	private static final int MAGIC = 0x4F4E454D; // "ONEM"
+	/** Version of the file format */
+	private static final int VERSION = 1;
+	/** Character set of the file names */
+	private static final String CHARSET = "UTF-8";
+
+	/**
+	 * Writes a compiled map file. The file is first written to a temporary
+	 * file which then replaces the given file.
+	 * @param map The map to write
+	 * @param sources Names of the files the map was read from
+	 * @param file The file to write
+	 * @throws IOException if the file couldn't be written
+	 */
+	public static void write(SimMap map, List<String> sources, File file)
+			throws IOException {
+		List<MapNode> nodes = map.getNodes();
+		Map<MapNode, Integer> indexes =
+			new IdentityHashMap<MapNode, Integer>(nodes.size());
+		int nrofEdges = 0;
+		for (MapNode n : nodes) {
+			indexes.put(n, indexes.size());
+			nrofEdges += n.getNeighbors().size();
+		}
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(sources.size());
+			for (String name : sources) {
+				byte[] bytes = name.getBytes(CHARSET);
+				File source = new File(name);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+				out.writeLong(source.length());
+				out.writeLong(source.lastModified());
+			}
+
+			out.writeDouble(map.getOffset().getX());
+			out.writeDouble(map.getOffset().getY());
+			out.writeBoolean(map.isMirrored());
+			out.writeInt(nodes.size());
+			out.writeInt(nrofEdges);
+
+			for (MapNode n : nodes) {
+				out.writeDouble(n.getLocation().getX());
+			}
+			for (MapNode n : nodes) {
+				out.writeDouble(n.getLocation().getY());
+			}
+			for (MapNode n : nodes) {
+				out.writeInt(n.getTypeMask());
+			}
+			int start = 0;
+			for (MapNode n : nodes) {
+				out.writeInt(start);
+				start += n.getNeighbors().size();
+			}
+			out.writeInt(start);
+			for (MapNode n : nodes) {
+				for (MapNode neighbor : n.getNeighbors()) {
+					Integer index = indexes.get(neighbor);
+					if (index == null) {
+						throw new IOException("Neighbor " + neighbor + " of " +
+								n + " is not part of the map");
+					}
+					out.writeInt(index);
+				}
+			}
+			out.close();
+		} catch (IOException e) {
+			out.close();
+			tmp.delete();
+			throw e;
+		}
+
+		if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("Can't replace compiled map file " + file);
+		}
+	}
+
+	/**
+	 * Reads a compiled map file
+	 * @param file The file to read
+	 * @param sources Names of the files the map should be read from
+	 * @return The map or null if the file doesn't exist, is not a compiled
+	 * map file of this version, or was compiled from other or modified
+	 * source files
+	 * @throws IOException if the file couldn't be read
+	 */
+	public static SimMap read(File file, List<String> sources)
+			throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+			return read(buf, sources);
+		} catch (BufferUnderflowException e) {
+			return null; // truncated file
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads a compiled map from a buffer
+	 * @see #read(File, List)
+	 */
+	private static SimMap read(ByteBuffer buf, List<String> sources)
+			throws IOException {
+		if (buf.getInt() != MAGIC || buf.getInt() != VERSION ||
+				buf.getInt() != sources.size()) {
+			return null;
+		}
+		for (String name : sources) {
+			byte[] bytes = new byte[buf.getInt()];
+			buf.get(bytes);
+			File source = new File(name);
+			if (!name.equals(new String(bytes, CHARSET)) ||
+					buf.getLong() != source.length() ||
+					buf.getLong() != source.lastModified()) {
+				return null; // the map was compiled from other sources
+			}
+		}
+
+		Coord offset = new Coord(buf.getDouble(), buf.getDouble());
+		boolean isMirrored = buf.get() != 0;
+		int nrofNodes = buf.getInt();
+		int nrofEdges = buf.getInt();
+
+		double[] xs = new double[nrofNodes];
+		double[] ys = new double[nrofNodes];
+		int[] types = new int[nrofNodes];
+		int[] starts = new int[nrofNodes + 1];
+		int[] neighbors = new int[nrofEdges];
+		buf.asDoubleBuffer().get(xs);
+		buf.position(buf.position() + nrofNodes * 8);
+		buf.asDoubleBuffer().get(ys);
+		buf.position(buf.position() + nrofNodes * 8);
+		buf.asIntBuffer().get(types);
+		buf.position(buf.position() + nrofNodes * 4);
+		buf.asIntBuffer().get(starts);
+		buf.position(buf.position() + (nrofNodes + 1) * 4);
+		buf.asIntBuffer().get(neighbors);
+
+		List<MapNode> nodes = new ArrayList<MapNode>(nrofNodes);
+		for (int i = 0; i < nrofNodes; i++) {
+			MapNode n = new MapNode(new Coord(xs[i], ys[i]));
+			for (int type = MapNode.MIN_TYPE; type <= MapNode.MAX_TYPE;
+					type++) {
+				if ((types[i] & (1 << type)) != 0) {
+					n.addType(type);
+				}
+			}
+			nodes.add(n);
+		}
+		for (int i = 0; i < nrofNodes; i++) {
+			MapNode n = nodes.get(i);
+			for (int e = starts[i]; e < starts[i + 1]; e++) {
+				n.addNeighbor(nodes.get(neighbors[e]));
+			}
+		}
+
+		return new SimMap(nodes, offset, isMirrored);
+	}
+}
@@ -0,0 +1,40 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package report;
+
+import movement.map.PathCache;
+
+/**
+ * Reports the hit rate of the shared shortest path cache of the map based
+ * movement models (see {@link PathCache}).
+ */
+public class PathCacheReport extends Report {
+
+	/**
+	 * Constructor.
+	 */
+	public PathCacheReport() {
+		init();
+	}
+
+	@Override
+	public void done() {
+		long hits = PathCache.getNrofHits();
+		long misses = PathCache.getNrofMisses();
+		double hitRate = Double.NaN;
+		if (hits + misses > 0) {
+			hitRate = (1.0 * hits) / (hits + misses);
+		}
+
+		write("Path cache stats for scenario " + getScenarioName() +
+				"\nsim_time: " + format(getSimTime()));
+		write("lookups: " + (hits + misses) +
+				"\nhits: " + hits +
+				"\nmisses: " + misses +
+				"\nhit_rate: " + format(hitRate) +
+				"\ncached_paths: " + PathCache.size());
+		super.done();
+	}
+}
@@ -5,7 +5,6 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -17,6 +16,7 @@ import core.MessageListener;
 import core.Settings;
 import core.SimClock;
 import core.Tuple;
+import routing.buffer.EvictionIndex;
 
 /**
  * Superclass of active routers. Contains convenience methods (e.g. 
@@ -31,6 +31,13 @@ public abstract class ActiveRouter extends MessageRouter {
 	/** should messages that final recipient marks as delivered be deleted
 	 * from message buffer */
 	protected boolean deleteDelivered;
+	/** Exact TTL expiry -setting id ({@value}). Boolean valued.
+	 * If set to true, messages are dropped at the first update after their
+	 * TTL has passed instead of in the TTL checks done every
+	 * {@link #TTL_CHECK_INTERVAL} seconds. Default=false. */
+	public static final String EXACT_TTL_S = "exactTtlExpiry";
+	/** should messages be dropped exactly when their TTL passes */
+	protected boolean exactTtlExpiry;
 	
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
@@ -38,6 +45,17 @@ public abstract class ActiveRouter extends MessageRouter {
 	public static int TTL_CHECK_INTERVAL = 60;
 	/** connection(s) that are currently used for sending */
 	protected ArrayList<Connection> sendingConnections;
+	/** buffered messages in receive time order (null until first needed) */
+	private EvictionIndex receiveTimeIndex;
+	/** buffered messages in expiry time order (null until first needed) */
+	private EvictionIndex expiryIndex;
+	/** excludes the messages that are being sent from eviction */
+	private final EvictionIndex.Exclusion beingSent = 
+		new EvictionIndex.Exclusion() {
+			public boolean isExcluded(Message m) {
+				return isSending(m.getId());
+			}
+		};
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
 	
@@ -56,6 +74,13 @@ public abstract class ActiveRouter extends MessageRouter {
 		else {
 			this.deleteDelivered = false;
 		}
+		
+		if (s.contains(EXACT_TTL_S)) {
+			this.exactTtlExpiry = s.getBoolean(EXACT_TTL_S);
+		}
+		else {
+			this.exactTtlExpiry = false;
+		}
 	}
 	
 	/**
@@ -65,6 +90,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ActiveRouter(ActiveRouter r) {
 		super(r);
 		this.deleteDelivered = r.deleteDelivered;
+		this.exactTtlExpiry = r.exactTtlExpiry;
 	}
 	
 	@Override
@@ -72,6 +98,8 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.initialize(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		this.receiveTimeIndex = null;
+		this.expiryIndex = null;
 	}
 	
 	/**
@@ -93,15 +121,27 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 		
 		DTNHost other = con.getOtherNode(getHost());
+		int nrofForOther = getMessagesTo(other).size();
+		if (nrofForOther == 0) {
+			return false;
+		}
+		
 		/* do a copy to avoid concurrent modification exceptions 
-		 * (startTransfer may remove messages) */
-		ArrayList<Message> temp = 
-			new ArrayList<Message>(this.getMessageCollection());
+		 * (startTransfer may remove messages). Messages are tried in
+		 * message collection order. */
+		ArrayList<Message> temp = new ArrayList<Message>(nrofForOther);
+		for (Message m : getMessageCollection()) {
+			if (m.getTo() == other) {
+				temp.add(m);
+				if (temp.size() == nrofForOther) {
+					break;
+				}
+			}
+		}
+		
 		for (Message m : temp) {
-			if (other == m.getTo()) {
-				if (startTransfer(m, con) == RCV_OK) {
-					return true;
-				}
+			if (startTransfer(m, con) == RCV_OK) {
+				return true;
 			}
 		}
 		return false;
@@ -262,18 +302,62 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops messages whose TTL is less than zero. The expiry time index
+	 * tells if any messages have expired, so the buffer is not gone
+	 * through when none or only one of them has. Several expired messages
+	 * are dropped in message collection order, like before the index.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl(); 
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		EvictionIndex index = getExpiryIndex();
+		int nrofExpired = 0;
+		for (Message m : index) {
+			if (m.getTtl() > 0 || nrofExpired > 1) {
+				break;
+			}
+			nrofExpired++;
+		}
+		
+		if (nrofExpired == 1) {
+			deleteMessage(index.first().getId(), true);
+		}
+		else if (nrofExpired > 1) {
+			Message[] messages = 
+				getMessageCollection().toArray(new Message[0]);
+			for (int i=0; i<messages.length; i++) {
+				if (messages[i].getTtl() <= 0) {
+					deleteMessage(messages[i].getId(), true);
+				}
 			}
 		}
 	}
 	
+	/**
+	 * Drops the messages, that are not being sent, whose expiry time has
+	 * been reached. Used instead of {@link #dropExpiredMessages()} if 
+	 * exact TTL expiry is enabled.
+	 * @see #EXACT_TTL_S
+	 */
+	private void dropMessagesPastExpiry() {
+		EvictionIndex index = getExpiryIndex();
+		double now = SimClock.getTime();
+		Message m = index.first(beingSent);
+		while (m != null && m.getExpiryTime() <= now) {
+			deleteMessage(m.getId(), true);
+			m = index.first(beingSent);
+		}
+	}
+	
+	/**
+	 * Returns the expiry time index of the message buffer
+	 * @return the index
+	 */
+	private EvictionIndex getExpiryIndex() {
+		if (expiryIndex == null) {
+			expiryIndex = addEvictionIndex(EvictionIndex.EXPIRY_ORDER);
+		}
+		return expiryIndex;
+	}
+	
 	/**
 	 * Tries to make room for a new message. Current implementation simply
 	 * calls {@link #makeRoomForMessage(int)} and ignores the return value.
@@ -297,22 +381,39 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getOldestMessage(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-			
-			if (excludeMsgBeingSent && isSending(m.getId())) {
-				continue; // skip the message(s) that router is sending
+		if (this.receiveTimeIndex == null) { // created on first use
+			this.receiveTimeIndex = 
+				addEvictionIndex(EvictionIndex.RECEIVE_TIME_ORDER);
+		}
+		
+		EvictionIndex.Exclusion exclusion = 
+			excludeMsgBeingSent ? this.beingSent : null;
+		Message oldest = this.receiveTimeIndex.first(exclusion);
+		if (oldest == null) {
+			return null;
+		}
+		
+		/* of messages received at the same time, the first one in message
+		 * collection order is returned */
+		double time = oldest.getReceiveTime();
+		int nrofOldest = 0;
+		for (Message m : this.receiveTimeIndex) {
+			if (m.getReceiveTime() > time || nrofOldest > 1) {
+				break;
 			}
-			
-			if (oldest == null ) {
-				oldest = m;
+			if (m.getReceiveTime() == time && 
+					(exclusion == null || !exclusion.isExcluded(m))) {
+				nrofOldest++;
 			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
+		}
+		if (nrofOldest > 1) {
+			for (Message m : getMessageCollection()) {
+				if (m.getReceiveTime() == time && 
+						(exclusion == null || !exclusion.isExcluded(m))) {
+					return m;
+				}
 			}
 		}
-		
 		return oldest;
 	}
 	
@@ -327,15 +428,61 @@ public abstract class ActiveRouter extends MessageRouter {
 			return new ArrayList<Tuple<Message, Connection>>(0); 
 		}
 
+		List<Connection> connections = getHost().getConnections();
+		int nrofCons = connections.size();
+		/* distinct peers and the connections to them: firstCon has the
+		 * first connection to a peer and nextCon the next connection to the
+		 * same peer (-1 if there are no more) */
+		DTNHost[] peers = new DTNHost[nrofCons];
+		int[] firstCon = new int[nrofCons];
+		int[] lastCon = new int[nrofCons];
+		int[] nextCon = new int[nrofCons];
+		int nrofPeers = 0;
+		int nrofMsgs = 0;
+		for (int i=0; i < nrofCons; i++) {
+			DTNHost peer = connections.get(i).getOtherNode(getHost());
+			nextCon[i] = -1;
+			int p = 0;
+			while (p < nrofPeers && peers[p] != peer) {
+				p++;
+			}
+			if (p < nrofPeers) {
+				nextCon[lastCon[p]] = i;
+			}
+			else {
+				peers[p] = peer;
+				firstCon[p] = i;
+				nrofPeers++;
+				nrofMsgs += getMessagesTo(peer).size();
+			}
+			lastCon[p] = i;
+		}
+		
 		List<Tuple<Message, Connection>> forTuples = 
-			new ArrayList<Tuple<Message, Connection>>();
+			new ArrayList<Tuple<Message, Connection>>(nrofMsgs);
+		if (nrofMsgs == 0) {
+			return forTuples;
+		}
+		
+		/* tuples are listed in message collection order (and in connection
+		 * order per message); the collection is gone through only until
+		 * all the messages for the peers have been found */
+		int nrofFound = 0;
 		for (Message m : getMessageCollection()) {
-			for(Connection con : getHost().getConnections()) {
-			//for (Connection con : getConnections()) {
-				DTNHost to = con.getOtherNode(getHost());
-				if (m.getTo() == to) {
-					forTuples.add(new Tuple<Message, Connection>(m,con));
-				}
+			DTNHost to = m.getTo();
+			int p = 0;
+			while (p < nrofPeers && peers[p] != to) {
+				p++;
+			}
+			if (p == nrofPeers) {
+				continue;
+			}
+			for (int c = firstCon[p]; c >= 0; c = nextCon[c]) {
+				forTuples.add(new Tuple<Message, Connection>(m,
+						connections.get(c)));
+			}
+			if (++nrofFound == nrofMsgs) {
+				break;
 			}
 		}
 		
@@ -610,8 +757,11 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 		}
 		
+		if (exactTtlExpiry) {
+			dropMessagesPastExpiry();
+		}
 		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
+		else if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
 				sendingConnections.size() == 0) {
 			dropExpiredMessages();
 			lastTtlCheck = SimClock.getTime();
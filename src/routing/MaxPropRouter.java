@@ -54,12 +54,14 @@ public class MaxPropRouter extends ActiveRouter {
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
 	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
+	/** costs to all hosts from the hosts the costs have been calculated 
+	 * from (mapped using the "from" host's network address). This should be
+	 * cleared always when the meeting probabilities change (a host is met) */
+	private Map<Integer, double[]> costsFrom;
+	/** From host of the last cost lookup */
 	private DTNHost lastCostFrom;
+	/** Costs from the last cost lookup's from host (or null) */
+	private double[] lastCosts;
 		
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -111,6 +113,7 @@ public class MaxPropRouter extends ActiveRouter {
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
+		this.costsFrom = new HashMap<Integer, double[]>();
 		this.ackedMessageIds = new HashSet<String>();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 	}	
@@ -118,7 +121,7 @@ public class MaxPropRouter extends ActiveRouter {
 	@Override
 	public void changedConnection(Connection con) {
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
+			invalidateCosts(); // invalidate old cost estimates
 			
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
@@ -168,10 +171,20 @@ public class MaxPropRouter extends ActiveRouter {
 			if (myMps == null || 
 				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
 				this.allProbs.put(e.getKey(), e.getValue().replicate());
+				invalidateCosts();
 			}
 		}
 	}
 	
+	/**
+	 * Invalidates the cached costs. Must be called when any of the meeting
+	 * probabilities known by this router change.
+	 */
+	private void invalidateCosts() {
+		this.costsFrom.clear();
+		this.lastCosts = null;
+	}
+	
 	/**
 	 * Deletes the messages from the message buffer that are known to be ACKed
 	 */
@@ -185,7 +198,6 @@ public class MaxPropRouter extends ActiveRouter {
 	
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
@@ -285,33 +297,32 @@ public class MaxPropRouter extends ActiveRouter {
 	/**
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host, 
-	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * Double.MAX_VALUE is returned. Costs to all hosts are calculated at
+	 * once and cached until the meeting probabilities change so that the 
+	 * lookups done while sorting messages are cheap.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or 
 	 * Double.MAX_VALUE if such a path doesn't exist
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
-		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
-			this.allProbs.put(getHost().getAddress(), this.probs);
+		/* check if the last used costs are OK */
+		if (this.lastCosts == null || lastCostFrom != from) {
 			int fromIndex = from.getAddress();
+			this.lastCosts = costsFrom.get(fromIndex);
 			
-			/* calculate paths only to nodes we have messages to 
-			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
-			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
+			if (this.lastCosts == null) {
+				/* no cached costs from this host -> calculate new costs */
+				this.allProbs.put(getHost().getAddress(), this.probs);
+				this.lastCosts = dijkstra.getAllCosts(fromIndex);
+				this.costsFrom.put(fromIndex, this.lastCosts);
 			}
-						
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
 			this.lastCostFrom = from; // store source host for caching checks
 		}
 		
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
+		int toIndex = to.getAddress();
+		if (toIndex < lastCosts.length) {
+			return lastCosts[toIndex];
 		}
 		else {
 			/* there's no known path to the given host */
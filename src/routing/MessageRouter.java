@@ -22,6 +22,10 @@ import core.SettingsError;
 import core.SimClock;
 import core.SimError;
 import core.Tuple;
+import core.World;
+import routing.buffer.EvictionIndex;
+import routing.buffer.IncomingBuffer;
+import routing.buffer.MessageBuffer;
 
 /**
  * Superclass for message routers.
@@ -70,10 +74,10 @@ public abstract class MessageRouter {
 	public static final int DENIED_CHECKIN = -6;
 	
 	protected List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
+	/** The messages being transferred (by message ID and previous hop) */
+	private IncomingBuffer incomingMessages;
 	/** The messages this router is carrying */
-	private HashMap<String, Message> messages; 
+	private MessageBuffer messages; 
 	/** The messages this router has received as the final recipient */
 	protected HashMap<String, Message> deliveredMessages;
 	/** Host where this router belongs to */
@@ -84,6 +88,9 @@ public abstract class MessageRouter {
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** should random queue mode order messages by their IDs instead of
+	 * identity hash codes (hosts are updated concurrently) */
+	private boolean randomQueueById;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>>	applications = null;
@@ -115,7 +122,10 @@ public abstract class MessageRouter {
 		else {
 			sendQueueMode = Q_MODE_RANDOM;
 		}
-		
+
+		Settings os = new Settings(World.SETTINGS_NS);
+		this.randomQueueById = os.contains(World.PARALLEL_UPDATES_S) &&
+			os.getBoolean(World.PARALLEL_UPDATES_S);
 	}
 	
 	/**
@@ -126,8 +136,8 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void initialize(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
+		this.incomingMessages = new IncomingBuffer();
+		this.messages = new MessageBuffer();
 		this.deliveredMessages = new HashMap<String, Message>();
 		this.mListeners = mListeners;
 		this.host = host;
@@ -141,6 +151,7 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.randomQueueById = r.randomQueueById;
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -188,7 +199,7 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	protected boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return this.messages.contains(id);
 	}
 	
 	/**
@@ -212,7 +223,34 @@ public abstract class MessageRouter {
 	 * @return a reference to the messages of this router in collection
 	 */
 	public Collection<Message> getMessageCollection() {
-		return this.messages.values();
+		return this.messages.getMessages();
+	}
+	
+	/**
+	 * Returns the messages of this router whose final recipient is the given
+	 * host. The messages are looked up from an index so the buffer is not
+	 * gone through. The same note about modifications applies as for 
+	 * {@link #getMessageCollection()}.
+	 * @param to The destination host
+	 * @return a reference to the messages destined to the host
+	 */
+	protected List<Message> getMessagesTo(DTNHost to) {
+		return this.messages.getMessagesTo(to);
+	}
+
+	/**
+	 * Returns the messages of this router whose final recipient is one of
+	 * the given hosts, in the order they were added to the buffer.
+	 * @param to The destination hosts (must be distinct)
+	 * @param nrof Number of hosts in the array
+	 * @param toIndexes Array for the destination host indexes of the
+	 * returned messages (or null)
+	 * @return the messages destined to the hosts
+	 * @see MessageBuffer#getMessagesTo(DTNHost[], int, int[])
+	 */
+	protected List<Message> getMessagesTo(DTNHost[] to, int nrof,
+			int[] toIndexes) {
+		return this.messages.getMessagesTo(to, nrof, toIndexes);
 	}
 	
 	/**
@@ -239,17 +277,33 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public int getFreeBufferSize() {
-		int occupancy = 0;
-		
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 		
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-		
-		return this.getBufferSize() - occupancy;
+		return this.getBufferSize() - (int)this.messages.getOccupancy();
+	}
+	
+	/**
+	 * Returns the total size of the messages in the buffer
+	 * @return The buffer occupancy in bytes
+	 */
+	protected long getBufferOccupancy() {
+		return this.messages.getOccupancy();
+	}
+	
+	/**
+	 * Adds an eviction index to the message buffer. The index keeps the
+	 * buffered messages in the given order as messages are added and
+	 * removed.
+	 * @param order The order of the messages in the index (first message
+	 * is the one to evict first)
+	 * @return The index
+	 * @see EvictionIndex#RECEIVE_TIME_ORDER
+	 * @see EvictionIndex#EXPIRY_ORDER
+	 */
+	protected EvictionIndex addEvictionIndex(Comparator<Message> order) {
+		return this.messages.addIndex(order);
 	}
 	
 	/**
@@ -367,7 +421,7 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		this.incomingMessages.put(m, from);
 	}
 	
 	/**
@@ -378,7 +432,7 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		return this.incomingMessages.remove(Message.getIdIndex(id), from);
 	}
 	
 	/**
@@ -388,7 +442,7 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+		return this.incomingMessages.containsId(Message.getIdIndex(id));
 	}
 	
 	/**
@@ -399,7 +453,7 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		this.messages.add(m);
 		
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -529,6 +583,13 @@ public abstract class MessageRouter {
 	protected int compareByQueueMode(Message m1, Message m2) {
 		switch (sendQueueMode) {
 		case Q_MODE_RANDOM:
+			if (randomQueueById) {
+				/* identity hashes depend on the thread that first asks for
+				 * them; scrambled ID hashes don't */
+				int h1 = m1.getId().hashCode() * 0x9E3779B9;
+				int h2 = m2.getId().hashCode() * 0x9E3779B9;
+				return Integer.compare(h1, h2);
+			}
 			/* return randomly (enough) but consistently -1, 0 or 1 */
 			return (m1.hashCode()/2 + m2.hashCode()/2) % 3 - 1; 
 		case Q_MODE_FIFO:
@@ -562,7 +623,7 @@ public abstract class MessageRouter {
 		ri.addMoreInfo(delivered);
 		ri.addMoreInfo(cons);
 		
-		for (Message m : this.incomingMessages.values()) {
+		for (Message m : this.incomingMessages.getMessages()) {
 			incoming.addMoreInfo(new RoutingInfo(m));
 		}
 		
@@ -615,6 +676,18 @@ public abstract class MessageRouter {
 		return apps;
 	}
 
+	/**
+	 * Returns all the applications attached to this router.
+	 * @return The applications
+	 */
+	public Collection<Application> getAllApplications() {
+		LinkedList<Application> apps = new LinkedList<Application>();
+		for (Collection<Application> idApps : this.applications.values()) {
+			apps.addAll(idApps);
+		}
+		return apps;
+	}
+
 	/**
 	 * Creates a replicate of this router. The replicate has the same
 	 * settings as this router but empty buffers and routing tables.
@@ -22,6 +22,7 @@ import core.Message;
 import core.Settings;
 import core.SimClock;
 import core.Tuple;
+import routing.prophet.PredictabilityTable;
 
 /**
  * Implementation of PRoPHETv2" router as described in
@@ -58,13 +59,11 @@ public class ProphetV2Router extends ActiveRouter {
 	private double beta;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
+	private PredictabilityTable preds;
 
 	/** last encouter timestamp (sim)time */
 	private Map<DTNHost, Double> lastEncouterTime;
 	
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -110,7 +109,7 @@ public class ProphetV2Router extends ActiveRouter {
 	 * Initializes predictability hash
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new PredictabilityTable(GAMMA, secondsInTimeUnit);
 	}
 	
 	@Override
@@ -144,9 +143,7 @@ public class ProphetV2Router extends ActiveRouter {
 			else
 				PEnc=PEncMax;
 
-		double oldValue = getPredFor(host);
-		double newValue = oldValue + (1 - oldValue) * PEnc;
-		preds.put(host, newValue);
+		preds.encounter(host, PEnc);
 		lastEncouterTime.put(host, simTime);
 	}
 	
@@ -172,13 +169,7 @@ public class ProphetV2Router extends ActiveRouter {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host); // the table ages the value when reading it
 	}
 	
 	/**
@@ -193,54 +184,12 @@ public class ProphetV2Router extends ActiveRouter {
 			" with other routers of same type";
 		
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
-			((ProphetV2Router)otherRouter).getDeliveryPreds();
-		
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-
-//ProphetV2 max(old,new)
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pForHost * e.getValue() * beta;
-			if(pNew>pOld)
-				preds.put(e.getKey(), pNew);
-		
-		}
+		//ProphetV2 max(old,new)
+		preds.updateTransitiveMax(((ProphetV2Router)otherRouter).preds, 
+				getHost(), pForHost, beta);
 	}
 
-	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
-	 * @see #SECONDS_IN_UNIT_S
-	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / 
-			secondsInTimeUnit;
-		
-		if (timeDiff == 0) {
-			return;
-		}
-		
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-		
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-	
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
-	}
-	
+
 	@Override
 	public void update() {
 		super.update();
@@ -333,14 +282,12 @@ public class ProphetV2Router extends ActiveRouter {
 	
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
 		RoutingInfo top = super.getRoutingInfo();
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 				" delivery prediction(s)");
 		
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (DTNHost host : preds.getHosts()) {
+			double value = preds.get(host);
 			
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
 					host, value)));
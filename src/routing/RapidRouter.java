@@ -17,6 +17,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import routing.rapid.DelayEntry;
 import routing.rapid.DelayTable;
@@ -28,6 +30,18 @@ import core.*;
  * RAPID router
  */
 public class RapidRouter extends ActiveRouter {
+	/** Router's setting namespace ({@value})*/
+	public static final String RAPID_NS = "RapidRouter";
+	/**
+	 * Minimum number of message-connection pairs whose utilities are 
+	 * calculated concurrently -setting id ({@value}). Zero disables 
+	 * the concurrent calculation. */
+	public static final String PARALLEL_THRESHOLD_S = "parallelThreshold";
+	/** Default value for the parallel threshold ({@value}) */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 0;
+	/** Number of pairs one utility calculation task handles at least */
+	private static final int MIN_PAIRS_PER_TASK = 32;
+	
 	// timestamp for meeting a host in seconds
 	private double timestamp;
 	// delay table which contains meta data
@@ -38,6 +52,8 @@ public class RapidRouter extends ActiveRouter {
 	
 	private final UtilityAlgorithm ALGORITHM = UtilityAlgorithm.AVERAGE_DELAY;
 	private static final double INFINITY = 99999;
+	// minimum number of pairs whose utilities are calculated concurrently
+	private int parallelThreshold;
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -50,6 +66,13 @@ public class RapidRouter extends ActiveRouter {
 		delayTable = null;
 		timestamp = 0.0;
 		hostMapping = new HashMap<Integer, DTNHost>();
+		
+		Settings rapidSettings = new Settings(RAPID_NS);
+		if (rapidSettings.contains(PARALLEL_THRESHOLD_S)) {
+			parallelThreshold = rapidSettings.getInt(PARALLEL_THRESHOLD_S);
+		} else {
+			parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+		}
 	}
 	
 	@Override
@@ -69,6 +92,7 @@ public class RapidRouter extends ActiveRouter {
 		delayTable = r.delayTable;
 		timestamp = r.timestamp;
 		hostMapping = r.hostMapping;
+		parallelThreshold = r.parallelThreshold;
 	}
 	
 	@Override
@@ -131,8 +155,7 @@ public class RapidRouter extends ActiveRouter {
 		
 		for (Message m : getMessageCollection()) {
 			int to = m.getTo().getAddress();
-			MeetingEntry entry = otherRouter.getDelayTable().getMeetingEntry(from, to);
-			if (entry != null) {
+			if (otherRouter.getDelayTable().hasMet(from, to)) {
 				delayTable.getDelayEntryByMessageId(m.getId()).setChanged(true);
 			}
 		}
@@ -151,13 +174,11 @@ public class RapidRouter extends ActiveRouter {
 			assert(delayEntry != null);
 			otherDelayEntry = otherRouter.delayTable.getDelayEntryByMessageId(m.getId());
 			
-			if (delayEntry.getDelays() == null) continue;
 			//for all hosts check delay entries and create new if they doesn't exist
-			//Entry<DTNHost host, Tuple<Double delay, Double lastUpdate>>
-			for (Entry<DTNHost, Tuple<Double, Double>> entry : delayEntry.getDelays()) {
-				DTNHost myHost = entry.getKey();
-				Double myDelay = entry.getValue().getKey();
-				Double myTime = entry.getValue().getValue();
+			for (int i = 0; i < delayEntry.size(); i++) {
+				DTNHost myHost = delayEntry.getHost(i);
+				double myDelay = delayEntry.getDelay(i);
+				double myTime = delayEntry.getLastUpdate(i);
 
 				//create a new host entry if host entry at other host doesn't exist
 				if ((otherDelayEntry == null) || (!otherDelayEntry.contains(myHost))) {
@@ -170,7 +191,7 @@ public class RapidRouter extends ActiveRouter {
 				}
 				else {
 					//check last update time of other hosts entry and update it 
-					if (otherDelayEntry.isOlderThan(myHost, delayEntry.getLastUpdate(myHost))) {
+					if (otherDelayEntry.isOlderThan(myHost, myTime)) {
 						//parameters: 
 						//m The message 
 						//myHost The host which contains a copy of this message
@@ -180,7 +201,7 @@ public class RapidRouter extends ActiveRouter {
 						otherRouter.updateDelayTableEntry(m, myHost, myDelay, myTime);
 					}
 					
-					if ((otherDelayEntry.isAsOldAs(myHost, delayEntry.getLastUpdate(myHost))) && (delayEntry.getDelayOf(myHost) > otherDelayEntry.getDelayOf(myHost))) {
+					if ((otherDelayEntry.isAsOldAs(myHost, myTime)) && (myDelay > otherDelayEntry.getDelayOf(myHost))) {
 						//parameters: 
 						//m The message 
 						//myHost The host which contains a copy of this message
@@ -197,33 +218,9 @@ public class RapidRouter extends ActiveRouter {
 	private void synchronizeMeetingTimes(Connection con) {
 		DTNHost otherHost = con.getOtherNode(getHost());
 		RapidRouter otherRouter = (RapidRouter) otherHost.getRouter();
-		MeetingEntry meetingEntry = null;
-		MeetingEntry otherMeetingEntry = null;
 		
 		//synchronize all meeting time entries
-		for (int i = 0; i < delayTable.getMeetingMatrixDimension(); i++) {
-			for (int k = 0; k < delayTable.getMeetingMatrixDimension(); k++) {
-				meetingEntry = delayTable.getMeetingEntry(i, k);
-				
-				if (meetingEntry != null) {
-					otherMeetingEntry = otherRouter.delayTable.getMeetingEntry(i, k);
-					//create a new meeting entry if meeting entry at other host doesn't exist
-					if (otherMeetingEntry == null){
-						otherRouter.delayTable.setAvgMeetingTime(i, k, meetingEntry.getAvgMeetingTime(), meetingEntry.getLastUpdate(), meetingEntry.getWeight());
-					}
-					else {
-						//check last update time of other hosts entry and update it 
-						if (otherMeetingEntry.isOlderThan(meetingEntry.getLastUpdate())) {
-							otherRouter.delayTable.setAvgMeetingTime(i, k, meetingEntry.getAvgMeetingTime(), meetingEntry.getLastUpdate(), meetingEntry.getWeight());
-						}
-						
-						if ((otherMeetingEntry.isAsOldAs(meetingEntry.getLastUpdate())) && (meetingEntry.getAvgMeetingTime() > otherMeetingEntry.getAvgMeetingTime())) {							
-							otherRouter.delayTable.setAvgMeetingTime(i, k, meetingEntry.getAvgMeetingTime(), meetingEntry.getLastUpdate(), meetingEntry.getWeight());
-						}
-					}
-				}
-			}
-		}
+		delayTable.copyMeetingTimesTo(otherRouter.delayTable);
 	}
 	
 	private void synchronizeAckedMessageIDs(Connection con) {
@@ -353,7 +350,6 @@ public class RapidRouter extends ActiveRouter {
 	 * @return the current MU value
 	 */
 	private double getMarginalUtility(Message msg, RapidRouter router, DTNHost host) {
-		double marginalUtility = 0.0;	 
 		double utility = 0.0;			// U(i): The utility of the message (packet) i
 		double utilityOld = 0.0;  
 		
@@ -361,6 +357,20 @@ public class RapidRouter extends ActiveRouter {
 		utility = router.computeUtility(msg, host, true);
 		utilityOld = this.computeUtility(msg, host, true);
 		
+		return getMarginalUtility(msg, utility, utilityOld);
+	}
+	
+	/**
+	 * Returns the marginal utility (MU) value of a message for the given 
+	 * utility values 
+	 * @param msg The message
+	 * @param utility The utility of the message at the receiving host
+	 * @param utilityOld The utility of the message at this host
+	 * @return the MU value
+	 */
+	private static double getMarginalUtility(Message msg, double utility, double utilityOld) {
+		double marginalUtility = 0.0;	 
+		
 		// s(i): The size of message i
 		// delta(U(i)) / s(i)
 		if ((utilityOld == -INFINITY) && (utility != -INFINITY)) marginalUtility = (Math.abs(utility) / msg.getSize());
@@ -371,6 +381,53 @@ public class RapidRouter extends ActiveRouter {
 		return marginalUtility;
 	}
 	
+	/**
+	 * Returns the marginal utility (MU) values for message-router pairs. 
+	 * The values are the same as if 
+	 * {@link #getMarginalUtility(Message, RapidRouter, DTNHost)} was called
+	 * for the pairs in order: the delays of all the pairs are first estimated
+	 * without changing the delay tables (concurrently if there are at least 
+	 * {@link #PARALLEL_THRESHOLD_S} pairs), and the delay tables are 
+	 * updated after that in the order of the pairs.
+	 * @param msgs The messages of the pairs
+	 * @param pairMsgs Indexes of the pairs' messages in the message array
+	 * @param pairRouters Routers of the pairs. Pairs of the same message 
+	 * must have different routers.
+	 * @param nrofPairs Number of pairs
+	 * @return the MU values of the pairs
+	 */
+	private double[] getMarginalUtilities(Message[] msgs, int[] pairMsgs, RapidRouter[] pairRouters, int nrofPairs) {
+		DTNHost host = getHost();
+		double[] utilities = new double[nrofPairs];
+		
+		if (ALGORITHM != UtilityAlgorithm.AVERAGE_DELAY) {
+			for (int i = 0; i < nrofPairs; i++) {
+				utilities[i] = getMarginalUtility(msgs[pairMsgs[i]], pairRouters[i], host);
+			}
+			return utilities;
+		}
+		
+		DelayEstimates estimates = new DelayEstimates(msgs, pairMsgs, pairRouters, nrofPairs);
+		if ((parallelThreshold > 0) && (nrofPairs >= parallelThreshold)) {
+			ForkJoinPool.commonPool().invoke(estimates);
+		}
+		else {
+			estimates.estimate(0, estimates.end);
+		}
+		
+		double time = SimClock.getTime();
+		for (int i = 0; i < nrofPairs; i++) {
+			int m = pairMsgs[i];
+			if (estimates.pairUpdates[i]) pairRouters[i].updateDelayTableEntry(msgs[m], host, estimates.pairDelays[i], time);
+			if (estimates.ownUpdates[m]) updateDelayTableEntry(msgs[m], host, estimates.ownDelays[m], time);
+			
+			// U(i) = -D(i)
+			utilities[i] = getMarginalUtility(msgs[m], -estimates.pairDelays[i], -estimates.ownDelays[m]);
+		}
+		
+		return utilities;
+	}
+	
 	private double computeUtility(Message msg, DTNHost host, boolean recompute) {
 		double utility = 0.0;			// U(i): The utility of the message (packet) i
 		double packetDelay = 0.0;		// D(i): The expected delay of message i
@@ -456,35 +513,64 @@ public class RapidRouter extends ActiveRouter {
 	 * @return the expected packet delay
 	 */
 	private double estimateDelay(Message msg, DTNHost host, boolean recompute) {	
-		double remainingTime = 0.0;						//a(i): random variable that determines the	remaining time to deliver message i
 		double packetDelay = 0.0;						//D(i): expected delay of message i
 		
-		//if delay table entry for this message doesn't exist or the delay table
-		//has changed recompute the delay entry
-		
-		if ((recompute) && ((delayTable.delayHasChanged(msg.getId())) || 
-				(delayTable.getDelayEntryByMessageId(msg.getId()).getDelayOf(host) == null))) { 
-			// compute remaining time by using metadata
-			remainingTime = computeRemainingTime(msg);
-			packetDelay = Math.min(INFINITY, computePacketDelay(msg, host, remainingTime));
+		if ((recompute) && (delayNeedsUpdate(msg, host))) { 
+			packetDelay = recomputeDelay(msg, host);
 			
 			//update delay table
 			updateDelayTableEntry(msg, host, packetDelay, SimClock.getTime());
 		}
-		else packetDelay = delayTable.getDelayEntryByMessageId(msg.getId()).getDelayOf(host);
+		else packetDelay = getStoredDelay(msg, host);
 		
 		return packetDelay;
 	}
 	
+	/**
+	 * Returns the delay of a message stored in the delay table
+	 * @param msg The message
+	 * @param host The host the delay is for
+	 * @return the stored delay
+	 */
+	private double getStoredDelay(Message msg, DTNHost host) {
+		return delayTable.getDelayEntryByMessageId(msg.getId()).getDelayOf(host);
+	}
+	
+	/**
+	 * Returns true if the delay table entry for this message doesn't exist or
+	 * the delay table has changed, i.e., if the delay entry should be 
+	 * recomputed
+	 * @param msg The message
+	 * @param host The host the delay is for
+	 * @return true if the delay should be recomputed
+	 */
+	private boolean delayNeedsUpdate(Message msg, DTNHost host) {
+		return ((delayTable.delayHasChanged(msg.getId())) || 
+				(delayTable.getDelayEntryByMessageId(msg.getId()).getDelayOf(host) == null));
+	}
+	
+	/**
+	 * Computes the expected delay of a message without updating the delay
+	 * table
+	 * @param msg The message
+	 * @param host The host the delay is for
+	 * @return the expected packet delay
+	 */
+	private double recomputeDelay(Message msg, DTNHost host) {
+		// compute remaining time by using metadata
+		double remainingTime = computeRemainingTime(msg);
+		return Math.min(INFINITY, computePacketDelay(msg, host, remainingTime));
+	}
+	
 	private double computeRemainingTime(Message msg) {
 		double transferTime = INFINITY;					//MX(i):random variable for corresponding transfer time delay
 		double remainingTime = 0.0;						//a(i): random variable that determines the	remaining time to deliver message i
 		
 		remainingTime = computeTransferTime(msg, msg.getTo());
-		if (delayTable.getDelayEntryByMessageId(msg.getId()) != null) {
-			//Entry<DTNHost host, Tuple<Double delay, Double lastUpdate>>
-			for (Entry<DTNHost, Tuple<Double, Double>> entry : delayTable.getDelayEntryByMessageId(msg.getId()).getDelays()) {
-				DTNHost host = entry.getKey();
+		DelayEntry delayEntry = delayTable.getDelayEntryByMessageId(msg.getId());
+		if (delayEntry != null) {
+			for (int i = 0; i < delayEntry.size(); i++) {
+				DTNHost host = delayEntry.getHost(i);
 				if (host == getHost()) continue;	// skip
 				transferTime = ((RapidRouter) host.getRouter()).computeTransferTime(msg, msg.getTo()); //MXm(i)	with m element of [0...k]
 				remainingTime = Math.min(transferTime, remainingTime);	//a(i) = min(MX0(i), MX1(i), ... ,MXk(i)) 
@@ -495,8 +581,6 @@ public class RapidRouter extends ActiveRouter {
 	}
 	
 	private double computeTransferTime(Message msg, DTNHost host) {
-		Collection<Message> msgCollection = getMessageCollection();
-//		List<Tuple<Message, Double>> list=new ArrayList<Tuple<Message,Double>>();
 		double transferOpportunity = 0;					//B:    expected transfer opportunity in bytes between X and Z
 		double packetsSize = 0.0;						//b(i): sum of sizes of packets that precede the actual message
 		double transferTime = INFINITY;					//MX(i):random variable for corresponding transfer time delay
@@ -513,21 +597,19 @@ public class RapidRouter extends ActiveRouter {
 //		Collections.sort(list, new TupleComparator2());
 		
 		// compute sum of sizes of packets that precede the actual message 
-		for (Message m : msgCollection) {
-//		for (Tuple<Message, Double> t : list) {
-//			Message m = t.getKey();
-			if (m.equals(msg)) continue; //skip
-			packetsSize = packetsSize + m.getSize();	
+		// (all the other messages in the buffer)
+		packetsSize = getBufferOccupancy();
+		if (getMessage(msg.getId()) == msg) {
+			packetsSize = packetsSize - msg.getSize();	//skip
 		}
 		
 		// compute transfer time  
 		transferOpportunity = delayTable.getAvgTransferOpportunity();	//B in bytes
 		
-		MeetingEntry entry = delayTable.getIndirectMeetingEntry(this.getHost().getAddress(), host.getAddress());
-		// a meeting entry of null means that these hosts have never met -> set transfer time to maximum
-		if (entry == null) transferTime = INFINITY;		//MX(i)
+		meetingTime = delayTable.getAvgMeetingTimeTo(host.getAddress());	//MXZ
+		// no meeting entry means that these hosts have never met -> set transfer time to maximum
+		if (meetingTime == DelayTable.NO_MEETING) transferTime = INFINITY;		//MX(i)
 		else {
-			meetingTime = entry.getAvgMeetingTime();	//MXZ
 			transferTime = meetingTime * Math.ceil(packetsSize / transferOpportunity);	// MX(i) = MXZ * ceil[b(i) / B]
 		}		
 
@@ -571,30 +653,63 @@ public class RapidRouter extends ActiveRouter {
 	private Tuple<Tuple<Message, Connection>, Double> tryOtherMessages() {
 		List<Tuple<Tuple<Message, Connection>, Double>> messages = new ArrayList<Tuple<Tuple<Message, Connection>, Double>>();			
 		Collection<Message> msgCollection = getMessageCollection();
-		
-		for (Connection con : getHost().getConnections()) {
+		Message[] msgs = msgCollection.toArray(new Message[msgCollection.size()]);
+		List<Connection> connections = getHost().getConnections();
+		int maxPairs = msgs.length * connections.size();
+		
+		//message-connection pairs whose utilities are calculated
+		int[] pairMsgs = new int[maxPairs];
+		Connection[] pairCons = new Connection[maxPairs];
+		RapidRouter[] pairRouters = new RapidRouter[maxPairs];
+		int nrofPairs = 0;
+		List<RapidRouter> routers = new ArrayList<RapidRouter>();
+		boolean distinctRouters = true;
+		
+		for (Connection con : connections) {
 			DTNHost other = con.getOtherNode(getHost());
 			RapidRouter otherRouter = (RapidRouter) other.getRouter();
 
 			if (otherRouter.isTransferring()) {
 				continue; // skip hosts that are transferring
 			}
+			
+			if (routers.contains(otherRouter)) {
+				distinctRouters = false; // more than one connection to a host
+			}
+			routers.add(otherRouter);
 
-			double mu=0.0;
-			for (Message m : msgCollection) {
-				if (otherRouter.hasMessage(m.getId())) {
+			for (int i = 0; i < msgs.length; i++) {
+				if (otherRouter.hasMessage(msgs[i].getId())) {
 					continue; // skip messages that the other one already has
 				}
 				
-				mu=getMarginalUtility(m, con, getHost());
-				if ((mu) <= 0) {
-					continue; // skip messages with a marginal utility smaller or equals to 0.
-				}
-				
-				Tuple<Message, Connection> t1=new Tuple<Message, Connection>(m, con);
-				Tuple<Tuple<Message, Connection>, Double> t2=new Tuple<Tuple<Message, Connection>, Double>(t1, mu);
-				messages.add(t2);
+				pairMsgs[nrofPairs] = i;
+				pairCons[nrofPairs] = con;
+				pairRouters[nrofPairs] = otherRouter;
+				nrofPairs++;
+			}
+		}
+		
+		double[] mus;
+		if (distinctRouters) {
+			mus = getMarginalUtilities(msgs, pairMsgs, pairRouters, nrofPairs);
+		}
+		else {
+			mus = new double[nrofPairs];
+			for (int i = 0; i < nrofPairs; i++) {
+				mus[i] = getMarginalUtility(msgs[pairMsgs[i]], pairCons[i], getHost());
+			}
+		}
+		
+		for (int i = 0; i < nrofPairs; i++) {
+			double mu = mus[i];
+			if ((mu) <= 0) {
+				continue; // skip messages with a marginal utility smaller or equals to 0.
 			}
+			
+			Tuple<Message, Connection> t1=new Tuple<Message, Connection>(msgs[pairMsgs[i]], pairCons[i]);
+			Tuple<Tuple<Message, Connection>, Double> t2=new Tuple<Tuple<Message, Connection>, Double>(t1, mu);
+			messages.add(t2);
 		}
 		delayTable.setChanged(false);
 		if (messages == null) return null;
@@ -664,6 +779,95 @@ public class RapidRouter extends ActiveRouter {
 		}
 	}
 	
+	/**
+	 * Delay estimates for message-router pairs and for the messages at this
+	 * host. The estimates are calculated without changing any delay table, 
+	 * so the work can be split to tasks that are run concurrently.
+	 */
+	private class DelayEstimates extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Message[] msgs;
+		private final int[] pairMsgs;
+		private final RapidRouter[] pairRouters;
+		/** estimated delays at this host (by message index) */
+		private final double[] ownDelays;
+		/** should the delays at this host be updated to the delay table */
+		private final boolean[] ownUpdates;
+		/** does the delay at this host need to be estimated */
+		private final boolean[] ownNeeded;
+		/** estimated delays at the other hosts (by pair index) */
+		private final double[] pairDelays;
+		/** should the delays at the other hosts be updated */
+		private final boolean[] pairUpdates;
+		/** range of the work indexes: messages first, then the pairs */
+		private final int start;
+		private final int end;
+		
+		public DelayEstimates(Message[] msgs, int[] pairMsgs, RapidRouter[] pairRouters, int nrofPairs) {
+			this.msgs = msgs;
+			this.pairMsgs = pairMsgs;
+			this.pairRouters = pairRouters;
+			this.ownDelays = new double[msgs.length];
+			this.ownUpdates = new boolean[msgs.length];
+			this.ownNeeded = new boolean[msgs.length];
+			this.pairDelays = new double[nrofPairs];
+			this.pairUpdates = new boolean[nrofPairs];
+			this.start = 0;
+			this.end = msgs.length + nrofPairs;
+			
+			for (int i = 0; i < nrofPairs; i++) {
+				ownNeeded[pairMsgs[i]] = true;
+			}
+		}
+		
+		private DelayEstimates(DelayEstimates parent, int start, int end) {
+			this.msgs = parent.msgs;
+			this.pairMsgs = parent.pairMsgs;
+			this.pairRouters = parent.pairRouters;
+			this.ownDelays = parent.ownDelays;
+			this.ownUpdates = parent.ownUpdates;
+			this.ownNeeded = parent.ownNeeded;
+			this.pairDelays = parent.pairDelays;
+			this.pairUpdates = parent.pairUpdates;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			if (end - start <= MIN_PAIRS_PER_TASK) {
+				estimate(start, end);
+				return;
+			}
+			
+			int middle = (start + end) >>> 1;
+			invokeAll(new DelayEstimates(this, start, middle), 
+					new DelayEstimates(this, middle, end));
+		}
+		
+		/**
+		 * Estimates the delays of the given range of work indexes
+		 */
+		private void estimate(int from, int to) {
+			DTNHost host = getHost();
+			for (int i = from; i < to; i++) {
+				if (i < msgs.length) {
+					if (!ownNeeded[i]) continue;
+					RapidRouter r = RapidRouter.this;
+					ownUpdates[i] = r.delayNeedsUpdate(msgs[i], host);
+					ownDelays[i] = (ownUpdates[i] ? r.recomputeDelay(msgs[i], host) : r.getStoredDelay(msgs[i], host));
+				}
+				else {
+					int k = i - msgs.length;
+					RapidRouter r = pairRouters[k];
+					Message m = msgs[pairMsgs[k]];
+					pairUpdates[k] = r.delayNeedsUpdate(m, host);
+					pairDelays[k] = (pairUpdates[k] ? r.recomputeDelay(m, host) : r.getStoredDelay(m, host));
+				}
+			}
+		}
+	}
+	
 	private enum UtilityAlgorithm {
 	    AVERAGE_DELAY,
 	    MISSED_DEADLINES,
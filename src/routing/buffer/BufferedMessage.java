@@ -0,0 +1,24 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.buffer;
+
+import core.Message;
+
+/**
+ * A message in a {@link MessageBuffer} together with its insertion sequence
+ * number. The sequence number orders messages that are equal by the order
+ * of an {@link EvictionIndex} and messages of different destination hosts.
+ */
+final class BufferedMessage {
+	/** the buffered message */
+	final Message message;
+	/** sequence number of the message in its buffer */
+	final long seq;
+
+	BufferedMessage(Message message, long seq) {
+		this.message = message;
+		this.seq = seq;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.buffer;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import core.Message;
+
+/**
+ * Index that keeps the messages of a {@link MessageBuffer} in eviction
+ * order: the first message of the index is the one that should be removed
+ * first. The order is given by a comparator; messages that are equal by the
+ * comparator are in the order they were added to the buffer. Messages are
+ * kept in a balanced search tree so adding and removing a message takes
+ * O(log n) time and the messages can be gone through in order.
+ * <P>
+ * The comparator must not depend on anything that changes while the
+ * messages are in the buffer (e.g., current simulation time).</P>
+ * @see MessageBuffer#addIndex(Comparator)
+ */
+public class EvictionIndex implements Iterable<Message> {
+	/** Eviction order by receive time (oldest received first) */
+	public static final Comparator<Message> RECEIVE_TIME_ORDER =
+		new Comparator<Message>() {
+			public int compare(Message m1, Message m2) {
+				return Double.compare(m1.getReceiveTime(),
+						m2.getReceiveTime());
+			}
+		};
+
+	/** Eviction order by expiry time (first to expire first) */
+	public static final Comparator<Message> EXPIRY_ORDER =
+		new Comparator<Message>() {
+			public int compare(Message m1, Message m2) {
+				return Double.compare(m1.getExpiryTime(), m2.getExpiryTime());
+			}
+		};
+
+	/**
+	 * Filter for messages that should not be evicted
+	 */
+	public interface Exclusion {
+		/**
+		 * Returns true if the message should not be evicted
+		 * @param m The message
+		 * @return true if the message must be skipped
+		 */
+		public boolean isExcluded(Message m);
+	}
+
+	private TreeSet<BufferedMessage> messages;
+
+	/**
+	 * Creates an empty index
+	 * @param order The eviction order
+	 */
+	EvictionIndex(final Comparator<Message> order) {
+		this.messages = new TreeSet<BufferedMessage>(
+				new Comparator<BufferedMessage>() {
+			public int compare(BufferedMessage b1, BufferedMessage b2) {
+				int c = order.compare(b1.message, b2.message);
+				if (c != 0) {
+					return c;
+				}
+				return b1.seq < b2.seq ? -1 : (b1.seq == b2.seq ? 0 : 1);
+			}
+		});
+	}
+
+	void add(BufferedMessage bm) {
+		this.messages.add(bm);
+	}
+
+	void remove(BufferedMessage bm) {
+		this.messages.remove(bm);
+	}
+
+	/**
+	 * Returns the first message in eviction order
+	 * @return The message or null if the buffer is empty
+	 */
+	public Message first() {
+		return messages.isEmpty() ? null : messages.first().message;
+	}
+
+	/**
+	 * Returns the first message in eviction order that is not excluded
+	 * @param exclusion Which messages to skip (or null for none)
+	 * @return The message or null if all messages are excluded
+	 */
+	public Message first(Exclusion exclusion) {
+		if (exclusion == null) {
+			return first();
+		}
+		for (BufferedMessage bm : messages) {
+			if (!exclusion.isExcluded(bm.message)) {
+				return bm.message;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of messages in the index
+	 * @return the number of messages
+	 */
+	public int size() {
+		return messages.size();
+	}
+
+	/**
+	 * Returns an iterator that goes through the messages in eviction order.
+	 * The buffer must not be modified during the iteration.
+	 * @return the iterator
+	 */
+	public Iterator<Message> iterator() {
+		final Iterator<BufferedMessage> i = messages.iterator();
+		return new Iterator<Message>() {
+			public boolean hasNext() {
+				return i.hasNext();
+			}
+			public Message next() {
+				if (!i.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return i.next().message;
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
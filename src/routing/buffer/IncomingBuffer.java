@@ -0,0 +1,165 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Buffer for the messages that are being transferred to a router. Two
+ * messages with the same ID are distinguished by the host they are from.
+ * The messages are stored in an open addressing hash table whose keys are
+ * made of the message ID index (see {@link Message#getIdIndex()}) and the
+ * address of the sending host, so no key objects are created when transfers
+ * start, finish, or are aborted.
+ */
+public class IncomingBuffer {
+	/** initial capacity of the table (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 4;
+
+	private long[] keys;
+	/** messages of the table slots (null for free slots) */
+	private Message[] values;
+	private int size;
+
+	/**
+	 * Creates an empty buffer
+	 */
+	public IncomingBuffer() {
+		this.keys = new long[INITIAL_CAPACITY];
+		this.values = new Message[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Puts a message to the buffer. A message with the same ID from the
+	 * same host is replaced.
+	 * @param m The message to put
+	 * @param from Who the message is from (previous hop)
+	 */
+	public void put(Message m, DTNHost from) {
+		long key = key(m.getIdIndex(), from);
+		int slot = find(key);
+		if (values[slot] == null) {
+			if ((size + 1) * 2 > values.length) {
+				grow();
+				slot = find(key);
+			}
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = m;
+	}
+
+	/**
+	 * Removes and returns a message from the buffer
+	 * @param idIndex Index of the ID of the message
+	 * @param from The host the message is from (previous hop)
+	 * @return The removed message or null if there was no such message
+	 */
+	public Message remove(int idIndex, DTNHost from) {
+		if (idIndex < 0) {
+			return null;
+		}
+		int slot = find(key(idIndex, from));
+		Message m = values[slot];
+		if (m == null) {
+			return null;
+		}
+
+		/* shift the following entries of the probe sequence back */
+		int mask = values.length - 1;
+		int free = slot;
+		for (int i = (slot + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+			int home = hash(keys[i]) & mask;
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				keys[free] = keys[i];
+				values[free] = values[i];
+				free = i;
+			}
+		}
+		values[free] = null;
+		size--;
+		return m;
+	}
+
+	/**
+	 * Returns true if a message with the given ID index is in the buffer
+	 * (from any host)
+	 * @param idIndex Index of the ID of the message
+	 * @return true if such message is incoming
+	 */
+	public boolean containsId(int idIndex) {
+		if (idIndex < 0 || size == 0) {
+			return false;
+		}
+		for (int i=0; i < values.length; i++) {
+			if (values[i] != null && (int)(keys[i] >>> 32) == idIndex) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of messages in the buffer
+	 * @return the number of messages
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns a list of the messages in the buffer
+	 * @return the messages (in no particular order)
+	 */
+	public List<Message> getMessages() {
+		List<Message> list = new ArrayList<Message>(size);
+		for (Message m : values) {
+			if (m != null) {
+				list.add(m);
+			}
+		}
+		return list;
+	}
+
+	private static long key(int idIndex, DTNHost from) {
+		return ((long)idIndex << 32) | (from.getAddress() & 0xFFFFFFFFL);
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	/**
+	 * Returns the slot of the key or the free slot where it should be put
+	 */
+	private int find(long key) {
+		int mask = values.length - 1;
+		int i = hash(key) & mask;
+		while (values[i] != null && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		Message[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new Message[oldValues.length * 2];
+		for (int i=0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.buffer;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Message buffer of a router. Messages are stored by their ID. The buffer
+ * keeps count of the bytes its messages occupy, so the occupancy doesn't
+ * have to be calculated by going through the messages, and keeps the
+ * messages in the eviction indexes that have been added to it. Messages
+ * are also indexed by their destination host so the messages that could be
+ * delivered to a host are found without going through the whole buffer.
+ * Every message gets a sequence number when it's added; the destination
+ * lists are in sequence order and lists of several hosts are merged by it.
+ */
+public class MessageBuffer {
+	private HashMap<String, Message> messages;
+	/** index entries of the messages (null if there are no indexes) */
+	private HashMap<String, BufferedMessage> entries;
+	/** total size of the messages in the buffer */
+	private long occupancy;
+	/** sequence number of the next added message */
+	private long nextSeq;
+	private List<EvictionIndex> indexes;
+	/** messages by their destination host in sequence order (hosts with
+	 * no messages removed) */
+	private HashMap<DTNHost, List<BufferedMessage>> byDestination;
+
+	/**
+	 * Creates an empty buffer
+	 */
+	public MessageBuffer() {
+		this.messages = new HashMap<String, Message>();
+		this.entries = null;
+		this.occupancy = 0;
+		this.nextSeq = 0;
+		this.indexes = new ArrayList<EvictionIndex>(1);
+		this.byDestination = new HashMap<DTNHost, List<BufferedMessage>>();
+	}
+
+	/**
+	 * Adds a message to the buffer. A message with the same ID that is
+	 * already in the buffer is replaced.
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		Message old = messages.put(m.getId(), m);
+		if (old != null) {
+			removed(old);
+		}
+		occupancy += m.getSize();
+
+		BufferedMessage bm = new BufferedMessage(m, nextSeq++);
+		List<BufferedMessage> forDest = byDestination.get(m.getTo());
+		if (forDest == null) {
+			forDest = new ArrayList<BufferedMessage>(2);
+			byDestination.put(m.getTo(), forDest);
+		}
+		forDest.add(bm);
+
+		if (entries != null) {
+			entries.put(m.getId(), bm);
+			for (int i=0, n = indexes.size(); i < n; i++) {
+				indexes.get(i).add(bm);
+			}
+		}
+	}
+
+	/**
+	 * Removes a message from the buffer
+	 * @param id ID of the message to remove
+	 * @return The removed message or null if there was no message with
+	 * the ID
+	 */
+	public Message remove(String id) {
+		Message m = messages.remove(id);
+		if (m != null) {
+			removed(m);
+		}
+		return m;
+	}
+
+	private void removed(Message m) {
+		occupancy -= m.getSize();
+
+		List<BufferedMessage> forDest = byDestination.get(m.getTo());
+		if (forDest.size() == 1) {
+			byDestination.remove(m.getTo());
+		}
+		else {
+			for (int i=0, n = forDest.size(); i < n; i++) {
+				if (forDest.get(i).message == m) {
+					forDest.remove(i);
+					break;
+				}
+			}
+		}
+
+		if (entries != null) {
+			BufferedMessage bm = entries.remove(m.getId());
+			for (int i=0, n = indexes.size(); i < n; i++) {
+				indexes.get(i).remove(bm);
+			}
+		}
+	}
+
+	/**
+	 * Returns the message with the given ID
+	 * @param id ID of the message
+	 * @return The message or null if there is no such message
+	 */
+	public Message get(String id) {
+		return messages.get(id);
+	}
+
+	/**
+	 * Returns true if the buffer has a message with the given ID
+	 * @param id ID of the message
+	 * @return true if the message is in the buffer
+	 */
+	public boolean contains(String id) {
+		return messages.containsKey(id);
+	}
+
+	/**
+	 * Returns the number of messages in the buffer
+	 * @return the number of messages
+	 */
+	public int size() {
+		return messages.size();
+	}
+
+	/**
+	 * Returns the total size of the messages in the buffer
+	 * @return the occupancy in bytes
+	 */
+	public long getOccupancy() {
+		return this.occupancy;
+	}
+
+	/**
+	 * Returns the messages whose final recipient is the given host. The
+	 * returned list is backed by the buffer and must not be modified.
+	 * @param to The destination host
+	 * @return The messages destined to the host (in the order they were
+	 * added to the buffer)
+	 */
+	public List<Message> getMessagesTo(DTNHost to) {
+		final List<BufferedMessage> forDest = byDestination.get(to);
+		if (forDest == null) {
+			return Collections.emptyList();
+		}
+		return new AbstractList<Message>() {
+			public Message get(int index) {
+				return forDest.get(index).message;
+			}
+
+			public int size() {
+				return forDest.size();
+			}
+		};
+	}
+
+	/**
+	 * Returns the messages whose final recipient is one of the given hosts
+	 * in the order they were added to the buffer. Only the destination
+	 * lists of the hosts are gone through.
+	 * @param to The destination hosts (must be distinct)
+	 * @param nrof Number of hosts in the array
+	 * @param toIndexes Array where the index (in <CODE>to</CODE>) of the
+	 * destination of every returned message is stored, or null. Must have
+	 * room for all the returned messages.
+	 * @return The messages destined to the hosts
+	 */
+	public List<Message> getMessagesTo(DTNHost[] to, int nrof,
+			int[] toIndexes) {
+		List<List<BufferedMessage>> lists =
+			new ArrayList<List<BufferedMessage>>(nrof);
+		int total = 0;
+		for (int i=0; i < nrof; i++) {
+			List<BufferedMessage> forDest = byDestination.get(to[i]);
+			lists.add(forDest);
+			total += forDest == null ? 0 : forDest.size();
+		}
+
+		List<Message> result = new ArrayList<Message>(total);
+		int[] next = new int[nrof];
+		while (result.size() < total) {
+			/* the host whose next message was added first */
+			int first = -1;
+			long firstSeq = Long.MAX_VALUE;
+			for (int i=0; i < nrof; i++) {
+				List<BufferedMessage> forDest = lists.get(i);
+				if (forDest != null && next[i] < forDest.size() &&
+						forDest.get(next[i]).seq < firstSeq) {
+					first = i;
+					firstSeq = forDest.get(next[i]).seq;
+				}
+			}
+			if (toIndexes != null) {
+				toIndexes[result.size()] = first;
+			}
+			result.add(lists.get(first).get(next[first]++).message);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the messages in the buffer. The returned collection is backed
+	 * by the buffer and must not be modified.
+	 * @return the messages
+	 */
+	public Collection<Message> getMessages() {
+		return messages.values();
+	}
+
+	/**
+	 * Adds a new eviction index to the buffer. Messages already in the
+	 * buffer are added to the index and the index is kept up to date as
+	 * messages are added to and removed from the buffer.
+	 * @param order The eviction order of the index
+	 * @return The new index
+	 */
+	public EvictionIndex addIndex(Comparator<Message> order) {
+		if (entries == null) {
+			entries = new HashMap<String, BufferedMessage>();
+			for (List<BufferedMessage> forDest : byDestination.values()) {
+				for (BufferedMessage bm : forDest) {
+					entries.put(bm.message.getId(), bm);
+				}
+			}
+		}
+
+		EvictionIndex index = new EvictionIndex(order);
+		for (BufferedMessage bm : entries.values()) {
+			index.add(bm);
+		}
+		indexes.add(index);
+		return index;
+	}
+}
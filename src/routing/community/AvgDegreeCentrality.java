@@ -6,8 +6,6 @@
  */
 package routing.community;
 
-import java.util.*;
-
 import core.*;
 
 /**
@@ -32,7 +30,9 @@ import core.*;
  * degree in each window, and computing average.<p> 
  * 
  * <p>This computation is done at regular intervals instead of every time the 
- * global and local centrality measures are requested.</p> 
+ * global and local centrality measures are requested. The degree of each 
+ * window is counted when contacts end (see {@link EpochDegrees}), so only 
+ * the sum of the degrees is needed for the average.</p> 
  * 
  * <p>This class looks for two settings:
  * <ul>
@@ -112,6 +112,9 @@ public class AvgDegreeCentrality implements Centrality
 //	上次计算局部中心性的时间戳
 	protected int lastLocalComputationTime;
 	
+	/** degrees of the node in all the time windows */
+	protected EpochDegrees degrees;
+	
 	public AvgDegreeCentrality(Settings s) 
 	{
 //		System.out.println("Initial for avgdegree centrality Settings s");
@@ -134,166 +137,50 @@ public class AvgDegreeCentrality implements Centrality
 //		将上次全局和局部中心性计算的时间戳推迟到仿真开始的时间(-600)
 		this.lastGlobalComputationTime = this.lastLocalComputationTime = 
 			-COMPUTE_INTERVAL;
+		this.degrees = new EpochDegrees(CENTRALITY_TIME_WINDOW, 1);
+	}
+	
+	public void contactEnded(ContactHistory history, DTNHost peer)
+	{
+		this.degrees.add(peer, history.getLastContactEnd(peer));
 	}
 	
-	public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory)
+	public double getGlobalCentrality(ContactHistory history)
 	{
 		if(SimClock.getIntTime() - this.lastGlobalComputationTime < COMPUTE_INTERVAL){
-//			System.out.println("Got global cen! The global cen is:"+globalCentrality);
 			return globalCentrality;
 		}
 		
-		// initialize
-//		初始化
 		int epochCount = SimClock.getIntTime() / CENTRALITY_TIME_WINDOW;
-//		System.out.println("SimClock.getIntTime() is:"+SimClock.getIntTime()
-//				+"   CENTRALITY_TIME_WINDOW is:"+CENTRALITY_TIME_WINDOW);
-//		System.out.println("epoch Count is:"+epochCount);
-		int[] centralities = new int[epochCount];
-		int epoch, timeNow = SimClock.getIntTime();
-//		System.out.println("timeNow is:"+timeNow);
-		Map<Integer, Set<DTNHost>> nodesCountedInEpoch = 
-			new HashMap<Integer, Set<DTNHost>>();
-		
 		if(epochCount<1){
-			System.out.println("the epochcount is 0!");
 			return 0;
 		}
 		
-		for(int i = 0; i < epochCount; i++){
-//			System.out.println("epoch Count is executed!");
-			nodesCountedInEpoch.put(i, new HashSet<DTNHost>());
-		}
-		
-		/*
-		 * For each node, loop through connection history until we crossed all
-		 * the epochs we need to cover
-		 */
-//		对于每个节点，循环连接历史直至我们穿越所有需要覆盖的时期
-//		connHistory.entrySet().size()=0
-		for(Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet())
-		{
-			DTNHost h = entry.getKey();
-			for(Duration d : entry.getValue())
-			{
-				int timePassed = (int)(timeNow - d.end);
-				
-				// if we reached the end of the last epoch, we're done with this node
-//				如果我们到了最后时期的末端，我们处理完了该节点
-				if(timePassed > CENTRALITY_TIME_WINDOW * epochCount)
-					break;
-				
-				// compute the epoch this contact belongs to
-//				计算这个接触所属于的时期
-				epoch = timePassed / CENTRALITY_TIME_WINDOW;
-//				System.out.println("alert!");
-				// Only consider each node once per epoch
-//				每个时期仅把每个节点考虑一次
-				System.out.println("nodesCountedInEpoch is:"+nodesCountedInEpoch.size());
-				System.out.println("epoch is:"+epoch);
-				Set<DTNHost> nodesAlreadyCounted = nodesCountedInEpoch.get(epoch);
-//				System.out.println("nodesAlreadyCounted is:"+nodesAlreadyCounted.size());
-//				if(nodesAlreadyCounted.isEmpty())
-//					continue;
-				if(nodesAlreadyCounted.contains(h))
-					continue;
-				
-				// increment the degree for the given epoch
-//				对于给定的时期，增加度
-				System.out.println("epoch of centralities is:"+epoch);
-				System.out.println("length of centralities is:"+centralities.length);
-				centralities[epoch]++;//该步没有被执行
-//				System.out.println("The epoch is:"+epoch+" centralities[epoch] is:"+centralities[epoch]);
-				nodesAlreadyCounted.add(h);
-			}
-		}
-//		centralities[]中的内容都是0
-//		System.out.println("The centralities[] is:"+centralities.toString());
-		
 		// compute and return average node degree
 //		计算和返回平均节点度
-		int sum = 0;
-		for(int i = 0; i < epochCount; i++) 
-			sum += centralities[i];
-		System.out.print("The sum is:" + sum +" The epochCount is:" + epochCount);
-		this.globalCentrality = ((double)sum) / epochCount;
+		this.globalCentrality = ((double)this.degrees.getTotalSum()) / epochCount;
 		
 		this.lastGlobalComputationTime = SimClock.getIntTime();
-		System.out.println("The global Centrality is:" + this.globalCentrality);
 		return this.globalCentrality;
 	}
 
-	public double getLocalCentrality(Map<DTNHost, List<Duration>> connHistory,
+	public double getLocalCentrality(ContactHistory history,
 			CommunityDetection cd)
 	{
 		if(SimClock.getIntTime() - this.lastLocalComputationTime < COMPUTE_INTERVAL)
 			return localCentrality;
 		
-		// centralities will hold the count of unique encounters in each epoch
-//		中心性会保存每个时期的相遇次数
 		int epochCount = SimClock.getIntTime() / CENTRALITY_TIME_WINDOW;
-		int[] centralities = new int[epochCount];
-		int epoch, timeNow = SimClock.getIntTime();
-		Map<Integer, Set<DTNHost>> nodesCountedInEpoch = 
-			new HashMap<Integer, Set<DTNHost>>();
-		
-		for(int i = 0; i < epochCount; i++)
-			nodesCountedInEpoch.put(i, new HashSet<DTNHost>());
+		if(epochCount<1){
+			return 0;
+		}
 		
 		// local centrality only considers nodes in the local community
 //		本地中心性仅考虑在本地社团的节点
-		Set<DTNHost> community = cd.getLocalCommunity();
-		
-		/*
-		 * For each node, loop through connection history until we crossed all
-		 * the epochs we need to cover
-		 */
-//		对每个节点，循环连接历史直至我们穿越了所有需要覆盖的时期
-		for(Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet())
-		{
-			DTNHost h = entry.getKey();
-			
-			// if the host isn't in the local community, we don't consider it
-//			如果节点不再本地社团，我们不考虑它
-			if(!community.contains(h))
-				continue;
-			
-			for(Duration d : entry.getValue())
-			{
-				int timePassed = (int)(timeNow - d.end);
-				
-				// if we reached the end of the last epoch, we're done with this node
-//				如果我们达到了最后时期的末端，我们处理完了该节点
-				if(timePassed > CENTRALITY_TIME_WINDOW * epochCount)
-					break;
-				
-				// compute the epoch this contact belongs to
-//				计算该接触属于的时期
-				epoch = timePassed / CENTRALITY_TIME_WINDOW;
-				
-				// Only consider each node once per epoch
-//				每个时期仅把每个节点考虑一次
-				Set<DTNHost> nodesAlreadyCounted = nodesCountedInEpoch.get(epoch);
-				if(nodesAlreadyCounted.contains(h))
-					continue;
-				
-				// increment the degree for the given epoch
-//				对于给定的时期，增加度
-				centralities[epoch]++;
-				nodesAlreadyCounted.add(h);
-			}
-		}
-		
-		// compute and return average node degree
-//		计算和返回平均节点度
-		int sum = 0;
-		for(int i = 0; i < epochCount; i++) 
-			sum += centralities[i];
-//		System.out.print("The sum is:" + sum +" The epochCount is:" + epochCount);
+		long sum = this.degrees.getTotalSum(cd.getLocalCommunity());
 		this.localCentrality = ((double)sum) / epochCount; 
 		
 		this.lastLocalComputationTime = SimClock.getIntTime();
-		System.out.println("The local Centrality is:" + this.localCentrality);
 		return this.localCentrality;
 	}
 
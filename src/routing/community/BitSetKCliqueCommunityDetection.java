@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.community;
+
+import java.util.*;
+
+import core.*;
+
+/**
+ * <p>The K-Clique Community Detection algorithm of
+ * {@link KCliqueCommunityDetection} with the familiar sets and the local
+ * community stored as {@link HostBitSet}s. The intersection sizes computed
+ * on each new connection are then word-level operations instead of a
+ * lookup per host, which matters with large numbers of hosts. The settings
+ * are the same as for KCliqueCommunityDetection.</p>
+ *
+ * <p>Like KCliqueCommunityDetection, each object stores references to the
+ * familiar sets of the members of its local community instead of copies.
+ * Which members of the peer's local community get added to the local
+ * community depends on the order they are considered in, so the members are
+ * also kept in a HashSet that is filled the same way as the one of
+ * KCliqueCommunityDetection and iterated for that. This keeps the community
+ * decisions the same as with KCliqueCommunityDetection.</p>
+ */
+public class BitSetKCliqueCommunityDetection implements CommunityDetection
+{
+	protected HostBitSet familiarSet;
+	protected HostBitSet localCommunity;
+	/** the local community in the iteration order of
+	 * KCliqueCommunityDetection */
+	protected Set<DTNHost> localCommunityOrder;
+	/** familiar sets of the local community members, indexed by address */
+	protected HostBitSet[] familiarsOfMyCommunity;
+
+	protected double k;
+	protected double familiarThreshold;
+	/** host lookup shared by all the replicates of the prototype */
+	protected HostBitSet.HostTable hostTable;
+
+	public BitSetKCliqueCommunityDetection(Settings s)
+	{
+		this.k = s.getDouble(KCliqueCommunityDetection.K_SETTING);
+		this.familiarThreshold = s.getDouble(
+				KCliqueCommunityDetection.FAMILIAR_SETTING);
+		this.hostTable = new HostBitSet.HostTable();
+	}
+
+	public BitSetKCliqueCommunityDetection(
+			BitSetKCliqueCommunityDetection proto)
+	{
+		this.k = proto.k;
+		this.familiarThreshold = proto.familiarThreshold;
+		this.hostTable = proto.hostTable;
+		this.familiarSet = new HostBitSet(this.hostTable);
+		this.localCommunity = new HostBitSet(this.hostTable);
+		this.localCommunityOrder = new HashSet<DTNHost>();
+		this.familiarsOfMyCommunity = new HostBitSet[0];
+	}
+
+	public void newConnection(DTNHost myHost, DTNHost peer,
+			CommunityDetection peerCD)
+	{
+		BitSetKCliqueCommunityDetection scd =
+			(BitSetKCliqueCommunityDetection)peerCD;
+
+		// Ensure each node is in its own local community
+		this.addToCommunity(myHost);
+		scd.addToCommunity(peer);
+
+		// Add peer to my local community if needed
+		if(!this.localCommunity.contains(peer) &&
+				scd.familiarSet.intersectionSize(this.localCommunity) >= this.k - 1)
+		{
+			this.addToCommunity(peer);
+			this.setFamiliars(peer, scd.familiarSet);
+			this.addTransitiveMembers(scd, myHost, peer);
+		}
+
+		// Repeat process from peer's perspective
+		if(!scd.localCommunity.contains(myHost) &&
+				this.familiarSet.intersectionSize(scd.localCommunity) >= scd.k - 1)
+		{
+			scd.addToCommunity(myHost);
+			scd.setFamiliars(myHost, this.familiarSet);
+			scd.addTransitiveMembers(this, myHost, peer);
+		}
+	}
+
+	/**
+	 * Searches the local community of another object for members whose
+	 * familiar set has K nodes in common with this local community and adds
+	 * them to this local community.
+	 * @param other The object whose community to search
+	 * @param host1 Host of one end of the connection (skipped)
+	 * @param host2 Host of the other end of the connection (skipped)
+	 */
+	private void addTransitiveMembers(BitSetKCliqueCommunityDetection other,
+			DTNHost host1, DTNHost host2)
+	{
+		for(DTNHost h : other.localCommunityOrder)
+		{
+			if(h == host1 || h == host2) continue;
+
+			HostBitSet familiars = other.familiarsOfMyCommunity[h.getAddress()];
+			if(familiars.intersectionSize(this.localCommunity) >= this.k - 1)
+			{
+				this.addToCommunity(h);
+				this.setFamiliars(h, familiars);
+			}
+		}
+	}
+
+	private void addToCommunity(DTNHost h)
+	{
+		if(this.localCommunity.add(h))
+			this.localCommunityOrder.add(h);
+	}
+
+	private void setFamiliars(DTNHost h, HostBitSet familiars)
+	{
+		int a = h.getAddress();
+		if(a >= this.familiarsOfMyCommunity.length)
+			this.familiarsOfMyCommunity = Arrays.copyOf(
+					this.familiarsOfMyCommunity,
+					Math.max(a + 1, this.familiarsOfMyCommunity.length * 2));
+		this.familiarsOfMyCommunity[a] = familiars;
+	}
+
+	public void connectionLost(DTNHost myHost, DTNHost peer,
+			CommunityDetection peerCD, ContactHistory history)
+	{
+		if(this.familiarSet.contains(peer)) return;
+
+		// Compute cummulative contact duration with this peer
+		double time = history.getTotalContactTime(peer);
+
+		// If cummulative duration is greater than threshold, add
+		if(time > this.familiarThreshold)
+		{
+			BitSetKCliqueCommunityDetection scd =
+				(BitSetKCliqueCommunityDetection)peerCD;
+			this.familiarSet.add(peer);
+			this.addToCommunity(peer);
+			this.setFamiliars(peer, scd.familiarSet);
+		}
+	}
+
+	public boolean isHostInCommunity(DTNHost h)
+	{
+		return this.localCommunity.contains(h);
+	}
+
+	public CommunityDetection replicate()
+	{
+		return new BitSetKCliqueCommunityDetection(this);
+	}
+
+	public Set<DTNHost> getLocalCommunity()
+	{
+		return this.localCommunity;
+	}
+
+	public Set<DTNHost> getFamiliarSet()
+	{
+		return this.familiarSet;
+	}
+}
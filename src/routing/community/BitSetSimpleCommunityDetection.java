@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.community;
+
+import java.util.*;
+
+import core.*;
+
+/**
+ * <p>The SIMPLE Community Detection algorithm of
+ * {@link SimpleCommunityDetection} with the familiar set and the local
+ * community stored as {@link HostBitSet}s. The intersection and union sizes
+ * computed on each new connection are then word-level operations instead of
+ * a lookup per host, which matters with large numbers of hosts. The settings
+ * are the same as for SimpleCommunityDetection and so are the community
+ * decisions.</p>
+ */
+public class BitSetSimpleCommunityDetection implements CommunityDetection
+{
+	protected HostBitSet familiarSet;
+	protected HostBitSet localCommunity;
+
+	protected double lambda;
+	protected double gamma;
+	protected double familiarThreshold;
+	/** host lookup shared by all the replicates of the prototype */
+	protected HostBitSet.HostTable hostTable;
+
+	public BitSetSimpleCommunityDetection(Settings s)
+	{
+		this.lambda = s.getDouble(SimpleCommunityDetection.LAMBDA_SETTING);
+		this.gamma = s.getDouble(SimpleCommunityDetection.GAMMA_SETTING);
+		this.familiarThreshold = s.getDouble(
+				SimpleCommunityDetection.FAMILIAR_SETTING);
+		this.hostTable = new HostBitSet.HostTable();
+	}
+
+	public BitSetSimpleCommunityDetection(BitSetSimpleCommunityDetection proto)
+	{
+		this.lambda = proto.lambda;
+		this.gamma = proto.gamma;
+		this.familiarThreshold = proto.familiarThreshold;
+		this.hostTable = proto.hostTable;
+		this.familiarSet = new HostBitSet(this.hostTable);
+		this.localCommunity = new HostBitSet(this.hostTable);
+	}
+
+	public void newConnection(DTNHost myHost, DTNHost peer,
+			CommunityDetection peerCD)
+	{
+		boolean addPeerToMyLocal=false, addMeToPeerLocal=false;
+		BitSetSimpleCommunityDetection scd =
+			(BitSetSimpleCommunityDetection)peerCD;
+
+		this.localCommunity.add(myHost);
+		scd.localCommunity.add(peer);
+
+		if(!this.localCommunity.contains(peer))
+		{
+			int count = scd.familiarSet.intersectionSize(this.localCommunity);
+			if(addPeerToMyLocal =
+				((double)count)/scd.familiarSet.size() > this.lambda)
+			{
+				this.localCommunity.add(peer);
+			}
+		}
+
+		// Repeat the computation for the other end of the connection
+		if(!scd.localCommunity.contains(myHost))
+		{
+			int count = this.familiarSet.intersectionSize(scd.localCommunity);
+			if(addMeToPeerLocal =
+				((double)count)/this.familiarSet.size() > scd.lambda)
+			{
+				scd.localCommunity.add(myHost);
+			}
+		}
+
+		if(addPeerToMyLocal || addMeToPeerLocal)
+		{
+			int count = this.localCommunity.intersectionSize(scd.localCommunity);
+			int unionSize = this.localCommunity.size() +
+				scd.localCommunity.size() - count;
+
+			if(addPeerToMyLocal && count > this.gamma * unionSize)
+			{
+				this.localCommunity.addAll(scd.localCommunity);
+			}
+			if(addMeToPeerLocal && count > scd.gamma * unionSize)
+			{
+				scd.localCommunity.addAll(this.localCommunity);
+			}
+		}
+	}
+
+	public void connectionLost(DTNHost myHost, DTNHost peer,
+			CommunityDetection peerCD, ContactHistory history)
+	{
+		if(this.familiarSet.contains(peer)) return;
+
+		double time = history.getTotalContactTime(peer);
+
+		if(time > this.familiarThreshold)
+		{
+			this.familiarSet.add(peer);
+			this.localCommunity.add(peer);
+		}
+	}
+
+	public boolean isHostInCommunity(DTNHost h)
+	{
+		return this.localCommunity.contains(h);
+	}
+
+	public CommunityDetection replicate()
+	{
+		return new BitSetSimpleCommunityDetection(this);
+	}
+
+	public Set<DTNHost> getLocalCommunity()
+	{
+		return this.localCommunity;
+	}
+
+	public Set<DTNHost> getFamiliarSet()
+	{
+		return this.familiarSet;
+	}
+}
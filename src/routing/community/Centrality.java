@@ -23,7 +23,9 @@ import core.*;
  * <p>
  * In this way, the Centrality interface semantically requires any class
  * employing one of its subclasses to keep track of the connection history of
- * the node at which these instances are stored. To use the local centrality
+ * the node at which these instances are stored (a {@link ContactHistory}).
+ * Each instance is told about the contacts of its node when they end, so it
+ * can keep its values up to date incrementally. To use the local centrality
  * computation, the using object would also have to create and use a
  * CommunityDetection instance. As of right now,
  * {@link routing.community.DistributedBubbleRap} is the only class that does
@@ -34,24 +36,34 @@ import core.*;
  */
 public interface Centrality
 {
+	/**
+	 * Informs the object that a contact with a peer ended. The contact has
+	 * already been added to the history. Only contacts with a duration are
+	 * reported.
+	 * 
+	 * @param history Contact history of the host (shared with the caller)
+	 * @param peer Host with which the contact ended
+	 */
+	public void contactEnded(ContactHistory history, DTNHost peer);
+	
 	/**
 	 * Returns the computed global centrality based on the connection history
 	 * passed as an argument.  
 	 * 
-	 * @param connHistory Contact History on which to compute centrality
+	 * @param history Contact History on which to compute centrality
 	 * @return Value corresponding to the global centrality
 	 */
-	public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory);
+	public double getGlobalCentrality(ContactHistory history);
 	
 	/**
 	 * Returns the computed local centrality based on the connection history and
 	 * community detection objects passed as parameters.
 	 * 
-	 * @param connHistory Contact history on which to compute centrality
+	 * @param history Contact history on which to compute centrality
 	 * @param cd CommunityDetection object that knows the local community
 	 * @return Value corresponding to the local centrality
 	 */
-	public double getLocalCentrality(Map<DTNHost, List<Duration>> connHistory, 
+	public double getLocalCentrality(ContactHistory history, 
 			CommunityDetection cd);
 	
 	/**
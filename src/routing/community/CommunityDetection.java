@@ -42,10 +42,11 @@ public interface CommunityDetection
 	 * @param myHost Host to which this CommunityDetection object belongs
 	 * @param peer Host that is now disconnected from this object
 	 * @param peerCD Instance of CommunityDetection residing at the lost peer
-	 * @param connHistory Entire connection history between this host and the peer
+	 * @param history Contact history of this host (including the lost
+	 * connection)
 	 */
 	public void connectionLost(DTNHost myHost, DTNHost peer, 
-			CommunityDetection peerCD, List<Duration> connHistory);
+			CommunityDetection peerCD, ContactHistory history);
 	
 	/**
 	 * Determines if the given host is a member of the local community of this 
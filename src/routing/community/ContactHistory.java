@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.community;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+
+/**
+ * <p>Contact history of a host with its peers. Instead of keeping every
+ * contact, the history keeps running aggregates per peer (total contact
+ * time, number of contacts, and end time of the latest contact) in arrays
+ * indexed by the peer's address, so its size only depends on the number of
+ * peers and not on the length of the simulation.</p>
+ *
+ * <p>The history is shared by a decision engine with its
+ * {@link CommunityDetection} and {@link Centrality} objects, which are told
+ * about each contact when it ends and can keep their own incremental
+ * state.</p>
+ */
+public class ContactHistory
+{
+	/** initial size of the arrays */
+	private static final int INITIAL_SIZE = 16;
+
+	/** the peers in the history (by address) */
+	private DTNHost[] peers;
+	private double[] totalTimes;
+	private double[] lastEnds;
+	private int[] contacts;
+	private int nrofPeers;
+
+	/**
+	 * Creates an empty history
+	 */
+	public ContactHistory()
+	{
+		this.peers = new DTNHost[INITIAL_SIZE];
+		this.totalTimes = new double[INITIAL_SIZE];
+		this.lastEnds = new double[INITIAL_SIZE];
+		this.contacts = new int[INITIAL_SIZE];
+		this.nrofPeers = 0;
+	}
+
+	/**
+	 * Adds a contact with a peer to the history. The peer is added to the
+	 * history even if the contact had no duration, but only contacts with
+	 * a duration are counted.
+	 * @param peer The peer of the contact
+	 * @param start Time when the contact started
+	 * @param end Time when the contact ended
+	 */
+	public void addContact(DTNHost peer, double start, double end)
+	{
+		int a = peer.getAddress();
+		if(a >= this.peers.length)
+			grow(a);
+		if(this.peers[a] == null)
+		{
+			this.peers[a] = peer;
+			this.nrofPeers++;
+		}
+
+		if(end - start > 0)
+		{
+			this.totalTimes[a] += end - start;
+			this.lastEnds[a] = end;
+			this.contacts[a]++;
+		}
+	}
+
+	/**
+	 * Returns true if the peer is in the history
+	 * @param peer The peer
+	 * @return true if there has been a contact with the peer
+	 */
+	public boolean hasMet(DTNHost peer)
+	{
+		int a = peer.getAddress();
+		return a < this.peers.length && this.peers[a] != null;
+	}
+
+	/**
+	 * Returns the number of peers in the history
+	 * @return the number of peers
+	 */
+	public int getNrofPeers()
+	{
+		return this.nrofPeers;
+	}
+
+	/**
+	 * Returns the total duration of the contacts with a peer
+	 * @param peer The peer
+	 * @return the total contact time (0 for peers not in the history)
+	 */
+	public double getTotalContactTime(DTNHost peer)
+	{
+		return hasMet(peer) ? this.totalTimes[peer.getAddress()] : 0;
+	}
+
+	/**
+	 * Returns the number of contacts (with a duration) with a peer
+	 * @param peer The peer
+	 * @return the number of contacts
+	 */
+	public int getNrofContacts(DTNHost peer)
+	{
+		return hasMet(peer) ? this.contacts[peer.getAddress()] : 0;
+	}
+
+	/**
+	 * Returns the time when the latest contact (with a duration) with a peer
+	 * ended
+	 * @param peer The peer
+	 * @return the end time or -1 if there has been no such contact
+	 */
+	public double getLastContactEnd(DTNHost peer)
+	{
+		return getNrofContacts(peer) > 0 ? this.lastEnds[peer.getAddress()] : -1;
+	}
+
+	private void grow(int address)
+	{
+		int size = Math.max(address + 1, this.peers.length * 2);
+		this.peers = Arrays.copyOf(this.peers, size);
+		this.totalTimes = Arrays.copyOf(this.totalTimes, size);
+		this.lastEnds = Arrays.copyOf(this.lastEnds, size);
+		this.contacts = Arrays.copyOf(this.contacts, size);
+	}
+}
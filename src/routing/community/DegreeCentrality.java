@@ -6,9 +6,6 @@
  */
 package routing.community;
 
-import java.util.List;
-import java.util.Map;
-
 import core.*;
 
 /**
@@ -51,18 +48,20 @@ public class DegreeCentrality implements Centrality
 	public DegreeCentrality(Settings s){}
 	public DegreeCentrality(DegreeCentrality proto){}
 	
-	public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory)
+	public void contactEnded(ContactHistory history, DTNHost peer){}
+	
+	public double getGlobalCentrality(ContactHistory history)
 	{
-		return connHistory.size();
+		return history.getNrofPeers();
 	}
 
-	public double getLocalCentrality(Map<DTNHost, List<Duration>> connHistory,
+	public double getLocalCentrality(ContactHistory history,
 			CommunityDetection cd)
 	{
 		int centrality = 0;
-		for(DTNHost h : connHistory.keySet())
+		for(DTNHost h : cd.getLocalCommunity())
 		{
-			if(cd.isHostInCommunity(h))
+			if(history.hasMet(h))
 				centrality++;
 		}
 		return centrality;
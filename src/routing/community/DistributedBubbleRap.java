@@ -64,7 +64,7 @@ public class DistributedBubbleRap
 	public static final String CENTRALITY_ALG_SETTING = "centralityAlg";
 	
 	protected Map<DTNHost, Double> startTimestamps;
-	protected Map<DTNHost, List<Duration>> connHistory;
+	protected ContactHistory connHistory;
 	
 	protected CommunityDetection community;
 	protected Centrality centrality;
@@ -105,7 +105,7 @@ public class DistributedBubbleRap
 		this.community = proto.community.replicate();
 		this.centrality = proto.centrality.replicate();
 		startTimestamps = new HashMap<DTNHost, Double>();
-		connHistory = new HashMap<DTNHost, List<Duration>>();
+		connHistory = new ContactHistory();
 	}
 
 	public void connectionUp(DTNHost thisHost, DTNHost peer){}
@@ -137,29 +137,19 @@ public class DistributedBubbleRap
 		double time = startTimestamps.get(peer);
 		double etime = SimClock.getTime();
 		
-		// Find or create the connection history list
-		List<Duration> history;
-		if(!connHistory.containsKey(peer))
-		{
-			history = new LinkedList<Duration>();
-			connHistory.put(peer, history);
-			System.out.println("peer is:"+peer+"  history is:"+history);
-		}
-		else{
-			history = connHistory.get(peer);
-			System.out.println("history get peer from:"+connHistory.toString());
-		}
-		
-		// add this connection to the list
-		if(etime - time > 0)
-			history.add(new Duration(time, etime));
+		// add this connection to the history
+		connHistory.addContact(peer, time, etime);
 		
 		CommunityDetection peerCD = this.getOtherDecisionEngine(peer).community;
 		
 		// inform the community detection object that a connection was lost.
 		// The object might need the whole connection history at this point.
 //		通知社团检测对象：一个连接丢失了，这个对象也许在这一点上需要整个连接历史
-		community.connectionLost(thisHost, peer, peerCD, history);
+		community.connectionLost(thisHost, peer, peerCD, connHistory);
+		
+		// and the centrality object, which updates its values incrementally
+		if(etime - time > 0)
+			centrality.contactEnded(connHistory, peer);
 		
 		startTimestamps.remove(peer);
 	}
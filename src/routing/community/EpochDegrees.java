@@ -0,0 +1,205 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.community;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import core.DTNHost;
+import core.SettingsError;
+
+/**
+ * <p>Degrees (numbers of distinct peers met) of a host in consecutive epochs
+ * of fixed length, for centrality computations. Epoch <code>k</code> covers
+ * the time <code>[k * epochLength, (k+1) * epochLength)</code> and a contact
+ * belongs to the epoch in which it ended.</p>
+ *
+ * <p>The degrees of the latest epochs are kept in a ring buffer with their
+ * running sum, and the sum over all epochs is kept too, so the global
+ * degree sums are available in constant time. For local (community)
+ * degree sums, each peer has a bitmask of the latest epochs in which it was
+ * met and the number of all epochs in which it was met, so the community
+ * members can be counted without scanning any contacts. Contacts must be
+ * added in the order they end.</p>
+ */
+public class EpochDegrees
+{
+	/** maximum number of epochs in the window (bits in the epoch masks) */
+	public static final int MAX_WINDOW_EPOCHS = 64;
+
+	private final double epochLength;
+	private final int nrofEpochs;
+
+	/** degrees of the epochs in the window, indexed by epoch % nrofEpochs */
+	private int[] degrees;
+	/** the latest epoch in the window */
+	private int windowEnd;
+	private int windowSum;
+	private long totalSum;
+
+	/** per peer (by address): the epoch the peer was last met in + 1 */
+	private int[] lastEpochs;
+	/** per peer: bit i is set if the peer was met in epoch lastEpoch - i */
+	private long[] epochMasks;
+	/** per peer: the number of epochs the peer was met in */
+	private int[] epochsMet;
+
+	/**
+	 * Creates a new object
+	 * @param epochLength Length of an epoch (seconds)
+	 * @param nrofEpochs Number of the latest epochs whose degrees are summed
+	 * by the window methods
+	 * @throws SettingsError if the number of epochs is not between 1 and
+	 * {@value #MAX_WINDOW_EPOCHS} or the epoch length is not positive
+	 */
+	public EpochDegrees(double epochLength, int nrofEpochs)
+	{
+		if(nrofEpochs < 1 || nrofEpochs > MAX_WINDOW_EPOCHS)
+			throw new SettingsError("Number of centrality epochs must be " +
+					"between 1 and " + MAX_WINDOW_EPOCHS + " (was " +
+					nrofEpochs + ")");
+		if(epochLength <= 0)
+			throw new SettingsError("Centrality time window must be " +
+					"positive (was " + epochLength + ")");
+
+		this.epochLength = epochLength;
+		this.nrofEpochs = nrofEpochs;
+		this.degrees = new int[nrofEpochs];
+		this.lastEpochs = new int[0];
+		this.epochMasks = new long[0];
+		this.epochsMet = new int[0];
+	}
+
+	/**
+	 * Adds a contact with a peer
+	 * @param peer The peer
+	 * @param end The time when the contact ended
+	 */
+	public void add(DTNHost peer, double end)
+	{
+		int a = peer.getAddress();
+		int epoch = getEpoch(end);
+		if(a >= this.lastEpochs.length)
+		{
+			int size = Math.max(a + 1, this.lastEpochs.length * 2);
+			this.lastEpochs = Arrays.copyOf(this.lastEpochs, size);
+			this.epochMasks = Arrays.copyOf(this.epochMasks, size);
+			this.epochsMet = Arrays.copyOf(this.epochsMet, size);
+		}
+
+		int last = this.lastEpochs[a] - 1;
+		if(last >= epoch)
+			return; // already counted in this epoch
+
+		this.epochMasks[a] = shift(this.epochMasks[a], epoch - last) | 1;
+		this.lastEpochs[a] = epoch + 1;
+		this.epochsMet[a]++;
+
+		advance(epoch);
+		this.degrees[epoch % this.nrofEpochs]++;
+		this.windowSum++;
+		this.totalSum++;
+	}
+
+	/**
+	 * Returns the sum of the degrees of the latest epochs (the epoch of the
+	 * given time and the ones before it, as many as there are epochs in the
+	 * window)
+	 * @param now The current time
+	 * @return The sum of the degrees
+	 */
+	public int getWindowSum(double now)
+	{
+		advance(getEpoch(now));
+		return this.windowSum;
+	}
+
+	/**
+	 * Returns the sum of the degrees of the latest epochs counting only the
+	 * peers in the given set
+	 * @param now The current time
+	 * @param hosts The peers to count
+	 * @return The sum of the degrees
+	 * @see #getWindowSum(double)
+	 */
+	public int getWindowSum(double now, Set<DTNHost> hosts)
+	{
+		int epoch = getEpoch(now);
+		long window = this.nrofEpochs == MAX_WINDOW_EPOCHS ? -1L :
+			(1L << this.nrofEpochs) - 1;
+		int sum = 0;
+		for(DTNHost h : hosts)
+		{
+			int a = h.getAddress();
+			if(a < this.lastEpochs.length && this.lastEpochs[a] > 0)
+			{
+				long mask = shift(this.epochMasks[a],
+						epoch - (this.lastEpochs[a] - 1));
+				sum += Long.bitCount(mask & window);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the sum of the degrees of all epochs
+	 * @return The sum of the degrees
+	 */
+	public long getTotalSum()
+	{
+		return this.totalSum;
+	}
+
+	/**
+	 * Returns the sum of the degrees of all epochs counting only the peers
+	 * in the given set
+	 * @param hosts The peers to count
+	 * @return The sum of the degrees
+	 */
+	public long getTotalSum(Set<DTNHost> hosts)
+	{
+		long sum = 0;
+		for(DTNHost h : hosts)
+		{
+			int a = h.getAddress();
+			if(a < this.epochsMet.length)
+				sum += this.epochsMet[a];
+		}
+		return sum;
+	}
+
+	private int getEpoch(double time)
+	{
+		return (int)(time / this.epochLength);
+	}
+
+	/**
+	 * Moves the window forward so that the given epoch is the latest one
+	 */
+	private void advance(int epoch)
+	{
+		if(epoch <= this.windowEnd)
+			return;
+		if(epoch - this.windowEnd >= this.nrofEpochs)
+		{
+			Arrays.fill(this.degrees, 0);
+			this.windowSum = 0;
+		}
+		else
+		{
+			for(int e = this.windowEnd + 1; e <= epoch; e++)
+			{
+				this.windowSum -= this.degrees[e % this.nrofEpochs];
+				this.degrees[e % this.nrofEpochs] = 0;
+			}
+		}
+		this.windowEnd = epoch;
+	}
+
+	private static long shift(long mask, int epochs)
+	{
+		return epochs >= MAX_WINDOW_EPOCHS ? 0 : mask << epochs;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.community;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import core.DTNHost;
+
+/**
+ * <p>A set of hosts stored as a bitset indexed by host address. Set
+ * operations between two HostBitSets (intersection and union sizes,
+ * {@link #addAll(Collection)}, {@link #containsAll(Collection)}) are done
+ * a word (64 hosts) at a time instead of host by host.</p>
+ *
+ * <p>The hosts of the set are looked up from a {@link HostTable} that is
+ * shared by all the sets of one simulation, so the sets themselves only
+ * store the bits. The set iterates its hosts in address order.</p>
+ */
+public class HostBitSet extends AbstractSet<DTNHost> {
+	/** number of bits in a word */
+	private static final int WORD_BITS = 64;
+
+	private final HostTable table;
+	private long[] words;
+	private int size;
+
+	/**
+	 * Address to host lookup of the hosts that have been put to the sets
+	 * sharing the table.
+	 */
+	public static class HostTable {
+		private DTNHost[] hosts = new DTNHost[WORD_BITS];
+
+		private void put(DTNHost h) {
+			int a = h.getAddress();
+			if (a >= hosts.length) {
+				hosts = Arrays.copyOf(hosts, Math.max(a + 1, hosts.length * 2));
+			}
+			hosts[a] = h;
+		}
+
+		private DTNHost get(int address) {
+			return hosts[address];
+		}
+	}
+
+	/**
+	 * Creates an empty set
+	 * @param table The address to host lookup table of the set
+	 */
+	public HostBitSet(HostTable table) {
+		this.table = table;
+		this.words = new long[1];
+		this.size = 0;
+	}
+
+	@Override
+	public boolean add(DTNHost h) {
+		int a = h.getAddress();
+		int w = a / WORD_BITS;
+		if (w >= words.length) {
+			words = Arrays.copyOf(words, Math.max(w + 1, words.length * 2));
+		}
+		long bit = 1L << a;
+		if ((words[w] & bit) != 0) {
+			return false;
+		}
+		table.put(h);
+		words[w] |= bit;
+		size++;
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof DTNHost)) {
+			return false;
+		}
+		return get(((DTNHost)o).getAddress());
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!contains(o)) {
+			return false;
+		}
+		clear(((DTNHost)o).getAddress());
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(words, 0);
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of hosts that are in both this and the other set
+	 * @param other The other set
+	 * @return Size of the intersection of the sets
+	 */
+	public int intersectionSize(HostBitSet other) {
+		int n = Math.min(words.length, other.words.length);
+		int count = 0;
+		for (int i=0; i < n; i++) {
+			count += Long.bitCount(words[i] & other.words[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of hosts that are in this or the other set
+	 * @param other The other set
+	 * @return Size of the union of the sets
+	 */
+	public int unionSize(HostBitSet other) {
+		return size + other.size - intersectionSize(other);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends DTNHost> c) {
+		if (!(c instanceof HostBitSet) || ((HostBitSet)c).table != table) {
+			return super.addAll(c);
+		}
+		HostBitSet other = (HostBitSet)c;
+		if (other.words.length > words.length) {
+			words = Arrays.copyOf(words, other.words.length);
+		}
+		int oldSize = size;
+		for (int i=0; i < other.words.length; i++) {
+			long added = other.words[i] & ~words[i];
+			if (added != 0) {
+				words[i] |= added;
+				size += Long.bitCount(added);
+			}
+		}
+		return size != oldSize;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if (!(c instanceof HostBitSet)) {
+			return super.containsAll(c);
+		}
+		HostBitSet other = (HostBitSet)c;
+		return other.size <= size && intersectionSize(other) == other.size;
+	}
+
+	@Override
+	public Iterator<DTNHost> iterator() {
+		return new Iterator<DTNHost>() {
+			private int next = nextSetBit(0);
+			private int last = -1;
+
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			public DTNHost next() {
+				if (next < 0) {
+					throw new NoSuchElementException();
+				}
+				last = next;
+				next = nextSetBit(next + 1);
+				return table.get(last);
+			}
+
+			public void remove() {
+				if (last < 0) {
+					throw new IllegalStateException();
+				}
+				HostBitSet.this.clear(last);
+				last = -1;
+			}
+		};
+	}
+
+	/**
+	 * Returns the address of the first host in the set with address equal
+	 * to or greater than the given address or -1 if there is no such host
+	 */
+	private int nextSetBit(int from) {
+		int w = from / WORD_BITS;
+		if (w >= words.length) {
+			return -1;
+		}
+		long word = words[w] & (-1L << from);
+		while (word == 0) {
+			if (++w == words.length) {
+				return -1;
+			}
+			word = words[w];
+		}
+		return w * WORD_BITS + Long.numberOfTrailingZeros(word);
+	}
+
+	private boolean get(int address) {
+		int w = address / WORD_BITS;
+		return w < words.length && (words[w] & (1L << address)) != 0;
+	}
+
+	private void clear(int address) {
+		words[address / WORD_BITS] &= ~(1L << address);
+		size--;
+	}
+}
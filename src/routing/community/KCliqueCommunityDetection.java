@@ -203,19 +203,13 @@ public class KCliqueCommunityDetection implements CommunityDetection
 	}
 	
 	public void connectionLost(DTNHost myHost, DTNHost peer, 
-			CommunityDetection peerCD, List<Duration> history)
+			CommunityDetection peerCD, ContactHistory history)
 	{
 		if(this.familiarSet.contains(peer)) return;
 		
 		// Compute cummulative contact duration with this peer
 //		计算与该peer的累计接触时长
-		Iterator<Duration> i = history.iterator();
-		double time = 0;
-		while(i.hasNext())
-		{
-			Duration d = i.next();
-			time += d.end - d.start;
-		}
+		double time = history.getTotalContactTime(peer);
 		
 		// If cummulative duration is greater than threshold, add
 //		如果累计接触时长大于阈值，添加
@@ -66,12 +66,12 @@ public class LABELDecisionEngine
 	protected Map<DTNHost, Double> startTimestamps;
 	
 	/**
-	 * A record of the entire connection history of this node for the whole 
-	 * simulation. As each connection goes down, a new entry is added into the 
-	 * list for the peer that just disconnected. 
+	 * A record of the connection history of this node for the whole 
+	 * simulation. As each connection goes down, it is added to the history
+	 * of the peer that just disconnected. 
 	 */
 //	整个仿真过程中该节点的全部连接历史信息的记录。每个连接断开时，对于刚刚断开的那个peer，添加一个新的入口
-	protected Map<DTNHost, List<Duration>> connHistory;
+	protected ContactHistory connHistory;
 	
 	/**
 	 * Initializes the decision engine using the given Settings object, extracting
@@ -105,7 +105,7 @@ public class LABELDecisionEngine
 		this.community = proto.community.replicate();
 		
 		startTimestamps = new HashMap<DTNHost, Double>();
-		connHistory = new HashMap<DTNHost, List<Duration>>();
+		connHistory = new ContactHistory();
 	}
 
 	public void connectionUp(DTNHost thisHost, DTNHost peer){}
@@ -125,26 +125,14 @@ public class LABELDecisionEngine
 		double time = startTimestamps.get(peer);
 		double etime = SimClock.getTime();
 		
-		// Find or create the connection history list
-//		发现或者创建连接历史的列表
-		List<Duration> history;
-		if(!connHistory.containsKey(peer))
-		{
-			history = new LinkedList<Duration>();
-			connHistory.put(peer, history);
-		}
-		else
-			history = connHistory.get(peer);
-		
 		// add the new connection to the history
 //		将新的连接添加到历史信息中
-		if(etime - time > 0)
-			history.add(new Duration(time, etime));
+		connHistory.addContact(peer, time, etime);
 		
 		// Inform the community detection object
 //		通知社团检测对象
 		CommunityDetection peerCD = this.getOtherDecisionEngine(peer).community;
-		community.connectionLost(thisHost, peer, peerCD, history);
+		community.connectionLost(thisHost, peer, peerCD, connHistory);
 		
 		startTimestamps.remove(peer);
 	}
@@ -112,17 +112,11 @@ public class ModularityCommunityDetection implements CommunityDetection
 	}
 	
 	public void connectionLost(DTNHost myHost, DTNHost peer, 
-			CommunityDetection peerCD, List<Duration> history)
+			CommunityDetection peerCD, ContactHistory history)
 	{
 		if(this.familiarSet.contains(peer)) return;
 		
-		Iterator<Duration> i = history.iterator();
-		double time = 0;
-		while(i.hasNext())
-		{
-			Duration d = i.next();
-			time += d.end - d.start;
-		}
+		double time = history.getTotalContactTime(peer);
 		
 		if(time > this.familiarThreshold)
 		{
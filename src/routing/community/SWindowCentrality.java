@@ -6,8 +6,7 @@
  */
 package routing.community;
 
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 import core.*;
 
@@ -34,6 +33,12 @@ import core.*;
  * </ul>
  * </p>
  * 
+ * <p>The peers met within the time window are kept up to date as contacts
+ * end: the ends of the contacts are queued and the peers whose latest
+ * contact leaves the window are dropped from the count, so the global
+ * centrality is available without scanning the contact history. The local
+ * centrality only checks the members of the local community.</p>
+ * 
  * <pre>
  * \@inproceedings{1374652,
  *	Address = {New York, NY, USA},
@@ -93,6 +98,17 @@ public class SWindowCentrality implements Centrality
 //	上次局部中心度计算的时间戳
 	protected int lastLocalComputationTime;
 	
+	/** which peers (by address) have their latest contact in the window */
+	protected boolean[] inWindow;
+	/** number of peers whose latest contact is in the window */
+	protected int nrofPeersInWindow;
+	/** peers and end times of the contacts in the window, in the order the 
+	 * contacts ended (a circular queue) */
+	protected DTNHost[] queuedPeers;
+	protected double[] queuedEnds;
+	protected int queueHead;
+	protected int queueSize;
+	
 	public SWindowCentrality(Settings s)
 	{
 		if(s.contains(CENTRALITY_WINDOW_SETTING))
@@ -106,31 +122,60 @@ public class SWindowCentrality implements Centrality
 //		将全局计算时间和本地计算时间设置为初始值(-600)
 		this.lastGlobalComputationTime = this.lastLocalComputationTime = 
 				-COMPUTE_INTERVAL;
+		this.inWindow = new boolean[0];
+		this.queuedPeers = new DTNHost[16];
+		this.queuedEnds = new double[16];
 	}
 	
-	public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory)
+	public void contactEnded(ContactHistory history, DTNHost peer)
 	{
-		if(SimClock.getIntTime() - this.lastGlobalComputationTime <COMPUTE_INTERVAL)
-			return globalCentrality;
+		expire(history, SimClock.getIntTime());
 		
-		int centrality = 0;
-		int timeNow = SimClock.getIntTime();
+		int a = peer.getAddress();
+		if(a >= this.inWindow.length)
+			this.inWindow = Arrays.copyOf(this.inWindow, 
+					Math.max(a + 1, this.inWindow.length * 2));
+		if(!this.inWindow[a])
+		{
+			this.inWindow[a] = true;
+			this.nrofPeersInWindow++;
+		}
 		
-		// For each host, check whether its last contact time was within window
-		// no need to loop through the entire contact history
-//		对于每个节点，检查上次接触时间是否在窗口中，没有必要检查整个历史接触信息
-		for(Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet())
+		// queue the end of the contact
+		if(this.queueSize == this.queuedPeers.length)
 		{
-			List<Duration> l = entry.getValue();
-			if(timeNow - l.get(l.size()-1).end < CENTRALITY_TIME_WINDOW)
-				centrality++;
+			DTNHost[] peers = new DTNHost[this.queuedPeers.length * 2];
+			double[] ends = new double[peers.length];
+			for(int i = 0; i < this.queueSize; i++)
+			{
+				int qi = (this.queueHead + i) % this.queuedPeers.length;
+				peers[i] = this.queuedPeers[qi];
+				ends[i] = this.queuedEnds[qi];
+			}
+			this.queuedPeers = peers;
+			this.queuedEnds = ends;
+			this.queueHead = 0;
 		}
+		int tail = (this.queueHead + this.queueSize) % this.queuedPeers.length;
+		this.queuedPeers[tail] = peer;
+		this.queuedEnds[tail] = history.getLastContactEnd(peer);
+		this.queueSize++;
+	}
+	
+	public double getGlobalCentrality(ContactHistory history)
+	{
+		if(SimClock.getIntTime() - this.lastGlobalComputationTime <COMPUTE_INTERVAL)
+			return globalCentrality;
+		
+		// count the hosts whose last contact time was within window
+//		计算上次接触时间在窗口中的节点
+		expire(history, SimClock.getIntTime());
 		
 		this.lastGlobalComputationTime = SimClock.getIntTime();
-		return this.globalCentrality = centrality;
+		return this.globalCentrality = this.nrofPeersInWindow;
 	}
 
-	public double getLocalCentrality(Map<DTNHost, List<Duration>> connHistory, 
+	public double getLocalCentrality(ContactHistory history, 
 			CommunityDetection cd)
 	{
 		if(SimClock.getIntTime() - this.lastLocalComputationTime < COMPUTE_INTERVAL)
@@ -139,21 +184,42 @@ public class SWindowCentrality implements Centrality
 		int centrality = 0;
 		int timeNow = SimClock.getIntTime();
 		
-		// same check as for global centrality, but must ensure host is in local
-		// community too
-//		和全局中心度的检查一样，但必须保证节点在本地社团
-		for(Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet())
+		// same check as for global centrality, but only for the hosts in the
+		// local community
+//		和全局中心度的检查一样，但仅检查本地社团中的节点
+		for(DTNHost h : cd.getLocalCommunity())
 		{
-			List<Duration> l = entry.getValue();
-			if(timeNow - l.get(l.size() - 1).end > CENTRALITY_TIME_WINDOW)
-				break;
-			if(cd.isHostInCommunity(entry.getKey()))
+			if(history.getNrofContacts(h) > 0 &&
+					timeNow - history.getLastContactEnd(h) < CENTRALITY_TIME_WINDOW)
 				centrality++;
 		}
 		
 		this.lastLocalComputationTime = SimClock.getIntTime();
 		return this.localCentrality = centrality;
 	}
+	
+	/**
+	 * Removes the contacts that have left the time window from the queue and
+	 * the peers whose latest contact it was from the count
+	 */
+	private void expire(ContactHistory history, int timeNow)
+	{
+		while(this.queueSize > 0 && timeNow - this.queuedEnds[this.queueHead] 
+				>= CENTRALITY_TIME_WINDOW)
+		{
+			DTNHost h = this.queuedPeers[this.queueHead];
+			int a = h.getAddress();
+			if(this.inWindow[a] && 
+					history.getLastContactEnd(h) == this.queuedEnds[this.queueHead])
+			{
+				this.inWindow[a] = false;
+				this.nrofPeersInWindow--;
+			}
+			this.queuedPeers[this.queueHead] = null;
+			this.queueHead = (this.queueHead + 1) % this.queuedPeers.length;
+			this.queueSize--;
+		}
+	}
 
 	public Centrality replicate()
 	{
@@ -189,7 +189,7 @@ public class SimpleCommunityDetection implements CommunityDetection
 	}
 	
 	public void connectionLost(DTNHost myHost, DTNHost peer, 
-			CommunityDetection peerCD, List<Duration> history)
+			CommunityDetection peerCD, ContactHistory history)
 	{
 		if(this.familiarSet.contains(peer)) return;
 		
@@ -200,13 +200,7 @@ public class SimpleCommunityDetection implements CommunityDetection
 //		如果该peer不是熟悉集的一部分，则当全部接触时间超过熟悉阈值时，将其添加到熟悉集中
 		// Compute total contact duration
 //		计算全部接触时间
-		Iterator<Duration> i = history.iterator();
-		double time = 0;
-		while(i.hasNext())
-		{
-			Duration d = i.next();
-			time += d.end - d.start;
-		}
+		double time = history.getTotalContactTime(peer);
 		
 		// Add peer to familiar set if needed (and by extension to the local comm.)
 //		如果需要的话将peer加入到熟悉集中(甚至加入到本地社团)
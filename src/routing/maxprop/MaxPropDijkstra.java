@@ -4,33 +4,31 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * The distances and the priority queue of the search are kept in arrays
+ * indexed by the node indexes (addresses).
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Initial size of the node arrays */
+	private static final int INIT_SIZE = 16;
 
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	/** Node distances from the source node */
+	private double[] distancesFromStart;
+	/** Visited nodes (where the shortest path is known) */
+	private boolean[] visited;
+	/** Binary heap of the unvisited nodes discovered so far */
+	private int[] unvisited;
+	/** Positions of the nodes in the heap (-1 for nodes not in the heap) */
+	private int[] heapPositions;
+	private int nrofUnvisited;
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
 	
@@ -41,22 +39,30 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.distancesFromStart = new double[INIT_SIZE];
+		this.visited = new boolean[INIT_SIZE];
+		this.unvisited = new int[INIT_SIZE];
+		this.heapPositions = new int[INIT_SIZE];
 	}
 
 	/**
 	 * Initializes a new search with the first hop router node
 	 * @param firstHop The first hop router node
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
+	private void initWith(int firstHop) {
+		int maxNode = firstHop;
+		for (Integer node : probs.keySet()) {
+			maxNode = Math.max(maxNode, node);
+		}
+		ensureCapacity(maxNode);
+
+		Arrays.fill(distancesFromStart, INFINITY);
+		Arrays.fill(visited, false);
+		Arrays.fill(heapPositions, -1);
+		this.nrofUnvisited = 0;
 		
 		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+		setDistance(firstHop, 0);
 	}
 	
 	/**
@@ -72,153 +78,172 @@ public class MaxPropDijkstra {
 		int nrofNodesToFind = to.size();
 		
 		initWith(from);
-		Integer node = null;
 		
 		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
+		while (nrofUnvisited > 0) {
+			int node = poll();
 			if (to.contains(node)) {
 				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
+				distMap.put(node, distancesFromStart[node]);
 				nrofNodesToFind--;
 				if (nrofNodesToFind == 0) {
 					break; // all requested nodes found
 				}
 			} 
 			
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+			visited[node] = true; // mark the node as visited
+			relax(node);          // add/update neighbor nodes' distances
 		}
 			
 		return distMap;
 	}
 	
+	/**
+	 * Calculates total costs to all the nodes. The cost to a node is the
+	 * same as with {@link #getCosts(Integer, Set)}.
+	 * @param from The index (address) of the start node
+	 * @return The costs indexed by the node indexes (addresses).
+	 * {@link Double#MAX_VALUE} is the cost to the nodes that can't be reached
+	 * (also for all the indexes that are beyond the end of the array).
+	 */
+	public double[] getAllCosts(int from) {
+		initWith(from);
+		
+		while (nrofUnvisited > 0) {
+			int node = poll();
+			visited[node] = true;
+			relax(node);
+		}
+		
+		return distancesFromStart.clone();
+	}
+	
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
+	private void relax(int node) {
+		double nodeDist = distancesFromStart[node];
+		MeetingProbabilitySet nodeProbs = this.probs.get(node);
 		
-		if (!this.probs.containsKey(node)) {
+		if (nodeProbs == null) {
 			return; // node's neighbors are not known
 		}
 		
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-		
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
+		for (Map.Entry<Integer, Double> e : 
+				nodeProbs.getAllProbs().entrySet()) {
+			int n = e.getKey();
+			if (n >= visited.length) {
+				ensureCapacity(n);
+			}
+			if (visited[n]) {
 				continue; // skip visited nodes
 			}
-						
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
 			
-			if (distancesFromStart.get(n) > nDist) { 
+			/* n node's distance from path's source node; the distance 
+			 * between the nodes is the complement of the probability that 
+			 * the next node "node" meets is n */
+			double nDist = nodeDist + (1 - e.getValue());
+			
+			if (distancesFromStart[n] > nDist) { 
 				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
 				setDistance(n, nDist);
 			}
 		}
 	}
 	
 	/**
-	 * Sets the distance from source node to a node
+	 * Sets the distance from source node to a node and moves the node to
+	 * its new place in the queue (or adds it to the queue)
 	 * @param n The node whose distance is set
 	 * @param distance The distance of the node from the source node
 	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
-	
-	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the 
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to". 
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
-	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private void setDistance(int n, double distance) {
+		distancesFromStart[n] = distance;
+		int pos = heapPositions[n];
+		if (pos < 0) {
+			pos = nrofUnvisited++;
+		}
+		
+		/* distances only decrease -> move the node up in the heap */
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (!isBefore(n, unvisited[parent])) {
+				break;
+			}
+			place(unvisited[parent], pos);
+			pos = parent;
+		}
+		place(n, pos);
 	}
 	
 	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
+	 * Removes and returns the node with the shortest distance from the queue
+	 * @return the node with the shortest distance
 	 */
-	private class DistanceComparator implements 
-		Comparator<Integer> {
+	private int poll() {
+		int first = unvisited[0];
+		heapPositions[first] = -1;
+		int last = unvisited[--nrofUnvisited];
+		if (nrofUnvisited == 0) {
+			return first;
+		}
 		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
+		/* move the last node down from the top of the heap */
+		int pos = 0;
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= nrofUnvisited) {
+				break;
 			}
-			else if (dist1 < dist2) {
-				return -1;
+			if (child + 1 < nrofUnvisited && 
+					isBefore(unvisited[child + 1], unvisited[child])) {
+				child++;
 			}
-			else {
-				return node1.compareTo(node2);
+			if (!isBefore(unvisited[child], last)) {
+				break;
 			}
+			place(unvisited[child], pos);
+			pos = child;
 		}
+		place(last, pos);
+		
+		return first;
+	}
+	
+	private void place(int node, int pos) {
+		unvisited[pos] = node;
+		heapPositions[node] = pos;
 	}
 	
 	/**
-	 * Simple Map implementation for storing distances. 
+	 * Returns true if node1 should be taken from the queue before node2, i.e.,
+	 * if node1's distance from the source node is smaller or if the 
+	 * distances are equal and node1's index is smaller.
 	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>(); 
-		}
+	private boolean isBefore(int node1, int node2) {
+		double dist1 = distancesFromStart[node1];
+		double dist2 = distancesFromStart[node2];
 		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
-			}
-		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+		return dist1 < dist2 || (dist1 == dist2 && node1 < node2);
+	}
+	
+	/**
+	 * Makes sure that the node arrays are big enough for the given node
+	 * @param node The biggest node index the arrays must have room for
+	 */
+	private void ensureCapacity(int node) {
+		int oldSize = visited.length;
+		if (node < oldSize) {
+			return;
 		}
 		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
-		}
+		int size = Math.max(node + 1, oldSize * 2);
+		distancesFromStart = Arrays.copyOf(distancesFromStart, size);
+		visited = Arrays.copyOf(visited, size);
+		unvisited = Arrays.copyOf(unvisited, size);
+		heapPositions = Arrays.copyOf(heapPositions, size);
+		Arrays.fill(distancesFromStart, oldSize, size, INFINITY);
+		Arrays.fill(heapPositions, oldSize, size, -1);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.prophet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Delivery predictabilities of a PRoPHET router. The predictabilities are
+ * stored in arrays indexed by host address. Aging is done lazily: every
+ * predictability is stored with the time it was last set and aged to the
+ * current time when it is read.
+ * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
+ * time units that have elapsed since the value was set.
+ */
+public class PredictabilityTable {
+	/** initial size of the arrays */
+	private static final int INITIAL_SIZE = 16;
+
+	/** the predictabilities at the time they were set */
+	private double[] preds;
+	/** the (sim)times the predictabilities were set */
+	private double[] times;
+	/** the hosts that have a predictability (by address) */
+	private DTNHost[] hosts;
+	/** addresses of the hosts with a predictability, in the order they were
+	 * added to the table */
+	private int[] known;
+	private int nrofKnown;
+
+	/** aging constant */
+	private double gamma;
+	/** number of seconds in a time unit */
+	private double secondsInTimeUnit;
+
+	/** set time and current time of the last calculated aging multiplier */
+	private double multSetTime;
+	private double multTime;
+	/** the last calculated aging multiplier */
+	private double mult;
+
+	/**
+	 * Creates an empty table
+	 * @param gamma The aging constant
+	 * @param secondsInTimeUnit Number of seconds in one time unit of aging
+	 */
+	public PredictabilityTable(double gamma, double secondsInTimeUnit) {
+		this.gamma = gamma;
+		this.secondsInTimeUnit = secondsInTimeUnit;
+		this.preds = new double[INITIAL_SIZE];
+		this.times = new double[INITIAL_SIZE];
+		this.hosts = new DTNHost[INITIAL_SIZE];
+		this.known = new int[INITIAL_SIZE];
+		this.nrofKnown = 0;
+		this.multTime = -1;
+	}
+
+	/**
+	 * Returns the current predictability for a host or 0 if there is no
+	 * predictability for the host
+	 * @param host The host
+	 * @return the current predictability
+	 */
+	public double get(DTNHost host) {
+		int a = host.getAddress();
+		if (a >= hosts.length || hosts[a] == null) {
+			return 0;
+		}
+		return aged(a, SimClock.getTime());
+	}
+
+	/**
+	 * Sets the current predictability for a host
+	 * @param host The host
+	 * @param value The new predictability
+	 */
+	public void set(DTNHost host, double value) {
+		int a = host.getAddress();
+		if (a >= hosts.length) {
+			grow(a);
+		}
+		if (hosts[a] == null) {
+			hosts[a] = host;
+			if (nrofKnown == known.length) {
+				known = Arrays.copyOf(known, known.length * 2);
+			}
+			known[nrofKnown++] = a;
+		}
+		preds[a] = value;
+		times[a] = SimClock.getTime();
+	}
+
+	/**
+	 * Updates the predictability for a host that was just met.
+	 * <CODE>P(a,b) = P(a,b)_old + (1 - P(a,b)_old) * pEnc</CODE>
+	 * @param host The host that was met
+	 * @param pEnc The encounter predictability (e.g., P_INIT)
+	 */
+	public void encounter(DTNHost host, double pEnc) {
+		double oldValue = get(host);
+		set(host, oldValue + (1 - oldValue) * pEnc);
+	}
+
+	/**
+	 * Updates transitive (A->B->C) delivery predictabilities from the
+	 * table of the met host B.
+	 * <CODE>P(a,c) = P(a,c)_old + (1 - P(a,c)_old) * P(a,b) * P(b,c) * BETA
+	 * </CODE>
+	 * @param other The table of host B
+	 * @param self The host A whose table this is (not added to the table)
+	 * @param pForHost The predictability P(a,b)
+	 * @param beta The transitivity scaling constant
+	 */
+	public void updateTransitive(PredictabilityTable other, DTNHost self,
+			double pForHost, double beta) {
+		double now = SimClock.getTime();
+		double scale = pForHost * beta;
+		for (int i=0, n = other.nrofKnown; i < n; i++) {
+			int c = other.known[i];
+			if (other.hosts[c] == self) {
+				continue; // don't add yourself
+			}
+			double pOld = known(c) ? aged(c, now) : 0; // P(a,c)_old
+			set(other.hosts[c], pOld + (1 - pOld) * scale * other.aged(c, now));
+		}
+	}
+
+	/**
+	 * Updates transitive (A->B->C) delivery predictabilities from the
+	 * table of the met host B as defined for PRoPHETv2. The predictability
+	 * is updated only if the new value is bigger than the old value.
+	 * <CODE>P(a,c) = max(P(a,c)_old, P(a,b) * P(b,c) * BETA)</CODE>
+	 * @param other The table of host B
+	 * @param self The host A whose table this is (not added to the table)
+	 * @param pForHost The predictability P(a,b)
+	 * @param beta The transitivity scaling constant
+	 */
+	public void updateTransitiveMax(PredictabilityTable other, DTNHost self,
+			double pForHost, double beta) {
+		double now = SimClock.getTime();
+		for (int i=0, n = other.nrofKnown; i < n; i++) {
+			int c = other.known[i];
+			if (other.hosts[c] == self) {
+				continue; // don't add yourself
+			}
+			double pOld = known(c) ? aged(c, now) : 0; // P(a,c)_old
+			double pNew = pForHost * other.aged(c, now) * beta;
+			if (pNew > pOld) {
+				set(other.hosts[c], pNew);
+			}
+		}
+	}
+
+	/**
+	 * Changes the aging constant. The predictabilities are first aged to
+	 * the current time with the old constant.
+	 * @param gamma The new aging constant
+	 */
+	public void setGamma(double gamma) {
+		if (gamma == this.gamma) {
+			return;
+		}
+		double now = SimClock.getTime();
+		for (int i=0; i < nrofKnown; i++) {
+			int a = known[i];
+			preds[a] = aged(a, now);
+			times[a] = now;
+		}
+		this.gamma = gamma;
+		this.multTime = -1;
+	}
+
+	/**
+	 * Returns the number of hosts that have a predictability
+	 * @return the number of hosts
+	 */
+	public int size() {
+		return this.nrofKnown;
+	}
+
+	/**
+	 * Returns the hosts that have a predictability
+	 * @return the hosts in the order they were added to the table
+	 */
+	public List<DTNHost> getHosts() {
+		List<DTNHost> list = new ArrayList<DTNHost>(nrofKnown);
+		for (int i=0; i < nrofKnown; i++) {
+			list.add(hosts[known[i]]);
+		}
+		return list;
+	}
+
+	private boolean known(int a) {
+		return a < hosts.length && hosts[a] != null;
+	}
+
+	/**
+	 * Returns the predictability of a known host aged to the given time
+	 */
+	private double aged(int a, double now) {
+		double t = times[a];
+		if (t == now) {
+			return preds[a];
+		}
+		/* values set at the same time are often read at the same time */
+		if (t != multSetTime || now != multTime) {
+			mult = Math.pow(gamma, (now - t) / secondsInTimeUnit);
+			multSetTime = t;
+			multTime = now;
+		}
+		return preds[a] * mult;
+	}
+
+	private void grow(int address) {
+		int size = Math.max(address + 1, hosts.length * 2);
+		preds = Arrays.copyOf(preds, size);
+		times = Arrays.copyOf(times, size);
+		hosts = Arrays.copyOf(hosts, size);
+	}
+}
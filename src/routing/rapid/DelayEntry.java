@@ -9,24 +9,28 @@
  */
 package routing.rapid;
 
-import java.util.HashMap;
-import java.util.Set;
-import java.util.Map.Entry;
+import java.util.Arrays;
 
 import core.DTNHost;
 import core.Message;
 import core.SimClock;
-import core.Tuple;
 
 /**
  * Class for storing and manipulating delay entries for a specified message of 
- * the RAPID router module.
+ * the RAPID router module. The delays and their update times are stored in
+ * arrays sorted by the address of the host the delay is for.
  */
 public class DelayEntry {
+	private static final int INITIAL_SIZE = 4;
 	
 	private Message msg = null;
-	//HashMap<DTNHost host, Tuple<Double delay, Double lastUpdate>>
-	private HashMap<DTNHost, Tuple<Double, Double>> delays = null;
+	//hosts which contain a copy of the message (sorted by address)
+	private DTNHost[] hosts;
+	//estimated delays of the hosts
+	private double[] delays;
+	//times the delays were last updated
+	private double[] times;
+	private int size;
 	private boolean changed;
 	
 	/**
@@ -35,7 +39,10 @@ public class DelayEntry {
 	 */
 	public DelayEntry(Message msg) {
 		this.msg = msg;
-		this.delays = new HashMap<DTNHost, Tuple<Double, Double>>();
+		this.hosts = new DTNHost[INITIAL_SIZE];
+		this.delays = new double[INITIAL_SIZE];
+		this.times = new double[INITIAL_SIZE];
+		this.size = 0;
 		this.changed = false;
 	}
 	
@@ -46,8 +53,23 @@ public class DelayEntry {
 	 * @param delay The time
 	 */
 	public void addHostDelay(DTNHost host, double delay, double time) {
-		assert(!delays.containsKey(host));
-		delays.put(host, new Tuple<Double, Double>(delay, time));
+		int i = indexOf(host);
+		assert(i < 0);
+		i = -(i + 1);
+		
+		if (size == hosts.length) {
+			hosts = Arrays.copyOf(hosts, size * 2);
+			delays = Arrays.copyOf(delays, size * 2);
+			times = Arrays.copyOf(times, size * 2);
+		}
+		System.arraycopy(hosts, i, hosts, i + 1, size - i);
+		System.arraycopy(delays, i, delays, i + 1, size - i);
+		System.arraycopy(times, i, times, i + 1, size - i);
+		size++;
+		
+		hosts[i] = host;
+		delays[i] = delay;
+		times[i] = time;
 		
 		changed = true;
 	}
@@ -68,8 +90,10 @@ public class DelayEntry {
 	 * @param delay The delay
 	 */
 	public void setHostDelay(DTNHost host, double delay, double time) {
-		assert(delays.containsKey(host));
-		delays.put(host, new Tuple<Double, Double>(delay, time));
+		int i = indexOf(host);
+		assert(i >= 0);
+		delays[i] = delay;
+		times[i] = time;
 		
 		changed = true;
 	}
@@ -80,7 +104,14 @@ public class DelayEntry {
 	 * @param delay The delay
 	 */
 	public void removeHostDelay(DTNHost host) {
-		delays.remove(host);
+		int i = indexOf(host);
+		if (i >= 0) {
+			size--;
+			System.arraycopy(hosts, i + 1, hosts, i, size - i);
+			System.arraycopy(delays, i + 1, delays, i, size - i);
+			System.arraycopy(times, i + 1, times, i, size - i);
+			hosts[size] = null;
+		}
 		
 		changed = true;
 	}
@@ -94,12 +125,39 @@ public class DelayEntry {
 	}
 	
 	/**
-	 * Returns the delay values of this delay entry 
-	 * @return the current delay values 
-	 * Entry<DTNHost host, Tuple<Double delay, Double lastUpdate>>
+	 * Returns the number of hosts that have a delay value in this entry
+	 * @return the number of hosts
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the host of the given index. The hosts are in the order of
+	 * their addresses.
+	 * @param index Index of the host (0 ... {@link #size()}-1)
+	 * @return the host
+	 */
+	public DTNHost getHost(int index) {
+		return hosts[index];
+	}
+	
+	/**
+	 * Returns the delay value of the host of the given index
+	 * @param index Index of the host (see {@link #getHost(int)})
+	 * @return the delay value
+	 */
+	public double getDelay(int index) {
+		return delays[index];
+	}
+	
+	/**
+	 * Returns the last update time of the host of the given index
+	 * @param index Index of the host (see {@link #getHost(int)})
+	 * @return the time the delay was last updated
 	 */
-	public Set<Entry<DTNHost, Tuple<Double, Double>>> getDelays() {
-		return delays.entrySet();
+	public double getLastUpdate(int index) {
+		return times[index];
 	}
 	
 	/**
@@ -109,8 +167,9 @@ public class DelayEntry {
 	 * @return the current delay value
 	 */
 	public Double getDelayOf(DTNHost host) {
-		if (delays.get(host) == null) return null;
-		return delays.get(host).getKey();
+		int i = indexOf(host);
+		if (i < 0) return null;
+		return delays[i];
 	}
 	
 	/**
@@ -121,9 +180,10 @@ public class DelayEntry {
 	 * @return true or false
 	 */
 	public boolean isOlderThan(DTNHost host, double time) {
-		if (!contains(host)) return true;
+		int i = indexOf(host);
+		if (i < 0) return true;
 		
-		return (getLastUpdate(host) < time);
+		return (times[i] < time);
 	}
 	
 	/**
@@ -134,13 +194,14 @@ public class DelayEntry {
 	 * @return true or false
 	 */
 	public boolean isAsOldAs(DTNHost host, double time) {
-		if (!contains(host)) return false;
+		int i = indexOf(host);
+		if (i < 0) return false;
 		
-		return (getLastUpdate(host) == time);
+		return (times[i] == time);
 	}
 	
 	public boolean contains(DTNHost host) {
-		return (getDelayOf(host) != null);
+		return (indexOf(host) >= 0);
 	}
 	
 	/**
@@ -150,9 +211,10 @@ public class DelayEntry {
 	 * @return the time this entry was updated last
 	 */
 	public Double getLastUpdate(DTNHost host) {
-		if (!contains(host)) return null;
+		int i = indexOf(host);
+		if (i < 0) return null;
 		
-		return (delays.get(host).getValue());
+		return times[i];
 	}
 
 	public void setChanged(boolean changed) {
@@ -163,22 +225,47 @@ public class DelayEntry {
 		return changed;
 	}
 	
+	/**
+	 * Returns the index of the host or (-(insertion point) - 1) if the host
+	 * has no delay value in this entry
+	 */
+	private int indexOf(DTNHost host) {
+		int address = host.getAddress();
+		int low = 0;
+		int high = size - 1;
+		
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midAddress = hosts[mid].getAddress();
+			if (midAddress < address) {
+				low = mid + 1;
+			}
+			else if (midAddress > address) {
+				high = mid - 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+	
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof DelayEntry) {
 			DelayEntry entry = (DelayEntry) o;
-			boolean status = ((this.msg.compareTo(entry.msg) == 0) && (equalsCheck(entry.delays)));
+			boolean status = ((this.msg.compareTo(entry.msg) == 0) && (equalsCheck(entry)));
 			return status;
 		}
 		return false;
 	}
 	
-	private boolean equalsCheck(HashMap<DTNHost, Tuple<Double, Double>> map) {
-		for (Entry<DTNHost, Tuple<Double, Double>> entry : this.getDelays()) {
-			Tuple<Double, Double> t = map.get(entry.getKey());
-			if (t == null) return false;
-			if (!t.getKey().equals(entry.getValue().getKey())) return false;
-			if (!t.getValue().equals(entry.getValue().getValue())) return false;
+	private boolean equalsCheck(DelayEntry entry) {
+		for (int i = 0; i < size; i++) {
+			int k = entry.indexOf(hosts[i]);
+			if (k < 0) return false;
+			if (Double.compare(entry.delays[k], delays[i]) != 0) return false;
+			if (Double.compare(entry.times[k], times[i]) != 0) return false;
 		}
 		
 		return true;
@@ -188,9 +275,8 @@ public class DelayEntry {
 	 * Print for every host the entries to the command line
 	 */
 	public void print() {
-		//Entry<DTNHost host, Tuple<Double delay, Double lastUpdate>>
-		for (Entry<DTNHost, Tuple<Double, Double>> entry : getDelays()) {
-			System.out.println(msg+"  \t\t"+entry.getKey()+"\t\t\t"+entry.getValue().getKey()+"\t\t\t\t"+entry.getValue().getValue());
+		for (int i = 0; i < size; i++) {
+			System.out.println(msg+"  \t\t"+hosts[i]+"\t\t\t"+delays[i]+"\t\t\t\t"+times[i]);
 		}
 	}
 }
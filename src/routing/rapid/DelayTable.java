@@ -9,6 +9,7 @@
  */
 package routing.rapid;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -25,9 +26,15 @@ import core.SimClock;
 
 /**
  * Class for storing and manipulating delay entries for the RAPID
- * router module.
+ * router module. The meeting time matrix is stored in flat arrays: a
+ * matrix of indexes to the meeting entries and arrays of the entries' 
+ * values.
  */
 public class DelayTable {
+	/** Value for the average meeting time when the hosts have not met */
+	public static final double NO_MEETING = -1;
+	//Initial size of the meeting entry value arrays
+	private static final int INITIAL_NROF_ENTRIES = 16;
 	
 	private int transferCounter;
 	private double avgTransferOpportunity;
@@ -36,8 +43,24 @@ public class DelayTable {
 	private DTNHost host;
 	//Delay entries for a specified message id
 	private HashMap<String, DelayEntry> delayTable;
-	//Meeting entry for meeting of two hosts (DTNHosts)
-	private MeetingEntry[][] meetingEntry;
+	//Index of the meeting entry for meeting of two hosts (DTNHosts): 
+	//entry [from][to] is at index from*MATRIX_DIMENSION+to. Index 0 means 
+	//that there is no entry, otherwise the entry values are at (index-1).
+	private int[] meetingIndexes;
+	//Average meeting times, last update times, weights and dummy flags
+	//of the meeting entries
+	private double[] avgMeetingTimes;
+	private double[] meetingUpdates;
+	private int[] meetingWeights;
+	private boolean[] dummyMeetings;
+	private int nrofMeetingEntries;
+	//Number of changes to the meeting entries
+	private int meetingVersion;
+	//Cached average (indirect) meeting times of this table's host and the 
+	//other hosts (NaN if not calculated yet, NO_MEETING if there is no entry)
+	private double[] indirectMeetingTimes;
+	//Value of meetingVersion when the cached meeting times were calculated
+	private int indirectMeetingVersion;
 	/** IDs of the messages that are known to have reached the final destination */
 	private Set<String> ackedMessageIds;
 	
@@ -65,7 +88,14 @@ public class DelayTable {
 		
 		this.MATRIX_DIMENSION = 0;
 		delayTable = new HashMap<String, DelayEntry>();
-		meetingEntry = new MeetingEntry[MATRIX_DIMENSION][MATRIX_DIMENSION];
+		meetingIndexes = new int[0];
+		avgMeetingTimes = new double[INITIAL_NROF_ENTRIES];
+		meetingUpdates = new double[INITIAL_NROF_ENTRIES];
+		meetingWeights = new int[INITIAL_NROF_ENTRIES];
+		dummyMeetings = new boolean[INITIAL_NROF_ENTRIES];
+		nrofMeetingEntries = 0;
+		indirectMeetingTimes = new double[0];
+		indirectMeetingVersion = -1;
 		recomputeMatrix(matrixDim);
 		
 		// initialize variables with default values 
@@ -165,12 +195,16 @@ public class DelayTable {
 		if ((from >= MATRIX_DIMENSION) || (to >= MATRIX_DIMENSION)) recomputeMatrix(Math.max(from, to)+1);
 		
 		//create or update entry [from][to]
-		if (meetingEntry[from][to] == null) meetingEntry[from][to] = new MeetingEntry(meetingTime, timestamp);
-		else meetingEntry[from][to].set(meetingTime, timestamp, weight);
+		int index = meetingIndexes[from * MATRIX_DIMENSION + to];
+		if (index == 0) newMeetingEntry(from, to, meetingTime, timestamp);
+		else setMeetingEntry(index - 1, meetingTime, timestamp, weight);
 		
 		//create or update entry [to][from]
-		if (meetingEntry[to][from] == null) meetingEntry[to][from] = new MeetingEntry(meetingTime, timestamp);
-		else meetingEntry[to][from].set(meetingTime, timestamp, weight);
+		index = meetingIndexes[to * MATRIX_DIMENSION + from];
+		if (index == 0) newMeetingEntry(to, from, meetingTime, timestamp);
+		else setMeetingEntry(index - 1, meetingTime, timestamp, weight);
+		
+		meetingVersion++;
 	}
 	
 	public void updateAvgMeetingTime(int from, int to, double meetingTime, double timestamp) {
@@ -191,24 +225,80 @@ public class DelayTable {
 		
 		if (dummy) {
 			//only create the dummy entry if no entry exists for this meeting
-			if (meetingEntry[from][to] != null) return;
-			assert (meetingEntry[to][from] == null); 
+			if (hasMet(from, to)) return;
+			assert (!hasMet(to, from)); 
 			
 			//create dummy entry [from][to] 
-			meetingEntry[from][to] = new MeetingEntry(meetingTime, timestamp, 0, true);
+			setMeetingEntry(addMeetingEntry(from, to), meetingTime, timestamp, 0);
+			dummyMeetings[nrofMeetingEntries - 1] = true;
 			
 			//create dummy entry [to][from]
-			meetingEntry[to][from] = new MeetingEntry(meetingTime, timestamp, 0, true);
+			setMeetingEntry(addMeetingEntry(to, from), meetingTime, timestamp, 0);
+			dummyMeetings[nrofMeetingEntries - 1] = true;
 		}
 		else {
 			//create or update entry [from][to]
-			if ((meetingEntry[from][to] == null) || (meetingEntry[from][to].isDummy())) meetingEntry[from][to] = new MeetingEntry(meetingTime, timestamp);
-			else meetingEntry[from][to].update(meetingTime, timestamp);
+			updateMeetingEntry(from, to, meetingTime, timestamp);
 			
 			//create or update entry [to][from]
-			if ((meetingEntry[to][from] == null) || (meetingEntry[to][from].isDummy())) meetingEntry[to][from] = new MeetingEntry(meetingTime, timestamp);
-			else meetingEntry[to][from].update(meetingTime, timestamp);
+			updateMeetingEntry(to, from, meetingTime, timestamp);
+		}
+		
+		meetingVersion++;
+	}
+	
+	/**
+	 * Creates a new (non-dummy) meeting entry or updates the average 
+	 * meeting time of an existing entry. Dummy entries are replaced.
+	 */
+	private void updateMeetingEntry(int from, int to, double meetingTime, double timestamp) {
+		int index = meetingIndexes[from * MATRIX_DIMENSION + to] - 1;
+		if ((index < 0) || (dummyMeetings[index])) {
+			newMeetingEntry(from, to, meetingTime, timestamp);
+			return;
+		}
+		
+		int weight = meetingWeights[index];
+		avgMeetingTimes[index] = (((weight * avgMeetingTimes[index]) + meetingTime) / (weight + 1));
+		meetingWeights[index] = weight + 1;
+		meetingUpdates[index] = timestamp;
+	}
+	
+	/**
+	 * Creates a new meeting entry [from][to] for one meeting (replaces the 
+	 * old entry if there is one)
+	 */
+	private void newMeetingEntry(int from, int to, double meetingTime, double timestamp) {
+		int index = meetingIndexes[from * MATRIX_DIMENSION + to] - 1;
+		if (index < 0) index = addMeetingEntry(from, to);
+		
+		dummyMeetings[index] = false;
+		setMeetingEntry(index, 0, 0, 0);
+		updateMeetingEntry(from, to, meetingTime, timestamp);
+	}
+	
+	/**
+	 * Adds a new meeting entry [from][to] with zero values
+	 * @return the index of the entry values
+	 */
+	private int addMeetingEntry(int from, int to) {
+		if (nrofMeetingEntries == avgMeetingTimes.length) {
+			int size = nrofMeetingEntries * 2;
+			avgMeetingTimes = Arrays.copyOf(avgMeetingTimes, size);
+			meetingUpdates = Arrays.copyOf(meetingUpdates, size);
+			meetingWeights = Arrays.copyOf(meetingWeights, size);
+			dummyMeetings = Arrays.copyOf(dummyMeetings, size);
 		}
+		
+		int index = nrofMeetingEntries++;
+		meetingIndexes[from * MATRIX_DIMENSION + to] = index + 1;
+		return index;
+	}
+	
+	private void setMeetingEntry(int index, double meetingTime, double timestamp, int weight) {
+		avgMeetingTimes[index] = meetingTime;
+		meetingUpdates[index] = timestamp;
+		meetingWeights[index] = weight;
 	}
 	
 	public int getMeetingMatrixDimension() {
@@ -220,8 +310,7 @@ public class DelayTable {
 		RapidRouter r = ((RapidRouter) host.getRouter());
 		
 		for (int i = 0; i < MATRIX_DIMENSION; i++) {
-			MeetingEntry entry = getIndirectMeetingEntry(from, i);
-			if (entry != null) {
+			if (getIndirectMeetingEntry(from, i) != null) {
 				assert(r.getHostMapping().containsKey(i));
 				DTNHost host = r.getHostMapping().get(i);
 				map.put(host, r.getMeetingProb(host));  
@@ -235,50 +324,72 @@ public class DelayTable {
 		int count = 0;
 		
 		for (int i = 0; i < MATRIX_DIMENSION; i++) {
-			MeetingEntry entry = getMeetingEntry(from, i);
-			if (entry != null) count = count + entry.getWeight(); 
+			int index = getMeetingIndex(from, i);
+			if (index >= 0) count = count + meetingWeights[index]; 
 		}
 		
 		return count;
 	}
 	
+	/**
+	 * Returns a copy of the meeting entry [from][to] or null if the hosts
+	 * have not met
+	 * @param from The index of the first DTNHost
+	 * @param to The index of the second DTNHost
+	 * @return the meeting entry or null
+	 */
 	public MeetingEntry getMeetingEntry(int from, int to) {
-		if ((from >= MATRIX_DIMENSION) || (to >= MATRIX_DIMENSION)) return null;
-		return meetingEntry[from][to];
+		int index = getMeetingIndex(from, to);
+		if (index < 0) return null;
+		return new MeetingEntry(avgMeetingTimes[index], meetingUpdates[index], meetingWeights[index], dummyMeetings[index]);
 	}
-		
+	
+	/**
+	 * Returns the meeting entry for the given hosts. If the hosts have not
+	 * met, an entry is created from the (2 or 3 hop) path of met hosts 
+	 * whose minimum average meeting time times minimum weight is the
+	 * biggest.
+	 * @param from The index of the first DTNHost
+	 * @param to The index of the second DTNHost
+	 * @return the meeting entry or null if no such path exists
+	 */
 	public MeetingEntry getIndirectMeetingEntry(int from, int to) {
 		MeetingEntry entry = getMeetingEntry(from, to);
 		
 		if (entry != null) return entry;
 		//find an indirect meeting entry (3 hops) if one exists
 		else {
-			MeetingEntry maxEntry = new MeetingEntry(-1, 0);
-			MeetingEntry entry0;
-			MeetingEntry entry1;
-			MeetingEntry entry2;
+			//values of the best entry so far
+			double maxTime = -1;
+			double maxUpdate = 0;
+			int maxWeight = 1;
 			for (int i=0; i<MATRIX_DIMENSION; i++) {
-				if (hasMet(from, i) /*|| hasMeeting(from, i)*/) {
+				int index0 = getMeetingIndex(from, i);
+				if (index0 >= 0) {
 					//find 2 hop neighbor
-					if (hasMet(i, to) /*|| hasMeeting(i, to)*/) {
-						entry0 = getMeetingEntry(from, i);
-						entry1 = getMeetingEntry(i, to);
-						entry = createMeetingEntry(entry0, entry1);
-						if ((entry.getAvgMeetingTime()*entry.getWeight()) > (maxEntry.getAvgMeetingTime()*maxEntry.getWeight())) {
-							maxEntry = new MeetingEntry(entry);
+					int index1 = getMeetingIndex(i, to);
+					if (index1 >= 0) {
+						double time = Math.min(avgMeetingTimes[index0], avgMeetingTimes[index1]);
+						int weight = Math.min(meetingWeights[index0], meetingWeights[index1]);
+						if ((time*weight) > (maxTime*maxWeight)) {
+							maxTime = time;
+							maxUpdate = Math.min(meetingUpdates[index0], meetingUpdates[index1]);
+							maxWeight = weight;
 						}						
 					}
 					//find 3 hop neighbor
 					else {
 						for (int k=0; k<MATRIX_DIMENSION; k++) {
-							if (hasMet(i, k) /*|| hasMeeting(i, k)*/) {
-								if (hasMet(k, to) /*|| hasMeeting(k, to)*/) {
-									entry0 = getMeetingEntry(from, i);
-									entry1 = getMeetingEntry(i, k);
-									entry2 = getMeetingEntry(k, to);
-									entry = createMeetingEntry(entry0, entry1, entry2);
-									if ((entry.getAvgMeetingTime()*entry.getWeight()) > (maxEntry.getAvgMeetingTime()*maxEntry.getWeight())) {
-										maxEntry = new MeetingEntry(entry);
+							index1 = getMeetingIndex(i, k);
+							if (index1 >= 0) {
+								int index2 = getMeetingIndex(k, to);
+								if (index2 >= 0) {
+									double time = Math.min(Math.min(avgMeetingTimes[index0], avgMeetingTimes[index1]), avgMeetingTimes[index2]);
+									int weight = Math.min(Math.min(meetingWeights[index0], meetingWeights[index1]), meetingWeights[index2]);
+									if ((time*weight) > (maxTime*maxWeight)) {
+										maxTime = time;
+										maxUpdate = Math.min(Math.min(meetingUpdates[index0], meetingUpdates[index1]), meetingUpdates[index2]);
+										maxWeight = weight;
 									}	
 								}
 							}
@@ -286,12 +397,80 @@ public class DelayTable {
 					}
 				}
 			}
-			if ((maxEntry.getAvgMeetingTime()*maxEntry.getWeight()) > -1) return maxEntry;
+			if ((maxTime*maxWeight) > -1) return new MeetingEntry(maxTime, maxUpdate, maxWeight, false);
 		}
 		
 		return null; 
 	}
 	
+	/**
+	 * Returns the average meeting time of the (possibly indirect, see 
+	 * {@link #getIndirectMeetingEntry(int, int)}) meeting entry of this 
+	 * table's host and the given host. The times are cached until the 
+	 * meeting entries change.
+	 * @param to The index of the other DTNHost
+	 * @return the average meeting time or {@link #NO_MEETING} if there is
+	 * no such entry
+	 */
+	public synchronized double getAvgMeetingTimeTo(int to) {
+		if (indirectMeetingVersion != meetingVersion) {
+			if (indirectMeetingTimes.length != MATRIX_DIMENSION) {
+				indirectMeetingTimes = new double[MATRIX_DIMENSION];
+			}
+			Arrays.fill(indirectMeetingTimes, Double.NaN);
+			indirectMeetingVersion = meetingVersion;
+		}
+		if (to >= MATRIX_DIMENSION) {
+			return getAvgMeetingTime(getIndirectMeetingEntry(host.getAddress(), to));
+		}
+		
+		double time = indirectMeetingTimes[to];
+		if (Double.isNaN(time)) {
+			time = getAvgMeetingTime(getIndirectMeetingEntry(host.getAddress(), to));
+			indirectMeetingTimes[to] = time;
+		}
+		return time;
+	}
+	
+	private static double getAvgMeetingTime(MeetingEntry entry) {
+		return (entry == null ? NO_MEETING : entry.getAvgMeetingTime());
+	}
+	
+	/**
+	 * Copies the meeting entries of this table to the other table. Entries
+	 * that the other table doesn't have are created, and the older entries
+	 * (or the ones with shorter average meeting time if the entries are as
+	 * old) are replaced.
+	 * @param other The table to copy the entries to
+	 */
+	public void copyMeetingTimesTo(DelayTable other) {
+		for (int i = 0; i < MATRIX_DIMENSION; i++) {
+			for (int k = 0; k < MATRIX_DIMENSION; k++) {
+				int index = meetingIndexes[i * MATRIX_DIMENSION + k] - 1;
+				if (index < 0) continue;
+				
+				double time = avgMeetingTimes[index];
+				double update = meetingUpdates[index];
+				int weight = meetingWeights[index];
+				int otherIndex = other.getMeetingIndex(i, k);
+				//create a new meeting entry if meeting entry at other host doesn't exist
+				if (otherIndex < 0) {
+					other.setAvgMeetingTime(i, k, time, update, weight);
+				}
+				else {
+					//check last update time of other hosts entry and update it 
+					if (other.meetingUpdates[otherIndex] < update) {
+						other.setAvgMeetingTime(i, k, time, update, weight);
+					}
+					
+					if ((other.meetingUpdates[otherIndex] == update) && (time > other.avgMeetingTimes[otherIndex])) {							
+						other.setAvgMeetingTime(i, k, time, update, weight);
+					}
+				}
+			}
+		}
+	}
+	
 //	private MeetingEntry getDummyMeetingEntry(int from, int to) {
 //		//if the nodes with address "from" and "to" are actually meeting for the first
 //		//time the entry doesn't exists yet (will be created at disconnecting) -> return 
@@ -307,9 +486,23 @@ public class DelayTable {
 //		return (new MeetingEntry(DUMMY_AVG_MEETING_TIME));
 //	}
 	
-	private boolean hasMet(int from, int to) {
-		if ((from >= MATRIX_DIMENSION) || (to >= MATRIX_DIMENSION)) return false;
-		return (meetingEntry[from][to]!=null);
+	/**
+	 * Returns true if there is a meeting entry [from][to]
+	 * @param from The index of the first DTNHost
+	 * @param to The index of the second DTNHost
+	 * @return true if the hosts have met
+	 */
+	public boolean hasMet(int from, int to) {
+		return (getMeetingIndex(from, to) >= 0);
+	}
+	
+	/**
+	 * Returns the index of the values of meeting entry [from][to] or -1
+	 * if there is no such entry
+	 */
+	private int getMeetingIndex(int from, int to) {
+		if ((from >= MATRIX_DIMENSION) || (to >= MATRIX_DIMENSION)) return -1;
+		return meetingIndexes[from * MATRIX_DIMENSION + to] - 1;
 	}
 	
 //	private boolean hasMeeting(int from, int to) {
@@ -322,70 +515,25 @@ public class DelayTable {
 //		return false;
 //	}
 	
-	private double getMinimum(double[] values) {
-		if ((values == null) || (values.length == 0)) return -1;
-		double min = values[0];
-		
-		for (int i = 1; i < values.length; i++) {
-			min = Math.min(min, values[i]);
-		}
-		
-		return min;
-	}
-	
-	private int getMinimum(int[] values) {
-		if ((values == null) || (values.length == 0)) return -1;
-		int min = values[0];
-		
-		for (int i = 1; i < values.length; i++) {
-			min = Math.min(min, values[i]);
-		}
-		
-		return min;
-	}
-	
-	private MeetingEntry createMeetingEntry(MeetingEntry ... entries) {
-		if ((entries == null) || (entries.length == 0)) return null;
-		double[] meetingTimes = new double[entries.length];
-		double[] meetingUpdates = new double[entries.length];;
-		int[] meetingWeights = new int[entries.length];;
-		
-		for (int i = 0; i < entries.length; i++) {
-			meetingTimes[i] = entries[i].getAvgMeetingTime();
-			meetingUpdates[i] = entries[i].getLastUpdate();
-			meetingWeights[i] = entries[i].getWeight();
-		}
-		
-		return (new MeetingEntry(getMinimum(meetingTimes), getMinimum(meetingUpdates), getMinimum(meetingWeights), false));
-	}
-	
 	/**
 	 * Recompute the new dimension of the matrix (the new dimension has to 
-	 * be lager than the old one) and copies old entries. All new entries 
-	 * were initialized with 'null'. 
+	 * be lager than the old one) and copies old entries. The new hosts
+	 * have no meeting entries.
 	 * @param dimension The new size of the matrix
 	 */
 	private void recomputeMatrix(int dimension) {
 		assert (dimension >= MATRIX_DIMENSION);
-		//create matrix of new dimension 
-		MeetingEntry[][] entry = new MeetingEntry[dimension][dimension];
+		//create matrix of new dimension (new entries are 0 -> no entry)
+		int[] indexes = new int[dimension * dimension];
 		
 		//copy old entries into new matrix
 		for (int i = 0; i < MATRIX_DIMENSION; i++) {
-			for (int k = 0; k < MATRIX_DIMENSION; k++) { 
-				entry[i][k] = meetingEntry[i][k];
-			}
-		}
-		
-		//initialize new entries with 'null'
-		for (int i = MATRIX_DIMENSION; i < dimension; i++) {
-			for (int k = MATRIX_DIMENSION; k < dimension; k++) {
-				entry[i][k] = null;
-			}
+			System.arraycopy(meetingIndexes, i * MATRIX_DIMENSION, indexes, i * dimension, MATRIX_DIMENSION);
 		}
 		
 		MATRIX_DIMENSION = dimension;
-		meetingEntry = entry;
+		meetingIndexes = indexes;
+		meetingVersion++;
 	}
 	
 	/**
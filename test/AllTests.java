@@ -49,6 +49,19 @@ public class AllTests {
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(ContactPredictionQueueTest.class);
+		suite.addTestSuite(EventQueueSchedulerTest.class);
+		suite.addTestSuite(MessageBufferTest.class);
+		suite.addTestSuite(PredictabilityTableTest.class);
+		suite.addTestSuite(CommunityDetectionTest.class);
+		suite.addTestSuite(CentralityTest.class);
+		suite.addTestSuite(LandmarkPathFinderTest.class);
+		suite.addTestSuite(SimMapFileTest.class);
+		suite.addTestSuite(PathTest.class);
+		suite.addTestSuite(RapidRouterTest.class);
+		suite.addTestSuite(ParallelUpdateEngineTest.class);
+		suite.addTestSuite(RoutingReportsTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import routing.community.Centrality;
+import routing.community.ContactHistory;
+import routing.community.EpochDegrees;
+import routing.community.SWindowCentrality;
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Tests for the ContactHistory and EpochDegrees classes and the incremental
+ * SWindow centrality
+ */
+public class CentralityTest extends TestCase {
+	private SimClock clock;
+	private DTNHost[] hosts;
+	private TestSettings ts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		ts = new TestSettings();
+		TestUtils utils = new TestUtils(null, null, ts);
+		hosts = new DTNHost[40]; // more than the initial history size
+		for (int i=0; i < hosts.length; i++) {
+			hosts[i] = utils.createHost();
+		}
+	}
+
+	public void testContactHistory() {
+		ContactHistory h = new ContactHistory();
+		assertFalse(h.hasMet(hosts[1]));
+		assertEquals(-1.0, h.getLastContactEnd(hosts[1]));
+
+		h.addContact(hosts[1], 10, 15);
+		h.addContact(hosts[35], 12, 12); // no duration
+		h.addContact(hosts[1], 20, 30.5);
+
+		assertEquals(2, h.getNrofPeers());
+		assertTrue(h.hasMet(hosts[35]));
+		assertEquals(0, h.getNrofContacts(hosts[35]));
+		assertEquals(-1.0, h.getLastContactEnd(hosts[35]));
+		assertEquals(2, h.getNrofContacts(hosts[1]));
+		assertEquals(15.5, h.getTotalContactTime(hosts[1]));
+		assertEquals(30.5, h.getLastContactEnd(hosts[1]));
+		assertEquals(0.0, h.getTotalContactTime(hosts[2]));
+	}
+
+	public void testEpochDegrees() {
+		EpochDegrees d = new EpochDegrees(10, 3);
+		Set<DTNHost> community = new HashSet<DTNHost>();
+		community.add(hosts[1]);
+		community.add(hosts[30]);
+
+		d.add(hosts[1], 1);
+		d.add(hosts[1], 5); // same epoch, not counted again
+		d.add(hosts[2], 9);
+		d.add(hosts[1], 12);
+		d.add(hosts[30], 25);
+		assertEquals(4, d.getWindowSum(29));
+		assertEquals(3, d.getWindowSum(29, community));
+
+		/* epoch 0 leaves the window */
+		assertEquals(2, d.getWindowSum(30));
+		assertEquals(2, d.getWindowSum(30, community));
+		assertEquals(4, d.getTotalSum());
+		assertEquals(3, d.getTotalSum(community));
+
+		d.add(hosts[2], 31);
+		assertEquals(3, d.getWindowSum(39));
+		assertEquals(1, d.getWindowSum(50));
+		assertEquals(0, d.getWindowSum(50, community));
+		assertEquals(0, d.getWindowSum(1000));
+		assertEquals(5, d.getTotalSum());
+	}
+
+	public void testSWindowGlobal() {
+		final double window = 1000;
+		ts.putSetting(SWindowCentrality.CENTRALITY_WINDOW_SETTING, "" +
+				(int)window);
+		Centrality proto = new SWindowCentrality(ts);
+		double[] lastEnds = new double[hosts.length];
+		Random rng = new Random(7);
+
+		for (int step=0; step < 30; step++) {
+			/* a replicate computes the value on the first request */
+			Centrality c = proto.replicate();
+			ContactHistory h = new ContactHistory();
+			Arrays.fill(lastEnds, -1);
+			double time = 0;
+			for (int i=0; i < 200 + step * 10; i++) {
+				time += rng.nextDouble() * 20;
+				clock.setTime(time);
+				DTNHost peer = hosts[rng.nextInt(hosts.length)];
+				h.addContact(peer, time - 1, time);
+				c.contactEnded(h, peer);
+				lastEnds[peer.getAddress() - hosts[0].getAddress()] = time;
+			}
+
+			int expected = 0;
+			for (double end : lastEnds) {
+				if (end >= 0 && SimClock.getIntTime() - end < window) {
+					expected++;
+				}
+			}
+			assertEquals((double)expected, c.getGlobalCentrality(h));
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import routing.community.BitSetKCliqueCommunityDetection;
+import routing.community.BitSetSimpleCommunityDetection;
+import routing.community.CommunityDetection;
+import routing.community.ContactHistory;
+import routing.community.HostBitSet;
+import routing.community.KCliqueCommunityDetection;
+import routing.community.SimpleCommunityDetection;
+import core.DTNHost;
+
+/**
+ * Tests for the HostBitSet class and the community detection classes using
+ * it
+ */
+public class CommunityDetectionTest extends TestCase {
+	private static final int NROF_HOSTS = 150; // spans several words
+	private DTNHost[] hosts;
+	private TestSettings ts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ts.putSetting(SimpleCommunityDetection.LAMBDA_SETTING, "0.2");
+		ts.putSetting(SimpleCommunityDetection.GAMMA_SETTING, "0.2");
+		ts.putSetting(SimpleCommunityDetection.FAMILIAR_SETTING, "50");
+		ts.putSetting(KCliqueCommunityDetection.K_SETTING, "3");
+		TestUtils utils = new TestUtils(null, null, ts);
+		hosts = new DTNHost[NROF_HOSTS];
+		for (int i=0; i < hosts.length; i++) {
+			hosts[i] = utils.createHost();
+		}
+	}
+
+	public void testHostBitSet() {
+		HostBitSet.HostTable table = new HostBitSet.HostTable();
+		HostBitSet s1 = new HostBitSet(table);
+		HostBitSet s2 = new HostBitSet(table);
+		Set<DTNHost> ref = new HashSet<DTNHost>();
+
+		for (int i=0; i < hosts.length; i += 3) {
+			assertTrue(s1.add(hosts[i]));
+			ref.add(hosts[i]);
+		}
+		assertFalse(s1.add(hosts[0]));
+		for (int i=0; i < hosts.length; i += 5) {
+			s2.add(hosts[i]);
+		}
+		assertEquals(ref, s1);
+		assertEquals(s1, ref);
+		assertEquals(50, s1.size());
+		assertFalse(s1.contains(hosts[1]));
+		assertTrue(s1.contains(hosts[147]));
+
+		/* multiples of 15 are in both */
+		assertEquals(10, s1.intersectionSize(s2));
+		assertEquals(10, s2.intersectionSize(s1));
+		assertEquals(50 + 30 - 10, s1.unionSize(s2));
+		assertFalse(s1.containsAll(s2));
+
+		/* iteration is in address order */
+		int last = -1;
+		for (DTNHost h : s2) {
+			assertTrue(h.getAddress() > last);
+			last = h.getAddress();
+		}
+
+		assertTrue(s1.addAll(s2));
+		assertFalse(s1.addAll(s2));
+		assertEquals(70, s1.size());
+		assertTrue(s1.containsAll(s2));
+
+		assertTrue(s1.remove(hosts[147]));
+		assertFalse(s1.remove(hosts[147]));
+		for (Iterator<DTNHost> i = s1.iterator(); i.hasNext(); ) {
+			if (i.next().getAddress() % 2 == 0) {
+				i.remove();
+			}
+		}
+		for (DTNHost h : s1) {
+			assertTrue(h.getAddress() % 2 == 1);
+		}
+		assertEquals(s1.size(), new ArrayList<DTNHost>(s1).size());
+	}
+
+	public void testSimpleDecisions() {
+		compareDecisions(new SimpleCommunityDetection(ts),
+				new BitSetSimpleCommunityDetection(ts));
+	}
+
+	public void testKCliqueDecisions() {
+		compareDecisions(new KCliqueCommunityDetection(ts),
+				new BitSetKCliqueCommunityDetection(ts));
+	}
+
+	/**
+	 * Feeds the same random connections to replicates of both prototypes
+	 * and checks that the local communities stay the same
+	 */
+	private void compareDecisions(CommunityDetection proto,
+			CommunityDetection bitSetProto) {
+		Random rng = new Random(42);
+		int n = 40;
+		CommunityDetection[] cds = new CommunityDetection[n];
+		CommunityDetection[] bcds = new CommunityDetection[n];
+		ContactHistory[] histories = new ContactHistory[n];
+		for (int i=0; i < n; i++) {
+			cds[i] = proto.replicate();
+			histories[i] = new ContactHistory();
+			bcds[i] = bitSetProto.replicate();
+		}
+
+		for (int round=0; round < 2000; round++) {
+			/* hosts close to each other (by index) meet more often */
+			int a = rng.nextInt(n);
+			int b = (a + 1 + rng.nextInt(rng.nextBoolean() ? 4 : n - 1)) % n;
+			DTNHost ha = hosts[a], hb = hosts[b];
+
+			cds[a].newConnection(ha, hb, cds[b]);
+			bcds[a].newConnection(ha, hb, bcds[b]);
+
+			int duration = rng.nextInt(30);
+			histories[a].addContact(hb, round, round + duration);
+			histories[b].addContact(ha, round, round + duration);
+			cds[a].connectionLost(ha, hb, cds[b], histories[a]);
+			cds[b].connectionLost(hb, ha, cds[a], histories[b]);
+			bcds[a].connectionLost(ha, hb, bcds[b], histories[a]);
+			bcds[b].connectionLost(hb, ha, bcds[a], histories[b]);
+
+			for (int i=0; i < n; i++) {
+				assertEquals(cds[i].getLocalCommunity(),
+						bcds[i].getLocalCommunity());
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer.NearInterfaceVisitor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests for the ConnectivityGrid class
+ */
+public class ConnectivityGridTest extends TestCase {
+	private static final double RANGE = 10;
+	private static final int NROF_HOSTS = 50;
+	private static final double AREA = 200;
+
+	private SimClock clock;
+	private ConnectivityGrid grid;
+	private List<NetworkInterface> interfaces;
+	private Random rng;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		ConnectivityGrid.reset();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		rng = new Random(42);
+
+		TestUtils utils = new TestUtils(null, null, ts);
+		utils.setTransmitRange(RANGE);
+		interfaces = new ArrayList<NetworkInterface>();
+		for (int i=0; i<NROF_HOSTS; i++) {
+			DTNHost h = utils.createHost(randomCoord());
+			interfaces.add(h.getInterfaces().get(0));
+		}
+		grid = ConnectivityGrid.ConnectivityGridFactory(
+				interfaces.get(0).getInterfaceType().hashCode(), RANGE);
+		for (NetworkInterface ni : interfaces) {
+			/* interfaces are added to the grid before the hosts get their
+			 * initial locations */
+			grid.updateLocation(ni);
+		}
+	}
+
+	private Coord randomCoord() {
+		return new Coord(rng.nextDouble() * AREA, rng.nextDouble() * AREA);
+	}
+
+	private Set<NetworkInterface> visit(NetworkInterface ni) {
+		final Set<NetworkInterface> visited = new HashSet<NetworkInterface>();
+		grid.visitNearInterfaces(ni, new NearInterfaceVisitor() {
+			public void visit(NetworkInterface other) {
+				assertTrue("Interface visited twice", visited.add(other));
+			}
+		});
+		return visited;
+	}
+
+	private boolean inRange(NetworkInterface a, NetworkInterface b) {
+		return a.getLocation().distance(b.getLocation()) <= RANGE;
+	}
+
+	private void checkAllInRangeVisited() {
+		for (NetworkInterface ni : interfaces) {
+			Set<NetworkInterface> visited = visit(ni);
+			for (NetworkInterface other : interfaces) {
+				if (inRange(ni, other)) {
+					assertTrue(other + " in range of " + ni + " not visited",
+							visited.contains(other));
+				}
+			}
+		}
+	}
+
+	public void testNearInterfacesContainInRange() {
+		for (NetworkInterface ni : interfaces) {
+			Set<NetworkInterface> near =
+				new HashSet<NetworkInterface>(grid.getNearInterfaces(ni));
+			for (NetworkInterface other : interfaces) {
+				if (inRange(ni, other)) {
+					assertTrue(near.contains(other));
+				}
+			}
+		}
+	}
+
+	public void testVisitAfterMoves() {
+		for (int round=0; round<20; round++) {
+			clock.advance(1);
+			for (int i=0; i<5; i++) {
+				NetworkInterface ni = interfaces.get(rng.nextInt(NROF_HOSTS));
+				ni.getHost().setLocation(randomCoord());
+				grid.updateLocation(ni);
+			}
+			clock.advance(1);
+			checkAllInRangeVisited();
+		}
+	}
+
+	public void testCachedVisitIsExact() {
+		clock.advance(1);
+		checkAllInRangeVisited(); // builds the caches
+		clock.advance(1);
+
+		for (NetworkInterface ni : interfaces) {
+			Set<NetworkInterface> visited = visit(ni);
+			for (NetworkInterface other : interfaces) {
+				assertEquals(inRange(ni, other), visited.contains(other));
+			}
+		}
+	}
+
+	public void testRemovedInterfaceNotVisited() {
+		checkAllInRangeVisited();
+		clock.advance(1);
+		NetworkInterface removed = interfaces.remove(0);
+		grid.removeInterface(removed);
+
+		for (NetworkInterface ni : interfaces) {
+			assertFalse(visit(ni).contains(removed));
+		}
+		assertFalse(grid.getAllInterfaces().contains(removed));
+	}
+
+	public void testAddedInterfaceVisited() {
+		NetworkInterface added = interfaces.get(0);
+		grid.removeInterface(added);
+		added.getHost().setLocation(interfaces.get(1).getLocation().clone());
+		clock.advance(1);
+		for (NetworkInterface ni : interfaces) {
+			visit(ni); // builds the caches without the interface
+		}
+		clock.advance(1);
+		grid.addInterface(added);
+
+		clock.advance(1);
+		assertTrue(visit(interfaces.get(1)).contains(added));
+		checkAllInRangeVisited();
+	}
+}
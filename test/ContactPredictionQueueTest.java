@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ContactPredictionQueue;
+import input.EventQueue;
+import input.ExternalEvent;
+import interfaces.SimpleBroadcastInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.PassiveRouter;
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests for the ContactPredictionQueue class
+ */
+public class ContactPredictionQueueTest extends TestCase {
+	private static final String INTERFACE_NS = "predictedInterface";
+	private static final double DELTA = 0.00001;
+
+	private SimClock clock;
+	private List<DTNHost> hosts;
+	private ContactPredictionQueue queue;
+	private World world;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(INTERFACE_NS + ".transmitRange", "10");
+		ts.putSetting(INTERFACE_NS + ".transmitSpeed", "1");
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		NetworkInterface.reset();
+		DTNHost.reset();
+
+		NetworkInterface proto = new SimpleBroadcastInterface(
+				new TestSettings(INTERFACE_NS));
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(proto);
+		ModuleCommunicationBus comBus = new ModuleCommunicationBus();
+
+		hosts = new ArrayList<DTNHost>();
+		Coord[] locations = {new Coord(0,0), new Coord(100,0),
+				new Coord(0,5)};
+		for (Coord c : locations) {
+			hosts.add(new DTNHost(null, null, "h", li, comBus,
+					new StationaryMovement(c), new PassiveRouter(ts)));
+		}
+
+		queue = new ContactPredictionQueue(hosts);
+		world = new World(hosts, 1000, 1000, 0.1,
+				new ArrayList<UpdateListener>(), false,
+				new ArrayList<EventQueue>());
+	}
+
+	private boolean isConnected(DTNHost h1, DTNHost h2) {
+		return h1.getConnections().size() > 0 &&
+			h1.getConnections().get(0).getOtherNode(h1) == h2;
+	}
+
+	private void processNext(double expectedTime) {
+		assertEquals(expectedTime, queue.nextEventsTime(), DELTA);
+		ExternalEvent ee = queue.nextEvent();
+		clock.setTime(ee.getTime());
+		ee.processEvent(world);
+	}
+
+	public void testInitialContacts() {
+		processNext(0);
+		assertTrue(isConnected(hosts.get(0), hosts.get(2)));
+		assertEquals(0, hosts.get(1).getConnections().size());
+		assertEquals(Double.MAX_VALUE, queue.nextEventsTime());
+	}
+
+	public void testApproachingAndLeaving() {
+		processNext(0); // h0 <-> h2
+
+		/* h1 moves next to h0 with 10 m/s and arrives at 9.5s */
+		queue.newDestination(hosts.get(1), new Coord(5,0), 10);
+		processNext(9); // 10m from h0
+		processNext((100 - Math.sqrt(75)) / 10); // 10m from h2
+		assertEquals(2, hosts.get(1).getConnections().size());
+		assertEquals(Double.MAX_VALUE, queue.nextEventsTime());
+
+		/* waits until 12s and then moves away with 5 m/s */
+		clock.setTime(12);
+		queue.newDestination(hosts.get(1), new Coord(100,0), 5);
+		processNext(12 + (Math.sqrt(75) - 5) / 5);
+		assertEquals(1, hosts.get(1).getConnections().size());
+		processNext(13);
+		assertEquals(0, hosts.get(1).getConnections().size());
+		assertTrue(isConnected(hosts.get(0), hosts.get(2)));
+		assertEquals(Double.MAX_VALUE, queue.nextEventsTime());
+	}
+
+	public void testChangedPredictionIsDropped() {
+		processNext(0);
+
+		/* h1 would reach h0's range at 9s but h0 moves away as fast */
+		queue.newDestination(hosts.get(1), new Coord(0,0), 10);
+		assertEquals(9, queue.nextEventsTime(), DELTA);
+		queue.newDestination(hosts.get(0), new Coord(-100,0), 10);
+
+		processNext(Math.sqrt(75) / 10); // h0 leaves h2
+		assertFalse(isConnected(hosts.get(0), hosts.get(2)));
+		processNext((100 - Math.sqrt(75)) / 10); // h1 reaches h2
+		assertTrue(isConnected(hosts.get(1), hosts.get(2)));
+		assertEquals(0, hosts.get(0).getConnections().size());
+	}
+}
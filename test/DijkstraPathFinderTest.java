@@ -4,7 +4,14 @@
  */
 package test;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 import junit.framework.TestCase;
 import movement.map.DijkstraPathFinder;
@@ -73,6 +80,123 @@ public class DijkstraPathFinderTest extends TestCase {
 		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4);
 	}
 	
+	public void testOkMapNodeTypes() {
+		for (MapNode n : new MapNode[] {n1, n2, n3, n4, n6, n7, n8}) {
+			n.addType(1);
+		}
+		n5.addType(2);
+		r = new DijkstraPathFinder(new int[] {1});
+		
+		checkPath(getPath(n4,n8), n4, n1, n2, n3, n7, n8);
+		assertEquals(0, getPath(n4,n5).size());
+		
+		r = new DijkstraPathFinder(new int[] {1, 2});
+		checkPath(getPath(n4,n8), n4, n5, n6, n7, n8);
+	}
+	
+	public void testTopologyChange() {
+		checkPath(getPath(n1,n3), n1, n2, n3);
+		n1.addNeighbor(n3);
+		checkPath(getPath(n1,n3), n1, n3);
+		
+		MapNode n9 = newNode(30,10);
+		assertEquals(0, getPath(n8,n9).size());
+		n8.addNeighbor(n9);
+		checkPath(getPath(n6,n9), n6, n7, n8, n9);
+	}
+	
+	/**
+	 * Compares the paths in random grids, with many equally long paths, to
+	 * the paths of a straightforward implementation of the algorithm
+	 */
+	public void testRandomGraphs() {
+		Random rng = new Random(42);
+		int size = 12;
+		for (int round = 0; round < 20; round++) {
+			MapNode[] nodes = new MapNode[size * size];
+			for (int i = 0; i < nodes.length; i++) {
+				nodes[i] = newNode(i % size, i / size);
+				if (rng.nextInt(5) > 0) {
+					nodes[i].addType(1);
+				}
+			}
+			for (int i = 0; i < nodes.length; i++) {
+				int[] adjacent = {i + 1, i + size, i + size + 1};
+				for (int j : adjacent) {
+					if (j < nodes.length && rng.nextInt(4) > 0) {
+						nodes[i].addNeighbor(nodes[j]);
+						if (rng.nextInt(4) > 0) {
+							nodes[j].addNeighbor(nodes[i]);
+						}
+					}
+				}
+			}
+			
+			int[] types = round % 2 == 0 ? null : new int[] {1};
+			r = new DijkstraPathFinder(types);
+			for (int i = 0; i < 30; i++) {
+				MapNode from = nodes[rng.nextInt(nodes.length)];
+				MapNode to = nodes[rng.nextInt(nodes.length)];
+				if (types != null && !from.isType(types)) {
+					continue;
+				}
+				assertEquals(referencePath(from, to, types), getPath(from, to));
+			}
+		}
+	}
+	
+	private List<MapNode> referencePath(MapNode from, MapNode to, int[] ok) {
+		List<MapNode> path = new LinkedList<MapNode>();
+		if (from.compareTo(to) == 0) {
+			path.add(from);
+			return path;
+		}
+		
+		Map<MapNode, Double> dist = new HashMap<MapNode, Double>();
+		Map<MapNode, MapNode> prev = new HashMap<MapNode, MapNode>();
+		Set<MapNode> visited = new HashSet<MapNode>();
+		List<MapNode> unvisited = new ArrayList<MapNode>();
+		dist.put(from, 0.0);
+		unvisited.add(from);
+		
+		while (!unvisited.isEmpty()) {
+			MapNode node = unvisited.get(0);
+			for (MapNode n : unvisited) {
+				double d = dist.get(n);
+				double best = dist.get(node);
+				if (d < best || (d == best && n.compareTo(node) < 0)) {
+					node = n;
+				}
+			}
+			unvisited.remove(node);
+			if (node == to) {
+				path.add(to);
+				for (MapNode n = prev.get(to); n != from; n = prev.get(n)) {
+					path.add(0, n);
+				}
+				path.add(0, from);
+				break;
+			}
+			visited.add(node);
+			
+			for (MapNode n : node.getNeighbors()) {
+				if (visited.contains(n) || (ok != null && !n.isType(ok))) {
+					continue;
+				}
+				double d = dist.get(node) +
+					node.getLocation().distance(n.getLocation());
+				if (!dist.containsKey(n) || dist.get(n) > d) {
+					if (!dist.containsKey(n)) {
+						unvisited.add(n);
+					}
+					dist.put(n, d);
+					prev.put(n, node);
+				}
+			}
+		}
+		return path;
+	}
+	
 	private void checkPath(List<MapNode> path, MapNode ... nodes) {
 		assertEquals(nodes.length,path.size());
 		
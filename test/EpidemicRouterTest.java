@@ -4,6 +4,7 @@
  */
 package test;
 
+import routing.ActiveRouter;
 import routing.EpidemicRouter;
 import routing.MessageRouter;
 import core.DTNHost;
@@ -499,6 +500,42 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		assertFalse(mc.next());
 	}
 	
+	public void testExactTtlExpiry() throws Exception {
+		ts.putSetting(ActiveRouter.EXACT_TTL_S, "true");
+		setRouterProto(new EpidemicRouter(ts));
+		super.setUp();
+		ts.putSetting(ActiveRouter.EXACT_TTL_S, "false");
+		
+		Message m1 = new Message(h1,h3, msgId1, 1);
+		h1.createNewMessage(m1);
+		clock.advance(30);
+		Message m2 = new Message(h1,h3, msgId2, 1);
+		h1.createNewMessage(m2);
+		checkCreates(2);
+		
+		/* the TTL check interval based expiry would drop both already */
+		clock.advance(TTL*60 - 31);
+		updateAllNodes();
+		assertFalse(mc.next());
+		
+		clock.advance(1);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		assertEquals(msgId1, mc.getLastMsg().getId());
+		assertFalse(mc.next());
+		
+		clock.advance(29);
+		updateAllNodes();
+		assertFalse(mc.next());
+		clock.advance(1);
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		assertEquals(msgId2, mc.getLastMsg().getId());
+		assertFalse(mc.next());
+	}
+	
 	public void testResponse() {
 		Message m1 = new Message(h1,h3, msgId1, 1);
 		m1.setResponseSize(1);
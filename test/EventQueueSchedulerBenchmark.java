@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+import input.EventQueueScheduler;
+import input.ExternalEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro benchmark that compares the cost of finding the next event by
+ * going through all the event queues (as World used to do) to the cost of
+ * using {@link EventQueueScheduler}. Not a part of the test suite; run with
+ * <CODE>java test.EventQueueSchedulerBenchmark</CODE> (with the compiled
+ * simulator and tests in the class path).
+ */
+public class EventQueueSchedulerBenchmark {
+	private static final int[] NROF_QUEUES = {10, 100, 1000};
+	private static final int NROF_EVENTS = 1000000;
+	private static final int ROUNDS = 5;
+
+	/**
+	 * Event queue with (pseudo) random intervals between events
+	 */
+	private static class RandomQueue implements EventQueue {
+		private Random rng;
+		private double nextTime;
+
+		public RandomQueue(long seed) {
+			this.rng = new Random(seed);
+			this.nextTime = rng.nextDouble() * 100;
+		}
+
+		public ExternalEvent nextEvent() {
+			ExternalEvent ee = new ExternalEvent(nextTime);
+			nextTime += rng.nextDouble() * 100;
+			return ee;
+		}
+
+		public double nextEventsTime() {
+			return nextTime;
+		}
+	}
+
+	private static List<EventQueue> createQueues(int nrof) {
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		for (int i=0; i < nrof; i++) {
+			queues.add(new RandomQueue(i));
+		}
+		return queues;
+	}
+
+	/**
+	 * Dispatches events by going through all queues after every event
+	 * @return sum of event times (to keep the work from being optimized out)
+	 */
+	private static double linearScan(List<EventQueue> queues) {
+		double sum = 0;
+		for (int i=0; i < NROF_EVENTS; i++) {
+			EventQueue next = queues.get(0);
+			double earliest = next.nextEventsTime();
+			for (EventQueue eq : queues) {
+				if (eq.nextEventsTime() < earliest) {
+					next = eq;
+					earliest = eq.nextEventsTime();
+				}
+			}
+			sum += next.nextEvent().getTime();
+		}
+		return sum;
+	}
+
+	/**
+	 * Dispatches events using the scheduler
+	 * @return sum of event times (to keep the work from being optimized out)
+	 */
+	private static double scheduler(List<EventQueue> queues) {
+		EventQueueScheduler scheduler = new EventQueueScheduler();
+		for (EventQueue eq : queues) {
+			scheduler.addQueue(eq);
+		}
+
+		double sum = 0;
+		for (int i=0; i < NROF_EVENTS; i++) {
+			sum += scheduler.nextEvent().getTime();
+		}
+		return sum;
+	}
+
+	public static void main(String[] args) {
+		System.out.println("queues\tscan ns/event\tscheduler ns/event");
+		for (int nrof : NROF_QUEUES) {
+			long scanTime = Long.MAX_VALUE;
+			long schedulerTime = Long.MAX_VALUE;
+			double check = 0;
+
+			for (int round=0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+				check += linearScan(createQueues(nrof));
+				scanTime = Math.min(scanTime, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				check -= scheduler(createQueues(nrof));
+				schedulerTime = Math.min(schedulerTime,
+						System.nanoTime() - start);
+			}
+
+			if (check != 0) {
+				throw new AssertionError("Different event orders");
+			}
+			System.out.printf("%d\t%.1f\t%.1f%n", nrof,
+					scanTime / (double)NROF_EVENTS,
+					schedulerTime / (double)NROF_EVENTS);
+		}
+	}
+}
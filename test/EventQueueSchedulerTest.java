@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+import input.EventQueueScheduler;
+import input.ExternalEvent;
+import input.ScheduledUpdatesQueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the EventQueueScheduler
+ */
+public class EventQueueSchedulerTest extends TestCase {
+	private static double MAX = Double.MAX_VALUE;
+	private EventQueueScheduler scheduler;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		scheduler = new EventQueueScheduler();
+	}
+
+	/**
+	 * Event queue with events at the given times
+	 */
+	private static class TimesQueue implements EventQueue {
+		private List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+
+		public TimesQueue(double... times) {
+			for (double t : times) {
+				events.add(new ExternalEvent(t));
+			}
+		}
+
+		public ExternalEvent nextEvent() {
+			return events.isEmpty() ? new ExternalEvent(MAX) : events.remove(0);
+		}
+
+		public double nextEventsTime() {
+			return events.isEmpty() ? MAX : events.get(0).getTime();
+		}
+	}
+
+	public void testEmpty() {
+		assertEquals(MAX, scheduler.nextEventsTime());
+		assertEquals(MAX, scheduler.nextEvent().getTime());
+		assertEquals(-1, scheduler.getNextQueueIndex());
+	}
+
+	public void testMergedOrder() {
+		TimesQueue q1 = new TimesQueue(1, 4, 9);
+		TimesQueue q2 = new TimesQueue(2, 3, 10);
+		TimesQueue q3 = new TimesQueue(0, 5);
+		scheduler.addQueue(q1);
+		scheduler.addQueue(q2);
+		scheduler.addQueue(q3);
+
+		double[] expected = {0, 1, 2, 3, 4, 5, 9, 10};
+		for (double t : expected) {
+			assertEquals(t, scheduler.nextEventsTime());
+			assertEquals(t, scheduler.nextEvent().getTime());
+		}
+		assertEquals(MAX, scheduler.nextEventsTime());
+	}
+
+	public void testSameTimeEventsInQueueOrder() {
+		TimesQueue q1 = new TimesQueue(3, 5);
+		TimesQueue q2 = new TimesQueue(1, 3);
+		assertEquals(0, scheduler.addQueue(q1));
+		assertEquals(1, scheduler.addQueue(q2));
+
+		assertEquals(1, scheduler.getNextQueueIndex());
+		scheduler.nextEvent();
+		assertEquals(0, scheduler.getNextQueueIndex()); // q1 was added first
+		scheduler.nextEvent();
+		assertEquals(1, scheduler.getNextQueueIndex());
+		scheduler.nextEvent();
+		assertEquals(5.0, scheduler.nextEvent().getTime());
+	}
+
+	public void testChangedQueue() {
+		ScheduledUpdatesQueue suq = new ScheduledUpdatesQueue();
+		int index = scheduler.addQueue(suq);
+		scheduler.addQueue(new TimesQueue(2, 6));
+
+		suq.addUpdate(4);
+		scheduler.queueChanged(index);
+		assertEquals(2.0, scheduler.nextEvent().getTime());
+		assertEquals(4.0, scheduler.nextEvent().getTime());
+
+		suq.addUpdate(1); // earlier than the current next event
+		suq.addUpdate(8);
+		scheduler.updateQueues();
+		assertEquals(1.0, scheduler.nextEvent().getTime());
+		assertEquals(6.0, scheduler.nextEvent().getTime());
+		assertEquals(8.0, scheduler.nextEvent().getTime());
+		assertEquals(MAX, scheduler.nextEventsTime());
+	}
+
+	public void testManyQueues() {
+		Random rng = new Random(1);
+		List<Double> all = new ArrayList<Double>();
+
+		for (int i=0; i < 100; i++) {
+			double[] times = new double[rng.nextInt(10)];
+			double t = 0;
+			for (int j=0; j < times.length; j++) {
+				t += rng.nextInt(100);
+				times[j] = t;
+				all.add(t);
+			}
+			scheduler.addQueue(new TimesQueue(times));
+		}
+
+		Collections.sort(all);
+		for (double t : all) {
+			assertEquals(t, scheduler.nextEvent().getTime());
+		}
+		assertEquals(MAX, scheduler.nextEventsTime());
+	}
+}
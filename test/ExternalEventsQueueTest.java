@@ -4,7 +4,11 @@
  */
 package test;
 
+import core.SimError;
 import input.BinaryEventsReader;
+import input.CompactEventsReader;
+import input.CompactEventsWriter;
+import input.ConnectionEvent;
 import input.ExternalEvent;
 import input.ExternalEventsQueue;
 import input.ExternalEventsReader;
@@ -80,6 +84,93 @@ public class ExternalEventsQueueTest extends TestCase {
 					
 		assertTrue(tmpBinFile.delete()); // make sure all locks are gone
 	}
+
+	public void testPrefetchingEEQ() {
+		int preload = 3;
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), preload, 2);
+		checkEeq(eeq, preload);
+		assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+
+		preload = 1;
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), preload, 1);
+		checkEeq(eeq, preload);
+	}
+
+	public void testPrefetchingMalformedFile() throws Exception {
+		File badFile = createBadFile(0);
+		try {
+			new ExternalEventsQueue(badFile.getAbsolutePath(), 1, 1);
+			fail("Malformed line should have been reported");
+		} catch (SimError e) {
+			/* reading the first batch failed */
+		}
+		assertTrue(badFile.delete());
+
+		badFile = createBadFile(5);
+		eeq = new ExternalEventsQueue(badFile.getAbsolutePath(), 1, 1);
+		try {
+			for (int i=0; i < 10; i++) {
+				eeq.nextEvent();
+			}
+			fail("Malformed line should have been reported");
+		} catch (SimError e) {
+			/* reading the batch after the valid lines failed */
+		}
+		assertTrue(badFile.delete());
+	}
+
+	/**
+	 * Creates an events file with valid lines followed by a malformed line
+	 * @param nrofValid Number of valid lines before the malformed one
+	 */
+	private File createBadFile(int nrofValid) throws Exception {
+		File badFile = File.createTempFile("eeqBadTest", ".tmp");
+		PrintWriter out = new PrintWriter(badFile);
+		for (int i=0; i < nrofValid; i++) {
+			out.println(stdinput[0]);
+		}
+		out.println("2 BADLINE");
+		out.close();
+		return badFile;
+	}
+
+	public void testCompactEEQ() throws Exception {
+		int preload = 3;
+		File tmpFile = File.createTempFile("TempCompactTest",
+				CompactEventsReader.COMPACT_EXT);
+		String fileName = tmpFile.getAbsolutePath();
+		assertEquals(msgTimes.length, CompactEventsWriter.convert(
+				new StandardEventsReader(tempFile), fileName));
+
+		eeq = new ExternalEventsQueue(fileName, preload);
+		checkEeq(eeq, preload);
+		assertTrue(tmpFile.delete());
+	}
+
+	public void testCompactRoundTrip() throws Exception {
+		File tmpFile = File.createTempFile("TempCompactTest",
+				CompactEventsReader.COMPACT_EXT);
+		String fileName = tmpFile.getAbsolutePath();
+		List<ExternalEvent> events =
+			new StandardEventsReader(tempFile).readEvents(100);
+		events.add(new ConnectionEvent(1, 2, null, true, 106300));
+		events.add(new ConnectionEvent(2, 1, "btInterface", false, 106400));
+		CompactEventsWriter.storeToCompactFile(fileName, events);
+
+		CompactEventsReader r = new CompactEventsReader(tmpFile);
+		assertEquals(events.size(), r.getNrofEvents());
+		List<ExternalEvent> read = r.readEvents(5);
+		read.addAll(r.readEvents(100));
+		assertEquals(0, r.readEvents(100).size());
+		r.close();
+
+		assertEquals(events.size(), read.size());
+		for (int i=0; i < events.size(); i++) {
+			assertEquals(events.get(i).getClass(), read.get(i).getClass());
+			assertEquals(events.get(i).toString(), read.get(i).toString());
+		}
+		assertTrue(tmpFile.delete());
+	}
 	
 	
 	private void checkEeq(ExternalEventsQueue eeq, int preloadVal) {
@@ -16,6 +16,7 @@ import core.Tuple;
 
 public class ExternalMovementReaderTest extends TestCase {
 	private ExternalMovementReader r;
+	private File tmpFile;
 	private static final String INPUT = 
 		"0 0 0 0 0 0\n"+
 		"10 1 10 10\n"+ 
@@ -39,7 +40,7 @@ public class ExternalMovementReaderTest extends TestCase {
 	protected void setUp() throws Exception {
 		super.setUp();
 		
-		File tmpFile = File.createTempFile("EMRTest","tmp");
+		tmpFile = File.createTempFile("EMRTest","tmp");
 		tmpFile.deleteOnExit();
 		
 		PrintWriter pw = new PrintWriter(tmpFile);
@@ -62,6 +63,67 @@ public class ExternalMovementReaderTest extends TestCase {
 		assertEquals(0, list.size());
 	}
 
+	public void testCompactTrace() throws Exception {
+		File compactFile = File.createTempFile("EMRTest",
+				ExternalMovementReader.COMPACT_EXT);
+		compactFile.deleteOnExit();
+		assertEquals(9, ExternalMovementReader.convertToCompact(
+				tmpFile.getAbsolutePath(), compactFile.getAbsolutePath()));
+		r = new ExternalMovementReader(compactFile.getAbsolutePath());
+
+		String[] indexes = {"0", "1", "2"}; // IDs are replaced with indexes
+		for (int i=0; i<times.length; i++) {
+			checkTuples(r.readNextMovements(), indexes, coords[i]);
+			assertEquals(times[i], r.getLastTimeStamp());
+		}
+		assertEquals(0, r.readNextSamples());
+		r.close();
+
+		/* UTM-like coordinates must survive the conversion */
+		File utmFile = File.createTempFile("EMRTest", "tmp");
+		utmFile.deleteOnExit();
+		PrintWriter pw = new PrintWriter(utmFile);
+		pw.println("0 20 385123.25 385999.5 6612345.125 6613000.75");
+		pw.println("10 a 385123.31 6612345.67");
+		pw.println("10 b 385999.5 6613000.75");
+		pw.println("20 a 385500.17 6612801.03");
+		pw.close();
+		assertEquals(3, ExternalMovementReader.convertToCompact(
+				utmFile.getAbsolutePath(), compactFile.getAbsolutePath()));
+
+		for (boolean normalize : new boolean[] {true, false}) {
+			ExternalMovementReader text =
+				new ExternalMovementReader(utmFile.getAbsolutePath());
+			r = new ExternalMovementReader(compactFile.getAbsolutePath());
+			text.setNormalize(normalize);
+			r.setNormalize(normalize);
+			int nrof;
+			while ((nrof = text.readNextSamples()) > 0) {
+				assertEquals(nrof, r.readNextSamples());
+				assertEquals(text.getLastTimeStamp(), r.getLastTimeStamp());
+				for (int i=0; i < nrof; i++) {
+					assertEquals(text.getSampleXs()[i], r.getSampleXs()[i]);
+					assertEquals(text.getSampleYs()[i], r.getSampleYs()[i]);
+				}
+			}
+			assertEquals(0, r.readNextSamples());
+			text.close();
+			r.close();
+		}
+	}
+
+	public void testSamples() {
+		for (int i=0; i<times.length; i++) {
+			assertEquals(ids.length, r.readNextSamples());
+			for (int j=0; j<ids.length; j++) {
+				assertEquals(ids[j], r.getId(r.getSampleIds()[j]));
+				assertEquals(coords[i][j].getX(), r.getSampleXs()[j]);
+				assertEquals(coords[i][j].getY(), r.getSampleYs()[j]);
+			}
+		}
+		assertEquals(0, r.readNextSamples());
+	}
+
 	private void checkTuples(List<Tuple<String, Coord>> list, String[] ids,
 			Coord[] coords) {
 		
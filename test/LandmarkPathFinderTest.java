@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.map.DijkstraPathFinder;
+import movement.map.LandmarkPathFinder;
+import movement.map.MapNode;
+import movement.map.PathCache;
+import core.Coord;
+
+/**
+ * Tests that the LandmarkPathFinder returns the same paths as the
+ * DijkstraPathFinder and the shared path cache
+ */
+public class LandmarkPathFinderTest extends TestCase {
+	private Random rng;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		rng = new Random(11);
+		PathCache.reset();
+	}
+
+	/**
+	 * Creates a random map: a grid with some of the edges missing and some
+	 * one-way, and optionally with the nodes moved randomly
+	 */
+	private MapNode[] createMap(int size, boolean grid) {
+		MapNode[] nodes = new MapNode[size * size];
+		for (int i = 0; i < nodes.length; i++) {
+			double x = i % size;
+			double y = i / size;
+			if (!grid) {
+				x += rng.nextDouble() * 0.5;
+				y += rng.nextDouble() * 0.5;
+			}
+			nodes[i] = new MapNode(new Coord(x * 10, y * 10));
+			nodes[i].addType(rng.nextInt(4) > 0 ? 1 : 2);
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			int[] adjacent = {i + 1, i + size, i + size + 1, i + 2 * size + 1};
+			for (int j : adjacent) {
+				if (j < nodes.length && rng.nextInt(4) > 0) {
+					nodes[i].addNeighbor(nodes[j]);
+					if (rng.nextInt(5) > 0) {
+						nodes[j].addNeighbor(nodes[i]);
+					}
+				}
+			}
+		}
+		return nodes;
+	}
+
+	private void comparePaths(MapNode[] nodes, int[] okTypes, int nrofPaths) {
+		DijkstraPathFinder dijkstra = new DijkstraPathFinder(okTypes);
+		LandmarkPathFinder alt = new LandmarkPathFinder(okTypes);
+		for (int i = 0; i < nrofPaths; i++) {
+			MapNode from = nodes[rng.nextInt(nodes.length)];
+			MapNode to = nodes[rng.nextInt(nodes.length)];
+			if (okTypes != null && !from.isType(okTypes)) {
+				continue;
+			}
+			assertEquals("Path from " + from + " to " + to,
+					dijkstra.getShortestPath(from, to),
+					alt.getShortestPath(from, to));
+		}
+	}
+
+	public void testSamePathsAsDijkstra() {
+		for (int round = 0; round < 10; round++) {
+			MapNode[] nodes = createMap(15, round % 2 == 0);
+			comparePaths(nodes, null, 100);
+			comparePaths(nodes, new int[] {1}, 100);
+		}
+	}
+
+	public void testDisconnectedMap() {
+		MapNode[] nodes = createMap(10, true);
+		MapNode[] other = createMap(5, false);
+		/* one-way link between the parts */
+		nodes[0].addNeighbor(other[0]);
+
+		LandmarkPathFinder alt = new LandmarkPathFinder(null);
+		DijkstraPathFinder dijkstra = new DijkstraPathFinder(null);
+		for (MapNode from : new MapNode[] {nodes[0], nodes[55], other[3]}) {
+			for (MapNode to : new MapNode[] {nodes[99], other[24], nodes[7]}) {
+				assertEquals(dijkstra.getShortestPath(from, to),
+						alt.getShortestPath(from, to));
+			}
+		}
+		assertEquals(0, alt.getShortestPath(other[3], nodes[7]).size());
+	}
+
+	public void testCache() {
+		MapNode[] nodes = createMap(8, true);
+		LandmarkPathFinder alt = new LandmarkPathFinder(null);
+		MapNode from = nodes[0];
+		MapNode to = nodes[63];
+
+		List<MapNode> path = alt.getShortestPath(from, to);
+		assertEquals(0, PathCache.getNrofHits());
+		assertEquals(1, PathCache.getNrofMisses());
+		assertEquals(path, alt.getShortestPath(from, to));
+		assertEquals(path, new LandmarkPathFinder(null).getShortestPath(from,
+				to));
+		assertEquals(2, PathCache.getNrofHits());
+
+		/* different OK types are cached separately */
+		new LandmarkPathFinder(new int[] {1, 2}).getShortestPath(from, to);
+		assertEquals(2, PathCache.getNrofMisses());
+
+		/* cached paths are not used after the map changes */
+		from.addNeighbor(to);
+		List<MapNode> direct = alt.getShortestPath(from, to);
+		assertEquals(3, PathCache.getNrofMisses());
+		assertEquals(2, direct.size());
+		assertEquals(new DijkstraPathFinder(null).getShortestPath(from, to),
+				direct);
+	}
+}
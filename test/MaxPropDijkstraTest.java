@@ -123,6 +123,40 @@ public class MaxPropDijkstraTest extends TestCase {
 		assertEquals( (1-0.625)+(1-0.5), result.get(5));
 	}
 	
+	public void testAllCosts() {
+		mapping.get(0).updateMeetingProbFor(1);
+		mapping.get(0).updateMeetingProbFor(2);
+		mapping.get(1).updateMeetingProbFor(3);
+		mapping.get(2).updateMeetingProbFor(3);
+		mapping.get(2).updateMeetingProbFor(1);
+		mapping.get(3).updateMeetingProbFor(7); // outside of the mapping
+		
+		for (int i=0; i<=8; i++) {
+			targets.add(i);
+		}
+		Map<Integer, Double> result = mpd.getCosts(0, targets);
+		double[] costs = mpd.getAllCosts(0);
+		
+		assertEquals(0.0, costs[0]);
+		assertEquals(0.5, costs[1]);
+		assertEquals(0.5, costs[2]);
+		assertEquals(0.5 + 0.0, costs[3]);
+		assertEquals(0.5 + 0.0 + 0.0, costs[7]);
+		assertEquals(Double.MAX_VALUE, costs[4]);
+		for (int i=0; i<costs.length; i++) {
+			if (result.containsKey(i)) {
+				assertEquals(result.get(i), costs[i]);
+			}
+			else {
+				assertEquals(Double.MAX_VALUE, costs[i]);
+			}
+		}
+		
+		/* costs from the other nodes */
+		assertEquals(0.0, mpd.getAllCosts(1)[7]);
+		assertEquals(Double.MAX_VALUE, mpd.getAllCosts(1)[0]);
+		assertEquals(0.0, mpd.getAllCosts(4)[4]);
+	}
 	
 	public void testProbabilitySumsToOne() {
 		double total;
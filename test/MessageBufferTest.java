@@ -0,0 +1,195 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.buffer.EvictionIndex;
+import routing.buffer.IncomingBuffer;
+import routing.buffer.MessageBuffer;
+import core.DTNHost;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Tests for the MessageBuffer, EvictionIndex, and IncomingBuffer classes
+ */
+public class MessageBufferTest extends TestCase {
+	private MessageBuffer buffer;
+	private SimClock clock;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		buffer = new MessageBuffer();
+	}
+
+	private Message newMessage(String id, int size, double receiveTime) {
+		Message m = new Message(null, null, id, size);
+		m.setReceiveTime(receiveTime);
+		return m;
+	}
+
+	public void testOccupancy() {
+		buffer.add(newMessage("M1", 100, 0));
+		buffer.add(newMessage("M2", 50, 0));
+		assertEquals(150, buffer.getOccupancy());
+		assertEquals(2, buffer.size());
+
+		buffer.add(newMessage("M1", 10, 0)); // replaces the old M1
+		assertEquals(60, buffer.getOccupancy());
+		assertEquals(2, buffer.size());
+
+		assertEquals(10, buffer.remove("M1").getSize());
+		assertNull(buffer.remove("M1"));
+		assertEquals(50, buffer.getOccupancy());
+		assertFalse(buffer.contains("M1"));
+		assertTrue(buffer.contains("M2"));
+	}
+
+	public void testReceiveTimeOrder() {
+		buffer.add(newMessage("M1", 1, 30));
+		EvictionIndex index = buffer.addIndex(EvictionIndex.RECEIVE_TIME_ORDER);
+		buffer.add(newMessage("M2", 1, 10));
+		buffer.add(newMessage("M3", 1, 20));
+		buffer.add(newMessage("M4", 1, 10)); // same time as M2 but added later
+
+		List<String> ids = new ArrayList<String>();
+		for (Message m : index) {
+			ids.add(m.getId());
+		}
+		assertEquals("[M2, M4, M3, M1]", ids.toString());
+
+		buffer.remove("M2");
+		assertEquals("M4", index.first().getId());
+		buffer.add(newMessage("M2", 1, 10)); // re-added after M4
+		assertEquals("M4", index.first().getId());
+		assertEquals(4, index.size());
+	}
+
+	public void testExclusion() {
+		EvictionIndex index = buffer.addIndex(EvictionIndex.RECEIVE_TIME_ORDER);
+		buffer.add(newMessage("M1", 1, 10));
+		buffer.add(newMessage("M2", 1, 20));
+
+		EvictionIndex.Exclusion notM1 = new EvictionIndex.Exclusion() {
+			public boolean isExcluded(Message m) {
+				return m.getId().equals("M1");
+			}
+		};
+		assertEquals("M2", index.first(notM1).getId());
+		buffer.remove("M2");
+		assertNull(index.first(notM1));
+		assertEquals("M1", index.first(null).getId());
+	}
+
+	public void testExpiryOrder() {
+		EvictionIndex index = buffer.addIndex(EvictionIndex.EXPIRY_ORDER);
+		Message m1 = newMessage("M1", 1, 0);
+		m1.setTtl(10);
+		clock.setTime(60);
+		Message m2 = newMessage("M2", 1, 0);
+		m2.setTtl(5);
+		Message m3 = newMessage("M3", 1, 0); // infinite TTL
+
+		buffer.add(m3);
+		buffer.add(m1);
+		buffer.add(m2);
+		assertEquals(360.0, m2.getExpiryTime());
+		assertEquals("M2", index.first().getId());
+		buffer.remove("M2");
+		assertEquals("M1", index.first().getId());
+		buffer.remove("M1");
+		assertEquals("M3", index.first().getId());
+	}
+
+	public void testDestinationLookup() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		buffer.add(new Message(h1, h2, "M1", 1));
+		buffer.add(new Message(h2, h1, "M2", 1));
+		buffer.add(new Message(h1, h2, "M3", 1));
+
+		assertEquals("[M1, M3]", buffer.getMessagesTo(h2).toString());
+		assertEquals("[M2]", buffer.getMessagesTo(h1).toString());
+
+		buffer.remove("M1");
+		buffer.add(new Message(h1, h2, "M3", 1)); // replaces the old M3
+		assertEquals("[M3]", buffer.getMessagesTo(h2).toString());
+		buffer.remove("M2");
+		assertTrue(buffer.getMessagesTo(h1).isEmpty());
+	}
+
+	public void testMultiDestinationLookup() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+		buffer.add(new Message(h1, h2, "M1", 1));
+		buffer.add(new Message(h2, h3, "M2", 1));
+		buffer.add(new Message(h3, h1, "M3", 1));
+		buffer.add(new Message(h1, h3, "M4", 1));
+		buffer.add(new Message(h3, h2, "M5", 1));
+		buffer.remove("M1");
+		buffer.add(new Message(h1, h2, "M1", 1)); // now the last one
+
+		DTNHost[] to = {h3, h2};
+		int[] toIndexes = new int[4];
+		assertEquals("[M2, M4, M5, M1]",
+				buffer.getMessagesTo(to, 2, toIndexes).toString());
+		assertEquals(0, toIndexes[0]);
+		assertEquals(0, toIndexes[1]);
+		assertEquals(1, toIndexes[2]);
+		assertEquals(1, toIndexes[3]);
+		assertEquals("[M2, M4]",
+				buffer.getMessagesTo(to, 1, null).toString());
+		assertTrue(buffer.getMessagesTo(new DTNHost[] {h1, h2}, 0,
+				null).isEmpty());
+	}
+
+	public void testIncomingBuffer() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost[] hosts = new DTNHost[10];
+		for (int i=0; i < hosts.length; i++) {
+			hosts[i] = utils.createHost();
+		}
+		IncomingBuffer incoming = new IncomingBuffer();
+		Message[] msgs = new Message[20];
+		for (int i=0; i < msgs.length; i++) {
+			msgs[i] = new Message(hosts[0], hosts[1], "IN" + i, 1);
+			incoming.put(msgs[i], hosts[i % hosts.length]);
+			incoming.put(msgs[i].replicate(), hosts[(i+1) % hosts.length]);
+		}
+		assertEquals(msgs[3].getIdIndex(), msgs[3].replicate().getIdIndex());
+		assertEquals(msgs[3].getIdIndex(), Message.getIdIndex("IN3"));
+		assertEquals(-1, Message.getIdIndex("unknown"));
+		assertEquals(40, incoming.size());
+
+		/* remove every other message and check that the rest are found */
+		for (int i=0; i < msgs.length; i += 2) {
+			assertSame(msgs[i], incoming.remove(msgs[i].getIdIndex(),
+					hosts[i % hosts.length]));
+			assertNull(incoming.remove(msgs[i].getIdIndex(),
+					hosts[i % hosts.length]));
+		}
+		assertEquals(30, incoming.size());
+		for (int i=0; i < msgs.length; i++) {
+			assertTrue(incoming.containsId(msgs[i].getIdIndex()));
+			if (i % 2 == 1) {
+				assertSame(msgs[i], incoming.remove(msgs[i].getIdIndex(),
+						hosts[i % hosts.length]));
+			}
+			assertNotNull(incoming.remove(msgs[i].getIdIndex(),
+					hosts[(i+1) % hosts.length]));
+			assertFalse(incoming.containsId(msgs[i].getIdIndex()));
+		}
+		assertEquals(0, incoming.size());
+		assertTrue(incoming.getMessages().isEmpty());
+	}
+}
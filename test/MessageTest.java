@@ -60,5 +60,56 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testReplicate() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+		Message m = new Message(h1, h2, "R", 10);
+		m.setTtl(5);
+		m.addProperty("count", 4);
+		
+		sc.advance(10);
+		Message rep = m.replicate();
+		rep.addNodeOnPath(h2);
+		rep.updateProperty("count", 2);
+		m.addNodeOnPath(h3);
+		
+		assertEquals("R", rep.getId());
+		assertEquals(h2, rep.getTo());
+		assertEquals(310.0, rep.getExpiryTime());
+		assertEquals(20.0, rep.getReceiveTime());
+		assertEquals(10.0, rep.getCreationTime());
+		assertFalse(m.getUniqueId() == rep.getUniqueId());
+		assertEquals(m.getIdIndex(), rep.getIdIndex());
+		
+		/* paths and properties of the replicates are independent */
+		assertEquals(1, rep.getHopCount());
+		assertEquals(h2, rep.getHops().get(1));
+		assertTrue(rep.getHops().contains(h2));
+		assertFalse(rep.getHops().contains(h3));
+		assertEquals(h3, m.getHops().get(1));
+		assertEquals(h1, m.getHops().get(0));
+		assertEquals(2, rep.getProperty("count"));
+		assertEquals(4, m.getProperty("count"));
+		
+		rep.setTtl(1);
+		assertEquals(70.0, rep.getExpiryTime());
+		assertEquals(310.0, m.getExpiryTime());
+
+		/* writes after the first copy still don't leak to the others */
+		Message rep2 = rep.replicate();
+		rep.updateProperty("count", 1);
+		rep.updateProperty("count", 0);
+		m.updateProperty("count", 3);
+		rep2.addProperty("extra", 1);
+		assertEquals(0, rep.getProperty("count"));
+		assertEquals(2, rep2.getProperty("count"));
+		assertEquals(3, m.getProperty("count"));
+		assertNull(rep.getProperty("extra"));
+		assertNull(m.getProperty("extra"));
+	}
+
 
 }
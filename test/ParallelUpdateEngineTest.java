@@ -0,0 +1,318 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.SimpleBroadcastInterface;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import routing.MessageRouter;
+import routing.PassiveRouter;
+import routing.RapidRouter;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.DTNSim;
+import core.MessageListener;
+import core.ModuleCommunicationBus;
+import core.MovementListener;
+import core.NetworkInterface;
+import core.ParallelUpdateEngine;
+import core.Settings;
+import core.SettingsError;
+import core.SimClock;
+import core.World;
+
+/**
+ * Tests for the parallel update engine. The results with several threads
+ * must be the same as with one thread, which updates and moves the hosts
+ * one after another.
+ */
+public class ParallelUpdateEngineTest extends TestCase {
+	private static final int NROF_HOSTS = 80;
+	private static final int NROF_STEPS = 300;
+	private static final double UP_INT = 1.0;
+	private static final String GROUP_NS = "Group";
+	private static final String INTERFACE_NS = "btInterface";
+	/** settings of the scenario whose reports are compared */
+	private static final String[] SCENARIO = {
+		"Scenario.name = parallel",
+		"Scenario.endTime = 600",
+		"Scenario.updateInterval = 0.5",
+		"Scenario.nrofHostGroups = 2",
+		"MovementModel.worldSize = 1000, 1000",
+		"MovementModel.warmup = 100",
+		"btInterface.transmitRange = 50",
+		"Group.movementModel = RandomWaypoint",
+		"Group.router = EpidemicRouter",
+		"Group.sendQueue = 2",
+		"Group.bufferSize = 2M",
+		"Group.nrofHosts = 40",
+		"Group.speed = 1, 5",
+		"Group.nrofApplications = 1",
+		"Group.application1 = pingApp",
+		"Group2.groupID = q",
+		"Group2.speed = 5, 10",
+		"pingApp.type = PingApplication",
+		"pingApp.interval = 100",
+		"pingApp.destinationRange = 0,80",
+		"pingApp.pingSize = 5k",
+		"pingApp.pongSize = 5k",
+		"Events1.interval = 5,10",
+		"Events1.size = 50k,200k",
+		"Events1.hosts = 0,80",
+		"Report.nrofReports = 4",
+		"Report.report1 = MessageStatsReport",
+		"Report.report2 = EventLogReport",
+		"Report.report3 = ContactTimesReport",
+		"Report.report4 = PingAppReporter"};
+
+	private TestSettings ts;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ts.putSetting(World.SETTINGS_NS + "." + World.PARALLEL_MOVEMENT_S,
+				"true");
+		ts.putSetting(GROUP_NS + ".speed", "0.5, 5");
+		ts.putSetting(GROUP_NS + ".waitTime", "0, 20");
+		ts.putSetting(INTERFACE_NS + "." + NetworkInterface.TRANSMIT_RANGE_S,
+				"50");
+		ts.putSetting(INTERFACE_NS + "." + NetworkInterface.TRANSMIT_SPEED_S,
+				"1000");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ts.putSetting(World.SETTINGS_NS + "." + World.PARALLEL_MOVEMENT_S,
+				"false");
+		MovementModel.reset();
+		super.tearDown();
+	}
+
+	/**
+	 * Tests that moving hosts in worker threads gives the same locations,
+	 * movement listener events and (sequentially updated) connections
+	 * as moving them one after another
+	 */
+	public void testMovement() {
+		String sequential = moveHosts(1);
+		assertTrue(sequential.contains(" up "));
+		assertTrue(sequential.contains(" -> "));
+
+		assertEquals(sequential, moveHosts(2));
+		assertEquals(sequential, moveHosts(4));
+	}
+
+	/**
+	 * Tests that a scenario gives the same reports with concurrent host
+	 * updates (with one and several threads) as with sequential updates
+	 */
+	public void testUpdateReports() throws Exception {
+		ScenarioRunner runner = new ScenarioRunner();
+		try {
+			String sequential = runScenario(runner, "sequential", false, 1,
+					false);
+			assertTrue(sequential.contains(" DE ")); // something was delivered
+			assertEquals(sequential, runScenario(runner, "one", true, 1,
+					false));
+			assertEquals(sequential, runScenario(runner, "four", true, 4,
+					false));
+		}
+		finally {
+			runner.delete();
+		}
+	}
+
+	/**
+	 * Tests that updating only the hosts touched by events gives the same
+	 * reports with concurrent host updates as with sequential updates
+	 */
+	public void testTouchedHostUpdateReports() throws Exception {
+		ScenarioRunner runner = new ScenarioRunner();
+		try {
+			String sequential = runScenario(runner, "sequential", false, 1,
+					true);
+			assertTrue(sequential.contains(" DE "));
+			assertEquals(sequential, runScenario(runner, "four", true, 4,
+					true));
+		}
+		finally {
+			runner.delete();
+		}
+	}
+
+	/**
+	 * Tests that routers that aren't known to support concurrent updates
+	 * are rejected
+	 */
+	public void testUnsupportedRouter() {
+		List<DTNHost> hosts = createHosts(new RapidRouter(
+				new Settings(GROUP_NS)));
+		ParallelUpdateEngine engine = new ParallelUpdateEngine(hosts, 2);
+		try {
+			engine.enableUpdates(1000, 1000);
+			fail("RapidRouter should not be supported");
+		} catch (SettingsError e) {
+			// expected
+		}
+		finally {
+			engine.shutdown();
+		}
+	}
+
+	/**
+	 * Runs the scenario in its own class loader
+	 * @param runner The runner to use
+	 * @param name Name of the run
+	 * @param parallel Should hosts be updated concurrently
+	 * @param nrofThreads Number of threads for concurrent updates
+	 * @param touchedOnly Should only touched hosts be updated after events
+	 * @return Contents of the reports
+	 */
+	private String runScenario(ScenarioRunner runner, String name,
+			boolean parallel, int nrofThreads, boolean touchedOnly)
+			throws Exception {
+		String optNs = World.SETTINGS_NS + ".";
+		String cmdSettings = optNs + World.PARALLEL_UPDATES_S + " = " +
+			parallel + DTNSim.CMD_SETTING_DELIMITER + optNs +
+			World.NROF_THREADS_S + " = " + nrofThreads +
+			DTNSim.CMD_SETTING_DELIMITER + optNs +
+			World.UPDATE_TOUCHED_HOSTS_S + " = " + touchedOnly;
+
+		File reportDir = runner.run(name, SCENARIO, cmdSettings);
+		assertEquals(4, reportDir.listFiles().length);
+		return ScenarioRunner.readReports(reportDir);
+	}
+
+	/**
+	 * Creates hosts that have the same router and a broadcast interface
+	 * @param router Prototype of the hosts' router
+	 * @return The hosts
+	 */
+	private List<DTNHost> createHosts(MessageRouter router) {
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		ConnectivityGrid.reset();
+		MovementModel.reset();
+
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(new SimpleBroadcastInterface(new Settings(INTERFACE_NS)));
+		MovementModel mm = new RandomWaypoint(new Settings(GROUP_NS));
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<NROF_HOSTS; i++) {
+			hosts.add(new DTNHost(new ArrayList<MessageListener>(),
+					new ArrayList<MovementListener>(), "n", li,
+					new ModuleCommunicationBus(), mm, router));
+		}
+		return hosts;
+	}
+
+	/**
+	 * Moves (and sequentially updates) hosts, half of which can be moved
+	 * concurrently
+	 * @param nrofThreads Number of threads for the engine
+	 * @return Log of the locations and movement and connection events
+	 */
+	private String moveHosts(int nrofThreads) {
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		ConnectivityGrid.reset();
+		MovementModel.reset();
+
+		final StringBuilder log = new StringBuilder();
+		List<MovementListener> movLs = new ArrayList<MovementListener>();
+		List<ConnectionListener> conLs = new ArrayList<ConnectionListener>();
+		conLs.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				log.append(host1).append(" up ").append(host2).append('\n');
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				log.append(host1).append(" down ").append(host2).append('\n');
+			}
+		});
+
+		NetworkInterface ni = new SimpleBroadcastInterface(
+				new Settings(INTERFACE_NS));
+		ni.setClisteners(conLs);
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(ni);
+		Settings s = new Settings(GROUP_NS);
+		MovementModel concurrent = new RandomWaypoint(s);
+		MovementModel sequential = new SequentialWaypoint(s);
+		PassiveRouter router = new PassiveRouter(s);
+
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<NROF_HOSTS; i++) {
+			hosts.add(new DTNHost(new ArrayList<MessageListener>(), movLs,
+					"n", li, new ModuleCommunicationBus(),
+					i % 2 == 0 ? concurrent : sequential, router));
+		}
+
+		ParallelUpdateEngine engine = new ParallelUpdateEngine(hosts,
+				nrofThreads);
+		engine.enableMovement();
+		movLs.add(engine.defer(new MovementListener() {
+			public void newDestination(DTNHost host, Coord destination,
+					double speed) {
+				log.append(host).append(" -> ").append(destination.getX())
+					.append(',').append(destination.getY()).append(' ')
+					.append(speed).append('\n');
+			}
+			public void initialLocation(DTNHost host, Coord location) {
+				log.append(host).append(" at ").append(location).append('\n');
+			}
+		}));
+
+		try {
+			for (int i=0; i<NROF_STEPS; i++) {
+				engine.moveHosts(UP_INT);
+				SimClock.getInstance().advance(UP_INT);
+				for (DTNHost h : hosts) {
+					Coord c = h.getLocation();
+					log.append(h).append(' ').append(c.getX()).append(',')
+						.append(c.getY()).append('\n');
+					h.update(true);
+				}
+			}
+		}
+		finally {
+			engine.shutdown();
+		}
+		return log.toString();
+	}
+
+	/**
+	 * Random waypoint movement that must be moved sequentially
+	 */
+	private static class SequentialWaypoint extends RandomWaypoint {
+		public SequentialWaypoint(Settings s) {
+			super(s);
+		}
+
+		protected SequentialWaypoint(SequentialWaypoint mm) {
+			super(mm);
+		}
+
+		@Override
+		public boolean canMoveConcurrently() {
+			return false;
+		}
+
+		@Override
+		public SequentialWaypoint replicate() {
+			return new SequentialWaypoint(this);
+		}
+	}
+}
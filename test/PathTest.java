@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.Path;
+import core.Coord;
+
+/**
+ * Tests for the Path class
+ */
+public class PathTest extends TestCase {
+
+	public void testConstantSpeed() {
+		Path p = new Path(2.5);
+		for (int i = 0; i < 40; i++) {
+			p.addWaypoint(new Coord(i, 2 * i));
+		}
+
+		List<Coord> coords = p.getCoords();
+		assertEquals(40, coords.size());
+		assertEquals(new Coord(39, 78), coords.get(39));
+		assertEquals(1, p.getSpeeds().size());
+
+		Coord wp = new Coord(0, 0);
+		for (int i = 0; i < 40; i++) {
+			assertTrue(p.hasNext());
+			p.getNextWaypoint(wp);
+			assertEquals(new Coord(i, 2 * i), wp);
+			assertEquals(2.5, p.getSpeed());
+		}
+		assertFalse(p.hasNext());
+	}
+
+	public void testLegSpeeds() {
+		Path p = new Path();
+		for (int i = 0; i < 20; i++) {
+			p.addWaypoint(new Coord(i, 0), i * 0.5);
+		}
+		assertEquals(20, p.getSpeeds().size());
+
+		for (int i = 0; i < 20; i++) {
+			assertEquals(new Coord(i, 0), p.getNextWaypoint());
+			assertEquals(i * 0.5, p.getSpeed());
+		}
+
+		p.setSpeed(3);
+		assertEquals(1, p.getSpeeds().size());
+		assertEquals(3.0, p.getSpeed());
+	}
+
+	public void testCopy() {
+		Path p = new Path(1);
+		Coord c = new Coord(1, 1);
+		p.addWaypoint(c);
+		p.addWaypoint(new Coord(2, 2));
+		p.getNextWaypoint();
+
+		Path copy = new Path(p);
+		p.addWaypoint(new Coord(3, 3));
+		c.translate(1, 1); // waypoints are copied when added
+		assertEquals(new Coord(1, 1), p.getCoords().get(0));
+
+		assertEquals(2, copy.getCoords().size());
+		assertEquals(new Coord(2, 2), copy.getNextWaypoint());
+		assertFalse(copy.hasNext());
+		assertEquals(1.0, copy.getSpeed());
+	}
+}
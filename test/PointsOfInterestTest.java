@@ -205,6 +205,28 @@ public class PointsOfInterestTest extends TestCase {
 		
 	}
 	
+	public void testRandomOkNodes() throws Exception {
+		final int TOTAL = 5000;
+		setUpWith(new double[] {0.0, 0.0, 0.0}, 1, new int [] {1});
+		
+		// n7 and n5 are not of type 1 -> others should get a fifth each
+		Coord[] okCoords = {new Coord(1,1), new Coord(2,1), new Coord(3,1),
+				new Coord(4,1), new Coord(1,2)};
+		int[] nrofHits = new int[okCoords.length];
+		for (int i=0; i<TOTAL; i++) {
+			Coord c = pois.selectDestination().getLocation();
+			assertTrue("Not an OK node " + c, isPartOf(c, okCoords));
+			for (int j=0; j<okCoords.length; j++) {
+				if (c.equals(okCoords[j])) {
+					nrofHits[j]++;
+				}
+			}
+		}
+		for (int i=0; i<okCoords.length; i++) {
+			assertEquals(0.2, nrofHits[i] / (TOTAL*1.0), 0.02);
+		}
+	}
+	
 	// return true if c is part of set
 	private boolean isPartOf(Coord c, Coord[] set) {
 		for (Coord coord : set) {
@@ -0,0 +1,86 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.prophet.PredictabilityTable;
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Tests for the PredictabilityTable class
+ */
+public class PredictabilityTableTest extends TestCase {
+	private static final double GAMMA = 0.98;
+	private static final double SECONDS_IN_UNIT = 30;
+	private static final double DELTA = 1e-12;
+	private SimClock clock;
+	private DTNHost[] hosts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		hosts = new DTNHost[40]; // more than the initial table size
+		for (int i=0; i < hosts.length; i++) {
+			hosts[i] = utils.createHost();
+		}
+	}
+
+	public void testEncounterAndAging() {
+		PredictabilityTable t = new PredictabilityTable(GAMMA, SECONDS_IN_UNIT);
+		assertEquals(0.0, t.get(hosts[1]));
+		t.encounter(hosts[1], 0.75);
+		t.encounter(hosts[35], 0.5);
+		assertEquals(0.75, t.get(hosts[1]));
+		assertEquals(2, t.size());
+
+		clock.advance(SECONDS_IN_UNIT * 2);
+		assertEquals(0.75 * GAMMA * GAMMA, t.get(hosts[1]), DELTA);
+		t.encounter(hosts[1], 0.75);
+		double p = 0.75 * GAMMA * GAMMA;
+		p = p + (1 - p) * 0.75;
+		assertEquals(p, t.get(hosts[1]), DELTA);
+		assertEquals(0.5 * GAMMA * GAMMA, t.get(hosts[35]), DELTA);
+
+		clock.advance(SECONDS_IN_UNIT / 2);
+		assertEquals(p * Math.pow(GAMMA, 0.5), t.get(hosts[1]), DELTA);
+		assertEquals("[" + hosts[1] + ", " + hosts[35] + "]",
+				t.getHosts().toString());
+	}
+
+	public void testTransitive() {
+		PredictabilityTable a = new PredictabilityTable(GAMMA, SECONDS_IN_UNIT);
+		PredictabilityTable b = new PredictabilityTable(GAMMA, SECONDS_IN_UNIT);
+		b.encounter(hosts[0], 0.75); // b has met a
+		b.encounter(hosts[2], 0.75);
+		a.encounter(hosts[2], 0.5);
+		clock.advance(SECONDS_IN_UNIT);
+
+		a.encounter(hosts[1], 0.75);
+		a.updateTransitive(b, hosts[0], 0.75, 0.25);
+		double pOld = 0.5 * GAMMA;
+		assertEquals(pOld + (1 - pOld) * 0.75 * 0.75 * GAMMA * 0.25,
+				a.get(hosts[2]), DELTA);
+		assertEquals(0.0, a.get(hosts[0])); // not added to own table
+
+		PredictabilityTable c = new PredictabilityTable(GAMMA, SECONDS_IN_UNIT);
+		c.encounter(hosts[2], 0.5);
+		c.updateTransitiveMax(b, hosts[0], 0.5, 0.9);
+		assertEquals(0.5, c.get(hosts[2])); // old value is bigger
+		c.updateTransitiveMax(b, hosts[0], 1.0, 0.9);
+		assertEquals(0.75 * GAMMA * 0.9, c.get(hosts[2]), DELTA);
+	}
+
+	public void testSetGamma() {
+		PredictabilityTable t = new PredictabilityTable(GAMMA, 1);
+		t.encounter(hosts[3], 0.5);
+		clock.advance(10);
+		t.setGamma(0.5);
+		clock.advance(2);
+		assertEquals(0.5 * Math.pow(GAMMA, 10) * 0.25, t.get(hosts[3]), DELTA);
+	}
+}
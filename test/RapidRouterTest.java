@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import routing.MessageRouter;
+import routing.RapidRouter;
+import routing.rapid.DelayEntry;
+import routing.rapid.DelayTable;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Tests for the RAPID router's batched marginal utility calculation
+ */
+public class RapidRouterTest extends AbstractRouterTest {
+	private static final int NROF_MSGS = 24;
+
+	@Override
+	public void setUp() throws Exception {
+		ts.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE * NROF_MSGS);
+		setRouterProto(new RapidRouter(ts));
+		super.setUp();
+	}
+
+	public void testDefaultIsSequential() {
+		assertEquals(0, RapidRouter.DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Tests that the batched utilities, both sequential and concurrent,
+	 * equal the per pair utilities and leave the same delay tables
+	 */
+	public void testBatchedUtilities() throws Exception {
+		double[] expected = perPairUtilities();
+		String expectedTables = delayTables();
+
+		setUp();
+		double[] sequential = batchedUtilities(0);
+		assertUtilities(expected, sequential);
+		assertEquals(expectedTables, delayTables());
+
+		setUp();
+		double[] parallel = batchedUtilities(1);
+		assertUtilities(expected, parallel);
+		assertEquals(expectedTables, delayTables());
+	}
+
+	private void assertUtilities(double[] expected, double[] result) {
+		assertEquals(expected.length, result.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("utility of pair " + i, expected[i], result[i], 0.0);
+		}
+	}
+
+	/**
+	 * Creates messages and meeting history so that h1 is connected to
+	 * three hosts which have different delay estimates for the messages
+	 */
+	private void createWorld() {
+		DTNHost[] dests = {h2, h3, h4, h5, h6};
+		for (int i = 0; i < NROF_MSGS; i++) {
+			h1.createNewMessage(new Message(h1, dests[i % dests.length],
+					"M" + i, 10 + i));
+		}
+		for (int i = 0; i < 4; i++) {
+			h2.createNewMessage(new Message(h2, h5, "N" + i, 20));
+			h3.createNewMessage(new Message(h3, h6, "O" + i, 30));
+		}
+
+		DTNHost[] hosts = {h1, h2, h3, h4};
+		for (int i = 0; i < hosts.length; i++) {
+			DelayTable dt = getRouter(hosts[i]).getDelayTable();
+			for (int j = 0; j < dests.length; j++) {
+				if (hosts[i] != dests[j] && (i + j) % 3 != 0) {
+					dt.updateAvgMeetingTime(hosts[i].getAddress(),
+							dests[j].getAddress(), 100 * (i + 1) + 10 * j);
+				}
+			}
+		}
+
+		clock.advance(50);
+		h1.connect(h2);
+		h1.connect(h3);
+		h1.connect(h4);
+		clock.advance(10);
+	}
+
+	private double[] perPairUtilities() throws Exception {
+		createWorld();
+		Method mu = RapidRouter.class.getDeclaredMethod("getMarginalUtility",
+				Message.class, RapidRouter.class, DTNHost.class);
+		mu.setAccessible(true);
+
+		Pairs p = new Pairs();
+		double[] utilities = new double[p.nrofPairs];
+		for (int i = 0; i < p.nrofPairs; i++) {
+			utilities[i] = (Double)mu.invoke(getRouter(h1),
+					p.msgs[p.pairMsgs[i]], p.pairRouters[i], h1);
+		}
+		return utilities;
+	}
+
+	private double[] batchedUtilities(int threshold) throws Exception {
+		createWorld();
+		Field f = RapidRouter.class.getDeclaredField("parallelThreshold");
+		f.setAccessible(true);
+		f.setInt(getRouter(h1), threshold);
+		Method mus = RapidRouter.class.getDeclaredMethod(
+				"getMarginalUtilities", Message[].class, int[].class,
+				RapidRouter[].class, int.class);
+		mus.setAccessible(true);
+
+		Pairs p = new Pairs();
+		return (double[])mus.invoke(getRouter(h1), p.msgs, p.pairMsgs,
+				p.pairRouters, p.nrofPairs);
+	}
+
+	/**
+	 * Returns the delay tables of all hosts as a string
+	 */
+	private String delayTables() {
+		StringBuilder sb = new StringBuilder();
+		for (DTNHost h : utils.getAllHosts()) {
+			TreeMap<String, DelayEntry> entries =
+				new TreeMap<String, DelayEntry>();
+			for (Entry<String, DelayEntry> e :
+					getRouter(h).getDelayTable().getDelayEntries()) {
+				entries.put(e.getKey(), e.getValue());
+			}
+			sb.append(h).append(":\n");
+			for (DelayEntry de : entries.values()) {
+				sb.append(de.getMessage().getId());
+				for (int i = 0; i < de.size(); i++) {
+					sb.append(' ').append(de.getHost(i)).append('=')
+						.append(de.getDelay(i)).append('@')
+						.append(de.getLastUpdate(i));
+				}
+				sb.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	private static RapidRouter getRouter(DTNHost h) {
+		return (RapidRouter)h.getRouter();
+	}
+
+	/**
+	 * Message-router pairs of h1 in the order RAPID creates them
+	 */
+	private class Pairs {
+		private Message[] msgs;
+		private int[] pairMsgs;
+		private RapidRouter[] pairRouters;
+		private int nrofPairs;
+
+		public Pairs() {
+			Collection<Message> c = getRouter(h1).getMessageCollection();
+			msgs = c.toArray(new Message[c.size()]);
+			List<RapidRouter> routers = new ArrayList<RapidRouter>();
+			for (DTNHost h : new DTNHost[] {h2, h3, h4}) {
+				routers.add(getRouter(h));
+			}
+			pairMsgs = new int[msgs.length * routers.size()];
+			pairRouters = new RapidRouter[pairMsgs.length];
+			/* none of h1's messages has been replicated to the others */
+			for (RapidRouter r : routers) {
+				for (int i = 0; i < msgs.length; i++) {
+					pairMsgs[nrofPairs] = i;
+					pairRouters[nrofPairs] = r;
+					nrofPairs++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+/**
+ * Regression test for the optimizations of the active routers' message
+ * buffers. An Epidemic scenario with full buffers, expiring messages and
+ * the default (random) send queue must give the same reports as before
+ * the buffer indexes were added.
+ */
+public class RoutingReportsTest extends TestCase {
+	private static final String[] SCENARIO = {
+		"Scenario.name = regression",
+		"Scenario.endTime = 1000",
+		"Scenario.updateInterval = 0.5",
+		"Scenario.nrofHostGroups = 1",
+		"MovementModel.worldSize = 1000, 1000",
+		"MovementModel.warmup = 100",
+		"btInterface.transmitRange = 50",
+		"Group.movementModel = RandomWaypoint",
+		"Group.router = EpidemicRouter",
+		"Group.bufferSize = 2M",
+		"Group.msgTtl = 10",
+		"Group.nrofHosts = 50",
+		"Group.speed = 1, 5",
+		"Events1.interval = 5,10",
+		"Events1.size = 50k,200k",
+		"Events1.hosts = 0,50",
+		"Report.nrofReports = 2",
+		"Report.report1 = MessageStatsReport",
+		"Report.report2 = EventLogReport"};
+
+	/** message stats of the scenario before the buffer indexes */
+	private static final String EXPECTED_STATS =
+		"Message stats for scenario regression\n" +
+		"sim_time: 1000.0000\n" +
+		"created: 145\n" +
+		"started: 4269\n" +
+		"relayed: 4229\n" +
+		"aborted: 32\n" +
+		"dropped: 3603\n" +
+		"removed: 0\n" +
+		"delivered: 54\n" +
+		"delivery_prob: 0.3724\n" +
+		"response_prob: 0.0000\n" +
+		"overhead_ratio: 77.3148\n" +
+		"latency_avg: 257.3426\n" +
+		"latency_med: 263.0000\n" +
+		"hopcount_avg: 4.2963\n" +
+		"hopcount_med: 4\n" +
+		"buffertime_avg: 115.8421\n" +
+		"buffertime_med: 85.0000\n" +
+		"rtt_avg: NaN\n" +
+		"rtt_med: NaN\n";
+	/** CRC-32 of the event log of the scenario before the buffer indexes */
+	private static final long EXPECTED_EVENT_LOG_CRC = 3361466959L;
+
+	public void testEpidemicReports() throws Exception {
+		ScenarioRunner runner = new ScenarioRunner();
+		try {
+			File reportDir = runner.run("epidemic", SCENARIO, null);
+			byte[] stats = Files.readAllBytes(new File(reportDir,
+					"regression_MessageStatsReport.txt").toPath());
+			assertEquals(EXPECTED_STATS, new String(stats, "UTF-8"));
+
+			CRC32 crc = new CRC32();
+			crc.update(Files.readAllBytes(new File(reportDir,
+					"regression_EventLogReport.txt").toPath()));
+			assertEquals(EXPECTED_EVENT_LOG_CRC, crc.getValue());
+		}
+		finally {
+			runner.delete();
+		}
+	}
+}
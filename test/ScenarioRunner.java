@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import core.DTNSim;
+
+/**
+ * Runs whole simulation scenarios for tests. Every run gets its own class
+ * loader, so none of the simulator's static state is shared with the tests
+ * or other runs.
+ */
+public class ScenarioRunner {
+	private File dir;
+
+	/**
+	 * Creates a runner with a new temporary directory for the settings and
+	 * reports
+	 * @throws IOException if the directory can't be created
+	 */
+	public ScenarioRunner() throws IOException {
+		this.dir = Files.createTempDirectory("scenario").toFile();
+	}
+
+	/**
+	 * Runs a scenario in batch mode
+	 * @param name Name of the run (and its report directory)
+	 * @param settings The settings of the scenario, one per line
+	 * @param cmdSettings Additional settings (separated by
+	 * {@link DTNSim#CMD_SETTING_DELIMITER}) or null
+	 * @return The report directory of the run
+	 * @throws Exception if the run fails
+	 */
+	public File run(String name, String[] settings, String cmdSettings)
+			throws Exception {
+		File conf = new File(dir, name + "_settings.txt");
+		FileWriter out = new FileWriter(conf);
+		try {
+			for (String line : settings) {
+				out.write(line + "\n");
+			}
+		}
+		finally {
+			out.close();
+		}
+
+		File reportDir = new File(dir, name);
+		String reportSetting = "Report.reportDir = " + reportDir.getPath() +
+			"/";
+		cmdSettings = cmdSettings == null ? reportSetting : reportSetting +
+				DTNSim.CMD_SETTING_DELIMITER + cmdSettings;
+
+		String[] entries = System.getProperty("java.class.path").split(
+				File.pathSeparator);
+		URL[] urls = new URL[entries.length];
+		for (int i=0; i<entries.length; i++) {
+			urls[i] = new File(entries[i]).toURI().toURL();
+		}
+		URLClassLoader loader = new URLClassLoader(urls,
+				ClassLoader.getSystemClassLoader().getParent());
+		try {
+			Class<?> c = loader.loadClass(DTNSim.class.getName());
+			Method m = c.getMethod("runIsolated", String[].class, int.class,
+					String.class, int.class, int.class);
+			m.invoke(null, new String[] {conf.getPath()}, 0, cmdSettings, 0, 1);
+		}
+		finally {
+			loader.close();
+		}
+		return reportDir;
+	}
+
+	/**
+	 * Returns the names and contents of all reports of a run
+	 * @param reportDir The report directory of the run
+	 * @return The reports in file name order
+	 * @throws IOException if a report can't be read
+	 */
+	public static String readReports(File reportDir) throws IOException {
+		File[] reports = reportDir.listFiles();
+		Arrays.sort(reports);
+		StringBuilder sb = new StringBuilder();
+		for (File f : reports) {
+			sb.append(f.getName()).append('\n');
+			sb.append(new String(Files.readAllBytes(f.toPath()), "UTF-8"));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Deletes the directory of the runner and all the runs' files
+	 * @throws IOException if something can't be deleted
+	 */
+	public void delete() throws IOException {
+		deleteAll(dir);
+	}
+
+	private static void deleteAll(File f) throws IOException {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteAll(child);
+			}
+		}
+		Files.delete(f.toPath());
+	}
+}
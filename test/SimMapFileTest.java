@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.WKTMapReader;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.map.MapNode;
+import movement.map.SimMap;
+import movement.map.SimMapFile;
+
+/**
+ * Tests for reading map files in parallel and for the compiled map files
+ */
+public class SimMapFileTest extends TestCase {
+	private static final int NROF_FILES = 3;
+	private List<File> files;
+	private List<String> names;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		Random rng = new Random(3);
+		files = new ArrayList<File>();
+		names = new ArrayList<String>();
+
+		/* random paths in a grid so that the files share some nodes */
+		for (int i = 0; i < NROF_FILES; i++) {
+			File f = File.createTempFile("map" + i, ".wkt");
+			f.deleteOnExit();
+			FileWriter out = new FileWriter(f);
+			for (int j = 0; j < 50; j++) {
+				out.write(j % 5 == 0 ? "MULTILINESTRING ((" : "LINESTRING (");
+				int x = rng.nextInt(30);
+				int y = rng.nextInt(30);
+				for (int k = 0; k < 6; k++) {
+					out.write((k > 0 ? ", " : "") + x * 10.5 + " " + y * 7.25);
+					x += rng.nextInt(3) - 1;
+					y += rng.nextInt(3) - 1;
+				}
+				out.write(j % 5 == 0 ? "), (1.0 2.0, 3.0 4.0))\n" : ")\n");
+			}
+			out.close();
+			files.add(f);
+			names.add(f.getPath());
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		for (File f : files) {
+			f.delete();
+		}
+	}
+
+	private SimMap readMap(boolean parallel) throws IOException {
+		WKTMapReader r = new WKTMapReader(true);
+		if (parallel) {
+			int[] types = new int[NROF_FILES];
+			for (int i = 0; i < NROF_FILES; i++) {
+				types[i] = i + 1;
+			}
+			r.addPaths(files, types);
+		}
+		else {
+			for (int i = 0; i < NROF_FILES; i++) {
+				r.addPaths(files.get(i), i + 1);
+			}
+		}
+		return r.getMap();
+	}
+
+	/**
+	 * Checks that the maps have the same nodes in the same order
+	 */
+	private void assertSameMap(SimMap expected, SimMap map) {
+		List<MapNode> nodes1 = expected.getNodes();
+		List<MapNode> nodes2 = map.getNodes();
+		assertEquals(nodes1.size(), nodes2.size());
+		for (int i = 0; i < nodes1.size(); i++) {
+			MapNode n1 = nodes1.get(i);
+			MapNode n2 = nodes2.get(i);
+			assertEquals(n1.getLocation(), n2.getLocation());
+			assertEquals(n1.toString(), n2.toString()); // includes types
+			assertEquals(n1.getNeighbors().size(), n2.getNeighbors().size());
+			for (int j = 0; j < n1.getNeighbors().size(); j++) {
+				assertEquals(n1.getNeighbors().get(j).getLocation(),
+						n2.getNeighbors().get(j).getLocation());
+			}
+		}
+		assertEquals(expected.getOffset(), map.getOffset());
+		assertEquals(expected.isMirrored(), map.isMirrored());
+		assertEquals(expected.getMinBound(), map.getMinBound());
+		assertEquals(expected.getMaxBound(), map.getMaxBound());
+	}
+
+	public void testParallelRead() throws IOException {
+		assertSameMap(readMap(false), readMap(true));
+	}
+
+	public void testCompiledMap() throws IOException {
+		SimMap map = readMap(true);
+		map.mirror();
+		map.translate(-map.getMinBound().getX(), -map.getMinBound().getY());
+
+		File compiled = File.createTempFile("map", ".bin");
+		compiled.deleteOnExit();
+		SimMapFile.write(map, names, compiled);
+
+		SimMap loaded = SimMapFile.read(compiled, names);
+		assertNotNull(loaded);
+		assertSameMap(map, loaded);
+		MapNode n = loaded.getNodes().get(7);
+		assertSame(n, loaded.getNodeByCoord(n.getLocation().clone()));
+
+		/* compiled from other files */
+		assertNull(SimMapFile.read(compiled, names.subList(0, 2)));
+		List<String> reversed = new ArrayList<String>(names);
+		Collections.reverse(reversed);
+		assertNull(SimMapFile.read(compiled, reversed));
+
+		/* source modified after compiling */
+		File f = files.get(1);
+		assertTrue(f.setLastModified(f.lastModified() - 10000));
+		assertNull(SimMapFile.read(compiled, names));
+
+		assertNull(SimMapFile.read(new File(compiled.getPath() + ".none"),
+				names));
+		compiled.delete();
+	}
+}
@@ -5,6 +5,7 @@
 package test;
 
 import input.EventQueue;
+import input.ExternalEvent;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -98,6 +99,48 @@ public class WorldTest extends TestCase {
 
 	}
 	
+	public void testTouchedHostUpdates() {
+		DTNHost.reset();
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<5; i++) {
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(new TestInterface(1.0,1));
+			hosts.add(new TestDTNHost(li, new ModuleCommunicationBus()));
+		}
+		final DTNHost touched = hosts.get(1);
+
+		final List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		events.add(new ExternalEvent(0.05) {
+			public void processEvent(World world) {
+				world.hostTouched(touched);
+			}
+		});
+		events.add(new ExternalEvent(0.07)); // doesn't tell what it touched
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		queues.add(new EventQueue() {
+			public ExternalEvent nextEvent() {
+				return events.remove(0);
+			}
+			public double nextEventsTime() {
+				return events.isEmpty() ? Double.MAX_VALUE :
+					events.get(0).getTime();
+			}
+		});
+
+		/* TestDTNHost's constructor resets the settings */
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.SETTINGS_NS + "." + World.UPDATE_TOUCHED_HOSTS_S,
+				"true");
+		World w = new World(hosts, worldSizeX, worldSizeY, upInterval,
+				new ArrayList<UpdateListener>(), true, queues);
+		w.update();
+		ts.putSetting(World.SETTINGS_NS + "." + World.UPDATE_TOUCHED_HOSTS_S,
+				"false");
+
+		for (DTNHost h : hosts) {
+			assertEquals(h == touched ? 3 : 2, ((TestDTNHost)h).nrofUpdate);
+		}
+	}
 
 	/** Dummy scenario for providing test values for the World */ 
 	private class TestScenario extends core.SimScenario {